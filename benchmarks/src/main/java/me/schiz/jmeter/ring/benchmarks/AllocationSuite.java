@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import me.schiz.jmeter.ring.stub.StubServer;
+import me.schiz.jmeter.ring.tcp.config.TCPRingSourceElement;
+import me.schiz.jmeter.ring.tcp.sampler.TCPRingSampler;
+import me.schiz.jmeter.ring.udp.config.UDPRingSourceElement;
+import me.schiz.jmeter.ring.udp.sampler.UDPRingSampler;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.logging.LoggingManager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures heap allocated per request on the sampler threads and on the
+ * engine event-loop threads, via ThreadMXBean.getThreadAllocatedBytes,
+ * and fails (exit code 1) when an allocation-free scenario goes over its
+ * budget. Default-mode scenarios are reported for comparison only; the
+ * budget itself is also checked by AllocationTest in the normal build.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar me.schiz.jmeter.ring.benchmarks.AllocationSuite
+ *
+ * -Dallocation.duration=ms and -Dallocation.threads=n scale the run,
+ * -Dallocation.budget=bytes overrides the per-request budget.
+ */
+public class AllocationSuite {
+	private static final long WARMUP = 3000L;
+	private static final long DURATION = Long.getLong("allocation.duration", 5000L);
+	private static final int THREADS = Integer.getInteger("allocation.threads", 4);
+	static final long BUDGET = Long.getLong("allocation.budget", 16L);
+
+	private static final com.sun.management.ThreadMXBean threadMXBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	static class Scenario {
+		final String name;
+		final boolean udp;
+		final boolean allocationFree;
+
+		Scenario(String name, boolean udp, boolean allocationFree) {
+			this.name = name;
+			this.udp = udp;
+			this.allocationFree = allocationFree;
+		}
+	}
+
+	static class Result {
+		long samples;
+		long errors;
+		long samplerBytes;
+		long eventLoopBytes;
+
+		double perRequest(long bytes) {
+			return samples == 0 ? Double.MAX_VALUE : (double) bytes / samples;
+		}
+	}
+
+	static final Scenario TCP_DEFAULT = new Scenario("tcp-default", false, false);
+	static final Scenario TCP_ALLOCATION_FREE = new Scenario("tcp-allocation-free", false, true);
+	static final Scenario UDP_DEFAULT = new Scenario("udp-default", true, false);
+	static final Scenario UDP_ALLOCATION_FREE = new Scenario("udp-allocation-free", true, true);
+
+	private static final List<Scenario> SCENARIOS = Arrays.asList(TCP_DEFAULT, TCP_ALLOCATION_FREE, UDP_DEFAULT, UDP_ALLOCATION_FREE);
+
+	public static void main(String[] args) throws Exception {
+		LoggingManager.setPriority(System.getProperty("allocation.loglevel", "FATAL_ERROR"));
+		List<String> failures = new ArrayList<String>();
+		System.out.printf("%-20s %9s %7s %14s %16s %10s%n",
+				"scenario", "samples", "errors", "sampler(B/req)", "eventloop(B/req)", "total");
+		for(Scenario scenario : SCENARIOS) {
+			if(args.length > 0 && !Arrays.asList(args).contains(scenario.name))	continue;
+			Result r = run(scenario, WARMUP, DURATION, THREADS);
+			double total = r.perRequest(r.samplerBytes + r.eventLoopBytes);
+			System.out.printf("%-20s %9d %7d %14.1f %16.1f %10.1f%n",
+					scenario.name, r.samples, r.errors, r.perRequest(r.samplerBytes),
+					r.perRequest(r.eventLoopBytes), total);
+			if(!scenario.allocationFree)	continue;
+			if(r.samples == 0)
+				failures.add(scenario.name + ": no samples");
+			else if(total > BUDGET)
+				failures.add(scenario.name + ": " + (long) total + " B/request > " + BUDGET);
+		}
+		for(String failure : failures)	System.out.println("FAILED " + failure);
+		System.exit(failures.isEmpty() ? 0 : 1);
+	}
+
+	static Result run(Scenario scenario, long warmup, long duration, final int threadCount) throws Exception {
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+		StubServer stub = new StubServer().start();
+		String source = "allocation-" + scenario.name;
+		final AbstractSampler sampler;
+		if(scenario.udp) {
+			UDPRingSourceElement element = new UDPRingSourceElement();
+			element.setSource(source);
+			element.setAddresses(stub.getUdpAddress());
+			element.setSockets(String.valueOf(threadCount * 4));
+			element.setThreads("1");
+			element.setAllocationFree(String.valueOf(scenario.allocationFree));
+			element.testStarted();
+			UDPRingSampler udp = new UDPRingSampler();
+			udp.setSource(source);
+			udp.setRequest("ping");
+			udp.setHex(false);
+			sampler = udp;
+		} else {
+			TCPRingSourceElement element = new TCPRingSourceElement();
+			element.setSource(source);
+			element.setAddresses(stub.getTcpAddress());
+			element.setSockets(String.valueOf(threadCount * 4));
+			element.setThreads("1");
+			element.setAllocationFree(String.valueOf(scenario.allocationFree));
+			element.testStarted();
+			TCPRingSampler tcp = new TCPRingSampler();
+			tcp.setSource(source);
+			tcp.setRequest("ping");
+			sampler = tcp;
+		}
+		sampler.setName(scenario.name);
+
+		final long measureFrom = System.currentTimeMillis() + warmup;
+		final long deadline = measureFrom + duration;
+		final AtomicLong samples = new AtomicLong(), errors = new AtomicLong(), samplerBytes = new AtomicLong();
+		Thread[] threads = new Thread[threadCount];
+		for(int i=0;i<threadCount;i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long id = Thread.currentThread().getId();
+					long start = -1L, count = 0L, failed = 0L, now;
+					while((now = System.currentTimeMillis()) < deadline) {
+						if(start == -1L && now >= measureFrom)	start = threadMXBean.getThreadAllocatedBytes(id);
+						SampleResult result = sampler.sample(null);
+						if(result == null || start == -1L)	continue;
+						count++;
+						if(!result.isSuccessful())	failed++;
+					}
+					if(start != -1L)	samplerBytes.addAndGet(threadMXBean.getThreadAllocatedBytes(id) - start);
+					samples.addAndGet(count);
+					errors.addAndGet(failed);
+				}
+			}, "AllocationSampler#" + i);
+			threads[i].start();
+		}
+
+		Thread.sleep(Math.max(0L, measureFrom - System.currentTimeMillis()));
+		long[] eventLoops = eventLoopThreads();
+		long[] before = threadMXBean.getThreadAllocatedBytes(eventLoops);
+		for(Thread thread : threads)	thread.join();
+		long[] after = threadMXBean.getThreadAllocatedBytes(eventLoops);
+
+		if(scenario.udp)	new UDPRingSourceElement().testEnded();
+		else	new TCPRingSourceElement().testEnded();
+		stub.stop();
+
+		Result r = new Result();
+		r.samples = samples.get();
+		r.errors = errors.get();
+		r.samplerBytes = samplerBytes.get();
+		for(int i=0;i<eventLoops.length;i++) {
+			if(before[i] >= 0 && after[i] >= 0)	r.eventLoopBytes += after[i] - before[i];
+		}
+		return r;
+	}
+
+	private static long[] eventLoopThreads() {
+		List<Long> ids = new ArrayList<Long>();
+		for(ThreadInfo info : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds())) {
+			if(info != null && info.getThreadName().startsWith("EventLoopThread#"))	ids.add(info.getThreadId());
+		}
+		long[] result = new long[ids.size()];
+		for(int i=0;i<result.length;i++)	result[i] = ids.get(i);
+		return result;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the suite with the GC profiler attached and writes a JSON report,
+ * so allocation rate (gc.alloc.rate.norm) and the SampleTime percentiles
+ * can be diffed between builds:
+ *
+ *   java -cp benchmarks/target/benchmarks.jar me.schiz.jmeter.ring.benchmarks.BenchmarkRunner [regex...]
+ *
+ * The report goes to the path in -Dbenchmarks.result (default jmh-result.json).
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws RunnerException {
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(System.getProperty("benchmarks.result", "jmh-result.json"));
+		if(args.length == 0) {
+			options.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+		} else {
+			for(String regex : args)	options.include(regex);
+		}
+		new Runner(options.build()).run();
+	}
+}
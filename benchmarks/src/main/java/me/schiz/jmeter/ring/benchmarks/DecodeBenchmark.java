@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import me.schiz.jmeter.ring.tcp.ResponseHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response decoding done by tcp.ResponseHandler.read for every
+ * read, against a plain copy out of the direct buffer as the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+	@Param({"64", "1024", "4096"})
+	public int size;
+
+	private ByteBuffer buffer;
+
+	@Setup
+	public void setup() {
+		buffer = ByteBuffer.allocateDirect(size);
+		byte[] payload = new byte[size];
+		Arrays.fill(payload, (byte) 'x');
+		buffer.put(payload);
+	}
+
+	@Benchmark
+	public byte[] readCallbackDecode() {
+		buffer.flip();
+		byte[] result = ResponseHandler.decode(buffer);
+		buffer.limit(buffer.capacity()).position(size);
+		return result;
+	}
+
+	@Benchmark
+	public byte[] copy() {
+		buffer.flip();
+		byte[] result = new byte[buffer.remaining()];
+		buffer.get(result);
+		buffer.limit(buffer.capacity()).position(size);
+		return result;
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import me.schiz.jmeter.ring.stub.StubServer;
+import me.schiz.jmeter.ring.tcp.Ring;
+import me.schiz.jmeter.ring.tcp.config.TCPRingSourceElement;
+import me.schiz.jmeter.ring.tcp.sampler.TCPRingSampler;
+import me.schiz.jmeter.ring.udp.config.UDPRingSourceElement;
+import me.schiz.jmeter.ring.udp.sampler.UDPRingSampler;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.logging.LoggingManager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless end-to-end regression run: drives TCPRingSampler and
+ * UDPRingSampler against an in-process StubServer and fails (exit code 1)
+ * when a scenario misses its RPS floor, its generator CPU budget per
+ * request, or its latency overhead budget on top of the stub latency.
+ * Runs offline on one box:
+ *
+ *   mvn -Pregression verify
+ *
+ * -Dregression.duration=ms and -Dregression.threads=n scale the run,
+ * -Dregression.slack=x multiplies every budget for slow CI hosts,
+ * -Dregression.loglevel=INFO brings the engine logging back.
+ */
+public class RegressionSuite {
+	private static final long WARMUP = 2000L;
+	private static final long DURATION = Long.getLong("regression.duration", 5000L);
+	private static final int THREADS = Integer.getInteger("regression.threads", 4);
+	private static final double SLACK = Double.parseDouble(System.getProperty("regression.slack", "1.0"));
+
+	static class Scenario {
+		final String name;
+		final boolean udp;
+		final int latency;
+		final double minRps;
+		final double maxCpuPerRequestUs;
+		final double maxOverheadMs;
+		boolean http;
+		boolean chunked;
+		int pipeline = 1;
+		int closeEvery;
+		boolean dns;
+		String backend = TCPRingSourceElement.DEFAULT_BACKEND;
+
+		Scenario(String name, boolean udp, int latency, double minRps, double maxCpuPerRequestUs, double maxOverheadMs) {
+			this.name = name;
+			this.udp = udp;
+			this.latency = latency;
+			this.minRps = minRps / SLACK;
+			this.maxCpuPerRequestUs = maxCpuPerRequestUs * SLACK;
+			this.maxOverheadMs = maxOverheadMs * SLACK;
+		}
+
+		Scenario http(boolean chunked, int pipeline, int closeEvery) {
+			this.http = true;
+			this.chunked = chunked;
+			this.pipeline = pipeline;
+			this.closeEvery = closeEvery;
+			return this;
+		}
+
+		Scenario dns() {
+			this.dns = true;
+			return this;
+		}
+
+		Scenario epoll() {
+			this.backend = Ring.BACKEND_EPOLL;
+			return this;
+		}
+	}
+
+	static class Result {
+		long samples;
+		long errors;
+		double rps;
+		double cpuPerRequestUs;
+		double meanMs;
+		long p99Ms;
+	}
+
+	private static final List<Scenario> SCENARIOS = Arrays.asList(
+			new Scenario("tcp-echo", false, 0, 2000, 600, 8),
+			new Scenario("tcp-latency-10ms", false, 10, 500, 2000, 8),
+			new Scenario("udp-echo", true, 0, 2000, 600, 8),
+			new Scenario("udp-latency-10ms", true, 10, 500, 2000, 8),
+			new Scenario("http-keepalive", false, 0, 2000, 600, 8).http(false, 1, 0),
+			new Scenario("http-chunked-pipelined", false, 10, 500, 2000, 8).http(true, 4, 0),
+			new Scenario("http-close-every-10", false, 0, 1000, 1200, 8).http(false, 1, 10),
+			new Scenario("dns", true, 0, 2000, 600, 8).dns(),
+			new Scenario("tcp-echo-epoll", false, 0, 2000, 600, 8).epoll(),
+			new Scenario("udp-echo-epoll", true, 0, 2000, 600, 8).epoll(),
+			new Scenario("http-keepalive-epoll", false, 0, 2000, 600, 8).http(false, 1, 0).epoll()
+	);
+
+	public static void main(String[] args) throws Exception {
+		LoggingManager.setPriority(System.getProperty("regression.loglevel", "FATAL_ERROR"));
+		List<String> failures = new ArrayList<String>();
+		System.out.printf("%-24s %9s %7s %10s %12s %8s %6s%n",
+				"scenario", "samples", "errors", "rps", "cpu/req(us)", "mean(ms)", "p99");
+		for(Scenario scenario : SCENARIOS) {
+			if(args.length > 0 && !Arrays.asList(args).contains(scenario.name))	continue;
+			Result r = run(scenario);
+			System.out.printf("%-24s %9d %7d %10.0f %12.1f %8.2f %6d%n",
+					scenario.name, r.samples, r.errors, r.rps, r.cpuPerRequestUs, r.meanMs, r.p99Ms);
+			if(r.rps < scenario.minRps)
+				failures.add(scenario.name + ": " + (long) r.rps + " rps < " + (long) scenario.minRps);
+			if(r.cpuPerRequestUs > scenario.maxCpuPerRequestUs)
+				failures.add(scenario.name + ": " + (long) r.cpuPerRequestUs + " us cpu/request > " + (long) scenario.maxCpuPerRequestUs);
+			if(r.meanMs - scenario.latency > scenario.maxOverheadMs)
+				failures.add(scenario.name + ": latency overhead " + (r.meanMs - scenario.latency) + " ms > " + scenario.maxOverheadMs);
+		}
+		for(String failure : failures)	System.out.println("FAILED " + failure);
+		System.exit(failures.isEmpty() ? 0 : 1);
+	}
+
+	static Result run(Scenario scenario) throws Exception {
+		StubServer stub = new StubServer().setLatency(scenario.latency)
+				.setHttp(scenario.http)
+				.setChunked(scenario.chunked)
+				.setCloseEvery(scenario.closeEvery)
+				.setDns(scenario.dns)
+				.setResponseSize(scenario.http ? 512 : -1)
+				.start();
+		String source = "regression-" + scenario.name;
+		final AbstractSampler sampler;
+		if(scenario.udp) {
+			UDPRingSourceElement element = new UDPRingSourceElement();
+			element.setSource(source);
+			element.setAddresses(stub.getUdpAddress());
+			element.setSockets(String.valueOf(THREADS * 4));
+			element.setThreads("1");
+			if(scenario.dns)	element.setProtocol(UDPRingSourceElement.PROTOCOL_DNS);
+			element.setBackend(scenario.backend);
+			element.testStarted();
+			UDPRingSampler udp = new UDPRingSampler();
+			udp.setSource(source);
+			udp.setRequest(scenario.dns ? "example.com A\nwww.example.org AAAA\nnodata.example.net MX" : "ping");
+			udp.setHex(false);
+			sampler = udp;
+		} else {
+			TCPRingSourceElement element = new TCPRingSourceElement();
+			element.setSource(source);
+			element.setAddresses(stub.getTcpAddress());
+			element.setSockets(String.valueOf(THREADS * 4));
+			element.setThreads("1");
+			if(scenario.http) {
+				element.setProtocol(TCPRingSourceElement.PROTOCOL_HTTP);
+				element.setPipeline(String.valueOf(scenario.pipeline));
+			}
+			element.setBackend(scenario.backend);
+			element.testStarted();
+			TCPRingSampler tcp = new TCPRingSampler();
+			tcp.setSource(source);
+			tcp.setRequest(scenario.http ? "GET / HTTP/1.1\nHost: localhost\n" : "ping");
+			sampler = tcp;
+		}
+		sampler.setName(scenario.name);
+
+		final long measureFrom = System.currentTimeMillis() + WARMUP;
+		final long deadline = measureFrom + DURATION;
+		final AtomicLong samples = new AtomicLong(), errors = new AtomicLong(), totalMs = new AtomicLong();
+		final long[] histogram = new long[10000];
+		Thread[] threads = new Thread[THREADS];
+		for(int i=0;i<THREADS;i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long now;
+					while((now = System.currentTimeMillis()) < deadline) {
+						SampleResult result = sampler.sample(null);
+						if(result == null || now < measureFrom)	continue;
+						samples.incrementAndGet();
+						if(!result.isSuccessful()) {
+							errors.incrementAndGet();
+							continue;
+						}
+						long time = result.getTime();
+						totalMs.addAndGet(time);
+						synchronized (histogram) {
+							histogram[(int) Math.min(time, histogram.length - 1)]++;
+						}
+					}
+				}
+			}, "RegressionSampler#" + i);
+			threads[i].start();
+		}
+
+		Thread.sleep(Math.max(0L, measureFrom - System.currentTimeMillis()));
+		long cpuStart = processCpuTime() - stub.getCpuTimeNanos();
+		for(Thread thread : threads)	thread.join();
+		long cpu = processCpuTime() - stub.getCpuTimeNanos() - cpuStart;
+
+		if(scenario.udp)	new UDPRingSourceElement().testEnded();
+		else	new TCPRingSourceElement().testEnded();
+		stub.stop();
+
+		Result r = new Result();
+		r.samples = samples.get();
+		r.errors = errors.get();
+		r.rps = r.samples * 1000.0 / DURATION;
+		r.cpuPerRequestUs = r.samples == 0 ? Double.MAX_VALUE : cpu / 1000.0 / r.samples;
+		long ok = r.samples - r.errors;
+		r.meanMs = ok == 0 ? Double.MAX_VALUE : (double) totalMs.get() / ok;
+		long seen = 0;
+		for(int i=0;i<histogram.length;i++) {
+			seen += histogram[i];
+			if(seen >= ok * 0.99) {
+				r.p99Ms = i;
+				break;
+			}
+		}
+		return r;
+	}
+
+	private static long processCpuTime() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if(os instanceof com.sun.management.OperatingSystemMXBean)
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		return 0L;
+	}
+}
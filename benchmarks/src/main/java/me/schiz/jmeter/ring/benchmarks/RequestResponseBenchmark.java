@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import me.schiz.jmeter.ring.stub.StubServer;
+import me.schiz.jmeter.ring.tcp.Ring;
+import me.schiz.jmeter.ring.tcp.Token;
+import org.apache.jmeter.samplers.SampleResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One request/response through tcp.Ring against an in-process StubServer
+ * in echo mode, following the same token protocol as TCPRingSampler.
+ * SampleTime mode reports the p50/p99/p99.9 of the round trip.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestResponseBenchmark {
+	@Param({"64"})
+	public int sockets;
+
+	@Param({"2"})
+	public int selectors;
+
+	private StubServer server;
+	private Ring ring;
+
+	@State(Scope.Thread)
+	public static class Client {
+		final ConcurrentLinkedQueue<SampleResult> queue = new ConcurrentLinkedQueue<SampleResult>();
+		final ByteBuffer request = ByteBuffer.allocateDirect(64);
+
+		@Setup
+		public void setup() {
+			request.put("GET / HTTP/1.1\r\n\r\n".getBytes());
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		server = new StubServer().start();
+		ring = new Ring(sockets, selectors)
+				.setRemoteAddresses(server.getTcpAddress())
+				.init();
+		for(int i=0;i<sockets;i++) {
+			while(!ring.get(i).isPrepared)	Thread.sleep(1);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		ring.destroy();
+		server.stop();
+	}
+
+	private SampleResult roundTrip(Client client) throws IOException {
+		int tid = -1;
+		while(tid == -1) {
+			tid = ring.acquire();
+			if(tid != -1 && !ring.get(tid).isPrepared)	tid = -1;
+		}
+		Token t = ring.get(tid);
+		t.isPrepared = false;
+		SampleResult result = new SampleResult();
+		t.sampleResult = result;
+		t.queue = client.queue;
+		result.sampleStart();
+		client.request.flip();
+		ring.write(tid, client.request);
+		client.request.limit(client.request.capacity());
+		SampleResult r;
+		while((r = client.queue.poll()) == null)	Thread.yield();
+		return r;
+	}
+
+	@Benchmark @Threads(1)
+	public SampleResult requestResponse_01(Client client) throws IOException {
+		return roundTrip(client);
+	}
+
+	@Benchmark @Threads(8)
+	public SampleResult requestResponse_08(Client client) throws IOException {
+		return roundTrip(client);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import me.schiz.jmeter.ring.ammo.RingAmmo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RingAmmo.take() with a single reader thread feeding 1 to 256 consumers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RingAmmoBenchmark {
+	@Param({"4096"})
+	public int capacity;
+
+	private File file;
+	private RingAmmo ammo;
+
+	@Setup
+	public void setup() throws IOException {
+		file = File.createTempFile("ringammo", ".ammo");
+		file.deleteOnExit();
+		Writer writer = new FileWriter(file);
+		try {
+			for(int i=0;i<1024;i++) {
+				String bullet = "GET /" + i + " HTTP/1.1\r\n\r\n";
+				writer.write(bullet.length() + " bench\n" + bullet);
+			}
+		} finally {
+			writer.close();
+		}
+		ammo = new RingAmmo("bench", file.getAbsolutePath(), capacity, 4096);
+	}
+
+	@TearDown
+	public void tearDown() {
+		ammo.end();
+		file.delete();
+	}
+
+	@Benchmark @Threads(1)
+	public String take_001() {
+		return ammo.take();
+	}
+
+	@Benchmark @Threads(4)
+	public String take_004() {
+		return ammo.take();
+	}
+
+	@Benchmark @Threads(16)
+	public String take_016() {
+		return ammo.take();
+	}
+
+	@Benchmark @Threads(64)
+	public String take_064() {
+		return ammo.take();
+	}
+
+	@Benchmark @Threads(256)
+	public String take_256() {
+		return ammo.take();
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import me.schiz.ringpool.BinaryRingPool;
+import me.schiz.ringpool.PipelineRingPool;
+import me.schiz.ringpool.RingPool;
+import me.schiz.ringpool.StripedRingPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * acquire()+release() round trip, the pair every request pays twice.
+ * Run with e.g. java -jar benchmarks/target/benchmarks.jar RingPoolBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RingPoolBenchmark {
+	@Param({"striped", "binary", "pipeline"})
+	public String pool;
+
+	@Param({"128", "4096"})
+	public int capacity;
+
+	private RingPool<Object> ring;
+
+	@Setup
+	public void setup() {
+		Object value = new Object();
+		switch (pool) {
+			case "striped":
+				StripedRingPool<Object> striped = new StripedRingPool<Object>(capacity);
+				for(int i=0;i<capacity;i++)	striped.put(value);
+				ring = striped;
+				break;
+			case "binary":
+				BinaryRingPool<Object> binary = new BinaryRingPool<Object>(capacity);
+				for(int i=0;i<capacity;i++)	binary.put(value);
+				ring = binary;
+				break;
+			case "pipeline":
+				PipelineRingPool<Object> pipeline = new PipelineRingPool<Object>(capacity, 2);
+				for(int i=0;i<capacity;i++)	pipeline.put(value);
+				ring = pipeline;
+				break;
+			default:
+				throw new IllegalArgumentException("unknown pool " + pool);
+		}
+	}
+
+	private int roundTrip(Blackhole bh) {
+		int id = ring.acquire();
+		if(id != -1) {
+			bh.consume(ring.get(id));
+			ring.release(id);
+		}
+		return id;
+	}
+
+	@Benchmark @Threads(1)
+	public int acquireRelease_01(Blackhole bh) {
+		return roundTrip(bh);
+	}
+
+	@Benchmark @Threads(2)
+	public int acquireRelease_02(Blackhole bh) {
+		return roundTrip(bh);
+	}
+
+	@Benchmark @Threads(4)
+	public int acquireRelease_04(Blackhole bh) {
+		return roundTrip(bh);
+	}
+
+	@Benchmark @Threads(8)
+	public int acquireRelease_08(Blackhole bh) {
+		return roundTrip(bh);
+	}
+
+	@Benchmark @Threads(16)
+	public int acquireRelease_16(Blackhole bh) {
+		return roundTrip(bh);
+	}
+
+	@Benchmark @Threads(32)
+	public int acquireRelease_32(Blackhole bh) {
+		return roundTrip(bh);
+	}
+
+	@Benchmark @Threads(64)
+	public int acquireRelease_64(Blackhole bh) {
+		return roundTrip(bh);
+	}
+
+	@Benchmark @Threads(1)
+	public Object stats() {
+		if(ring instanceof StripedRingPool)	return ((StripedRingPool<Object>) ring).getStats();
+		if(ring instanceof BinaryRingPool)	return ((BinaryRingPool<Object>) ring).getStats();
+		return ((PipelineRingPool<Object>) ring).getStats();
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import me.schiz.jmeter.ring.tcp.Ring;
+import me.schiz.jmeter.ring.tcp.TimeoutTask;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arming and cancelling the per-request response timeout, as Ring.write()
+ * and readCallback do for every request.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeoutTaskBenchmark {
+	private Ring ring;
+	private HashedWheelTimer timer;
+
+	@Setup
+	public void setup() {
+		ring = new Ring(1, 1);
+		timer = new HashedWheelTimer();
+		timer.start();
+	}
+
+	@TearDown
+	public void tearDown() {
+		timer.stop();
+	}
+
+	@Benchmark @Threads(1)
+	public boolean scheduleCancel_01() {
+		Timeout timeout = timer.newTimeout(new TimeoutTask(ring, 0, "response timeout"), 750, TimeUnit.MILLISECONDS);
+		return timeout.cancel();
+	}
+
+	@Benchmark @Threads(4)
+	public boolean scheduleCancel_04() {
+		Timeout timeout = timer.newTimeout(new TimeoutTask(ring, 0, "response timeout"), 750, TimeUnit.MILLISECONDS);
+		return timeout.cancel();
+	}
+}
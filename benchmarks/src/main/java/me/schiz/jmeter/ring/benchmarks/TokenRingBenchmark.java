@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import me.schiz.jmeter.ring.stub.StubServer;
+import me.schiz.jmeter.ring.tcp.Ring;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tcp.Ring token bookkeeping: acquire()/release() and the
+ * SocketChannel to Token lookup done on every selected key.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenRingBenchmark {
+	@Param({"64", "1024"})
+	public int sockets;
+
+	private StubServer server;
+	private Ring ring;
+	private SocketChannel[] channels;
+
+	@Setup
+	public void setup() throws IOException {
+		server = new StubServer().start();
+		ring = new Ring(sockets, 1)
+				.setRemoteAddresses(server.getTcpAddress())
+				.init();
+		channels = new SocketChannel[sockets];
+		for(int i=0;i<sockets;i++) {
+			channels[i] = ring.get(i).socketChannel;
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		ring.destroy();
+		server.stop();
+	}
+
+	@Benchmark @Threads(1)
+	public int acquireRelease_01() {
+		int id = ring.acquire();
+		if(id != -1)	ring.release(id);
+		return id;
+	}
+
+	@Benchmark @Threads(8)
+	public int acquireRelease_08() {
+		int id = ring.acquire();
+		if(id != -1)	ring.release(id);
+		return id;
+	}
+
+	@Benchmark @Threads(64)
+	public int acquireRelease_64() {
+		int id = ring.acquire();
+		if(id != -1)	ring.release(id);
+		return id;
+	}
+
+	@Benchmark
+	public Object lookupBySocketChannel() {
+		return ring.get(channels[ThreadLocalRandom.current().nextInt(sockets)]);
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.benchmarks;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The allocation-free scenarios of AllocationSuite, held to its budget
+ * in the normal build.
+ */
+public class AllocationTest {
+	private static final long WARMUP = 3000L;
+	private static final long DURATION = 3000L;
+	private static final int THREADS = 2;
+
+	@BeforeClass
+	public static void quiet() {
+		LoggingManager.setPriority("FATAL_ERROR");
+	}
+
+	private static void assertWithinBudget(AllocationSuite.Scenario scenario) throws Exception {
+		AllocationSuite.Result r = AllocationSuite.run(scenario, WARMUP, DURATION, THREADS);
+		assertTrue(scenario.name + ": no samples", r.samples > 0);
+		double total = r.perRequest(r.samplerBytes + r.eventLoopBytes);
+		assertTrue(scenario.name + ": " + total + " B/request > " + AllocationSuite.BUDGET, total <= AllocationSuite.BUDGET);
+	}
+
+	@Test
+	public void tcpIsAllocationFree() throws Exception {
+		assertWithinBudget(AllocationSuite.TCP_ALLOCATION_FREE);
+	}
+
+	@Test
+	public void udpIsAllocationFree() throws Exception {
+		assertWithinBudget(AllocationSuite.UDP_ALLOCATION_FREE);
+	}
+}
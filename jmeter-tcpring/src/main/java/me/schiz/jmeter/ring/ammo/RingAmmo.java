@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.ammo;
+
+import me.schiz.jmeter.ring.util.EventLoops;
+import me.schiz.jmeter.ring.util.RingEvents;
+import me.schiz.ringpool.StripedRingPool;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests read ahead from ammo files into a pool. Each file's reader is a
+ * task on the shared EventLoops readers: it fills the pool a batch at a
+ * time and waits while the pool is full, so cartridges add no threads.
+ */
+public class RingAmmo {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+	private RingAmmoRunnable[] runnables;
+	private String[] files;
+	private StripedRingPool<String>	pool;
+	private AtomicInteger size;
+	private AtomicInteger sleepCounter;
+	private int capacity;
+	private int bufferSize;
+	private EventLoops loops;
+	private String name;
+	private static final int NOTIFY_THRESHOLD = 20; //if size / capacity ~20%, than every take() notify ReadThreads
+
+	public RingAmmo(String name, String files, int capacity, int bufferSize) throws FileNotFoundException {
+		if(files.indexOf(";") != -1) {
+			this.files = files.split(";");
+		} else {
+			this.files = new String[1];
+			this.files[0] = files;
+		}
+		this.runnables = new RingAmmoRunnable[this.files.length];
+		this.capacity = capacity;
+		this.pool = new StripedRingPool<String>(capacity);
+		this.size = new AtomicInteger(0);
+		this.sleepCounter = new AtomicInteger(0);
+		this.bufferSize = bufferSize;
+		this.name = name;
+		for(int i=0;i<this.runnables.length;i++) {
+			this.runnables[i] = new RingAmmoRunnable("AmmoReader-" + name + "#" + i, this.files[i], pool, size, sleepCounter, bufferSize);
+		}
+		this.loops = EventLoops.acquire();
+		start();
+	}
+
+	public void start() {
+		for(int i=0;i<this.runnables.length;i++) {
+			this.runnables[i].wake();
+		}
+	}
+
+	public void end() {
+		for(int i=0;i<this.runnables.length;i++) {
+			this.runnables[i].end();
+		}
+		if(loops != null) {
+			EventLoops.release();
+			loops = null;
+		}
+	}
+
+	/**
+	 * @return percent of the pool the readers have filled
+	 */
+	public int getFill() {
+		return Math.max(0, size.get()) * 100 / capacity;
+	}
+
+	public String take() {
+		String result = null;
+		RingEvents.AmmoStall stall = null;
+		while(true) {
+			int acq = pool.acquire();
+			if(acq != -1) {
+				result = pool.get(acq);
+				pool.destroy(acq);
+				pool.release(acq);
+				if(result != null)	break;
+			}
+			//no free slot, or one the reader has not filled yet: let it run
+			if(stall == null)	stall = RingEvents.beginAmmoStall();
+			Thread.yield();
+		}
+		//the readers didn't keep up
+		RingEvents.endAmmoStall(stall, name, 0, "starved");
+		int sz = size.decrementAndGet();
+		if(sz*100/capacity <= NOTIFY_THRESHOLD && sleepCounter.get() > 0) {
+			for(int i=0;i<runnables.length;i++)	runnables[i].wake();
+		}
+		return result;
+	}
+
+	class RingAmmoRunnable implements Runnable {
+		private String name;
+		private String file;
+		private volatile boolean run;
+		private BufferedReader reader;
+		private StripedRingPool<String> ring;
+		private AtomicInteger size;
+		private AtomicInteger sleepCounter;
+		private int bufferSize;
+		private char[] buffer;
+		private String pending;
+		//neither queued nor running, a stopped reader never sleeps again
+		private final AtomicBoolean sleeping = new AtomicBoolean(true);
+		private boolean started = false;
+		private boolean full = false;
+
+		private long reads = 0, in = 0;
+		private long lastTime = System.currentTimeMillis();
+
+		private final static int SLEEP = 10; // 10ms
+		private final static int BATCH = 1024; //lines per turn, the readers are shared
+
+		public RingAmmoRunnable(String name, String file, StripedRingPool<String> ring,
+								AtomicInteger size, AtomicInteger sleepCounter,
+								int bufferSize) throws FileNotFoundException {
+			this.name = name;
+			this.file = file;
+			reader = new BufferedReader( new FileReader(file));
+			run = true;
+			this.ring = ring;
+			this.size = size;
+			this.sleepCounter = sleepCounter;
+			this.bufferSize = bufferSize;
+			this.buffer = new char[bufferSize];
+		}
+
+		private void reloadInputStream() throws IOException {
+			reader.close();
+			reader =  new BufferedReader(new FileReader(file));
+		}
+
+		public void end() {
+			this.run = false;
+			wake();
+		}
+
+		/**
+		 * Queues the reader on the readers unless it is already queued or
+		 * running.
+		 */
+		public void wake() {
+			if(!sleeping.compareAndSet(true, false))	return;
+			try {
+				loops.readers().execute(this);
+			} catch (RejectedExecutionException e) {
+				//the readers are shutting down
+			}
+		}
+
+		private void sleep() {
+			full = true;
+			sleepCounter.incrementAndGet();
+			sleeping.set(true);
+			try {
+				loops.readers().schedule(new Runnable() {
+					@Override
+					public void run() {
+						wake();
+					}
+				}, SLEEP, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				//the readers are shutting down
+			}
+		}
+
+		//double put
+		private boolean put(String buffer) {
+			for(int i=0;i<2;i++) {
+				if(ring.put(buffer)) {
+					size.incrementAndGet();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public void run() {
+			if(!started)	log.info(name + " started");
+			started = true;
+			if(full) {
+				full = false;
+				sleepCounter.decrementAndGet();
+			}
+			RingEvents.AmmoStall batch = RingEvents.beginAmmoStall();
+			try{
+				int n;
+				for(n = 0; run && n < BATCH; n++) {
+					if(pending == null)	pending = next();
+					if(pending == null)	continue;
+					if(!put(pending)) {
+						RingEvents.endAmmoStall(batch, name, n, "slow read");
+						sleep();
+						return;
+					}
+					reads++;
+					in += pending.length();
+					pending = null;
+				}
+				RingEvents.endAmmoStall(batch, name, n, "slow read");
+				long currrentTime = System.currentTimeMillis();
+				if(currrentTime - lastTime >= 1000L) {
+					long read_thrpt = reads * 1000L / (currrentTime - lastTime);
+					long inbound = in * 1000L / (currrentTime - lastTime) / 1024L;
+					reads = 0;
+					in = 0;
+					lastTime = currrentTime;
+					log.info(name + "\tthrpt:\t" + read_thrpt + " ops\tbndwdth:\t" + inbound + " KBps");
+				}
+				if(run) {
+					//a full batch, give the other scheduled tasks their turn
+					sleeping.set(true);
+					wake();
+					return;
+				}
+				reader.close();
+			} catch (IOException e) {
+				log.error("IOException ", e);
+			}
+			log.info(name + " stopped");
+		}
+
+		/**
+		 * @return the next request of the file, null if the file was reloaded
+		 */
+		private String next() throws IOException {
+			String line = reader.readLine();
+			if(line == null) {
+				reloadInputStream();
+				return null;
+			}
+			int splitter = line.indexOf(" "), length;
+			if(splitter != -1) {
+				length = Integer.parseInt(line.substring(0, splitter));
+			} else {
+				length = Integer.parseInt(line);
+			}
+			if(length > buffer.length)	buffer = new char[length];
+			int read = 0, n;
+			//a pipe hands a request over in pieces
+			while(read < length && (n = reader.read(buffer, read, length - read)) != -1)	read += n;
+			if(read == length)	return new String(buffer, 0, length);
+			reloadInputStream();
+			return null;
+		}
+	}
+
+}
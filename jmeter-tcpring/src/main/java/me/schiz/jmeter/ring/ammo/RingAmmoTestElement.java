@@ -73,6 +73,18 @@ public class RingAmmoTestElement extends ConfigTestElement
 		}
 	}
 
+	/**
+	 * @return percent filled of the emptiest cartridge, -1 if there is none
+	 */
+	public static int getFill() {
+		int fill = -1;
+		for(RingAmmo ammo : rings.values()) {
+			int f = ammo.getFill();
+			if(fill == -1 || f < fill)	fill = f;
+		}
+		return fill;
+	}
+
 	@Override
 	public void testStarted() {
 		createCartridge(ammoname, ammofile, Integer.parseInt(capacity), Integer.parseInt(bufferSize));
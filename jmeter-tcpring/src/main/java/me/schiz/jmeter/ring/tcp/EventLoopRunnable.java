@@ -18,75 +18,83 @@
 
 package me.schiz.jmeter.ring.tcp;
 
+import me.schiz.jmeter.ring.util.SelectorLoop;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.nio.charset.Charset;
-import java.util.Iterator;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
 
-public class EventLoopRunnable implements Runnable {
+/**
+ * A ring's share of a SelectorLoop: its keys, registrations and timeouts
+ * on that loop. run() is the ring's part of each turn of the loop.
+ */
+public class EventLoopRunnable implements Runnable, Consumer<SelectionKey> {
 	private static final Logger log = LoggingManager.getLoggerForClass();
 	private Ring ring;
+	private ResponseHandler handler;
+	private SelectorLoop loop;
 	private Selector selector;
 	private ByteBuffer byteBuffer;
 	private ArrayBlockingQueue<KeyValue>	registerQueue;
 	private ArrayBlockingQueue<KeyValue>    timeoutQueue;
+	private TimeoutWheel timeoutWheel;
 
-	public final static int POLL_TIMEOUT = 10; //10ms
+	public final static int POLL_TIMEOUT = SelectorLoop.POLL_TIMEOUT;
 	public final static int REGS_PER_ITERATION = 1024;
+	public final static int WHEEL_SIZE = 1024;
+	//register() ops marking a connect that completed at once
+	private final static int CONNECTED = -1;
 
-	public EventLoopRunnable(Ring ring, Selector selector) {
+	public EventLoopRunnable(Ring ring, SelectorLoop loop) {
 		this.ring = ring;
-		this.selector = selector;
+		this.handler = ring.getHandler();
+		this.loop = loop;
+		this.selector = loop.selector();
 		byteBuffer = ByteBuffer.allocateDirect(ring.getBufferSize());
 		registerQueue = new ArrayBlockingQueue<KeyValue>(REGS_PER_ITERATION*4);
 		timeoutQueue = new ArrayBlockingQueue<KeyValue>(8192);
+		timeoutWheel = new TimeoutWheel(POLL_TIMEOUT, WHEEL_SIZE);
+		loop.add(this);
+	}
+
+	public void stop() {
+		loop.remove(this);
+	}
+
+	public TimeoutWheel getTimeoutWheel() {
+		return timeoutWheel;
 	}
 
 	@Override
 	public void run() {
-		log.info("EventLoop started in " + Thread.currentThread().getName());
-		int events_count, register_count, timeout_count;
-		while (true) {
-			try {
-				if (!selector.isOpen()) break;
-				timeout_count = timeoutQueue.size();
-				if (timeout_count > 0)	timeoutCallback(timeout_count);
-				try {
-					events_count = selector.select(POLL_TIMEOUT);
-				} catch(ClosedSelectorException e) {
-					log.error("Selector is closed", e);
-					break;
-				}
-				register_count = registerQueue.size();
-				if (register_count > 0)	registerCallback(register_count);
-				if (events_count == 0)	continue;
-
-				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
-				while (it.hasNext()) {
-					SelectionKey key = it.next();
-					SocketChannel socketChannel = (SocketChannel) key.channel();
-					try{
-						if (key.isConnectable()) connectCallback(socketChannel);
-						else if (key.isReadable())	readCallback(socketChannel);
-					} catch (CancelledKeyException e) {
-						log.error("cancelled key exception", e);
-						Token t =  ring.get(socketChannel);
-						if(t != null)	ring.reset(t.id, "cancelled key exception in eventloop");
-					}
-					it.remove();
-				}
-			} catch (IOException e) {
-				log.error("IOException", e);
-				break;
-			}
+		int timeout_count = timeoutQueue.size();
+		if (timeout_count > 0)	timeoutCallback(timeout_count);
+		if (ring.isAllocationFree())	timeoutWheel.expire(handler);
+		int register_count = registerQueue.size();
+		if (register_count > 0)	registerCallback(register_count);
+	}
+
+	@Override
+	public void accept(SelectionKey key) {
+		//the loop outlives the ring, its keys go with it
+		if(ring.isDestroyed()) {
+			key.cancel();
+			return;
+		}
+		SocketChannel socketChannel = (SocketChannel) key.channel();
+		try{
+			if (key.isConnectable()) connectCallback(key, socketChannel);
+			else if (key.isReadable())	readCallback(socketChannel);
+		} catch (CancelledKeyException e) {
+			log.error("cancelled key exception", e);
+			Token t =  ring.get(socketChannel);
+			if(t != null)	ring.reset(t.id, "cancelled key exception in eventloop");
 		}
-		byteBuffer.clear();
-		log.info("EventLoop in " + Thread.currentThread().getName() + " has stopped");
 	}
 
 	public void register(SocketChannel sc, int ops) throws InterruptedException {
@@ -94,64 +102,57 @@ public class EventLoopRunnable implements Runnable {
 		if(registerQueue.size() >= REGS_PER_ITERATION / 2)	selector.wakeup();
 	}
 
+	/**
+	 * Finishes a connect that completed at once, as unix domain ones may:
+	 * no OP_CONNECT follows. Call after register().
+	 */
+	public void connected(SocketChannel sc) throws InterruptedException {
+		register(sc, CONNECTED);
+	}
+
 	public void timeout(Token t, String reason) throws InterruptedException {
 		timeoutQueue.put(new KeyValue(t, reason));
 	}
 
 	private void readCallback(SocketChannel socketChannel) {
 		Token t = ring.get(socketChannel);
+		if(t == null)	return;
 		try{
-//			t.lock.lock();
 			int read_size = socketChannel.read(byteBuffer);
-			//EOF
 			if (read_size == -1) {
-				log.warn("closing token #"  +t.id + " " + socketChannel.getLocalAddress() + " <-> " +
-						socketChannel.getRemoteAddress() + " reason: EOF");
-				ring.reset(t.id, "end of file");
+				ring.getJournal().closed(t.id, t.target.getAddress());
 			}
-			if (t != null) t.timeout.cancel();
 			byteBuffer.flip();
-			if(t.sampleResult != null) {
-				t.sampleResult.sampleEnd();
-				t.sampleResult.setResponseData(
-						Charset.defaultCharset().decode(byteBuffer).toString().getBytes());
-				if(t.queue != null)	while(!t.queue.offer(t.sampleResult))
-				t.sampleResult = null;
-				t.queue = null;
-				t.isPrepared = true;
-			}
-			ring.release(t.id);
+			handler.read(t, byteBuffer, read_size == -1);
 		} catch (IOException e) {
-			t.sampleResult.setResponseCode(e.toString());
-			t.sampleResult.setSuccessful(false);
-			while(!t.queue.offer(t.sampleResult)) {}
+			handler.readFailed(t, e);
 		} finally {
-//			t.lock.unlock();
 			byteBuffer.clear();
 		}
 	}
 
-	private void connectCallback(SocketChannel socketChannel) {
+	private void connectCallback(SelectionKey key, SocketChannel socketChannel) {
 		Token t = ring.get(socketChannel);
 		try{
 			boolean finish = socketChannel.finishConnect();
 			if (finish) {
-				if (t != null) t.timeout.cancel();
-				long end = System.nanoTime();
-				t.isPrepared = true;
-				log.info("connected token #" + t.id + " " + socketChannel.getLocalAddress() + " <-> " +
-						socketChannel.getRemoteAddress() + " time: " + Token.nstoms(end - t.connectStartTS) + "ms");
-				ring.release(t.id);
+				connectDone(key, socketChannel, t);
 			} else {
 				log.error("failed finishConnect on token #" + t.id);
 				ring.reset(t.id, "failed finish connect");
 			}
 		} catch (IOException e) {
-			log.warn("", e);
+			if(log.isDebugEnabled())	log.debug("IOException at finishConnect on token #" + t.id, e);
 			ring.reset(t.id, "IOException at finishConnect");
 		}
 	}
 
+	private void connectDone(SelectionKey key, SocketChannel socketChannel, Token t) throws IOException {
+		//OP_CONNECT stays ready on a connected socket, keeping it makes select() spin
+		key.interestOps(SelectionKey.OP_READ);
+		handler.connected(t);
+	}
+
 	private void registerCallback(int register_count) {
 		for(int i=0;i < Math.min(register_count, REGS_PER_ITERATION); i++) {
 			KeyValue kv = registerQueue.poll();
@@ -160,7 +161,13 @@ public class EventLoopRunnable implements Runnable {
 				SocketChannel sc = (SocketChannel)kv.key;
 				int ops = (Integer)kv.value;
 				try{
-					if(sc.isOpen() && !sc.isRegistered())	sc.register(selector, ops);
+					if(ops == CONNECTED) {
+						SelectionKey key = sc.keyFor(selector);
+						Token t = ring.get(sc);
+						if(key != null && key.isValid() && t != null)	connectDone(key, sc, t);
+						continue;
+					}
+					if(sc.isOpen() && !sc.isRegistered())	sc.register(selector, ops, this);
 				} catch (ClosedSelectorException e) {
 					log.error("Selector is closed", e);
 					break;
@@ -171,6 +178,10 @@ public class EventLoopRunnable implements Runnable {
 					//Token t =  ring.get(sc);
 					log.error("token loss #" + ring.get(sc).id);
 					//if(t != null)	ring.reset(t.id, "closedChannelException at registerCallback");
+				} catch (IOException e) {
+					Token t = ring.get(sc);
+					if(log.isDebugEnabled())	log.debug("IOException after connect", e);
+					if(t != null)	ring.reset(t.id, "IOException after connect");
 				}
 			}
 		}
@@ -181,15 +192,7 @@ public class EventLoopRunnable implements Runnable {
 			KeyValue kv = timeoutQueue.poll();
 			if(kv == null)	break;
 			if(kv.key instanceof Token && kv.value instanceof String) {
-				Token t = (Token)kv.key;
-				String reason = (String)kv.value;
-				if(t.sampleResult != null && t.queue != null){
-					t.sampleResult.setResponseCode("504");
-					t.sampleResult.setSuccessful(false);
-					t.sampleResult.setResponseData(reason.getBytes());
-					while(!t.queue.offer(t.sampleResult)) {}
-				}
-				ring.reset(t.id, reason);
+				handler.timeout((Token)kv.key, (String)kv.value);
 			}
 		}
 	}
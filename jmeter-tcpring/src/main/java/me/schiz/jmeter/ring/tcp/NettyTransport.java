@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+import me.schiz.jmeter.ring.util.EventLoops;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Native epoll backend: the ring's connections live on the shared Netty
+ * epoll event loops instead of NIO selectors. Token #i is always served by
+ * the ring's loop i % threads, as with the NIO event loops.
+ */
+public class NettyTransport {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final AttributeKey<Token> TOKEN = AttributeKey.valueOf("ring.tcp.token");
+
+	private final Ring ring;
+	private final ResponseHandler handler;
+	private final EventLoop[] loops;
+	private final Bootstrap[] bootstraps;
+	private final Bootstrap[] domainBootstraps;
+	private final TimeoutWheel[] wheels;
+	private final ScheduledFuture<?>[] ticks;
+	private volatile boolean closed = false;
+	private final ChannelFutureListener connectListener = new ConnectListener();
+	private final ChannelFutureListener bindListener = new BindListener();
+
+	public static boolean isAvailable() {
+		return Epoll.isAvailable();
+	}
+
+	public static Throwable unavailabilityCause() {
+		return Epoll.unavailabilityCause();
+	}
+
+	/**
+	 * Runs on the shared loops first .. first + threads - 1.
+	 */
+	public NettyTransport(Ring ring, EventLoops shared, int first, int threads) {
+		this.ring = ring;
+		this.handler = ring.getHandler();
+		this.loops = new EventLoop[threads];
+		this.bootstraps = new Bootstrap[threads];
+		this.domainBootstraps = new Bootstrap[threads];
+		this.wheels = new TimeoutWheel[threads];
+		this.ticks = new ScheduledFuture<?>[threads];
+
+		int i;
+		for(i = 0; i < threads; i++)	loops[i] = shared.epollLoop(first + i);
+
+		Inbound inbound = new Inbound();
+		for(i = 0; i < threads; i++) {
+			bootstraps[i] = new Bootstrap()
+					.group(loops[i])
+					.channel(EpollSocketChannel.class)
+					.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+					.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(ring.getBufferSize()))
+					.option(ChannelOption.SO_SNDBUF, ring.getBufferSize())
+					.option(ChannelOption.SO_RCVBUF, ring.getBufferSize())
+					.option(ChannelOption.SO_KEEPALIVE, true)
+					.option(ChannelOption.SO_REUSEADDR, true)
+					.option(ChannelOption.TCP_NODELAY, true)
+					.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+					.handler(inbound);
+			domainBootstraps[i] = new Bootstrap()
+					.group(loops[i])
+					.channel(EpollDomainSocketChannel.class)
+					.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+					.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(ring.getBufferSize()))
+					.option(ChannelOption.SO_SNDBUF, ring.getBufferSize())
+					.option(ChannelOption.SO_RCVBUF, ring.getBufferSize())
+					.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+					.handler(inbound);
+			final TimeoutWheel wheel = new TimeoutWheel(EventLoopRunnable.POLL_TIMEOUT, EventLoopRunnable.WHEEL_SIZE);
+			wheels[i] = wheel;
+			if(ring.isAllocationFree()) {
+				ticks[i] = loops[i].scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						wheel.expire(handler);
+					}
+				}, EventLoopRunnable.POLL_TIMEOUT, EventLoopRunnable.POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	public static SocketAddress unixAddress(String path) {
+		return new DomainSocketAddress(path);
+	}
+
+	/**
+	 * Drops the token's current channel, if any, and starts connecting a new
+	 * one. The token is released to the sampler on connect.
+	 */
+	public void connect(final Token t) {
+		close(t);
+		Bootstrap[] b = t.targetAddress instanceof DomainSocketAddress ? domainBootstraps : bootstraps;
+		ChannelFuture registered = b[t.id % loops.length].register();
+		final Channel channel = registered.channel();
+		channel.attr(TOKEN).set(t);
+		t.channel = channel;
+		final InetSocketAddress source = ring.getSourceAddress(t);
+		registered.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) {
+				if(!future.isSuccess())	log.error("can't register channel of token #" + t.id, future.cause());
+				else if(source == null)	channel.connect(t.targetAddress).addListener(connectListener);
+				else	channel.bind(source).addListener(bindListener);
+			}
+		});
+	}
+
+	public void close(Token t) {
+		Channel channel = t.channel;
+		if(channel == null)	return;
+		channel.attr(TOKEN).set(null);
+		channel.close();
+		t.channel = null;
+	}
+
+	public void write(Token t, ByteBuffer buffer) throws IOException {
+		Channel channel = t.channel;
+		if(channel == null || !channel.isActive())	throw new IOException("channel of token #" + t.id + " is not active");
+		ByteBuf buf = channel.alloc().directBuffer(buffer.remaining());
+		buf.writeBytes(buffer);
+		channel.writeAndFlush(buf, channel.voidPromise());
+	}
+
+	public void execute(Token t, Runnable task) {
+		loops[t.id % loops.length].execute(task);
+	}
+
+	public TimeoutWheel getTimeoutWheel(Token t) {
+		return wheels[t.id % wheels.length];
+	}
+
+	public void shutdown() {
+		closed = true;
+		//the loops are shared, only this ring's work leaves them
+		for(ScheduledFuture<?> tick : ticks) {
+			if(tick != null)	tick.cancel(false);
+		}
+	}
+
+	private Token token(Channel channel) {
+		if(closed)	return null;
+		Token t = channel.attr(TOKEN).get();
+		return t != null && t.channel == channel ? t : null;
+	}
+
+	private class BindListener implements ChannelFutureListener {
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			Token t = token(future.channel());
+			if(t == null)	return;
+			if(future.isSuccess()) {
+				future.channel().connect(t.targetAddress).addListener(connectListener);
+				return;
+			}
+			ring.sourceExhausted(t);
+			if(log.isDebugEnabled())	log.debug("bind failed on token #" + t.id, future.cause());
+			ring.reset(t.id, "bind failed");
+		}
+	}
+
+	private class ConnectListener implements ChannelFutureListener {
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			Token t = token(future.channel());
+			if(t == null)	return;
+			if(!future.isSuccess()) {
+				if(log.isDebugEnabled())	log.debug("connect failed on token #" + t.id, future.cause());
+				ring.reset(t.id, "connect failed");
+				return;
+			}
+			handler.connected(t);
+		}
+	}
+
+	@ChannelHandler.Sharable
+	private class Inbound extends ChannelInboundHandlerAdapter {
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			ByteBuf buf = (ByteBuf) msg;
+			try {
+				Token t = token(ctx.channel());
+				if(t != null)	handler.read(t, buf.nioBuffer(), false);
+			} finally {
+				buf.release();
+			}
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) {
+			Token t = token(ctx.channel());
+			if(t == null)	return;
+			ring.getJournal().closed(t.id, t.target.getAddress());
+			handler.read(t, Unpooled.EMPTY_BUFFER.nioBuffer(), true);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			Token t = token(ctx.channel());
+			if(t == null)	return;
+			handler.readFailed(t, cause instanceof IOException ? (IOException) cause : new IOException(cause));
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp;
+
+import me.schiz.jmeter.ring.tcp.http.HttpExchange;
+import me.schiz.jmeter.ring.tcp.http.HttpResponseParser;
+import me.schiz.jmeter.ring.tcp.tls.TlsSession;
+import me.schiz.jmeter.ring.util.ResponseCheck;
+import me.schiz.jmeter.ring.util.ResultLog;
+import me.schiz.jmeter.ring.util.RingEvents;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Queue;
+
+/**
+ * What happens to a token when its connection is up, has data, fails or
+ * times out. Transport independent: called by the NIO event loops and by
+ * the Netty backend, always on the thread that owns the token's
+ * connection.
+ */
+public class ResponseHandler implements TimeoutWheel.Callback {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	public final static String CONNECTION_CLOSED = "connection closed";
+	public final static String PROTOCOL_ERROR = "protocol error";
+
+	private final Ring ring;
+
+	public ResponseHandler(Ring ring) {
+		this.ring = ring;
+	}
+
+	public void connected(Token t) {
+		TlsSession session = t.tls;
+		if(session == null) {
+			ready(t);
+			return;
+		}
+		//with TLS the connection is ready after the handshake, the connect timeout keeps running
+		try {
+			session.begin();
+			ring.flush(t, session);
+		} catch (IOException e) {
+			if(log.isDebugEnabled())	log.debug("tls handshake failed on token #" + t.id, e);
+			ring.reset(t.id, "tls handshake failed");
+		}
+	}
+
+	private void ready(Token t) {
+		ring.cancelTimeout(t);
+		t.isPrepared = true;
+		if(ring.connected(t))	ring.release(t.id);
+	}
+
+	/**
+	 * @param data what the connection delivered, flipped
+	 * @param eof the peer closed the connection
+	 */
+	public void read(Token t, ByteBuffer data, boolean eof) {
+		TlsSession session = t.tls;
+		if(session != null) {
+			try {
+				boolean handshaking = session.isHandshaking();
+				data = session.unwrap(data);
+				ring.flush(t, session);
+				eof |= session.isClosed();
+				if(handshaking && !session.isHandshaking())	ready(t);
+			} catch (IOException e) {
+				readFailed(t, e);
+				return;
+			}
+			//handshake records and session tickets carry no response
+			if(!data.hasRemaining() && !eof)	return;
+		}
+		if(ring.isHttp())	httpRead(t, data, eof);
+		else	rawRead(t, data, eof);
+	}
+
+	private void rawRead(Token t, ByteBuffer data, boolean eof) {
+		if(!eof && t.script != null && t.script.isActive()) {
+			try {
+				t.script.read(data);
+			} catch (IOException e) {
+				readFailed(t, e);
+			}
+			return;
+		}
+		ring.cancelTimeout(t);
+		if(eof) {
+			ring.logResult(t, ResultLog.NET_CLOSED, 0, false);
+			if(t.sampleResult != null) {
+				t.target.done();
+				t.target.failed();
+				t.sampleResult.sampleEnd();
+				t.sampleResult.setSuccessful(false);
+				t.sampleResult.setResponseCode(CONNECTION_CLOSED);
+				if(t.queue != null)	while(!t.queue.offer(t.sampleResult)) {}
+				t.sampleResult = null;
+				t.queue = null;
+			}
+			ring.reset(t.id, "end of file");
+			return;
+		}
+		if(t.sampleResult != null) {
+			t.sampleResult.sampleEnd();
+			if(t.check != null) {
+				t.check.begin();
+				t.check.update(data, data.remaining());
+				check(t.check, t.sampleResult);
+			}
+			if(ring.isAllocationFree())	t.sampleResult.setBytes(data.remaining());
+			else	t.sampleResult.setResponseData(decode(data));
+			t.target.done();
+			t.target.record(t.sampleResult.getTime(), t.sampleResult.isSuccessful());
+			ring.logResult(t, ResultLog.NET_OK, Math.max(1, t.sampleResult.getBytes()), t.sampleResult.isSuccessful());
+			if(t.queue != null)	while(!t.queue.offer(t.sampleResult)) {}
+			t.sampleResult = null;
+			t.queue = null;
+			t.isPrepared = true;
+		}
+		if(t.isPrepared && ring.isExpired(t))	ring.recycle(t.id);
+		else	ring.release(t.id);
+	}
+
+	private void httpRead(Token t, ByteBuffer data, boolean eof) {
+		HttpExchange ex = t.http;
+		boolean reconnect = false, reset = false, release = false, recycle = false;
+		synchronized (t) {
+			while(data.hasRemaining()) {
+				if(ex.inFlight() == 0) {
+					log.warn("token #" + t.id + " has response without request");
+					reset = true;
+					break;
+				}
+				if(!ex.parser.isStarted()) {
+					ex.parser.begin(ex.isHeadRequest());
+					ex.begin();
+				}
+				if(ex.parser.parse(data)) {
+					reconnect = ex.parser.isClose();
+					release |= complete(t, ex);
+					if(reconnect)	break;
+				} else if(ex.parser.isError()) {
+					reset = true;
+					break;
+				}
+			}
+			if(eof) {
+				//ends a read-until-close response, anything else in flight is lost
+				if(ex.inFlight() > 0 && ex.parser.finish())	release |= complete(t, ex);
+				reconnect = true;
+			}
+			if(reset)	ex.failAll(PROTOCOL_ERROR, PROTOCOL_ERROR, ResultLog.NET_PROTOCOL);
+			else if(reconnect)	ex.failAll(CONNECTION_CLOSED, CONNECTION_CLOSED, ResultLog.NET_CLOSED);
+			else if(ex.inFlight() == 0 && ex.parked && ring.isExpired(t))	recycle = true;
+		}
+		if(reset)	ring.reset(t.id, PROTOCOL_ERROR);
+		else if(reconnect)	ring.reconnect(t.id);
+		else if(recycle)	ring.recycle(t.id);
+		else if(release)	ring.release(t.id);
+	}
+
+	/**
+	 * Hands the oldest request of the exchange back to its sampler thread.
+	 * Caller holds the token's monitor.
+	 * @return true if the token was parked and must be released now
+	 */
+	private boolean complete(Token t, HttpExchange ex) {
+		SampleResult r = ex.result();
+		Queue queue = ex.queue();
+		HttpResponseParser p = ex.parser;
+		ex.pop();
+		if(r == null) {
+			//the late response to a request that already timed out
+			ring.drained();
+		} else {
+			r.sampleEnd();
+			int code = p.getStatusCode();
+			r.setResponseCode(p.getStatusCodeString());
+			r.setSuccessful(code >= 200 && code < 400);
+			r.setBytes((int) (p.getHeaderBytes() + p.getBodyBytes()));
+			if(!ring.isAllocationFree()) {
+				r.setResponseMessage(p.getReasonPhrase());
+				r.setResponseHeaders(p.getHeaders());
+				r.setResponseData(p.getBody());
+			}
+			if(p.getCheck() != null)	check(p.getCheck(), r);
+			t.target.record(r.getTime(), r.isSuccessful());
+			ex.log(r.getBytes(), ResultLog.NET_OK, code, r.isSuccessful());
+			while(!queue.offer(r)) {}
+		}
+
+		ring.cancelTimeout(t);
+		if(ex.inFlight() > 0)	ring.scheduleResponseTimeout(t);
+		if(ex.parked && !ex.isFull() && !ring.isExpired(t)) {
+			ex.parked = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Fails the sample if the response didn't pass the ring's checks.
+	 * A status field, if configured, becomes the response code.
+	 */
+	private static void check(ResponseCheck.Matcher check, SampleResult r) {
+		String failure = check.finish();
+		String status = check.getStatus();
+		if(status != null)	r.setResponseCode(status);
+		if(failure == null)	return;
+		r.setSuccessful(false);
+		r.setResponseMessage(failure);
+	}
+
+	public void readFailed(Token t, IOException e) {
+		if(t.http != null) {
+			synchronized (t) {
+				t.http.failAll(e.getClass().getName(), e.getMessage(), ResultLog.NET_IO);
+			}
+		} else if(t.sampleResult != null && t.queue != null) {
+			ring.logResult(t, ResultLog.NET_IO, 0, false);
+			t.target.done();
+			t.target.failed();
+			t.sampleResult.setResponseCode(e.toString());
+			t.sampleResult.setSuccessful(false);
+			while(!t.queue.offer(t.sampleResult)) {}
+			t.sampleResult = null;
+			t.queue = null;
+		}
+		ring.reset(t.id, "IOException on read");
+	}
+
+	public void timeout(Token t, String reason) {
+		if(Ring.SCRIPT_DELAY.equals(reason)) {
+			try {
+				if(t.script != null)	t.script.resume();
+			} catch (IOException e) {
+				readFailed(t, e);
+			}
+			return;
+		}
+		RingEvents.timeout(t.id, t.target.getAddress(), reason);
+		//http response timeouts may keep the connection, anything else is a broken one, so is a script's;
+		//a raw response has no framing to tell where the late one ends
+		boolean drain = ring.isDrainOnTimeout() && Ring.RESPONSE_TIMEOUT.equals(reason)
+				&& t.http != null && (t.script == null || !t.script.isActive());
+		if(Ring.DRAIN_TIMEOUT.equals(reason))	ring.drainFailed();
+		t.target.failed();
+		if(t.http != null) {
+			synchronized (t) {
+				if(drain && !t.http.parser.isUntilClose()) {
+					t.http.discardAll("504", reason, ResultLog.NET_TIMEOUT);
+					ring.drain(t);
+					return;
+				}
+				t.http.failAll("504", reason, ResultLog.NET_TIMEOUT);
+			}
+		} else if(t.sampleResult != null && t.queue != null){
+			ring.logResult(t, ResultLog.NET_TIMEOUT, 0, false);
+			t.target.done();
+			t.sampleResult.setResponseCode("504");
+			t.sampleResult.setSuccessful(false);
+			if(ring.isAllocationFree())	t.sampleResult.setResponseMessage(reason);
+			else	t.sampleResult.setResponseData(reason.getBytes());
+			while(!t.queue.offer(t.sampleResult)) {}
+		}
+		t.sampleResult = null;
+		t.queue = null;
+		ring.reset(t.id, reason);
+	}
+
+	@Override
+	public void expired(TimeoutWheel.Entry entry) {
+		Token t = ring.get(entry.id);
+		if(ring.isWaiting(t))	timeout(t, entry.getReason());
+	}
+
+	public static byte[] decode(ByteBuffer buffer) {
+		return Charset.defaultCharset().decode(buffer).toString().getBytes();
+	}
+}
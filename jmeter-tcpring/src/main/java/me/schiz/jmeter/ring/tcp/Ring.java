@@ -0,0 +1,1470 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp;
+
+import com.google.common.collect.MapMaker;
+import me.schiz.jmeter.ring.tcp.http.HttpExchange;
+import me.schiz.jmeter.ring.tcp.tls.TlsContext;
+import me.schiz.jmeter.ring.tcp.tls.TlsSession;
+import me.schiz.jmeter.ring.util.Balancer;
+import me.schiz.jmeter.ring.util.CircuitBreaker;
+import me.schiz.jmeter.ring.util.ConnectionJournal;
+import me.schiz.jmeter.ring.util.EventLoops;
+import me.schiz.jmeter.ring.util.GeneratorHealth;
+import me.schiz.jmeter.ring.util.ResponseCheck;
+import me.schiz.jmeter.ring.util.ResultHandoff;
+import me.schiz.jmeter.ring.util.ResultLog;
+import me.schiz.jmeter.ring.util.RingEvents;
+import me.schiz.jmeter.ring.util.SourceAddressPool;
+import me.schiz.jmeter.ring.util.Target;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
+import me.schiz.jmeter.ring.util.UnixDomain;
+import me.schiz.ringpool.StripedRingPool;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.PatternSyntaxException;
+
+public class Ring {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private int socketsCount;
+	private int selectorsCount;
+
+	private StripedRingPool<Token>	ring;
+	private EventLoops loops;
+	private EventLoopRunnable[] eventLoopRunnables;
+	private String[] addrs;
+	private SourceAddressPool sources;
+	private TlsContext tls;
+	private ResponseCheck check;
+	private Script script;
+	private ConcurrentMap<SocketChannel, Token> weakSocketToTokenMap;
+
+	private int connectTimeout = 750;
+	private int socketTimeout = 750;
+
+	private int bufferSize = 4096;
+	private boolean allocationFree = false;
+	private int resultQueue = 4096;
+	private String overflow = ResultHandoff.FOLD;
+	private String resultLogPath;
+	private ResultLog resultLog;
+	private final ConnectionJournal journal = new ConnectionJournal();
+	private String journalPath;
+	private final GeneratorHealth health = new GeneratorHealth();
+	private String healthLabel;
+	private final AtomicReference<SampleResult> healthSample = new AtomicReference<SampleResult>();
+	private boolean http = false;
+	private int pipeline = 1;
+	private AtomicLong resets = new AtomicLong(0);
+	private String backend = BACKEND_NIO;
+	private NettyTransport netty;
+	private final ResponseHandler handler = new ResponseHandler(this);
+	private int connectRate = 0;
+	private int maxConnecting = 0;
+	private AtomicInteger connecting = new AtomicInteger(0);
+	private AtomicInteger ready = new AtomicInteger(0);
+	private volatile long warmUpStartTS;
+	private volatile long warmUpEndTS;
+	private ScheduledFuture<?> warmUp;
+	private ScheduledFuture<?> autoscale;
+	private RingInfoRunnable info;
+	private volatile boolean destroyed = false;
+	private int backoff = 10;
+	private int maxBackoff = 5000;
+	private int breakerThreshold = 32;
+	private int breakerOpen = 2000;
+	private String balancing = Balancer.ROUND_ROBIN;
+	private Balancer<Token> balancer;
+	private boolean drainOnTimeout = false;
+	private boolean churn = false;
+	private int maxRequests = 0;
+	private long maxAge = 0;
+	private AtomicLong recycled = new AtomicLong(0);
+	private AtomicLong drained = new AtomicLong(0);
+	private AtomicLong drainFailures = new AtomicLong(0);
+	private int minSockets = 0;
+	private int warmUpCount;
+	private AtomicInteger active = new AtomicInteger(0);
+	private AtomicInteger growing = new AtomicInteger(0);
+	private LongAdder acquires = new LongAdder();
+	private LongAdder acquireMisses = new LongAdder();
+	private int spares = 0;
+	private AtomicLong swaps = new AtomicLong(0);
+
+	public final static String CONNECT_TIMEOUT = "connect timeout";
+	public final static String SCRIPT_DELAY = "script delay";
+	public final static String RESPONSE_TIMEOUT = "response timeout";
+	public final static String DRAIN_TIMEOUT = "drain timeout";
+	public final static String CIRCUIT_OPEN = "circuit open";
+	public final static String NO_FREE_TOKEN = "no free token";
+	public final static String REUSE_RESET = "reset";
+	public final static String REUSE_DRAIN = "drain";
+	public final static String REUSE_CHURN = "churn";
+	public final static String BACKEND_NIO = "nio";
+	public final static String BACKEND_EPOLL = "epoll";
+
+	private ScheduledExecutorService schedEx;
+	private final static int WARMUP_TICK = 10; //10ms
+	private final static int AUTOSCALE_TICK = 100; //100ms
+	private final static int AUTOSCALE_IDLE_TICKS = 10;
+
+	/**
+	 * @param selectorsCount event loops the ring spreads its connections
+	 * over, at most the EventLoops.LOOPS shared ones
+	 */
+	public Ring(int socketsCount, int selectorsCount) {
+		this.socketsCount = socketsCount;
+		this.selectorsCount = Math.max(1, Math.min(selectorsCount, EventLoops.LOOPS));
+
+		ring = new StripedRingPool<>(this.socketsCount);
+		for(int i = 0; i<socketsCount; ++i) {
+			Token t = new Token();
+			if(!ring.put(t)) {
+				log.error("can't put token into ring");
+			}
+		}
+		this.addrs = null;
+
+		this.eventLoopRunnables = new EventLoopRunnable[this.selectorsCount];
+	}
+
+	public Ring setConnectiontimeout(int connectiontimeout) {
+		this.connectTimeout = connectiontimeout;
+		return this;
+	}
+
+	public Ring setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+		return this;
+	}
+
+	public Ring setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Steady-state sampling allocates nothing: timeouts go to a wheel ticked
+	 * by the event loops, results are pooled per thread and response bodies
+	 * are counted instead of copied. Must be set before init().
+	 * The JDK selector of the nio backend boxes every ready descriptor, so
+	 * it allocates an Integer per event once descriptors pass 127 unless
+	 * -XX:AutoBoxCacheMax covers them.
+	 */
+	public Ring setAllocationFree(boolean allocationFree) {
+		this.allocationFree = allocationFree;
+		return this;
+	}
+
+	public boolean isAllocationFree() {
+		return allocationFree;
+	}
+
+	/**
+	 * Parse responses as HTTP/1.x: a sample completes on the end of the
+	 * message, not on the first read. Must be set before init().
+	 */
+	public Ring setHttp(boolean http) {
+		this.http = http;
+		return this;
+	}
+
+	public boolean isHttp() {
+		return http;
+	}
+
+	/**
+	 * Requests in flight per connection in HTTP mode, 1 disables pipelining.
+	 */
+	public Ring setPipeline(int pipeline) {
+		this.pipeline = Math.max(1, pipeline);
+		return this;
+	}
+
+	public int getPipeline() {
+		return pipeline;
+	}
+
+	/**
+	 * "nio" or "epoll". The native epoll transport falls back to nio where it
+	 * is not available. Must be set before init().
+	 */
+	public Ring setBackend(String backend) {
+		this.backend = backend;
+		return this;
+	}
+
+	public String getBackend() {
+		return netty != null ? BACKEND_EPOLL : BACKEND_NIO;
+	}
+
+	/**
+	 * New connections opened per second during warm-up, 0 is unlimited.
+	 */
+	public Ring setConnectRate(int connectRate) {
+		this.connectRate = Math.max(0, connectRate);
+		return this;
+	}
+
+	/**
+	 * Connects in flight at once during warm-up, 0 is unlimited.
+	 */
+	public Ring setMaxConnecting(int maxConnecting) {
+		this.maxConnecting = Math.max(0, maxConnecting);
+		return this;
+	}
+
+	/**
+	 * Delay before a token retries a failed connect, doubled on each
+	 * consecutive failure up to maxBackoff and jittered. 0 retries at once.
+	 */
+	public Ring setReconnectBackoff(int backoff, int maxBackoff) {
+		this.backoff = Math.max(0, backoff);
+		this.maxBackoff = Math.max(this.backoff, maxBackoff);
+		return this;
+	}
+
+	/**
+	 * @param threshold consecutive connect failures to a target that open
+	 *                  its circuit, 0 disables the breaker
+	 * @param openMillis how long an open circuit waits before probing
+	 */
+	public Ring setCircuitBreaker(int threshold, int openMillis) {
+		this.breakerThreshold = Math.max(0, threshold);
+		this.breakerOpen = Math.max(1, openMillis);
+		return this;
+	}
+
+	/**
+	 * What happens to a connection after a response timeout: "reset" closes
+	 * it, "drain" keeps an HTTP connection and drops the late response when
+	 * it arrives (raw connections are still reset), "churn" opens a new
+	 * connection for every request.
+	 */
+	public Ring setReuse(String policy) {
+		drainOnTimeout = REUSE_DRAIN.equalsIgnoreCase(policy);
+		churn = REUSE_CHURN.equalsIgnoreCase(policy);
+		return this;
+	}
+
+	/**
+	 * Replaces connections after maxRequests requests or maxAgeMillis of
+	 * use, 0 is unlimited. Connections are only replaced between requests.
+	 */
+	public Ring setRecycle(int maxRequests, int maxAgeMillis) {
+		this.maxRequests = Math.max(0, maxRequests);
+		this.maxAge = Math.max(0, maxAgeMillis) * 1000000L;
+		return this;
+	}
+
+	public boolean isDrainOnTimeout() {
+		return drainOnTimeout;
+	}
+
+	/**
+	 * @return connections closed by the reuse policy
+	 */
+	public long getRecycled() {
+		return recycled.get();
+	}
+
+	/**
+	 * @return late responses read and dropped instead of resetting
+	 */
+	public long getDrained() {
+		return drained.get();
+	}
+
+	/**
+	 * @return drains given up on because the late response never came
+	 */
+	public long getDrainFailures() {
+		return drainFailures.get();
+	}
+
+	/**
+	 * @return false if the circuit of every target is open, samplers then
+	 *         fail fast instead of waiting for a token
+	 */
+	public boolean isAvailable() {
+		return balancer == null || balancer.isAvailable();
+	}
+
+	/**
+	 * How requests are spread over the target addresses: "rr", "weighted"
+	 * (by the optional third field of host:port:weight), "least" outstanding
+	 * requests or "p2c", the better of two random targets by latency EWMA
+	 * and outstanding requests. Must be set before init().
+	 */
+	public Ring setBalancing(String balancing) {
+		this.balancing = balancing;
+		return this;
+	}
+
+	public Target<Token>[] getTargets() {
+		return balancer != null ? balancer.getTargets() : Target.<Token>newArray(0);
+	}
+
+	/**
+	 * @return tokens that have been connected at least once
+	 */
+	public int getReady() {
+		return ready.get();
+	}
+
+	ResponseHandler getHandler() {
+		return handler;
+	}
+
+	/**
+	 * Elastic mode: only minSockets connections are opened at start, the
+	 * rest of the sockets count is grown on demand when samplers fail to
+	 * acquire a token and shrunk back when tokens sit idle. 0 keeps the pool
+	 * fixed. Must be set before init().
+	 */
+	public Ring setAutoscale(int minSockets) {
+		this.minSockets = minSockets;
+		return this;
+	}
+
+	public boolean isElastic() {
+		return minSockets > 0 && minSockets + spares < socketsCount;
+	}
+
+	/**
+	 * @return tokens in rotation, the rest are parked by the autoscaler
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * Keeps this many of the sockets connected but out of rotation, the
+	 * source element adds them on top of its sockets count. A token that is
+	 * reset or recycled hands its place to a spare of the same target right
+	 * away and becomes the spare once it has reconnected. Must be set before
+	 * init().
+	 */
+	public Ring setSpares(int spares) {
+		this.spares = spares;
+		return this;
+	}
+
+	/**
+	 * @return acquire() calls, whether or not they got a token
+	 */
+	public long getAcquires() {
+		return acquires.sum();
+	}
+
+	/**
+	 * @return acquires that found no free token
+	 */
+	public long getAcquireMisses() {
+		return acquireMisses.sum();
+	}
+
+	/**
+	 * @return the event loops' lag over the last second, in ms
+	 */
+	public long getLoopLag() {
+		EventLoops l = loops;
+		return l != null ? l.getLoopLag() : 0;
+	}
+
+	public GeneratorHealth getHealth() {
+		return health;
+	}
+
+	/**
+	 * The ring's health is handed to the listeners as a sample with this
+	 * label once a second, empty for none.
+	 */
+	public Ring setHealthLabel(String label) {
+		healthLabel = label == null || label.trim().isEmpty() ? null : label.trim();
+		return this;
+	}
+
+	/**
+	 * @return null if health samples are off
+	 */
+	public String getHealthLabel() {
+		return healthLabel;
+	}
+
+	/**
+	 * Replaces the health sample no sampling thread has taken yet.
+	 */
+	public void publishHealth(SampleResult sample) {
+		healthSample.set(sample);
+	}
+
+	/**
+	 * @return the latest health sample for the calling thread to report,
+	 * null if there is none or another thread took it
+	 */
+	public SampleResult pollHealth() {
+		if(healthSample.get() == null)	return null;
+		return healthSample.getAndSet(null);
+	}
+
+	/**
+	 * @return how many resets and recycles were covered by a spare
+	 */
+	public long getSwaps() {
+		return swaps.get();
+	}
+
+	public long getResets() {
+		return resets.get();
+	}
+
+	/**
+	 * @param addresses space separated host:port[:weight] or
+	 *                  unix:/path/to.sock[:weight] targets
+	 */
+	public Ring setRemoteAddresses(String addresses) {
+		if(addresses == null) {
+			log.error("empty address");
+		}
+		else if(addresses.isEmpty()) {
+			log.error("empty address");
+		}
+		else {
+			try{
+				this.addrs = addresses.split(" ");
+			} catch (PatternSyntaxException pse) {
+				log.error("failed split \"" + addresses + "\" by space", pse);
+				this.addrs = null;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Local addresses to bind the sockets to, see SourceAddressPool for the
+	 * format. Empty lets the OS pick one address for all of them.
+	 */
+	public Ring setSourceAddresses(String addresses) {
+		if(addresses == null || addresses.trim().isEmpty()) {
+			sources = null;
+			return this;
+		}
+		try {
+			sources = new SourceAddressPool(addresses);
+			log.info(sources.size() + " source addresses");
+		} catch (IOException | IllegalArgumentException e) {
+			log.error("bad source addresses \"" + addresses + "\"", e);
+			sources = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Speaks TLS on every connection. A token is ready once its handshake
+	 * is done, sessions are resumed across reconnects. Must be set before
+	 * init().
+	 * @param verify check the server certificate, off accepts self-signed ones
+	 * @param protocols e.g. "TLSv1.3,TLSv1.2", empty for the JDK defaults
+	 */
+	public Ring setTls(boolean enabled, boolean verify, String protocols) {
+		if(!enabled) {
+			tls = null;
+			return this;
+		}
+		try {
+			tls = new TlsContext(verify, protocols);
+		} catch (GeneralSecurityException | IllegalArgumentException e) {
+			log.error("can't set up tls", e);
+			tls = null;
+		}
+		return this;
+	}
+
+	/**
+	 * @return handshake counters, null without TLS
+	 */
+	public TlsContext getTls() {
+		return tls;
+	}
+
+	/**
+	 * Response assertions the event loops evaluate, see ResponseCheck.
+	 * Empty strings turn a check off. Must be set before init().
+	 */
+	public Ring setResponseCheck(String prefix, String contains, String absent, String length, String status) {
+		try {
+			check = ResponseCheck.parse(prefix, contains, absent, length, status);
+		} catch (IllegalArgumentException e) {
+			log.error("bad response check, responses are not checked", e);
+			check = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Samples run this conversation instead of a single request, see
+	 * Script. Raw protocol only. Must be set before init().
+	 */
+	public Ring setScript(String spec) {
+		try {
+			script = Script.parse(spec);
+		} catch (IllegalArgumentException e) {
+			log.error("bad script, samples send their request only", e);
+			script = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Bounds the queue that hands a sampling thread its results, see
+	 * ResultHandoff for the overflow policies.
+	 */
+	public Ring setResultQueue(int capacity, String overflow) {
+		resultQueue = Math.max(2, capacity);
+		if(ResultHandoff.isPolicy(overflow)) {
+			this.overflow = overflow;
+		} else {
+			log.error("unknown queue overflow policy `" + overflow + "`, folding");
+			this.overflow = ResultHandoff.FOLD;
+		}
+		return this;
+	}
+
+	/**
+	 * @return a result queue for the calling thread
+	 */
+	public ResultHandoff newResultQueue() {
+		return new ResultHandoff(resultQueue, overflow);
+	}
+
+	/**
+	 * Event loops write every request's result to a binary ResultLog at
+	 * path, empty for none. Must be set before init().
+	 */
+	public Ring setResultLog(String path) {
+		resultLogPath = path == null || path.trim().isEmpty() ? null : path.trim();
+		return this;
+	}
+
+	/**
+	 * The connection journal is dumped to path when the ring is destroyed,
+	 * empty for never.
+	 */
+	public Ring setJournal(String path) {
+		journalPath = path == null || path.trim().isEmpty() ? null : path.trim();
+		return this;
+	}
+
+	public ConnectionJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * @return null without a result log
+	 */
+	public ResultLog getResultLog() {
+		return resultLog;
+	}
+
+	/**
+	 * @return null without response checks
+	 */
+	public ResponseCheck getResponseCheck() {
+		return check;
+	}
+
+	InetSocketAddress getSourceAddress(Token t) {
+		return t.source == -1 ? null : sources.get(t.source);
+	}
+
+	/**
+	 * The token's source address could not bind another port.
+	 */
+	void sourceExhausted(Token t) {
+		if(t.source != -1)	sources.exhausted(t.source);
+	}
+
+	private void openChannel(Token t) throws IOException {
+		boolean tcp = t.targetAddress instanceof InetSocketAddress;
+		t.socketChannel = tcp ? SocketChannel.open() : UnixDomain.open();
+		setSocketOptions(t.socketChannel, tcp);
+	}
+
+	private void setSocketOptions(SocketChannel socketChannel, boolean tcp) throws IOException {
+		socketChannel.configureBlocking(false);
+		socketChannel.setOption(StandardSocketOptions.SO_SNDBUF, getBufferSize());
+		socketChannel.setOption(StandardSocketOptions.SO_RCVBUF, getBufferSize());
+		if(!tcp)	return;
+		socketChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+		socketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+	}
+
+	public Ring init() {
+		loops = EventLoops.acquire();
+		schedEx = loops.scheduler();
+		int first = loops.next(selectorsCount);
+		if(BACKEND_EPOLL.equalsIgnoreCase(backend)) {
+			if(NettyTransport.isAvailable())	netty = new NettyTransport(this, loops, first, selectorsCount);
+			else	log.warn("epoll backend is not available, falling back to nio", NettyTransport.unavailabilityCause());
+		}
+
+		for(int i = 0; i<selectorsCount && netty == null;++i) {
+			try {
+				eventLoopRunnables[i] = new EventLoopRunnable(this, loops.selectorLoop(first + i));
+			} catch (IOException e) {
+				log.error("can't open selector ", e);
+				return this;
+			}
+		}
+
+		weakSocketToTokenMap = new MapMaker()
+				.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+				.initialCapacity(socketsCount)
+				.softKeys()
+				.makeMap();
+
+		warmUpCount = isElastic() ? minSockets + spares : socketsCount;
+		spares = Math.max(0, Math.min(spares, warmUpCount - 1));
+		active.set(warmUpCount - spares);
+		Map<String, Target<Token>> targets = new LinkedHashMap<>();
+		Map<String, Integer> sizes = new LinkedHashMap<>();
+		for(int i=0;i<socketsCount;i++)	sizes.merge(addrs[i%addrs.length], 1, Integer::sum);
+		for(String address : addrs) {
+			if(UnixDomain.isUnix(address) && netty == null && !UnixDomain.isAvailable()) {
+				log.error("can't connect to " + address + ": unix domain sockets need Java 16+ or the epoll backend");
+				return this;
+			}
+		}
+		for(int i=0;i<socketsCount;i++) {
+			String[] addr;
+			String host = "localhost", name;
+			int port = 0, weight = 1;
+			boolean unix = UnixDomain.isUnix(addrs[i%addrs.length]);
+			try{
+				if(unix) {
+					//unix:/path/to.sock[:weight]
+					name = addrs[i%addrs.length];
+					int colon = name.lastIndexOf(':');
+					if(colon > UnixDomain.PREFIX.length() && name.substring(colon + 1).matches("\\d+")) {
+						weight = Integer.parseInt(name.substring(colon + 1));
+						name = name.substring(0, colon);
+					}
+				} else {
+					addr = addrs[i%addrs.length].split(":");
+					host = addr[0];
+					port = Integer.parseInt(addr[1]);
+					weight = addr.length > 2 ? Integer.parseInt(addr[2]) : 1;
+					name = host + ":" + port;
+				}
+			} catch (PatternSyntaxException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				log.error("bad address \"" + addrs[i%addrs.length] + "\"", e);
+				return this;
+			}
+			try {
+				Token t = ring.get(i);
+				t.id = i;
+				t.connectTime = 0;
+				t.failures = 0;
+				t.target = targets.get(addrs[i%addrs.length]);
+				if(t.target == null) {
+					t.target = new Target<Token>(name, weight, sizes.get(addrs[i%addrs.length]));
+					t.target.setIndex(targets.size());
+					t.target.setBreaker(new CircuitBreaker(name, breakerThreshold, breakerOpen));
+					targets.put(addrs[i%addrs.length], t.target);
+				}
+				t.slot = t.target.add(t, i);
+				t.breaker = t.target.getBreaker();
+				//tokens past the warm-up count wait parked, held busy, until the autoscaler needs them
+				t.parked = i >= warmUpCount;
+				//the last warm-up tokens are the spares, interleaved over the targets like the rest
+				t.spare = !t.parked && i >= warmUpCount - spares;
+				if(t.parked || t.spare)	t.target.hold(t.slot);
+				t.timeoutEntry = new TimeoutWheel.Entry(i);
+				if(http)	t.http = new HttpExchange(pipeline, !allocationFree, t.target, i);
+				if(script != null && !http)	t.script = script.newRun(this, t);
+				if(check != null) {
+					t.check = check.newMatcher();
+					if(http)	t.http.parser.setCheck(t.check);
+				}
+				if(!unix)	t.targetAddress = new InetSocketAddress(host, port);
+				else if(netty != null)	t.targetAddress = NettyTransport.unixAddress(UnixDomain.path(name));
+				else	t.targetAddress = UnixDomain.address(UnixDomain.path(name));
+				if(netty != null || t.parked)	t.socketChannel.close();
+				else if(unix) {
+					t.socketChannel.close();
+					openChannel(t);
+				} else	setSocketOptions(t.socketChannel, true);
+			} catch (IOException e) {
+				log.error("IOException ", e);
+			}
+		}
+
+		balancer = new Balancer<Token>(targets.values().toArray(Target.<Token>newArray(targets.size())), balancing);
+		if(resultLogPath != null)	openResultLog();
+
+		//tokens are interleaved over the event loops, connecting them in order spreads the load
+		warmUpStartTS = System.nanoTime();
+		warmUp = schedEx.scheduleAtFixedRate(new WarmUpRunnable(), 0, WARMUP_TICK, TimeUnit.MILLISECONDS);
+		info = new RingInfoRunnable(this);
+		loops.addReporter(info);
+		if(isElastic())	autoscale = schedEx.scheduleWithFixedDelay(new AutoscaleRunnable(), AUTOSCALE_TICK, AUTOSCALE_TICK, TimeUnit.MILLISECONDS);
+
+		return this;
+	}
+
+	/**
+	 * Replaces a broken connection. A token that failed to connect retries
+	 * after its backoff, and not at all while its target's circuit is open.
+	 */
+	public Ring reset(int token_id, String reason) {
+		resets.incrementAndGet();
+		Token t = ring.get(token_id);
+		boolean connectFailure = connectEnded(t);
+		if(connectFailure) {
+			t.failures++;
+			t.breaker.failure();
+		}
+		if(t.growing) {
+			t.growing = false;
+			growing.decrementAndGet();
+		}
+		//a down target resets every retry of every token, the journal sums them up
+		journal.reset(token_id, t.target.getAddress(), reason);
+		RingEvents.reset(token_id, t.target.getAddress(), reason);
+		long delay = connectFailure ? backoffDelay(t.failures) : 0;
+		if(delay == 0 && t.breaker.tryAcquire())	return reconnect(token_id);
+		disconnect(t);
+		swapInSpare(t);
+		scheduleReconnect(t, Math.max(delay, t.breaker.retryDelay()));
+		return this;
+	}
+
+	private long backoffDelay(int failures) {
+		if(backoff == 0)	return 0;
+		long delay = Math.min(maxBackoff, (long) backoff << Math.min(failures - 1, 20));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	void schedule(Runnable task, long delay) {
+		try {
+			schedEx.schedule(task, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			//the ring is being destroyed
+		}
+	}
+
+	private void scheduleReconnect(final Token t, long delay) {
+		try {
+			t.retry = schedEx.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if(destroyed)	return;
+					if(t.breaker.tryAcquire())	reconnect(t.id);
+					else	scheduleReconnect(t, t.breaker.retryDelay() + ThreadLocalRandom.current().nextLong(WARMUP_TICK));
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			//the ring is being destroyed
+			return;
+		}
+		//a closing circuit brings the retry forward, once per token
+		if(t.breaker.isClosed() || t.awaiting)	return;
+		t.awaiting = true;
+		t.breaker.await(new Runnable() {
+			@Override
+			public void run() {
+				t.awaiting = false;
+				ScheduledFuture<?> retry = t.retry;
+				if(retry != null && retry.cancel(false))	scheduleReconnect(t, ThreadLocalRandom.current().nextLong(WARMUP_TICK));
+			}
+		});
+	}
+
+	/**
+	 * Closes the token's connection and fails what is in flight on it. The
+	 * token stays out of the ring until it is reconnected.
+	 */
+	private void disconnect(Token t) {
+		cancelTimeout(t);
+		connectEnded(t);
+		if(t.script != null)	t.script.abort();
+		//a raw request that failed to write was never counted as sent
+		t.sampleResult = null;
+		t.queue = null;
+		t.sentTS = 0;
+		if(t.http != null) {
+			synchronized (t) {
+				t.isPrepared = false;
+				t.http.failAll(ResponseHandler.CONNECTION_CLOSED, ResponseHandler.CONNECTION_CLOSED, ResultLog.NET_CLOSED);
+			}
+		}
+		t.isPrepared = false;
+		if(t.source != -1) {
+			sources.release(t.source);
+			t.source = -1;
+		}
+		if(t.tls != null) {
+			t.tls.release();
+			t.tls = null;
+		}
+		if(netty != null) {
+			netty.close(t);
+			return;
+		}
+		try {
+			t.socketChannel.close();
+		} catch (IOException e) {
+			log.error("IOException ", e);
+		}
+	}
+
+	/**
+	 * Replaces a healthy connection the reuse policy is done with.
+	 */
+	public Ring recycle(int token_id) {
+		recycled.incrementAndGet();
+		return reconnect(token_id);
+	}
+
+	/**
+	 * @return true if the reuse policy wants the token's connection replaced
+	 *         once nothing is in flight on it
+	 */
+	public boolean isExpired(Token t) {
+		if(churn || (maxRequests > 0 && t.requests >= maxRequests))	return true;
+		return maxAge > 0 && System.nanoTime() - t.connectedTS >= maxAge;
+	}
+
+	void drain(Token t) {
+		scheduleTimeout(t, socketTimeout, DRAIN_TIMEOUT);
+	}
+
+	void drained() {
+		drained.incrementAndGet();
+	}
+
+	void drainFailed() {
+		drainFailures.incrementAndGet();
+	}
+
+	/**
+	 * Replaces the token's connection with a new one. Unlike reset() this is
+	 * the expected end of a connection, e.g. after "Connection: close".
+	 */
+	public Ring reconnect(int token_id) {
+		Token t = ring.get(token_id);
+		disconnect(t);
+		if(t.parked)	return this;
+		swapInSpare(t);
+		try {
+			if(netty == null)	openChannel(t);
+			connect(t);
+			//a spare stays out of rotation, the others are dropped by samplers until connected
+			if(!t.spare)	release(t.id);
+		} catch (InterruptedException e) {
+			log.error("InterruptedException when register SocketChannel", e);
+			Thread.currentThread().interrupt();
+			connectFailed(t, "interrupted at connect");
+		} catch (IOException e) {
+			log.error("IOException ", e);
+			connectFailed(t, "IOException at connect");
+		}
+		return this;
+	}
+
+	/**
+	 * A connect that failed before it went out counts like one that failed
+	 * on the wire, it may have been the circuit's half-open probe, and the
+	 * token tries again after its backoff.
+	 */
+	private void connectFailed(Token t, String reason) {
+		t.failures++;
+		t.breaker.failure();
+		journal.reset(t.id, t.target.getAddress(), reason);
+		disconnect(t);
+		long delay = Math.max(backoffDelay(t.failures), t.breaker.retryDelay());
+		scheduleReconnect(t, Math.max(delay, 1 + ThreadLocalRandom.current().nextLong(WARMUP_TICK)));
+	}
+
+	private void connect(Token t) throws IOException, InterruptedException {
+		t.connectStartTS = System.nanoTime();
+		if(!t.connecting) {
+			t.connecting = true;
+			connecting.incrementAndGet();
+		}
+		try {
+			startConnect(t);
+		} catch (IOException | InterruptedException e) {
+			connectEnded(t);
+			throw e;
+		}
+	}
+
+	private void startConnect(Token t) throws IOException, InterruptedException {
+		if(tls != null)	t.tls = tls.newSession(t.targetAddress);
+		scheduleTimeout(t, connectTimeout, CONNECT_TIMEOUT);
+		boolean tcp = t.targetAddress instanceof InetSocketAddress;
+		if(netty != null) {
+			if(sources != null && tcp && (t.source = sources.acquire()) == -1)
+				throw new BindException("all " + sources.size() + " source addresses are out of ports");
+			netty.connect(t);
+			return;
+		}
+		if(sources != null && tcp)	t.source = sources.bind(t.socketChannel);
+		weakSocketToTokenMap.putIfAbsent(t.socketChannel, t);
+		EventLoopRunnable loop = eventLoopRunnables[t.id%selectorsCount];
+		loop.register(t.socketChannel, SelectionKey.OP_CONNECT | SelectionKey.OP_READ);
+		if(t.socketChannel.connect(t.targetAddress))	loop.connected(t.socketChannel);
+	}
+
+	/**
+	 * Ends the token's connect attempt, if it has one, whatever its outcome.
+	 * @return true if the token was connecting
+	 */
+	private boolean connectEnded(Token t) {
+		if(!t.connecting)	return false;
+		t.connecting = false;
+		connecting.decrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Puts a connected spare of the token's target into rotation in place
+	 * of the disconnected token, which becomes a spare itself.
+	 */
+	private void swapInSpare(Token t) {
+		if(spares == 0)	return;
+		Token spare;
+		synchronized (t.target) {
+			if(t.spare) {
+				//a spare lost its connection, it reconnects and queues up again
+				t.target.removeSpare(t);
+				return;
+			}
+			spare = t.target.pollSpare();
+			if(spare == null)	return;
+			spare.spare = false;
+			t.spare = true;
+			//the token may sit free in the pool, e.g. an idle connection the peer closed
+			t.target.hold(t.slot);
+		}
+		swaps.incrementAndGet();
+		release(spare.id);
+	}
+
+	/**
+	 * Called by the transports when the token's connection is up.
+	 * @return false if the token is a spare and must stay out of rotation
+	 */
+	boolean connected(Token t) {
+		connectEnded(t);
+		t.requests = 0;
+		t.connectedTS = System.nanoTime();
+		RingEvents.connect(t.id, t.target.getAddress(), t.connectedTS - t.connectStartTS);
+		journal.connected(t.id, t.target.getAddress(), t.connectedTS - t.connectStartTS);
+		t.failures = 0;
+		t.breaker.success();
+		if(t.growing) {
+			t.growing = false;
+			growing.decrementAndGet();
+		}
+		boolean publish = true;
+		if(t.spare) {
+			synchronized (t.target) {
+				if(t.spare) {
+					t.target.offerSpare(t);
+					publish = false;
+				}
+			}
+		}
+		if(t.connectTime != 0)	return publish;
+		t.connectTime = Math.max(1, System.nanoTime() - t.connectStartTS);
+		if(ready.incrementAndGet() == warmUpCount) {
+			warmUpEndTS = System.nanoTime();
+			log.info(getConnectSummary());
+		}
+		return publish;
+	}
+
+	/**
+	 * Blocks until the given share of tokens has connected or the deadline
+	 * passes.
+	 * @return true if the ring is ready
+	 */
+	public boolean awaitReady(double fraction, long timeoutMillis) {
+		int need = (int) Math.ceil(Math.min(1.0, fraction) * warmUpCount);
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while(ready.get() < need) {
+			if(System.currentTimeMillis() >= deadline)	return false;
+			try {
+				Thread.sleep(WARMUP_TICK);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String getConnectSummary() {
+		//unix domain connects skip the network stack, their times are kept apart
+		long[] tcpTimes = new long[socketsCount], unixTimes = new long[socketsCount];
+		int tcp = 0, unix = 0;
+		for(int i = 0; i < socketsCount; i++) {
+			Token t = ring.get(i);
+			if(t == null || t.parked || t.connectTime <= 0)	continue;
+			if(t.targetAddress instanceof InetSocketAddress)	tcpTimes[tcp++] = t.connectTime;
+			else	unixTimes[unix++] = t.connectTime;
+		}
+		long end = warmUpEndTS != 0 ? warmUpEndTS : System.nanoTime();
+		StringBuilder sb = new StringBuilder();
+		sb.append("connected ").append(tcp + unix).append('/').append(active.get())
+				.append(" in ").append(Token.nstoms(end - warmUpStartTS)).append("ms");
+		appendConnectTimes(sb, unix > 0 ? ", tcp" : ",", tcpTimes, tcp);
+		appendConnectTimes(sb, ", unix", unixTimes, unix);
+		return sb.toString();
+	}
+
+	private static void appendConnectTimes(StringBuilder sb, String prefix, long[] times, int n) {
+		if(n == 0)	return;
+		Arrays.sort(times, 0, n);
+		sb.append(prefix).append(" connect time min/p50/p99/max: ")
+				.append(Token.nstoms(times[0])).append('/')
+				.append(Token.nstoms(times[(n - 1) / 2])).append('/')
+				.append(Token.nstoms(times[(int) Math.ceil(n * 0.99) - 1])).append('/')
+				.append(Token.nstoms(times[n - 1])).append("ms");
+	}
+
+	/**
+	 * Opens the initial connections, at most connectRate per second and
+	 * maxConnecting at a time.
+	 */
+	private class WarmUpRunnable implements Runnable {
+		private int next = 0;
+		private double credit = 0;
+
+		@Override
+		public void run() {
+			double perTick = connectRate * WARMUP_TICK / 1000.0;
+			if(connectRate > 0)	credit = Math.min(credit + perTick, Math.max(1.0, perTick));
+			while(next < warmUpCount) {
+				if(connectRate > 0 && credit < 1.0)	break;
+				if(maxConnecting > 0 && connecting.get() >= maxConnecting)	break;
+				Token t = ring.get(next++);
+				try {
+					connect(t);
+				} catch (InterruptedException e) {
+					log.error("InterruptedException when register SocketChannel", e);
+				} catch (IOException e) {
+					log.error("IOException ", e);
+				}
+				credit -= 1.0;
+			}
+			if(next >= warmUpCount)	warmUp.cancel(false);
+		}
+	}
+
+	/**
+	 * Grows the pool by an eighth while samplers fail to acquire a token,
+	 * one step at a time, and shrinks it by half of the tokens that stayed
+	 * free for AUTOSCALE_IDLE_TICKS in a row.
+	 */
+	private class AutoscaleRunnable implements Runnable {
+		private long lastMisses = 0;
+		private int idleTicks = 0;
+		private int minFree = Integer.MAX_VALUE;
+
+		@Override
+		public void run() {
+			long misses = acquireMisses.sum();
+			boolean pressure = misses != lastMisses;
+			lastMisses = misses;
+			int current = active.get();
+			if(pressure) {
+				idleTicks = 0;
+				minFree = Integer.MAX_VALUE;
+				//grown tokens are published once connected, wait for them before judging again
+				if(current < socketsCount && warmUp.isDone() && growing.get() == 0 && isAvailable()) {
+					grow(Math.min(socketsCount - current, Math.max(1, current / 8)));
+					log.info("autoscale: acquire pressure, growing to " + active.get() + " sockets");
+				}
+				return;
+			}
+			minFree = Math.min(minFree, getStats().free_objects);
+			if(++idleTicks < AUTOSCALE_IDLE_TICKS)	return;
+			int n = Math.min(current - minSockets, minFree / 2);
+			if(n > 0 && shrink(n) > 0)	log.info("autoscale: idle tokens, shrinking to " + active.get() + " sockets");
+			idleTicks = 0;
+			minFree = Integer.MAX_VALUE;
+		}
+	}
+
+	private void grow(int n) {
+		for(int i = 0; i < socketsCount && n > 0; i++) {
+			Token t = ring.get(i);
+			if(!t.parked)	continue;
+			n--;
+			t.parked = false;
+			t.growing = true;
+			growing.incrementAndGet();
+			active.incrementAndGet();
+			try {
+				if(netty == null)	openChannel(t);
+				connect(t);
+			} catch (InterruptedException e) {
+				log.error("InterruptedException when register SocketChannel", e);
+			} catch (IOException e) {
+				log.error("IOException ", e);
+			}
+		}
+	}
+
+	/**
+	 * Parks up to n free tokens: they are taken out of rotation and their
+	 * connections are closed.
+	 * @return the number of tokens parked
+	 */
+	private int shrink(int n) {
+		int parked = 0;
+		for(int k = 0; k < n; k++) {
+			int id = balancer.acquire();
+			if(id == -1)	break;
+			Token t = ring.get(id);
+			//not prepared: the connect path owns it and releases it when it is up
+			if(!t.isPrepared)	continue;
+			synchronized (t) {
+				if(t.http != null && t.http.inFlight() > 0) {
+					release(id);
+					continue;
+				}
+				t.parked = true;
+			}
+			disconnect(t);
+			active.decrementAndGet();
+			parked++;
+		}
+		return parked;
+	}
+
+	public Ring write(int id, ByteBuffer buffer) throws IOException {
+		Token t = ring.get(id);
+		t.requests++;
+		scheduleTimeout(t, socketTimeout, RESPONSE_TIMEOUT);
+		RingEvents.RequestWrite event = RingEvents.beginWrite();
+		int size = buffer.remaining();
+		boolean stamp = resultLog != null || RingEvents.isCompleteEnabled();
+		if(stamp)	t.sentTS = System.nanoTime();
+		send(t, buffer);
+		if(stamp) {
+			t.writtenTS = System.nanoTime();
+			t.sizeOut = size;
+		}
+		RingEvents.endWrite(event, id, t.target.getAddress(), size);
+		t.target.sent();
+		return this;
+	}
+
+	/**
+	 * Logs the raw request in flight on the token, if any, to the result
+	 * log and as a RequestComplete event.
+	 * @param sizeIn 0 if there was no response
+	 */
+	void logResult(Token t, int netCode, int sizeIn, boolean success) {
+		if(t.sentTS == 0)	return;
+		long now = System.nanoTime();
+		long firstByte = sizeIn > 0 ? now : 0;
+		long connect = t.requests == 1 ? t.connectedTS - t.connectStartTS : 0;
+		if(resultLog != null)	resultLog.record(t.sentTS, t.writtenTS, firstByte, now, connect,
+				t.sizeOut, sizeIn, netCode, 0, t.target.getIndex(), t.tag, success);
+		RingEvents.complete(t.id, t.target.getAddress(), t.sentTS, t.writtenTS, firstByte, now, connect,
+				sizeIn, 0, success, netCode);
+		t.sentTS = 0;
+	}
+
+	private void openResultLog() {
+		Target<Token>[] all = getTargets();
+		String[] names = new String[all.length];
+		for(Target<Token> target : all)	names[target.getIndex()] = target.getAddress();
+		try {
+			resultLog = new ResultLog(resultLogPath, names);
+		} catch (IOException e) {
+			log.error("can't open result log " + resultLogPath, e);
+			return;
+		}
+		for(int i = 0; i < socketsCount && http; i++)	ring.get(i).http.setResultLog(resultLog);
+		log.info("logging results to " + resultLogPath);
+	}
+
+	/**
+	 * Starts the token's script, the token stays with the sample until the
+	 * script is done.
+	 */
+	public Ring runScript(int id, ByteBuffer request) throws IOException {
+		Token t = ring.get(id);
+		t.requests++;
+		t.target.sent();
+		t.script.start(request);
+		return this;
+	}
+
+	void send(Token t, ByteBuffer buffer) throws IOException {
+		TlsSession session = t.tls;
+		if(session == null) {
+			transmit(t, buffer);
+			return;
+		}
+		synchronized (session) {
+			session.wrap(buffer);
+			flush(t, session);
+		}
+	}
+
+	/**
+	 * Writes out the records the token's TLS session has queued.
+	 */
+	void flush(Token t, TlsSession session) throws IOException {
+		synchronized (session) {
+			try {
+				ByteBuffer out = session.outbound();
+				if(out.hasRemaining())	transmit(t, out);
+			} finally {
+				session.sent();
+			}
+		}
+	}
+
+	private void transmit(Token t, ByteBuffer buffer) throws IOException {
+		if(netty != null) {
+			netty.write(t, buffer);
+			return;
+		}
+		t.socketChannel.write(buffer);
+		while(buffer.hasRemaining()){
+			t.socketChannel.write(buffer);
+		}
+	}
+
+	/**
+	 * HTTP mode: starts the sample and queues the request on the token's
+	 * connection. The token goes back to the ring right away while the connection has room for
+	 * more pipelined requests, otherwise the event loop releases it.
+	 * @return false if the connection is being replaced, the token must be
+	 *         dropped and another one acquired
+	 */
+	public boolean writeHttp(int id, ByteBuffer buffer, SampleResult result, Queue queue, boolean headRequest) throws IOException {
+		Token t = ring.get(id);
+		boolean release;
+		synchronized (t) {
+			if(!t.isPrepared)	return false;
+			HttpExchange ex = t.http;
+			ex.push(result, queue, headRequest);
+			t.requests++;
+			if(ex.inFlight() == 1)	scheduleTimeout(t, socketTimeout, RESPONSE_TIMEOUT);
+			result.sampleStart();
+			RingEvents.RequestWrite event = RingEvents.beginWrite();
+			boolean stamp = resultLog != null || RingEvents.isCompleteEnabled();
+			long sent = stamp ? System.nanoTime() : 0;
+			int size = buffer.remaining();
+			send(t, buffer);
+			if(stamp)	ex.stamp(sent, System.nanoTime(), size, t.tag, t.requests == 1 ? t.connectedTS - t.connectStartTS : 0);
+			RingEvents.endWrite(event, id, t.target.getAddress(), size);
+			release = !ex.isFull() && !isExpired(t);
+			ex.parked = !release;
+		}
+		if(release)	release(id);
+		return true;
+	}
+
+	/**
+	 * @return true while a timeout armed on the token is still meaningful
+	 */
+	public boolean isWaiting(Token t) {
+		if(!t.isPrepared)	return true;
+		return http && t.http.inFlight() > 0;
+	}
+
+	void scheduleResponseTimeout(Token t) {
+		scheduleTimeout(t, socketTimeout, RESPONSE_TIMEOUT);
+	}
+
+	private TimeoutWheel getTimeoutWheel(Token t) {
+		if(netty != null)	return netty.getTimeoutWheel(t);
+		return eventLoopRunnables[t.id%selectorsCount].getTimeoutWheel();
+	}
+
+	private void scheduleTimeout(Token t, int timeout, String reason) {
+		if(allocationFree) {
+			getTimeoutWheel(t).schedule(t.timeoutEntry, timeout, reason);
+		} else {
+			t.timeout = loops.timer().newTimeout(new TimeoutTask(this, t.id, reason),
+					timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void cancelTimeout(Token t) {
+		if(allocationFree)	getTimeoutWheel(t).cancel(t.timeoutEntry);
+		else if(t.timeout != null)	t.timeout.cancel();
+	}
+
+	public Ring timeout(int id, final String reason) {
+		if(destroyed)	return this;
+		final Token t = ring.get(id);
+		if(netty != null) {
+			netty.execute(t, new Runnable() {
+				@Override
+				public void run() {
+					handler.timeout(t, reason);
+				}
+			});
+			return this;
+		}
+		try {
+			eventLoopRunnables[t.id%selectorsCount].timeout(t, reason);
+		} catch (InterruptedException e) {
+			log.warn("InterruptedException", e);
+			reset(id, "interruptedException in Ring.timeout() method");
+		}
+		return this;
+	}
+
+
+	public Ring destroy() {
+		//the scheduler and timer are shared, pending reconnects and timeouts check this instead
+		destroyed = true;
+		if(warmUp != null)	warmUp.cancel(false);
+		if(autoscale != null)	autoscale.cancel(false);
+		if(info != null && loops != null)	loops.removeReporter(info);
+		if(netty != null)	netty.shutdown();
+
+		for(int i=0; i < selectorsCount && netty == null; ++i) {
+			if(eventLoopRunnables[i] != null)	eventLoopRunnables[i].stop();
+		}
+
+		for(int i = 0 ; i < socketsCount ; ++i) {
+		    if(ring == null)	break;
+			if(ring.get(i) != null)	ring.get(i).destroy();
+		}
+
+		ring = new StripedRingPool<>(socketsCount);
+
+		this.weakSocketToTokenMap.clear();
+		if(resultLog != null)	resultLog.close();
+		if(health.getUnhealthy() > 0)
+			log.warn("generator was unhealthy " + health.getUnhealthy() + " of " + health.getSamples() + " seconds, latency of those is partly its own");
+		if(loops != null) {
+			EventLoops.release();
+			loops = null;
+		}
+		journal.report();
+		String connections = journal.summary();
+		if(connections != null)	log.info(connections);
+		if(tls != null)	log.info(tls.toString());
+		Target<Token>[] all = getTargets();
+		if(all.length > 1) {
+			for(Target<Token> target : all)	log.info(target.toString());
+		}
+		if(journalPath != null) {
+			try {
+				log.info(journal.dump(journalPath) + " connection events dumped to " + journalPath);
+			} catch (IOException e) {
+				log.error("can't dump connection journal to " + journalPath, e);
+			}
+		}
+
+		return this;
+	}
+
+	public boolean isDestroyed() {
+		return destroyed;
+	}
+
+	public Token get(int id) {
+		return ring.get(id);
+	}
+
+	public Token get(SocketChannel socketChannel) {
+		Token t = weakSocketToTokenMap.get(socketChannel);
+		if(t == null) {
+			log.warn("not found SocketChannel at weakMap");
+			for(int i=0;i<socketsCount;i++) {
+				if(ring.get(i).socketChannel == socketChannel) {
+					t = ring.get(i);
+					weakSocketToTokenMap.putIfAbsent(socketChannel, t);
+					break;
+				}
+			}
+			if(t == null)	log.error("not found SocketChannel at ring");
+		}
+		return t;
+	}
+
+	public int acquire() {
+		int i = -1, loopCount = 0;
+		acquires.increment();
+		try {
+			//Fast acquire
+			for(; loopCount < 2; loopCount++) {
+				i = balancer.acquire();
+				if(i != -1) break;
+			}
+			if(i == -1)	acquireMisses.increment();
+		} catch (Exception e) {
+			log.error("Exception", e);
+			return -1;
+		}
+		return i;
+	}
+
+	public Ring release(int id) {
+		Token t = ring.get(id);
+		t.target.release(t.slot);
+		return this;
+	}
+
+	public StripedRingPool.Stats getStats() {
+		return balancer != null ? balancer.getStats() : ring.getStats();
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp;
+
+import me.schiz.jmeter.ring.ammo.RingAmmoTestElement;
+import me.schiz.jmeter.ring.util.GeneratorHealth;
+import me.schiz.jmeter.ring.util.Target;
+import me.schiz.ringpool.StripedRingPool;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+public class RingInfoRunnable implements Runnable {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+	private Ring ring;
+
+	public RingInfoRunnable(Ring r) {
+		this.ring = r;
+	}
+
+	@Override
+	public void run() {
+		StripedRingPool.Stats stats = ring.getStats();
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("ring\tfree:\t");
+		sb.append(stats.free_objects);
+		sb.append(" busy:\t");
+		sb.append(stats.busy_objects);
+		sb.append("\tnull:\t");
+		sb.append(stats.null_objects);
+		sb.append("\tnot_null:\t");
+		sb.append(stats.notnull_objects);
+		sb.append("\tactive:\t");
+		sb.append(ring.getActive());
+		sb.append("\tswaps:\t");
+		sb.append(ring.getSwaps());
+		sb.append("\tsteals:\t");
+		sb.append(stats.steals);
+		sb.append("\tresets:\t");
+		sb.append(ring.getResets());
+		sb.append("\trecycled:\t");
+		sb.append(ring.getRecycled());
+		sb.append("\tdrained:\t");
+		sb.append(ring.getDrained());
+		sb.append("\tdrain_failures:\t");
+		sb.append(ring.getDrainFailures());
+		if(ring.getResponseCheck() != null) {
+			sb.append("\tcheck_failures:\t");
+			sb.append(ring.getResponseCheck().getFailures());
+		}
+
+		log.info(sb.toString());
+		health(stats);
+		ring.getJournal().report();
+		if(!log.isDebugEnabled())	return;
+		if(ring.getTls() != null)	log.debug(ring.getTls().toString());
+		Target<Token>[] targets = ring.getTargets();
+		if(targets.length > 1) {
+			for(Target<Token> target : targets)	log.debug(target.toString());
+		}
+	}
+
+	private void health(StripedRingPool.Stats stats) {
+		GeneratorHealth health = ring.getHealth();
+		boolean changed = health.update(ring.getLoopLag(), stats.busy_objects, stats.free_objects + stats.busy_objects,
+				ring.getAcquires(), ring.getAcquireMisses(), RingAmmoTestElement.getFill());
+		if(log.isDebugEnabled())	log.debug(health.toString());
+		if(changed) {
+			if(health.isHealthy())	log.info("generator is healthy again");
+			else	log.warn("generator is the bottleneck, latency is partly its own: " + health.getWarnings());
+		}
+		if(ring.getHealthLabel() != null)	ring.publishHealth(health.toSampleResult(ring.getHealthLabel()));
+	}
+}
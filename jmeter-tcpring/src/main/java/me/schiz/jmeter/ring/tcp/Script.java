@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp;
+
+import me.schiz.jmeter.ring.util.ResponseCheck;
+import org.apache.jmeter.samplers.SampleResult;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A conversation a sample runs on one connection, e.g. login, select a
+ * database, query. Steps are separated by ';':
+ * <pre>
+ * send:LOGIN a b\r\n; expect:+OK; delay:10; request; expect:\r\n
+ * </pre>
+ * send writes its bytes, request writes the sampler's request, expect
+ * waits until its pattern arrives and delay pauses for milliseconds.
+ * The token stays with the sample from the first step to the last, steps
+ * are advanced by the event loop as responses arrive. Expect and delay
+ * steps become sub results with their own times, except in allocation
+ * free mode.
+ */
+public class Script {
+	static final int SEND = 0;
+	static final int REQUEST = 1;
+	static final int EXPECT = 2;
+	static final int DELAY = 3;
+
+	private final int[] kinds;
+	private final byte[][] payloads;
+	private final ResponseCheck[] expects;
+	private final long[] delays;
+	private final String[] labels;
+
+	/**
+	 * @return null if the spec is empty
+	 * @throws IllegalArgumentException on a malformed step
+	 */
+	public static Script parse(String spec) {
+		if(spec == null || spec.trim().isEmpty())	return null;
+		List<String> steps = new ArrayList<String>();
+		for(String step : spec.split(";")) {
+			if(!step.trim().isEmpty())	steps.add(step.trim());
+		}
+		return new Script(steps);
+	}
+
+	private Script(List<String> steps) {
+		int n = steps.size();
+		kinds = new int[n];
+		payloads = new byte[n][];
+		expects = new ResponseCheck[n];
+		delays = new long[n];
+		labels = new String[n];
+		for(int i = 0; i < n; i++) {
+			String step = steps.get(i);
+			int colon = step.indexOf(':');
+			String kind = (colon < 0 ? step : step.substring(0, colon)).trim().toLowerCase(Locale.ROOT);
+			String arg = colon < 0 ? "" : step.substring(colon + 1).trim();
+			labels[i] = step;
+			if(kind.equals("send")) {
+				kinds[i] = SEND;
+				payloads[i] = ResponseCheck.unescape(arg);
+			} else if(kind.equals("request")) {
+				kinds[i] = REQUEST;
+			} else if(kind.equals("expect")) {
+				kinds[i] = EXPECT;
+				expects[i] = ResponseCheck.parse("", arg, "", "", "");
+				if(expects[i] == null)	throw new IllegalArgumentException("step \"" + step + "\" has no pattern");
+			} else if(kind.equals("delay")) {
+				kinds[i] = DELAY;
+				delays[i] = Long.parseLong(arg);
+				if(delays[i] < 0)	throw new IllegalArgumentException("step \"" + step + "\" has a negative delay");
+			} else {
+				throw new IllegalArgumentException("unknown step \"" + step + "\", send, request, expect or delay expected");
+			}
+		}
+	}
+
+	public int size() {
+		return kinds.length;
+	}
+
+	Run newRun(Ring ring, Token t) {
+		return new Run(ring, t);
+	}
+
+	/**
+	 * The script's progress on one token. Guarded by the token's monitor:
+	 * the sampler starts it, the event loop and the delay timer advance it.
+	 */
+	public class Run {
+		private final Ring ring;
+		private final Token t;
+		private final ByteBuffer[] sends;
+		private final ResponseCheck.Matcher[] matchers;
+		private final boolean[] matched;
+		private final long[] matchedTS;
+		private final Runnable delayDone;
+		private ByteBuffer request = ByteBuffer.allocate(0);
+
+		private volatile boolean active;
+		private boolean delaying;
+		private int step;
+		private int pending;
+		private long stepStartTS;
+		private long stepStartMillis;
+		private long bytes;
+		private byte[] lastRead;
+
+		private Run(Ring ring, Token t) {
+			this.ring = ring;
+			this.t = t;
+			sends = new ByteBuffer[kinds.length];
+			matchers = new ResponseCheck.Matcher[kinds.length];
+			matched = new boolean[kinds.length];
+			matchedTS = new long[kinds.length];
+			for(int i = 0; i < kinds.length; i++) {
+				if(kinds[i] == SEND)	sends[i] = ByteBuffer.wrap(payloads[i]);
+				else if(kinds[i] == EXPECT)	matchers[i] = expects[i].newMatcher();
+			}
+			delayDone = new Runnable() {
+				@Override
+				public void run() {
+					ring.timeout(Run.this.t.id, Ring.SCRIPT_DELAY);
+				}
+			};
+		}
+
+		boolean isActive() {
+			return active;
+		}
+
+		/**
+		 * Runs the steps up to the first expect or delay. The token's
+		 * sample has started.
+		 */
+		void start(ByteBuffer req) throws IOException {
+			synchronized (t) {
+				if(request.capacity() < req.remaining())	request = ByteBuffer.allocate(req.remaining());
+				request.clear();
+				request.put(req);
+				request.flip();
+				active = true;
+				delaying = false;
+				step = 0;
+				bytes = 0;
+				lastRead = null;
+				for(int i = 0; i < matched.length; i++)	matched[i] = false;
+				pending = expectAfter(-1);
+				stepStarted();
+				advance();
+			}
+		}
+
+		/**
+		 * Feeds what the connection delivered to the pending expect steps,
+		 * several may complete in one read.
+		 */
+		void read(ByteBuffer data) throws IOException {
+			synchronized (t) {
+				if(!active)	return;
+				bytes += data.remaining();
+				if(!ring.isAllocationFree()) {
+					lastRead = new byte[data.remaining()];
+					data.duplicate().get(lastRead);
+				}
+				int pos = data.position();
+				while(pending != -1 && data.hasRemaining()) {
+					ResponseCheck.Matcher m = matchers[pending];
+					m.update(data, data.remaining());
+					if(!m.found())	break;
+					data.position(m.matchEnd());
+					matched[pending] = true;
+					matchedTS[pending] = System.nanoTime();
+					pending = expectAfter(pending);
+				}
+				data.position(pos);
+				if(!delaying && kinds[step] == EXPECT && matched[step]) {
+					ring.cancelTimeout(t);
+					advance();
+				}
+			}
+		}
+
+		/**
+		 * The delay timer went off, on the token's event loop.
+		 */
+		void resume() throws IOException {
+			synchronized (t) {
+				if(!active || !delaying)	return;
+				delaying = false;
+				if(!ring.isAllocationFree())	subResult(System.nanoTime());
+				step++;
+				stepStarted();
+				advance();
+			}
+		}
+
+		/**
+		 * The connection is going away, whatever is in flight has failed.
+		 */
+		void abort() {
+			synchronized (t) {
+				active = false;
+				delaying = false;
+			}
+		}
+
+		private void advance() throws IOException {
+			while(step < kinds.length) {
+				switch (kinds[step]) {
+					case SEND:
+						sends[step].rewind();
+						ring.send(t, sends[step]);
+						break;
+					case REQUEST:
+						request.rewind();
+						ring.send(t, request);
+						break;
+					case DELAY:
+						delaying = true;
+						ring.schedule(delayDone, delays[step]);
+						return;
+					case EXPECT:
+						if(!matched[step]) {
+							ring.scheduleResponseTimeout(t);
+							return;
+						}
+						if(!ring.isAllocationFree())	subResult(matchedTS[step]);
+						break;
+				}
+				step++;
+				stepStarted();
+			}
+			finish();
+		}
+
+		private void finish() {
+			active = false;
+			SampleResult r = t.sampleResult;
+			if(r == null)	return;
+			r.sampleEnd();
+			if(lastRead != null)	r.setResponseData(ResponseHandler.decode(ByteBuffer.wrap(lastRead)));
+			r.setBytes((int) bytes);
+			t.target.done();
+			t.target.record(r.getTime(), r.isSuccessful());
+			if(t.queue != null)	while(!t.queue.offer(r)) {}
+			t.sampleResult = null;
+			t.queue = null;
+			t.isPrepared = true;
+			if(ring.isExpired(t))	ring.recycle(t.id);
+			else	ring.release(t.id);
+		}
+
+		private void subResult(long endTS) {
+			SampleResult r = t.sampleResult;
+			if(r == null)	return;
+			SampleResult sub = new SampleResult();
+			sub.setSampleLabel(labels[step]);
+			sub.setStampAndTime(stepStartMillis, Token.nstoms(Math.max(0, endTS - stepStartTS)));
+			sub.setSuccessful(true);
+			r.addRawSubResult(sub);
+		}
+
+		private void stepStarted() {
+			stepStartTS = System.nanoTime();
+			if(!ring.isAllocationFree())	stepStartMillis = System.currentTimeMillis();
+		}
+
+		private int expectAfter(int i) {
+			for(int k = i + 1; k < kinds.length; k++) {
+				if(kinds[k] == EXPECT) {
+					matchers[k].begin();
+					return k;
+				}
+			}
+			return -1;
+		}
+	}
+}
@@ -41,7 +41,7 @@ public class TimeoutTask implements TimerTask {
 
 	@Override
 	public void run(Timeout timeout) throws Exception {
-		if(timeout.isExpired() && !timeout.isCancelled() && !ring.get(id).isPrepared) {
+		if(timeout.isExpired() && !timeout.isCancelled() && !ring.isDestroyed() && ring.isWaiting(ring.get(id))) {
 			ring.timeout(id, reason);
 		}
 	}
@@ -18,15 +18,23 @@
 
 package me.schiz.jmeter.ring.tcp;
 
+import io.netty.channel.Channel;
 import io.netty.util.Timeout;
+import me.schiz.jmeter.ring.tcp.http.HttpExchange;
+import me.schiz.jmeter.ring.tcp.tls.TlsSession;
+import me.schiz.jmeter.ring.util.CircuitBreaker;
+import me.schiz.jmeter.ring.util.ResponseCheck;
+import me.schiz.jmeter.ring.util.Target;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.channels.SocketChannel;
 import java.util.Queue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class Token {
@@ -34,13 +42,39 @@ public class Token {
 
 	public int id;
 	public SocketChannel	socketChannel;
+	public Channel			channel;
 	public Timeout			timeout;
-	public InetSocketAddress targetAddress;
+	public TimeoutWheel.Entry	timeoutEntry;
+	public SocketAddress targetAddress;
 	public volatile boolean isPrepared;
+	public volatile boolean parked;
+	public volatile boolean growing;
+	public volatile boolean spare;
+	public int source = -1;
+	public TlsSession tls;
+	public ResponseCheck.Matcher check;
+	public Script.Run script;
 
 	public SampleResult sampleResult;
 	public Queue queue;
+	public HttpExchange http;
 	public long connectStartTS;
+	public long connectTime;
+	public volatile boolean connecting;
+	public int failures;
+	public CircuitBreaker breaker;
+	//the pending reconnect, and whether the breaker will wake it up early
+	public volatile ScheduledFuture<?> retry;
+	public volatile boolean awaiting;
+	public Target<Token> target;
+	public int slot;
+	public long connectedTS;
+	public int requests;
+	//result log stamps of the raw request in flight
+	public long sentTS;
+	public long writtenTS;
+	public int sizeOut;
+	public int tag;
 
 	public Token() {
 		try {
@@ -61,6 +95,7 @@ public class Token {
 	public void destroy() {
 		try {
 			socketChannel.close();
+			if(channel != null)	channel.close();
 		} catch (IOException e) {
 			log.error("can't close token " + e);
 		}
@@ -0,0 +1,521 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp.config;
+
+import me.schiz.jmeter.ring.tcp.Ring;
+import me.schiz.jmeter.ring.util.Balancer;
+import me.schiz.jmeter.ring.util.CompletionCollector;
+import me.schiz.jmeter.ring.util.ResultHandoff;
+import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.testbeans.TestBean;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TCPRingSourceElement extends ConfigTestElement
+		implements TestStateListener, TestBean {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	protected static ConcurrentHashMap<String, Ring> rings = null;
+	public static final String SOURCE = "TCPRingSourceElement.source";
+	public static final String THREADS = "TCPRingSourceElement.threads";
+	public static final String SOCKETS = "TCPRingSourceElement.sockets";
+	public static final String ADDRESSES = "TCPRingSourceElement.addresses";
+	public static final String CONNECTION_TIMEOUT = "TCPRingSourceElement.connectionTimeout";
+	public static final String SOCKET_TIMEOUT = "TCPRingSourceElement.socketTimeout";
+	public static final String BUFFER_SIZE = "TCPRingSourceElement.bufferSize";
+	public static final String ALLOCATION_FREE = "TCPRingSourceElement.allocationFree";
+	public static final String PROTOCOL = "TCPRingSourceElement.protocol";
+	public static final String PIPELINE = "TCPRingSourceElement.pipeline";
+	public static final String BACKEND = "TCPRingSourceElement.backend";
+	public static final String CONNECT_RATE = "TCPRingSourceElement.connectRate";
+	public static final String MAX_CONNECTING = "TCPRingSourceElement.maxConnecting";
+	public static final String READY_PERCENT = "TCPRingSourceElement.readyPercent";
+	public static final String READY_TIMEOUT = "TCPRingSourceElement.readyTimeout";
+	public static final String RECONNECT_BACKOFF = "TCPRingSourceElement.reconnectBackoff";
+	public static final String RECONNECT_BACKOFF_MAX = "TCPRingSourceElement.reconnectBackoffMax";
+	public static final String BREAKER_THRESHOLD = "TCPRingSourceElement.breakerThreshold";
+	public static final String BREAKER_OPEN = "TCPRingSourceElement.breakerOpen";
+	public static final String REUSE = "TCPRingSourceElement.reuse";
+	public static final String MAX_REQUESTS = "TCPRingSourceElement.maxRequests";
+	public static final String MAX_AGE = "TCPRingSourceElement.maxAge";
+	public static final String BALANCING = "TCPRingSourceElement.balancing";
+	public static final String MIN_SOCKETS = "TCPRingSourceElement.minSockets";
+	public static final String SPARES = "TCPRingSourceElement.spares";
+	public static final String SOURCE_ADDRESSES = "TCPRingSourceElement.sourceAddresses";
+	public static final String TLS = "TCPRingSourceElement.tls";
+	public static final String TLS_VERIFY = "TCPRingSourceElement.tlsVerify";
+	public static final String TLS_PROTOCOLS = "TCPRingSourceElement.tlsProtocols";
+	public static final String EXPECT_PREFIX = "TCPRingSourceElement.expectPrefix";
+	public static final String EXPECT_CONTAINS = "TCPRingSourceElement.expectContains";
+	public static final String EXPECT_ABSENT = "TCPRingSourceElement.expectAbsent";
+	public static final String EXPECT_LENGTH = "TCPRingSourceElement.expectLength";
+	public static final String STATUS_FIELD = "TCPRingSourceElement.statusField";
+	public static final String SCRIPT = "TCPRingSourceElement.script";
+	public static final String RESULT_QUEUE = "TCPRingSourceElement.resultQueue";
+	public static final String OVERFLOW = "TCPRingSourceElement.overflow";
+	public static final String RESULT_LOG = "TCPRingSourceElement.resultLog";
+	public static final String HEALTH_LABEL = "TCPRingSourceElement.healthLabel";
+	public static final String JOURNAL = "TCPRingSourceElement.journal";
+
+	public static final String DEFAULT_SOURCE = "default";
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors() / 4 + 1;
+	public static final int DEFAULT_SOCKETS = DEFAULT_THREADS*8;
+	public static final String DEFAULT_ADDRESSES = "localhost:8080";
+	public static final int DEFAULT_CONNECTION_TIMEOUT = 1500;
+	public static final int DEFAULT_SOCKET_TIMEOUT = 750;
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+	public static final boolean DEFAULT_ALLOCATION_FREE = false;
+	public static final String PROTOCOL_RAW = "raw";
+	public static final String PROTOCOL_HTTP = "http";
+	public static final String DEFAULT_PROTOCOL = PROTOCOL_RAW;
+	public static final int DEFAULT_PIPELINE = 1;
+	public static final String DEFAULT_BACKEND = Ring.BACKEND_NIO;
+	public static final int DEFAULT_CONNECT_RATE = 0;
+	public static final int DEFAULT_MAX_CONNECTING = 1024;
+	public static final int DEFAULT_READY_PERCENT = 0;
+	public static final int DEFAULT_READY_TIMEOUT = 10000;
+	public static final int DEFAULT_RECONNECT_BACKOFF = 10;
+	public static final int DEFAULT_RECONNECT_BACKOFF_MAX = 5000;
+	public static final int DEFAULT_BREAKER_THRESHOLD = 32;
+	public static final int DEFAULT_BREAKER_OPEN = 2000;
+	public static final String DEFAULT_REUSE = Ring.REUSE_RESET;
+	public static final String DEFAULT_BALANCING = Balancer.ROUND_ROBIN;
+	public static final int DEFAULT_MIN_SOCKETS = 0;
+	public static final int DEFAULT_SPARES = 0;
+	public static final String DEFAULT_SOURCE_ADDRESSES = "";
+	public static final boolean DEFAULT_TLS = false;
+	public static final boolean DEFAULT_TLS_VERIFY = false;
+	public static final String DEFAULT_TLS_PROTOCOLS = "";
+	public static final String DEFAULT_EXPECT_PREFIX = "";
+	public static final String DEFAULT_EXPECT_CONTAINS = "";
+	public static final String DEFAULT_EXPECT_ABSENT = "";
+	public static final String DEFAULT_EXPECT_LENGTH = "";
+	public static final String DEFAULT_STATUS_FIELD = "";
+	public static final String DEFAULT_SCRIPT = "";
+	public static final int DEFAULT_RESULT_QUEUE = 4096;
+	public static final String DEFAULT_OVERFLOW = ResultHandoff.FOLD;
+	public static final String DEFAULT_RESULT_LOG = "";
+	public static final String DEFAULT_HEALTH_LABEL = "";
+	public static final String DEFAULT_JOURNAL = "";
+	public static final int DEFAULT_MAX_REQUESTS = 0;
+	public static final int DEFAULT_MAX_AGE = 0;
+
+	public void setBufferSize(String v) {
+		if(v == null)	return;
+		setProperty(BUFFER_SIZE, v);
+	}
+	public String getBufferSize() {
+		return getPropertyAsString(BUFFER_SIZE);
+	}
+	public void setProtocol(String v) {
+		if(v == null)	return;
+		setProperty(PROTOCOL, v);
+	}
+	public String getProtocol() {
+		return getPropertyAsString(PROTOCOL);
+	}
+	public void setPipeline(String v) {
+		if(v == null)	return;
+		setProperty(PIPELINE, v);
+	}
+	public String getPipeline() {
+		return getPropertyAsString(PIPELINE);
+	}
+	public void setBackend(String v) {
+		if(v == null)	return;
+		setProperty(BACKEND, v);
+	}
+	public String getBackend() {
+		return getPropertyAsString(BACKEND);
+	}
+	public void setConnectRate(String v) {
+		if(v == null)	return;
+		setProperty(CONNECT_RATE, v);
+	}
+	public String getConnectRate() {
+		return getPropertyAsString(CONNECT_RATE);
+	}
+	public void setMaxConnecting(String v) {
+		if(v == null)	return;
+		setProperty(MAX_CONNECTING, v);
+	}
+	public String getMaxConnecting() {
+		return getPropertyAsString(MAX_CONNECTING);
+	}
+	public void setReadyPercent(String v) {
+		if(v == null)	return;
+		setProperty(READY_PERCENT, v);
+	}
+	public String getReadyPercent() {
+		return getPropertyAsString(READY_PERCENT);
+	}
+	public void setReadyTimeout(String v) {
+		if(v == null)	return;
+		setProperty(READY_TIMEOUT, v);
+	}
+	public String getReadyTimeout() {
+		return getPropertyAsString(READY_TIMEOUT);
+	}
+	public void setReconnectBackoff(String v) {
+		if(v == null)	return;
+		setProperty(RECONNECT_BACKOFF, v);
+	}
+	public String getReconnectBackoff() {
+		return getPropertyAsString(RECONNECT_BACKOFF);
+	}
+	public void setReconnectBackoffMax(String v) {
+		if(v == null)	return;
+		setProperty(RECONNECT_BACKOFF_MAX, v);
+	}
+	public String getReconnectBackoffMax() {
+		return getPropertyAsString(RECONNECT_BACKOFF_MAX);
+	}
+	public void setBreakerThreshold(String v) {
+		if(v == null)	return;
+		setProperty(BREAKER_THRESHOLD, v);
+	}
+	public String getBreakerThreshold() {
+		return getPropertyAsString(BREAKER_THRESHOLD);
+	}
+	public void setBreakerOpen(String v) {
+		if(v == null)	return;
+		setProperty(BREAKER_OPEN, v);
+	}
+	public String getBreakerOpen() {
+		return getPropertyAsString(BREAKER_OPEN);
+	}
+	public void setReuse(String v) {
+		if(v == null)	return;
+		setProperty(REUSE, v);
+	}
+	public String getReuse() {
+		return getPropertyAsString(REUSE);
+	}
+	public void setMaxRequests(String v) {
+		if(v == null)	return;
+		setProperty(MAX_REQUESTS, v);
+	}
+	public String getMaxRequests() {
+		return getPropertyAsString(MAX_REQUESTS);
+	}
+	public void setMaxAge(String v) {
+		if(v == null)	return;
+		setProperty(MAX_AGE, v);
+	}
+	public String getMaxAge() {
+		return getPropertyAsString(MAX_AGE);
+	}
+	public void setBalancing(String v) {
+		if(v == null)	return;
+		setProperty(BALANCING, v);
+	}
+	public String getBalancing() {
+		return getPropertyAsString(BALANCING);
+	}
+	public void setMinSockets(String v) {
+		if(v == null)	return;
+		setProperty(MIN_SOCKETS, v);
+	}
+	public String getMinSockets() {
+		return getPropertyAsString(MIN_SOCKETS);
+	}
+	public void setSpares(String v) {
+		if(v == null)	return;
+		setProperty(SPARES, v);
+	}
+	public String getSpares() {
+		return getPropertyAsString(SPARES);
+	}
+	public void setSourceAddresses(String v) {
+		if(v == null)	return;
+		setProperty(SOURCE_ADDRESSES, v);
+	}
+	public String getSourceAddresses() {
+		return getPropertyAsString(SOURCE_ADDRESSES);
+	}
+	public void setTls(String v) {
+		if(v == null)	return;
+		setProperty(TLS, v);
+	}
+	public String getTls() {
+		return getPropertyAsString(TLS);
+	}
+	public void setTlsVerify(String v) {
+		if(v == null)	return;
+		setProperty(TLS_VERIFY, v);
+	}
+	public String getTlsVerify() {
+		return getPropertyAsString(TLS_VERIFY);
+	}
+	public void setTlsProtocols(String v) {
+		if(v == null)	return;
+		setProperty(TLS_PROTOCOLS, v);
+	}
+	public String getTlsProtocols() {
+		return getPropertyAsString(TLS_PROTOCOLS);
+	}
+	public void setExpectPrefix(String v) {
+		if(v == null)	return;
+		setProperty(EXPECT_PREFIX, v);
+	}
+	public String getExpectPrefix() {
+		return getPropertyAsString(EXPECT_PREFIX);
+	}
+	public void setExpectContains(String v) {
+		if(v == null)	return;
+		setProperty(EXPECT_CONTAINS, v);
+	}
+	public String getExpectContains() {
+		return getPropertyAsString(EXPECT_CONTAINS);
+	}
+	public void setExpectAbsent(String v) {
+		if(v == null)	return;
+		setProperty(EXPECT_ABSENT, v);
+	}
+	public String getExpectAbsent() {
+		return getPropertyAsString(EXPECT_ABSENT);
+	}
+	public void setExpectLength(String v) {
+		if(v == null)	return;
+		setProperty(EXPECT_LENGTH, v);
+	}
+	public String getExpectLength() {
+		return getPropertyAsString(EXPECT_LENGTH);
+	}
+	public void setStatusField(String v) {
+		if(v == null)	return;
+		setProperty(STATUS_FIELD, v);
+	}
+	public String getStatusField() {
+		return getPropertyAsString(STATUS_FIELD);
+	}
+	public void setScript(String v) {
+		if(v == null)	return;
+		setProperty(SCRIPT, v);
+	}
+	public String getScript() {
+		return getPropertyAsString(SCRIPT);
+	}
+	public void setResultQueue(String v) {
+		if(v == null)	return;
+		setProperty(RESULT_QUEUE, v);
+	}
+	public String getResultQueue() {
+		return getPropertyAsString(RESULT_QUEUE);
+	}
+	public void setOverflow(String v) {
+		if(v == null)	return;
+		setProperty(OVERFLOW, v);
+	}
+	public String getOverflow() {
+		return getPropertyAsString(OVERFLOW);
+	}
+	public void setResultLog(String v) {
+		if(v == null)	return;
+		setProperty(RESULT_LOG, v);
+	}
+	public String getResultLog() {
+		return getPropertyAsString(RESULT_LOG);
+	}
+	public void setHealthLabel(String v) {
+		if(v == null)	return;
+		setProperty(HEALTH_LABEL, v);
+	}
+	public String getHealthLabel() {
+		return getPropertyAsString(HEALTH_LABEL);
+	}
+	public void setJournal(String v) {
+		if(v == null)	return;
+		setProperty(JOURNAL, v);
+	}
+	public String getJournal() {
+		return getPropertyAsString(JOURNAL);
+	}
+	public void setAllocationFree(String v) {
+		if(v == null)	return;
+		setProperty(ALLOCATION_FREE, v);
+	}
+	public String getAllocationFree() {
+		return getPropertyAsString(ALLOCATION_FREE);
+	}
+	public void setSocketTimeout(String v) {
+		if(v == null)	return;
+		setProperty(SOCKET_TIMEOUT, v);
+	}
+	public String getSocketTimeout() {
+		return getPropertyAsString(SOCKET_TIMEOUT);
+	}
+	public void setConnectionTimeout(String v) {
+		if(v == null)	return;
+		setProperty(CONNECTION_TIMEOUT, v);
+	}
+	public String getConnectionTimeout() {
+		return getPropertyAsString(CONNECTION_TIMEOUT);
+	}
+	public void setAddresses(String v) {
+		if(v == null)	return;
+		try{
+			setProperty(ADDRESSES, v);
+		} catch (NullPointerException npe) {
+			log.error(Thread.currentThread().getStackTrace().toString(), npe);
+		}
+	}
+	public String getAddresses() {
+		return getPropertyAsString(ADDRESSES);
+	}
+	public void setThreads(String v) {
+		if(v == null)	return;
+		setProperty(THREADS, v);
+	}
+	public String getThreads() {
+		return getPropertyAsString(THREADS);
+	}
+	public void setSource(String v) {
+		if(v == null)	return;
+		setProperty(SOURCE, v);
+	}
+	public String getSource() {
+		return getPropertyAsString(SOURCE);
+	}
+	public void setSockets(String v) {
+		if(v == null)	return;
+		setProperty(SOCKETS, v);
+	}
+	public String getSockets() {
+		return getPropertyAsString(SOCKETS);
+	}
+
+	public TCPRingSourceElement() {
+		if(rings == null) {
+			synchronized (this.getClass()) {
+				if(rings == null) {
+					rings = new ConcurrentHashMap<String, Ring>();
+				}
+			}
+		}
+	}
+
+	private static int atoi(String a, int def) {
+		if(a == null)	return def;
+		if(a.isEmpty())	return def;
+		try{
+			int v = Integer.parseInt(a);
+			return v;
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
+	private static boolean atob(String a, boolean def) {
+		if(a == null)	return def;
+		if(a.isEmpty())	return def;
+		return Boolean.parseBoolean(a.trim());
+	}
+
+	private static String atos(String a, String def) {
+		if(a == null)	return def;
+		if(a.trim().isEmpty())	return def;
+		return a.trim();
+	}
+
+	@Override
+	public void testStarted() {
+		ResultHandoff.reset();
+		if(rings.contains(getSource()))  log.warn("TCPRing `" +  getSource() + "` already created");
+		else {
+			Ring r;
+			synchronized (TCPRingSourceElement.class) {
+				r = new Ring(
+						atoi(getSockets(), DEFAULT_SOCKETS) + atoi(getSpares(), DEFAULT_SPARES),
+						atoi(getThreads(), DEFAULT_THREADS)
+				);
+				r.setConnectiontimeout(atoi(getConnectionTimeout(), DEFAULT_CONNECTION_TIMEOUT));
+				r.setSocketTimeout(atoi(getSocketTimeout(), DEFAULT_SOCKET_TIMEOUT));
+				r.setRemoteAddresses(getAddresses());
+				r.setBufferSize(atoi(getBufferSize(), DEFAULT_BUFFER_SIZE));
+				r.setAllocationFree(atob(getAllocationFree(), DEFAULT_ALLOCATION_FREE));
+				r.setHttp(PROTOCOL_HTTP.equalsIgnoreCase(getProtocol().trim()));
+				r.setPipeline(atoi(getPipeline(), DEFAULT_PIPELINE));
+				r.setBackend(atos(getBackend(), DEFAULT_BACKEND));
+				r.setConnectRate(atoi(getConnectRate(), DEFAULT_CONNECT_RATE));
+				r.setMaxConnecting(atoi(getMaxConnecting(), DEFAULT_MAX_CONNECTING));
+				r.setCircuitBreaker(atoi(getBreakerThreshold(), DEFAULT_BREAKER_THRESHOLD),
+						atoi(getBreakerOpen(), DEFAULT_BREAKER_OPEN));
+				r.setReconnectBackoff(atoi(getReconnectBackoff(), DEFAULT_RECONNECT_BACKOFF),
+						atoi(getReconnectBackoffMax(), DEFAULT_RECONNECT_BACKOFF_MAX));
+				r.setReuse(atos(getReuse(), DEFAULT_REUSE));
+				r.setRecycle(atoi(getMaxRequests(), DEFAULT_MAX_REQUESTS), atoi(getMaxAge(), DEFAULT_MAX_AGE));
+				r.setBalancing(atos(getBalancing(), DEFAULT_BALANCING));
+				r.setAutoscale(atoi(getMinSockets(), DEFAULT_MIN_SOCKETS));
+				r.setSpares(atoi(getSpares(), DEFAULT_SPARES));
+				r.setSourceAddresses(atos(getSourceAddresses(), DEFAULT_SOURCE_ADDRESSES));
+				r.setTls(atob(getTls(), DEFAULT_TLS), atob(getTlsVerify(), DEFAULT_TLS_VERIFY), atos(getTlsProtocols(), DEFAULT_TLS_PROTOCOLS));
+				r.setResponseCheck(atos(getExpectPrefix(), DEFAULT_EXPECT_PREFIX), atos(getExpectContains(), DEFAULT_EXPECT_CONTAINS),
+						atos(getExpectAbsent(), DEFAULT_EXPECT_ABSENT), atos(getExpectLength(), DEFAULT_EXPECT_LENGTH),
+						atos(getStatusField(), DEFAULT_STATUS_FIELD));
+				r.setScript(atos(getScript(), DEFAULT_SCRIPT));
+				r.setResultQueue(atoi(getResultQueue(), DEFAULT_RESULT_QUEUE), atos(getOverflow(), DEFAULT_OVERFLOW));
+				r.setResultLog(atos(getResultLog(), DEFAULT_RESULT_LOG));
+				r.setHealthLabel(atos(getHealthLabel(), DEFAULT_HEALTH_LABEL));
+				r.setJournal(atos(getJournal(), DEFAULT_JOURNAL));
+				rings.putIfAbsent(getSource(), r);
+				log.info("added new ring `" + getSource() + "`");
+			}
+			r.init();
+			int readyPercent = atoi(getReadyPercent(), DEFAULT_READY_PERCENT);
+			if(readyPercent > 0) {
+				if(r.awaitReady(readyPercent / 100.0, atoi(getReadyTimeout(), DEFAULT_READY_TIMEOUT)))
+					log.info("ring `" + getSource() + "` is ready: " + r.getConnectSummary());
+				else
+					log.warn("ring `" + getSource() + "` is not ready: " + r.getConnectSummary());
+			}
+		}
+	}
+
+	@Override
+	public void testStarted(String s) {
+		testStarted();
+	}
+
+	@Override
+	public void testEnded() {
+		ResultHandoff.unblock();
+		for(String row : rings.keySet()) {
+			//a ring left in the map would be picked up, destroyed, by the next test
+			Ring r = rings.remove(row);
+			if(r == null)	continue;
+			r.destroy();
+			log.info("shutdown ring `" + row + "`");
+		}
+		CompletionCollector.stopAll();
+		if(ResultHandoff.hasOverflowed())	log.warn(ResultHandoff.summary());
+	}
+
+	@Override
+	public void testEnded(String s) {
+		testEnded();
+	}
+
+	public static Ring get(String ringName) {
+		return rings.get(ringName);
+	}
+}
\ No newline at end of file
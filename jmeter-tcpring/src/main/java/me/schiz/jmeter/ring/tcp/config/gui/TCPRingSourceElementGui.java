@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp.config.gui;
+
+import me.schiz.jmeter.ring.tcp.config.TCPRingSourceElement;
+import org.apache.jmeter.config.gui.AbstractConfigGui;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jorphan.gui.JLabeledTextField;
+import org.apache.jorphan.gui.layout.VerticalLayout;
+
+public class TCPRingSourceElementGui extends AbstractConfigGui {
+	private JLabeledTextField tfSource;
+	private JLabeledTextField tfThreads;
+	private JLabeledTextField tfSockets;
+	private JLabeledTextField tfAddresses;
+	private JLabeledTextField tfConnectionTimeout;
+	private JLabeledTextField tfSocketTimeout;
+	private JLabeledTextField tfBufferSize;
+	private JLabeledTextField tfAllocationFree;
+	private JLabeledTextField tfProtocol;
+	private JLabeledTextField tfPipeline;
+	private JLabeledTextField tfBackend;
+	private JLabeledTextField tfConnectRate;
+	private JLabeledTextField tfMaxConnecting;
+	private JLabeledTextField tfReadyPercent;
+	private JLabeledTextField tfReadyTimeout;
+	private JLabeledTextField tfReconnectBackoff;
+	private JLabeledTextField tfReconnectBackoffMax;
+	private JLabeledTextField tfBreakerThreshold;
+	private JLabeledTextField tfBreakerOpen;
+	private JLabeledTextField tfReuse;
+	private JLabeledTextField tfMaxRequests;
+	private JLabeledTextField tfMaxAge;
+	private JLabeledTextField tfBalancing;
+	private JLabeledTextField tfMinSockets;
+	private JLabeledTextField tfSpares;
+	private JLabeledTextField tfSourceAddresses;
+	private JLabeledTextField tfTls;
+	private JLabeledTextField tfTlsVerify;
+	private JLabeledTextField tfTlsProtocols;
+	private JLabeledTextField tfExpectPrefix;
+	private JLabeledTextField tfExpectContains;
+	private JLabeledTextField tfExpectAbsent;
+	private JLabeledTextField tfExpectLength;
+	private JLabeledTextField tfStatusField;
+	private JLabeledTextField tfScript;
+	private JLabeledTextField tfResultQueue;
+	private JLabeledTextField tfOverflow;
+	private JLabeledTextField tfResultLog;
+	private JLabeledTextField tfHealthLabel;
+	private JLabeledTextField tfJournal;
+
+	public TCPRingSourceElementGui() {
+		super();
+		init();
+	}
+
+
+	@Override
+	public String getStaticLabel() {
+		return "TCPRing Source Element";//$NON-NLS-1$
+	}
+
+	public String getStaticLabelResource() {
+		return getStaticLabel();
+	}
+
+	public String getLabelResource() {
+		return this.getClass().getSimpleName();
+	}
+
+	/**
+	 * @see org.apache.jmeter.gui.JMeterGUIComponent#createTestElement()
+	 */
+	@Override
+	public TestElement createTestElement() {
+		TCPRingSourceElement config = new TCPRingSourceElement();
+		config.setComment("developed by Epikhin Mikhail");
+		modifyTestElement(config);
+		return config;
+	}
+
+	/**
+	 * Modifies a given TestElement to mirror the data in the gui components.
+	 *
+	 * @see org.apache.jmeter.gui.JMeterGUIComponent#modifyTestElement(TestElement)
+	 */
+	@Override
+	public void modifyTestElement(TestElement c) {
+		if (c instanceof TCPRingSourceElement) {
+			TCPRingSourceElement config = (TCPRingSourceElement) c;
+			config.setSource(tfSource.getText());
+			config.setThreads(tfThreads.getText());
+			config.setSockets(tfSockets.getText());
+			config.setAddresses(tfAddresses.getText());
+			config.setConnectionTimeout(tfConnectionTimeout.getText());
+			config.setSocketTimeout(tfSocketTimeout.getText());
+			config.setBufferSize(tfBufferSize.getText());
+			config.setAllocationFree(tfAllocationFree.getText());
+			config.setProtocol(tfProtocol.getText());
+			config.setPipeline(tfPipeline.getText());
+			config.setBackend(tfBackend.getText());
+			config.setConnectRate(tfConnectRate.getText());
+			config.setMaxConnecting(tfMaxConnecting.getText());
+			config.setReadyPercent(tfReadyPercent.getText());
+			config.setReadyTimeout(tfReadyTimeout.getText());
+			config.setReconnectBackoff(tfReconnectBackoff.getText());
+			config.setReconnectBackoffMax(tfReconnectBackoffMax.getText());
+			config.setBreakerThreshold(tfBreakerThreshold.getText());
+			config.setBreakerOpen(tfBreakerOpen.getText());
+			config.setReuse(tfReuse.getText());
+			config.setMaxRequests(tfMaxRequests.getText());
+			config.setMaxAge(tfMaxAge.getText());
+			config.setBalancing(tfBalancing.getText());
+			config.setMinSockets(tfMinSockets.getText());
+			config.setSpares(tfSpares.getText());
+			config.setSourceAddresses(tfSourceAddresses.getText());
+			config.setTls(tfTls.getText());
+			config.setTlsVerify(tfTlsVerify.getText());
+			config.setTlsProtocols(tfTlsProtocols.getText());
+			config.setExpectPrefix(tfExpectPrefix.getText());
+			config.setExpectContains(tfExpectContains.getText());
+			config.setExpectAbsent(tfExpectAbsent.getText());
+			config.setExpectLength(tfExpectLength.getText());
+			config.setStatusField(tfStatusField.getText());
+			config.setScript(tfScript.getText());
+			config.setResultQueue(tfResultQueue.getText());
+			config.setOverflow(tfOverflow.getText());
+			config.setResultLog(tfResultLog.getText());
+			config.setHealthLabel(tfHealthLabel.getText());
+			config.setJournal(tfJournal.getText());
+		}
+		super.configureTestElement(c);
+	}
+
+	/**
+	 * Implements JMeterGUIComponent.clearGui
+	 */
+	@Override
+	public void clearGui() {
+		super.clearGui();
+
+		tfSource.setText(""); //$NON-NLS-1$
+		tfThreads.setText(""); //$NON-NLS-1$
+		tfSockets.setText(""); //$NON-NLS-1$
+		tfAddresses.setText(""); //$NON-NLS-1$
+		tfConnectionTimeout.setText(""); //$NON-NLS-1$
+		tfSocketTimeout.setText(""); //$NON-NLS-1$
+		tfBufferSize.setText("");
+		tfAllocationFree.setText("");
+		tfProtocol.setText("");
+		tfPipeline.setText("");
+		tfBackend.setText("");
+		tfConnectRate.setText("");
+		tfMaxConnecting.setText("");
+		tfReadyPercent.setText("");
+		tfReadyTimeout.setText("");
+		tfReconnectBackoff.setText("");
+		tfReconnectBackoffMax.setText("");
+		tfBreakerThreshold.setText("");
+		tfBreakerOpen.setText("");
+		tfReuse.setText("");
+		tfMaxRequests.setText("");
+		tfMaxAge.setText("");
+		tfBalancing.setText("");
+		tfMinSockets.setText("");
+		tfSpares.setText("");
+		tfSourceAddresses.setText("");
+		tfTls.setText("");
+		tfTlsVerify.setText("");
+		tfTlsProtocols.setText("");
+		tfExpectPrefix.setText("");
+		tfExpectContains.setText("");
+		tfExpectAbsent.setText("");
+		tfExpectLength.setText("");
+		tfStatusField.setText("");
+		tfScript.setText("");
+		tfResultQueue.setText("");
+		tfOverflow.setText("");
+		tfResultLog.setText("");
+		tfHealthLabel.setText("");
+		tfJournal.setText("");
+	}
+
+	@Override
+	public void configure(TestElement element) {
+		super.configure(element);
+		TCPRingSourceElement config = (TCPRingSourceElement) element;
+		tfSource.setText(config.getSource());
+		tfThreads.setText(config.getThreads());
+		tfSockets.setText(config.getSockets());
+		tfAddresses.setText(config.getAddresses());
+		tfConnectionTimeout.setText(config.getConnectionTimeout());
+		tfSocketTimeout.setText(config.getSocketTimeout());
+		tfBufferSize.setText(config.getBufferSize());
+		tfAllocationFree.setText(config.getAllocationFree());
+		tfProtocol.setText(config.getProtocol());
+		tfPipeline.setText(config.getPipeline());
+		tfBackend.setText(config.getBackend());
+		tfConnectRate.setText(config.getConnectRate());
+		tfMaxConnecting.setText(config.getMaxConnecting());
+		tfReadyPercent.setText(config.getReadyPercent());
+		tfReadyTimeout.setText(config.getReadyTimeout());
+		tfReconnectBackoff.setText(config.getReconnectBackoff());
+		tfReconnectBackoffMax.setText(config.getReconnectBackoffMax());
+		tfBreakerThreshold.setText(config.getBreakerThreshold());
+		tfBreakerOpen.setText(config.getBreakerOpen());
+		tfReuse.setText(config.getReuse());
+		tfMaxRequests.setText(config.getMaxRequests());
+		tfMaxAge.setText(config.getMaxAge());
+		tfBalancing.setText(config.getBalancing());
+		tfMinSockets.setText(config.getMinSockets());
+		tfSpares.setText(config.getSpares());
+		tfSourceAddresses.setText(config.getSourceAddresses());
+		tfTls.setText(config.getTls());
+		tfTlsVerify.setText(config.getTlsVerify());
+		tfTlsProtocols.setText(config.getTlsProtocols());
+		tfExpectPrefix.setText(config.getExpectPrefix());
+		tfExpectContains.setText(config.getExpectContains());
+		tfExpectAbsent.setText(config.getExpectAbsent());
+		tfExpectLength.setText(config.getExpectLength());
+		tfStatusField.setText(config.getStatusField());
+		tfScript.setText(config.getScript());
+		tfResultQueue.setText(config.getResultQueue());
+		tfOverflow.setText(config.getOverflow());
+		tfResultLog.setText(config.getResultLog());
+		tfHealthLabel.setText(config.getHealthLabel());
+		tfJournal.setText(config.getJournal());
+	}
+
+	private void init() {
+		setBorder(makeBorder());
+		setLayout(new VerticalLayout(5, VerticalLayout.BOTH));
+
+		tfSource = new JLabeledTextField("Source");
+		tfThreads = new JLabeledTextField("Threads");
+		tfSockets = new JLabeledTextField("Sockets");
+		tfAddresses = new JLabeledTextField("Addresses");
+		tfConnectionTimeout = new JLabeledTextField("Connection Timeout");
+		tfSocketTimeout = new JLabeledTextField("Socket Timeout");
+		tfBufferSize = new JLabeledTextField("Buffer Size");
+		tfAllocationFree = new JLabeledTextField("Allocation Free");
+		tfProtocol = new JLabeledTextField("Protocol (raw|http)");
+		tfPipeline = new JLabeledTextField("HTTP Pipeline Depth");
+		tfBackend = new JLabeledTextField("Backend (nio|epoll)");
+		tfConnectRate = new JLabeledTextField("Connect Rate (connections/s, 0 = unlimited)");
+		tfMaxConnecting = new JLabeledTextField("Max Concurrent Connects (0 = unlimited)");
+		tfReadyPercent = new JLabeledTextField("Ready Barrier (% connected, 0 = off)");
+		tfReadyTimeout = new JLabeledTextField("Ready Barrier Timeout (ms)");
+		tfReconnectBackoff = new JLabeledTextField("Reconnect Backoff (ms)");
+		tfReconnectBackoffMax = new JLabeledTextField("Reconnect Backoff Max (ms)");
+		tfBreakerThreshold = new JLabeledTextField("Circuit Breaker Threshold (connect failures, 0 = off)");
+		tfBreakerOpen = new JLabeledTextField("Circuit Breaker Open (ms)");
+		tfReuse = new JLabeledTextField("Connection Reuse (reset|drain|churn)");
+		tfMaxRequests = new JLabeledTextField("Max Requests per Connection (0 = unlimited)");
+		tfMaxAge = new JLabeledTextField("Max Connection Age (ms, 0 = unlimited)");
+		tfBalancing = new JLabeledTextField("Balancing (rr|weighted|least|p2c)");
+		tfMinSockets = new JLabeledTextField("Min Sockets (autoscale, 0 = fixed)");
+		tfSpares = new JLabeledTextField("Hot Spare Sockets (on top of Sockets)");
+		tfSourceAddresses = new JLabeledTextField("Source Addresses (ip, ip-ip, ip/cidr; empty = any)");
+		tfTls = new JLabeledTextField("TLS (true|false)");
+		tfTlsVerify = new JLabeledTextField("TLS Verify Certificates (true|false)");
+		tfTlsProtocols = new JLabeledTextField("TLS Protocols (e.g. TLSv1.3,TLSv1.2; empty = default)");
+		tfExpectPrefix = new JLabeledTextField("Expect Response Prefix");
+		tfExpectContains = new JLabeledTextField("Expect Response Contains");
+		tfExpectAbsent = new JLabeledTextField("Expect Response Lacks");
+		tfExpectLength = new JLabeledTextField("Expect Response Length (min-max)");
+		tfStatusField = new JLabeledTextField("Status Field (offset:length[=expected,...])");
+		tfScript = new JLabeledTextField("Script (send:..; expect:..; delay:ms; request)");
+		tfResultQueue = new JLabeledTextField("Result queue per thread");
+		tfOverflow = new JLabeledTextField("Queue overflow (block, fold, drop)");
+		tfResultLog = new JLabeledTextField("Binary result log path (empty = off)");
+		tfHealthLabel = new JLabeledTextField("Generator health sample label (empty = off)");
+		tfJournal = new JLabeledTextField("Connection journal dump at test end (empty = off)");
+		add(makeTitlePanel());
+		add(tfSource);
+		add(tfThreads);
+		add(tfSockets);
+		add(tfAddresses);
+		add(tfConnectionTimeout);
+		add(tfSocketTimeout);
+		add(tfBufferSize);
+		add(tfAllocationFree);
+		add(tfProtocol);
+		add(tfPipeline);
+		add(tfBackend);
+		add(tfConnectRate);
+		add(tfMaxConnecting);
+		add(tfReadyPercent);
+		add(tfReadyTimeout);
+		add(tfReconnectBackoff);
+		add(tfReconnectBackoffMax);
+		add(tfBreakerThreshold);
+		add(tfBreakerOpen);
+		add(tfReuse);
+		add(tfMaxRequests);
+		add(tfMaxAge);
+		add(tfBalancing);
+		add(tfMinSockets);
+		add(tfSpares);
+		add(tfSourceAddresses);
+		add(tfTls);
+		add(tfTlsVerify);
+		add(tfTlsProtocols);
+		add(tfExpectPrefix);
+		add(tfExpectContains);
+		add(tfExpectAbsent);
+		add(tfExpectLength);
+		add(tfStatusField);
+		add(tfScript);
+		add(tfResultQueue);
+		add(tfOverflow);
+		add(tfResultLog);
+		add(tfHealthLabel);
+		add(tfJournal);
+
+		tfSource.setText(TCPRingSourceElement.DEFAULT_SOURCE);
+		tfThreads.setText(String.valueOf(TCPRingSourceElement.DEFAULT_THREADS));
+		tfSockets.setText(String.valueOf(TCPRingSourceElement.DEFAULT_SOCKETS));
+		tfAddresses.setText(TCPRingSourceElement.DEFAULT_ADDRESSES);
+		tfConnectionTimeout.setText(String.valueOf(TCPRingSourceElement.DEFAULT_CONNECTION_TIMEOUT));
+		tfSocketTimeout.setText(String.valueOf(TCPRingSourceElement.DEFAULT_SOCKET_TIMEOUT));
+		tfBufferSize.setText(String.valueOf(TCPRingSourceElement.BUFFER_SIZE));
+		tfAllocationFree.setText(String.valueOf(TCPRingSourceElement.DEFAULT_ALLOCATION_FREE));
+		tfProtocol.setText(TCPRingSourceElement.DEFAULT_PROTOCOL);
+		tfPipeline.setText(String.valueOf(TCPRingSourceElement.DEFAULT_PIPELINE));
+		tfBackend.setText(TCPRingSourceElement.DEFAULT_BACKEND);
+		tfConnectRate.setText(String.valueOf(TCPRingSourceElement.DEFAULT_CONNECT_RATE));
+		tfMaxConnecting.setText(String.valueOf(TCPRingSourceElement.DEFAULT_MAX_CONNECTING));
+		tfReadyPercent.setText(String.valueOf(TCPRingSourceElement.DEFAULT_READY_PERCENT));
+		tfReadyTimeout.setText(String.valueOf(TCPRingSourceElement.DEFAULT_READY_TIMEOUT));
+		tfReconnectBackoff.setText(String.valueOf(TCPRingSourceElement.DEFAULT_RECONNECT_BACKOFF));
+		tfReconnectBackoffMax.setText(String.valueOf(TCPRingSourceElement.DEFAULT_RECONNECT_BACKOFF_MAX));
+		tfBreakerThreshold.setText(String.valueOf(TCPRingSourceElement.DEFAULT_BREAKER_THRESHOLD));
+		tfBreakerOpen.setText(String.valueOf(TCPRingSourceElement.DEFAULT_BREAKER_OPEN));
+		tfReuse.setText(TCPRingSourceElement.DEFAULT_REUSE);
+		tfMaxRequests.setText(String.valueOf(TCPRingSourceElement.DEFAULT_MAX_REQUESTS));
+		tfMaxAge.setText(String.valueOf(TCPRingSourceElement.DEFAULT_MAX_AGE));
+		tfBalancing.setText(TCPRingSourceElement.DEFAULT_BALANCING);
+		tfMinSockets.setText(String.valueOf(TCPRingSourceElement.DEFAULT_MIN_SOCKETS));
+		tfSpares.setText(String.valueOf(TCPRingSourceElement.DEFAULT_SPARES));
+		tfSourceAddresses.setText(TCPRingSourceElement.DEFAULT_SOURCE_ADDRESSES);
+		tfTls.setText(String.valueOf(TCPRingSourceElement.DEFAULT_TLS));
+		tfTlsVerify.setText(String.valueOf(TCPRingSourceElement.DEFAULT_TLS_VERIFY));
+		tfTlsProtocols.setText(TCPRingSourceElement.DEFAULT_TLS_PROTOCOLS);
+		tfExpectPrefix.setText(TCPRingSourceElement.DEFAULT_EXPECT_PREFIX);
+		tfExpectContains.setText(TCPRingSourceElement.DEFAULT_EXPECT_CONTAINS);
+		tfExpectAbsent.setText(TCPRingSourceElement.DEFAULT_EXPECT_ABSENT);
+		tfExpectLength.setText(TCPRingSourceElement.DEFAULT_EXPECT_LENGTH);
+		tfStatusField.setText(TCPRingSourceElement.DEFAULT_STATUS_FIELD);
+		tfScript.setText(TCPRingSourceElement.DEFAULT_SCRIPT);
+		tfResultQueue.setText(String.valueOf(TCPRingSourceElement.DEFAULT_RESULT_QUEUE));
+		tfOverflow.setText(TCPRingSourceElement.DEFAULT_OVERFLOW);
+		tfResultLog.setText(TCPRingSourceElement.DEFAULT_RESULT_LOG);
+		tfHealthLabel.setText(TCPRingSourceElement.DEFAULT_HEALTH_LABEL);
+		tfJournal.setText(TCPRingSourceElement.DEFAULT_JOURNAL);
+	}
+}
\ No newline at end of file
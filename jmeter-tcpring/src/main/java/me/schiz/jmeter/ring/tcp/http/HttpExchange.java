@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp.http;
+
+import me.schiz.jmeter.ring.util.ResultLog;
+import me.schiz.jmeter.ring.util.RingEvents;
+import me.schiz.jmeter.ring.util.Target;
+import org.apache.jmeter.samplers.SampleResult;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests written on one connection and still waiting for their
+ * responses, oldest first, plus the parser for the response in progress.
+ * Guarded by the owning Token's monitor.
+ */
+public class HttpExchange {
+	public final HttpResponseParser parser;
+
+	private final SampleResult[] results;
+	private final Queue[] queues;
+	private final boolean[] noBody;
+	private int head;
+	private int count;
+	private final AtomicInteger outstanding;
+	private final Target<?> target;
+	private final int token;
+
+	//stamps of requests written while a result log or RequestComplete events are on
+	private ResultLog log;
+	private final long[] sent, written, connect;
+	private final int[] sizeOut, tags;
+	private long firstByteTS;
+
+	/**
+	 * Full and therefore held out of the ring; whoever takes the exchange
+	 * below depth releases the token.
+	 */
+	public boolean parked;
+
+	/**
+	 * @param target the connection's target, its outstanding counter
+	 *               counts the requests in flight
+	 */
+	public HttpExchange(int depth, boolean capture, Target<?> target, int token) {
+		this.target = target;
+		this.token = token;
+		this.outstanding = target.getOutstandingCounter();
+		this.parser = new HttpResponseParser(capture);
+		this.results = new SampleResult[Math.max(1, depth)];
+		this.queues = new Queue[results.length];
+		this.noBody = new boolean[results.length];
+		sent = new long[results.length];
+		written = new long[results.length];
+		connect = new long[results.length];
+		sizeOut = new int[results.length];
+		tags = new int[results.length];
+	}
+
+	public void setResultLog(ResultLog log) {
+		this.log = log;
+	}
+
+	public int inFlight() {
+		return count;
+	}
+
+	public boolean isFull() {
+		return count == results.length;
+	}
+
+	public void push(SampleResult result, Queue queue, boolean headRequest) {
+		int i = (head + count) % results.length;
+		results[i] = result;
+		queues[i] = queue;
+		noBody[i] = headRequest;
+		count++;
+		outstanding.incrementAndGet();
+	}
+
+	/**
+	 * Timings of the request pushed last.
+	 */
+	public void stamp(long sentTS, long writtenTS, int size, int tag, long connectTime) {
+		int i = (head + count - 1) % results.length;
+		sent[i] = sentTS;
+		written[i] = writtenTS;
+		sizeOut[i] = size;
+		tags[i] = tag;
+		connect[i] = connectTime;
+	}
+
+	/**
+	 * The first bytes of the oldest request's response have arrived.
+	 */
+	public void begin() {
+		if(count > 0 && sent[head] != 0)	firstByteTS = System.nanoTime();
+	}
+
+	/**
+	 * Logs the oldest request, before it is popped.
+	 */
+	public void log(int sizeIn, int netCode, int protoCode, boolean success) {
+		log(head, sizeIn > 0 ? firstByteTS : 0, sizeIn, netCode, protoCode, success);
+	}
+
+	private void log(int i, long firstByte, int sizeIn, int netCode, int protoCode, boolean success) {
+		if(sent[i] == 0)	return;
+		long now = System.nanoTime();
+		if(log != null)	log.record(sent[i], written[i], firstByte, now, connect[i],
+				sizeOut[i], sizeIn, netCode, protoCode, target.getIndex(), tags[i], success);
+		RingEvents.complete(token, target.getAddress(), sent[i], written[i], firstByte, now, connect[i],
+				sizeIn, protoCode, success, netCode);
+		sent[i] = 0;
+	}
+
+	public SampleResult result() {
+		return results[head];
+	}
+
+	public Queue queue() {
+		return queues[head];
+	}
+
+	public boolean isHeadRequest() {
+		return noBody[head];
+	}
+
+	/**
+	 * Fails every request still in flight, e.g. before the connection is
+	 * replaced.
+	 */
+	public void failAll(String responseCode, String message, int netCode) {
+		while(count > 0) {
+			SampleResult r = result();
+			Queue queue = queue();
+			if(r != null)	log(0, netCode, 0, false);
+			pop();
+			if(r == null)	continue;
+			r.sampleEnd();
+			r.setSuccessful(false);
+			r.setResponseCode(responseCode);
+			r.setResponseMessage(message);
+			while(!queue.offer(r)) {}
+		}
+		parser.abort();
+		parked = false;
+	}
+
+	/**
+	 * Fails every request still in flight but keeps their slots, so their
+	 * responses are still parsed when they arrive and then dropped.
+	 * @return the number of requests failed
+	 */
+	public int discardAll(String responseCode, String message, int netCode) {
+		int n = 0;
+		for(int k = 0; k < count; k++) {
+			int i = (head + k) % results.length;
+			SampleResult r = results[i];
+			if(r == null)	continue;
+			r.sampleEnd();
+			r.setSuccessful(false);
+			r.setResponseCode(responseCode);
+			r.setResponseMessage(message);
+			while(!queues[i].offer(r)) {}
+			log(i, 0, 0, netCode, 0, false);
+			results[i] = null;
+			queues[i] = null;
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return true if the oldest request was failed by discardAll() and its
+	 *         response is only being drained
+	 */
+	public boolean isDiscarded() {
+		return count > 0 && results[head] == null;
+	}
+
+	public void pop() {
+		results[head] = null;
+		queues[head] = null;
+		head = (head + 1) % results.length;
+		count--;
+		outstanding.decrementAndGet();
+	}
+}
@@ -0,0 +1,436 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp.http;
+
+import me.schiz.jmeter.ring.util.ResponseCheck;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental HTTP/1.x response parser. One instance per connection, fed
+ * with whatever each read() returned; parse() stops at the end of a
+ * message so pipelined responses can follow in the same buffer. Nothing
+ * is allocated per message unless capture is on.
+ */
+public class HttpResponseParser {
+	private static final int STATUS = 0;
+	private static final int HEADERS = 1;
+	private static final int BODY = 2;
+	private static final int CHUNK_SIZE = 3;
+	private static final int CHUNK_DATA = 4;
+	private static final int CHUNK_END = 5;
+	private static final int TRAILERS = 6;
+	private static final int UNTIL_CLOSE = 7;
+	private static final int DONE = 8;
+	private static final int ERROR = 9;
+
+	public static final int MAX_LINE = 8192;
+
+	private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CONNECTION = "connection".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CHUNKED = "chunked".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CLOSE = "close".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] KEEP_ALIVE = "keep-alive".getBytes(StandardCharsets.US_ASCII);
+
+	private static final String[] STATUS_CODES = new String[1000];
+	static {
+		for(int i=0;i<STATUS_CODES.length;i++)	STATUS_CODES[i] = String.valueOf(i);
+	}
+
+	private final boolean capture;
+	private final byte[] line = new byte[MAX_LINE];
+	private int lineLength;
+	private boolean lineOverflow;
+
+	private int state = DONE;
+	private boolean noBody;
+	private int statusCode;
+	private int minorVersion;
+	private long contentLength;
+	private boolean chunked;
+	private boolean close;
+	private boolean keepAlive;
+	private long remaining;
+	private long headerBytes;
+	private long bodyBytes;
+
+	private byte[] headers;
+	private int headersLength;
+	private byte[] body;
+	private int bodyLength;
+	private String reason;
+	private ResponseCheck.Matcher check;
+
+	/**
+	 * @param capture keep the header block and the de-chunked body of the
+	 *                current message for getHeaders()/getBody()
+	 */
+	public HttpResponseParser(boolean capture) {
+		this.capture = capture;
+		if(capture) {
+			headers = new byte[1024];
+			body = new byte[4096];
+		}
+	}
+
+	/**
+	 * Runs the checks over the body of every message.
+	 */
+	public void setCheck(ResponseCheck.Matcher check) {
+		this.check = check;
+	}
+
+	public ResponseCheck.Matcher getCheck() {
+		return check;
+	}
+
+	/**
+	 * Starts a new message.
+	 * @param noBody the request was HEAD, so no body follows the headers
+	 */
+	public void begin(boolean noBody) {
+		this.noBody = noBody;
+		state = STATUS;
+		statusCode = 0;
+		minorVersion = 1;
+		reason = null;
+		headersLength = 0;
+		bodyLength = 0;
+		headerBytes = 0L;
+		bodyBytes = 0L;
+		if(check != null)	check.begin();
+		resetHeaders();
+	}
+
+	private void resetHeaders() {
+		lineLength = 0;
+		lineOverflow = false;
+		contentLength = -1L;
+		chunked = false;
+		close = false;
+		keepAlive = false;
+	}
+
+	/**
+	 * Drops the message in progress, the connection is going away.
+	 */
+	public void abort() {
+		state = DONE;
+	}
+
+	public boolean isStarted() {
+		return state != DONE;
+	}
+
+	public boolean isComplete() {
+		return state == DONE;
+	}
+
+	/**
+	 * @return true while reading a body delimited by the end of the connection
+	 */
+	public boolean isUntilClose() {
+		return state == UNTIL_CLOSE;
+	}
+
+	public boolean isError() {
+		return state == ERROR;
+	}
+
+	/**
+	 * Consumes bytes up to the end of the current message.
+	 * @return true when the message is complete
+	 */
+	public boolean parse(ByteBuffer buffer) {
+		while(buffer.hasRemaining()) {
+			switch (state) {
+				case STATUS:
+				case HEADERS:
+				case CHUNK_SIZE:
+				case CHUNK_END:
+				case TRAILERS:
+					if(readLine(buffer))	onLine();
+					break;
+				case BODY:
+				case CHUNK_DATA:
+					int n = (int) Math.min(remaining, buffer.remaining());
+					consumeBody(buffer, n);
+					remaining -= n;
+					if(remaining == 0L)	state = state == BODY ? DONE : CHUNK_END;
+					break;
+				case UNTIL_CLOSE:
+					consumeBody(buffer, buffer.remaining());
+					break;
+				default:
+					return state == DONE;
+			}
+			if(state == DONE)	return true;
+			if(state == ERROR)	return false;
+		}
+		return state == DONE;
+	}
+
+	/**
+	 * Connection was closed by the peer.
+	 * @return true if that ended a read-until-close message
+	 */
+	public boolean finish() {
+		if(state == UNTIL_CLOSE) {
+			state = DONE;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean readLine(ByteBuffer buffer) {
+		while(buffer.hasRemaining()) {
+			byte b = buffer.get();
+			if(state == STATUS || state == HEADERS) {
+				headerBytes++;
+				if(capture)	appendHeader(b);
+			}
+			if(b == '\n') {
+				if(lineLength > 0 && line[lineLength - 1] == '\r')	lineLength--;
+				return true;
+			}
+			if(lineLength < MAX_LINE)	line[lineLength++] = b;
+			else	lineOverflow = true;
+		}
+		return false;
+	}
+
+	private void onLine() {
+		int length = lineLength;
+		boolean overflow = lineOverflow;
+		lineLength = 0;
+		lineOverflow = false;
+		switch (state) {
+			case STATUS:
+				if(length == 0)	return;
+				parseStatusLine(length);
+				break;
+			case HEADERS:
+				if(length == 0)	endOfHeaders();
+				else if(!overflow)	parseHeader(length);
+				break;
+			case CHUNK_SIZE:
+				long size = parseHex(length);
+				if(size < 0)	state = ERROR;
+				else if(size == 0)	state = TRAILERS;
+				else {
+					remaining = size;
+					state = CHUNK_DATA;
+				}
+				break;
+			case CHUNK_END:
+				state = length == 0 ? CHUNK_SIZE : ERROR;
+				break;
+			case TRAILERS:
+				if(length == 0)	state = DONE;
+				break;
+		}
+	}
+
+	private void parseStatusLine(int length) {
+		// HTTP/1.x SSS reason
+		if(length < 12 || line[0] != 'H' || line[1] != 'T' || line[2] != 'T' || line[3] != 'P'
+				|| line[4] != '/' || line[5] != '1' || line[6] != '.' || line[8] != ' ') {
+			state = ERROR;
+			return;
+		}
+		minorVersion = line[7] - '0';
+		int code = 0;
+		for(int i=9;i<12;i++) {
+			int d = line[i] - '0';
+			if(d < 0 || d > 9) {
+				state = ERROR;
+				return;
+			}
+			code = code * 10 + d;
+		}
+		statusCode = code;
+		if(capture) {
+			int offset = Math.min(13, length);
+			reason = new String(line, offset, length - offset, StandardCharsets.ISO_8859_1);
+		}
+		state = HEADERS;
+	}
+
+	private void parseHeader(int length) {
+		int colon = -1;
+		for(int i=0;i<length;i++) {
+			if(line[i] == ':') {
+				colon = i;
+				break;
+			}
+		}
+		if(colon <= 0)	return;
+		int from = colon + 1;
+		while(from < length && (line[from] == ' ' || line[from] == '\t'))	from++;
+		int to = length;
+		while(to > from && (line[to - 1] == ' ' || line[to - 1] == '\t'))	to--;
+
+		if(nameEquals(CONTENT_LENGTH, colon)) {
+			long v = 0L;
+			for(int i=from;i<to;i++) {
+				int d = line[i] - '0';
+				//a length that doesn't fit a long would wrap into a wrong, or negative, one
+				if(d < 0 || d > 9 || v > (Long.MAX_VALUE - d) / 10) {
+					state = ERROR;
+					return;
+				}
+				v = v * 10 + d;
+			}
+			if(from == to) {
+				state = ERROR;
+				return;
+			}
+			contentLength = v;
+		} else if(nameEquals(TRANSFER_ENCODING, colon)) {
+			if(contains(CHUNKED, from, to))	chunked = true;
+		} else if(nameEquals(CONNECTION, colon)) {
+			if(contains(CLOSE, from, to))	close = true;
+			if(contains(KEEP_ALIVE, from, to))	keepAlive = true;
+		}
+	}
+
+	private void endOfHeaders() {
+		if(statusCode >= 100 && statusCode < 200 && statusCode != 101) {
+			//interim response, the real one follows
+			state = STATUS;
+			resetHeaders();
+			return;
+		}
+		if(minorVersion == 0 && !keepAlive)	close = true;
+		if(noBody || statusCode == 204 || statusCode == 304 || statusCode == 101) {
+			state = DONE;
+		} else if(chunked) {
+			state = CHUNK_SIZE;
+		} else if(contentLength >= 0) {
+			remaining = contentLength;
+			state = contentLength == 0 ? DONE : BODY;
+		} else {
+			close = true;
+			state = UNTIL_CLOSE;
+		}
+	}
+
+	private long parseHex(int length) {
+		long v = 0L;
+		int digits = 0;
+		for(int i=0;i<length;i++) {
+			int c = line[i];
+			int d;
+			if(c >= '0' && c <= '9')	d = c - '0';
+			else if(c >= 'a' && c <= 'f')	d = c - 'a' + 10;
+			else if(c >= 'A' && c <= 'F')	d = c - 'A' + 10;
+			else if(c == ';' || c == ' ' || c == '\t')	break;
+			else	return -1L;
+			if(v > Long.MAX_VALUE >>> 4)	return -1L;
+			v = (v << 4) | d;
+			digits++;
+		}
+		return digits == 0 ? -1L : v;
+	}
+
+	private boolean nameEquals(byte[] name, int length) {
+		if(length != name.length)	return false;
+		for(int i=0;i<length;i++) {
+			if((line[i] | 0x20) != name[i])	return false;
+		}
+		return true;
+	}
+
+	private boolean contains(byte[] token, int from, int to) {
+		for(int i=from;i<=to - token.length;i++) {
+			int j = 0;
+			while(j < token.length && (line[i + j] | 0x20) == token[j])	j++;
+			if(j == token.length)	return true;
+		}
+		return false;
+	}
+
+	private void consumeBody(ByteBuffer buffer, int n) {
+		bodyBytes += n;
+		if(check != null)	check.update(buffer, n);
+		if(capture) {
+			ensureBody(bodyLength + n);
+			buffer.get(body, bodyLength, n);
+			bodyLength += n;
+		} else {
+			buffer.position(buffer.position() + n);
+		}
+	}
+
+	private void appendHeader(byte b) {
+		if(headersLength == headers.length)	headers = Arrays.copyOf(headers, headers.length * 2);
+		headers[headersLength++] = b;
+	}
+
+	private void ensureBody(int size) {
+		if(size > body.length)	body = Arrays.copyOf(body, Math.max(size, body.length * 2));
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return status code as a shared String, no allocation
+	 */
+	public String getStatusCodeString() {
+		return statusCode >= 0 && statusCode < STATUS_CODES.length ? STATUS_CODES[statusCode] : String.valueOf(statusCode);
+	}
+
+	public boolean isClose() {
+		return close;
+	}
+
+	public long getHeaderBytes() {
+		return headerBytes;
+	}
+
+	public long getBodyBytes() {
+		return bodyBytes;
+	}
+
+	/**
+	 * Capture mode only.
+	 */
+	public String getReasonPhrase() {
+		return reason;
+	}
+
+	/**
+	 * Capture mode only.
+	 */
+	public String getHeaders() {
+		return new String(headers, 0, headersLength, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Capture mode only.
+	 */
+	public byte[] getBody() {
+		return Arrays.copyOf(body, bodyLength);
+	}
+}
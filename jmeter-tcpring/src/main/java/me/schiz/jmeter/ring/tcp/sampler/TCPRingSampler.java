@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp.sampler;
+
+import me.schiz.jmeter.ring.tcp.Ring;
+import me.schiz.jmeter.ring.tcp.TimeoutTask;
+import me.schiz.jmeter.ring.tcp.Token;
+import me.schiz.jmeter.ring.tcp.config.TCPRingSourceElement;
+import me.schiz.jmeter.ring.util.CompletionCollector;
+import me.schiz.jmeter.ring.util.ResultLog;
+import me.schiz.jmeter.ring.util.ResultPool;
+import me.schiz.jmeter.ring.util.RingEvents;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.AbstractThreadGroup;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterThread;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.threads.ListenerNotifier;
+import org.apache.jmeter.threads.SamplePackage;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+public class TCPRingSampler extends AbstractSampler {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	public static final String SOURCE = "TCPRingSampler.source";
+	public static final String REQUEST = "TCPRingSampler.request";
+	public static final String FAN_OUT = "TCPRingSampler.fanOut";
+
+	private static final int ASYNC_ATTEMPTS = 4;
+
+	public static final ThreadLocal<ByteBuffer> tlRequest = new ThreadLocal<ByteBuffer>();
+	private static final ThreadLocal<ByteBuffer> tlBuffer = new ThreadLocal<ByteBuffer>();
+	private static final ThreadLocal<Encoded> tlEncoded = new ThreadLocal<Encoded>();
+	private static final ThreadLocal<Queue<SampleResult>> tlQueue = new ThreadLocal<Queue<SampleResult>>();
+	private static final ListenerNotifier notifier = new ListenerNotifier();
+
+	//the sampler is cloned per thread, so is its channel
+	private transient CompletionCollector.Channel channel;
+	private transient ResultLog tagged;
+	private transient int tag;
+	//read once, an unset property is a new NullProperty on every read
+	private transient int fanOut = -1;
+
+	//last request encoded into the thread's buffer, http rings frame it
+	private static class Encoded {
+		String request;
+		boolean http;
+		int length;
+	}
+
+	public void setSource(String source) {
+		setProperty(SOURCE, source);
+	}
+	public String getSource() {
+		return getPropertyAsString(SOURCE);
+	}
+	public void setRequest(String request) {
+		setProperty(REQUEST, request);
+	}
+	public String getRequest() {
+		return getPropertyAsString(REQUEST);
+	}
+	/**
+	 * Requests written per sample() in async mode, 0 samples synchronously.
+	 */
+	public void setFanOut(String fanOut) {
+		setProperty(FAN_OUT, fanOut);
+		this.fanOut = -1;
+	}
+	public String getFanOut() {
+		return getPropertyAsString(FAN_OUT);
+	}
+
+	public TCPRingSampler() {
+	}
+
+	@Override
+	public SampleResult sample(Entry entry) {
+		Ring ring = TCPRingSourceElement.get(getSource());
+		SampleResult health = ring.pollHealth();
+		if(health != null)	report(health);
+		if(fanOut == -1)	fanOut = Math.max(0, getPropertyAsInt(FAN_OUT));
+		if(fanOut > 0)	return sampleAsync(ring, fanOut);
+		ResultPool pool = ring.isAllocationFree() ? ResultPool.get() : null;
+		SampleResult newSampleResult = pool != null ? pool.take() : new SampleResult();
+		newSampleResult.setSampleLabel(getName());
+
+		Queue<SampleResult> queue = tlQueue.get();
+		if(queue == null) {
+			queue = ring.newResultQueue();
+			tlQueue.set(queue);
+		}
+
+		int tid = -1;
+
+		ByteBuffer request = request(ring);
+		try{
+			request.flip();
+			long startAcquire = System.currentTimeMillis();
+
+			boolean headRequest = ring.isHttp() && getRequest().startsWith("HEAD ");
+
+			RingEvents.Acquire acquire = RingEvents.beginAcquire();
+			long spins = 0;
+			while(tid == -1) {
+				spins++;
+				tid = ring.acquire();
+				if(tid != -1) {
+					if(!ring.get(tid).isPrepared)	tid = -1;
+					else if(ring.isHttp())	tid = writeHttp(ring, tid, request, newSampleResult, queue, headRequest);
+				} else if(!ring.isAvailable()) {
+					//every target is down, don't wait for a token that won't come
+					SampleResult r = queue.poll();
+					if(r == null) {
+						newSampleResult.sampleStart();
+						newSampleResult.sampleEnd();
+						newSampleResult.setSuccessful(false);
+						newSampleResult.setResponseCode(Ring.CIRCUIT_OPEN);
+						r = newSampleResult;
+					} else if(pool != null) {
+						pool.put(newSampleResult);
+					}
+					if(pool != null)	pool.handOut(r);
+					RingEvents.endAcquire(acquire, -1, null, spins, Ring.CIRCUIT_OPEN);
+					return r;
+				} else {
+					if(System.currentTimeMillis() - startAcquire > 10L) {
+						SampleResult r = queue.poll();
+						if(r != null) {
+							if(pool != null) {
+								pool.put(newSampleResult);
+								pool.handOut(r);
+							}
+							RingEvents.endAcquire(acquire, -1, null, spins, "result ready");
+							return r;
+						}
+					}
+				}
+
+			}
+			RingEvents.endAcquire(acquire, tid, ring.get(tid).target.getAddress(), spins, "token");
+			if(!ring.isHttp())	writeRaw(ring, tid, request, newSampleResult, queue);
+
+		} catch (Exception e) {
+			log.error("Exception", e);
+			newSampleResult.setSuccessful(false);
+			newSampleResult.setResponseCode(e.getClass().getName());
+			while(!queue.offer(newSampleResult)){}
+			if(tid != -1)	ring.reset(tid, "exception");
+		} finally {
+			newSampleResult.setRequestHeaders(getRequest());
+		}
+
+		SampleResult sampleResult = queue.poll();
+		if(pool != null)	pool.handOut(sampleResult);
+		return sampleResult;
+	}
+
+	/**
+	 * Writes fanOut requests and returns without waiting for any of them:
+	 * their results reach the listeners through the thread group's
+	 * CompletionCollector. A request that finds no free token fails at
+	 * once rather than waiting for one.
+	 * @return null, JMeter skips the sample
+	 */
+	private SampleResult sampleAsync(Ring ring, int fanOut) {
+		CompletionCollector.Channel queue = channel();
+		ByteBuffer request = request(ring);
+		request.flip();
+		boolean headRequest = ring.isHttp() && getRequest().startsWith("HEAD ");
+		for(int i = 0; i < fanOut; i++) {
+			SampleResult result = new SampleResult();
+			result.setSampleLabel(getName());
+			result.setRequestHeaders(getRequest());
+			int tid = -1;
+			try {
+				for(int attempt = 0; tid == -1 && attempt < ASYNC_ATTEMPTS && ring.isAvailable(); attempt++) {
+					tid = ring.acquire();
+					if(tid == -1)	continue;
+					request.rewind();
+					if(!ring.get(tid).isPrepared)	tid = -1;
+					else if(ring.isHttp())	tid = writeHttp(ring, tid, request, result, queue, headRequest);
+					else	writeRaw(ring, tid, request, result, queue);
+				}
+				if(tid == -1) {
+					result.sampleStart();
+					result.sampleEnd();
+					result.setSuccessful(false);
+					result.setResponseCode(ring.isAvailable() ? Ring.NO_FREE_TOKEN : Ring.CIRCUIT_OPEN);
+					queue.offer(result);
+				}
+			} catch (Exception e) {
+				log.error("Exception", e);
+				result.setSuccessful(false);
+				result.setResponseCode(e.getClass().getName());
+				queue.offer(result);
+				if(tid != -1)	ring.reset(tid, "exception");
+			}
+		}
+		return null;
+	}
+
+	private CompletionCollector.Channel channel() {
+		if(channel != null)	return channel;
+		JMeterContext context = getThreadContext();
+		AbstractThreadGroup group = context.getThreadGroup();
+		SamplePackage pack = context.getVariables() == null ? null :
+				(SamplePackage) context.getVariables().getObject(JMeterThread.PACKAGE_OBJECT);
+		channel = CompletionCollector.get(group == null ? "" : group.getName())
+				.channel(pack == null ? null : pack.getSampleListeners(), context.getVariables());
+		return channel;
+	}
+
+	/**
+	 * Hands a result to the thread's listeners besides the one sample()
+	 * returns.
+	 */
+	private void report(SampleResult result) {
+		JMeterContext context = getThreadContext();
+		JMeterVariables vars = context.getVariables();
+		SamplePackage pack = vars == null ? null : (SamplePackage) vars.getObject(JMeterThread.PACKAGE_OBJECT);
+		if(pack == null || pack.getSampleListeners().isEmpty())	return;
+		AbstractThreadGroup group = context.getThreadGroup();
+		try {
+			notifier.notifyListeners(new SampleEvent(result, group == null ? "" : group.getName(), vars), pack.getSampleListeners());
+		} catch (RuntimeException e) {
+			log.error("listener failed on " + result.getSampleLabel(), e);
+		}
+	}
+
+	/**
+	 * @return the thread's request, not flipped yet
+	 */
+	private ByteBuffer request(Ring ring) {
+		ByteBuffer request = tlRequest.get();
+		if(request != null)	return request;
+		request = tlBuffer.get();
+		if(request == null) {
+			request = ByteBuffer.allocateDirect(8*1024*1024);
+			tlBuffer.set(request);
+		}
+		//the encoded request is still in the buffer unless it changed
+		String req = getRequest();
+		boolean http = ring.isHttp();
+		Encoded encoded = tlEncoded.get();
+		if(encoded == null) {
+			encoded = new Encoded();
+			tlEncoded.set(encoded);
+		}
+		request.clear();
+		if(http == encoded.http && req.equals(encoded.request)) {
+			request.position(encoded.length);
+		} else {
+			request.put((http ? toHttp(req) : req).getBytes());
+			encoded.request = req;
+			encoded.http = http;
+			encoded.length = request.position();
+		}
+		return request;
+	}
+
+	private void writeRaw(Ring ring, int tid, ByteBuffer request, SampleResult result, Queue<SampleResult> queue) {
+		Token t = ring.get(tid);
+		t.isPrepared = false;
+		t.tag = tag(ring);
+		result.setSuccessful(true);
+		t.sampleResult = result;
+		t.queue = queue;
+		result.sampleStart();
+		try {
+			if(t.script != null)	ring.runScript(t.id, request);
+			else	ring.write(t.id, request);
+		} catch (IOException e) {
+			result.setSuccessful(false);
+			log.warn("IOException", e);
+			ring.reset(tid, "ioexception on write");
+		}
+	}
+
+	/**
+	 * @return tid, or -1 if the token's connection is being replaced and
+	 *         another token has to be acquired
+	 */
+	private int writeHttp(Ring ring, int tid, ByteBuffer request, SampleResult result, Queue<SampleResult> queue, boolean headRequest) {
+		result.setSuccessful(true);
+		ring.get(tid).tag = tag(ring);
+		try {
+			if(!ring.writeHttp(tid, request, result, queue, headRequest))	return -1;
+		} catch (IOException e) {
+			//the reset fails the request along with the rest of the pipeline
+			log.warn("IOException", e);
+			ring.reset(tid, "ioexception on write");
+		}
+		return tid;
+	}
+
+	/**
+	 * @return the sampler's tag in the ring's result log
+	 */
+	private int tag(Ring ring) {
+		ResultLog resultLog = ring.getResultLog();
+		if(resultLog == null)	return 0;
+		if(resultLog != tagged) {
+			tag = resultLog.tag(getName());
+			tagged = resultLog;
+		}
+		return tag;
+	}
+
+	/**
+	 * Requests typed into the GUI usually have bare LF line ends and no
+	 * blank line after the headers.
+	 */
+	static String toHttp(String request) {
+		String r = request.indexOf('\r') < 0 ? request.replace("\n", "\r\n") : request;
+		if(r.indexOf("\r\n\r\n") < 0)	r = r.endsWith("\r\n") ? r + "\r\n" : r + "\r\n\r\n";
+		return r;
+	}
+}
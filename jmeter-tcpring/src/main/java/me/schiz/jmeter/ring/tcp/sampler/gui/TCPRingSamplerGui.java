@@ -44,6 +44,7 @@ public class TCPRingSamplerGui extends AbstractSamplerGui {
 
 	private JTextField      tfSource;
 	private JTextArea   	taRequest;
+	private JTextField      tfFanOut;
 
 	public TCPRingSamplerGui() {
 		super();
@@ -80,6 +81,7 @@ public class TCPRingSamplerGui extends AbstractSamplerGui {
 
 			tfSource.setText(sampler.getSource());
 			taRequest.setText(sampler.getRequest());
+			tfFanOut.setText(sampler.getFanOut());
 		}
 	}
 
@@ -93,6 +95,7 @@ public class TCPRingSamplerGui extends AbstractSamplerGui {
 			sampler.setComment(tfComments.getText());
 			sampler.setSource(tfSource.getText());
 			sampler.setRequest(taRequest.getText());
+			sampler.setFanOut(tfFanOut.getText());
 		}
 	}
 	private void initFields() {
@@ -101,6 +104,7 @@ public class TCPRingSamplerGui extends AbstractSamplerGui {
 
 		this.tfSource.setText(TCPRingSourceElement.DEFAULT_SOURCE);
 		this.taRequest.setText("echo");
+		this.tfFanOut.setText("0");
 	}
 	private void init() {
 		setLayout(new BorderLayout(0, 5));
@@ -137,6 +141,8 @@ public class TCPRingSamplerGui extends AbstractSamplerGui {
 		addToPanel(jpGeneralPanel, editConstraints, 1, 0, tfSource = new JTextField(32));
 		addToPanel(jpGeneralPanel, labelConstraints, 0, 1, new JLabel("Request: ", JLabel.RIGHT));
 		addToPanel(jpGeneralPanel, editConstraints, 1, 1, taRequest = new JTextArea());
+		addToPanel(jpGeneralPanel, labelConstraints, 0, 2, new JLabel("Async fan-out (0 = sync): ", JLabel.RIGHT));
+		addToPanel(jpGeneralPanel, editConstraints, 1, 2, tfFanOut = new JTextField(8));
 
 
 		taRequest.setColumns(32);
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp.tls;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client TLS settings of a ring. Engines are created per host and port, so
+ * the JDK session cache of the one SSLContext resumes sessions across
+ * reconnects. Record buffers are pooled and go back on release.
+ */
+public class TlsContext {
+	private final SSLContext context;
+	private final String[] protocols;
+	private final boolean verify;
+	final int packetSize;
+	final int applicationSize;
+
+	private final ConcurrentLinkedQueue<byte[]> packetBuffers = new ConcurrentLinkedQueue<byte[]>();
+	private final ConcurrentLinkedQueue<byte[]> applicationBuffers = new ConcurrentLinkedQueue<byte[]>();
+
+	private final AtomicLong handshakes = new AtomicLong(0);
+	private final AtomicLong resumed = new AtomicLong(0);
+	private final AtomicLong failures = new AtomicLong(0);
+	private final LongAdder handshakeNanos = new LongAdder();
+
+	/**
+	 * @param verify check the server certificate and host name, off trusts
+	 *               any certificate, self-signed included
+	 * @param protocols e.g. "TLSv1.3,TLSv1.2", null or empty for the JDK defaults
+	 */
+	public TlsContext(boolean verify, String protocols) throws GeneralSecurityException {
+		this.verify = verify;
+		this.protocols = protocols == null || protocols.trim().isEmpty() ? null : protocols.trim().split("[\\s,]+");
+		this.context = SSLContext.getInstance("TLS");
+		context.init(null, verify ? null : new TrustManager[] {new TrustAll()}, null);
+		SSLEngine probe = context.createSSLEngine();
+		this.packetSize = probe.getSession().getPacketBufferSize();
+		this.applicationSize = probe.getSession().getApplicationBufferSize();
+	}
+
+	public TlsSession newSession(SocketAddress target) {
+		SSLEngine engine;
+		if(target instanceof InetSocketAddress) {
+			InetSocketAddress address = (InetSocketAddress) target;
+			engine = context.createSSLEngine(address.getHostString(), address.getPort());
+		} else {
+			//no host name to verify or to cache the session under
+			engine = context.createSSLEngine();
+		}
+		engine.setUseClientMode(true);
+		if(protocols != null)	engine.setEnabledProtocols(protocols);
+		if(verify) {
+			SSLParameters parameters = engine.getSSLParameters();
+			parameters.setEndpointIdentificationAlgorithm("HTTPS");
+			engine.setSSLParameters(parameters);
+		}
+		return new TlsSession(this, engine);
+	}
+
+	byte[] takePacketBuffer() {
+		byte[] b = packetBuffers.poll();
+		return b != null ? b : new byte[packetSize];
+	}
+
+	byte[] takeApplicationBuffer() {
+		byte[] b = applicationBuffers.poll();
+		return b != null ? b : new byte[applicationSize];
+	}
+
+	void give(byte[] b) {
+		if(b.length == packetSize)	packetBuffers.offer(b);
+		else if(b.length == applicationSize)	applicationBuffers.offer(b);
+	}
+
+	void handshakeDone(long nanos, boolean resumption) {
+		handshakes.incrementAndGet();
+		if(resumption)	resumed.incrementAndGet();
+		handshakeNanos.add(nanos);
+	}
+
+	void handshakeFailed() {
+		failures.incrementAndGet();
+	}
+
+	public long getHandshakes() {
+		return handshakes.get();
+	}
+
+	/**
+	 * @return handshakes that resumed a cached session
+	 */
+	public long getResumed() {
+		return resumed.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public double getMeanHandshakeMillis() {
+		long n = handshakes.get();
+		return n == 0 ? 0.0 : handshakeNanos.sum() / 1e6 / n;
+	}
+
+	@Override
+	public String toString() {
+		return "tls handshakes:\t" + getHandshakes() + "\tresumed:\t" + getResumed() + "\tfailed:\t" + getFailures() +
+				"\tmean(ms):\t" + String.format("%.2f", getMeanHandshakeMillis());
+	}
+
+	private static class TrustAll extends X509ExtendedTrustManager {
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {}
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {}
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {}
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {}
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.tcp.tls;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.nio.ByteBuffer;
+
+/**
+ * SSLEngine of one connection. The transport feeds it what the socket
+ * delivered and writes out what it queued: handshake records and
+ * encrypted requests. Delegated tasks run inline on the calling thread.
+ * Event loop and sampler threads both use it, every method is
+ * synchronized.
+ */
+public class TlsSession {
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final TlsContext context;
+	private final SSLEngine engine;
+	private byte[] netInArray, netOutArray, appInArray;
+	private ByteBuffer netIn, netOut, appIn;
+
+	private boolean handshaking;
+	private boolean closed;
+	private long handshakeStartTS;
+	private long handshakeStartMillis;
+	private long handshakeTime;
+
+	TlsSession(TlsContext context, SSLEngine engine) {
+		this.context = context;
+		this.engine = engine;
+		netInArray = context.takePacketBuffer();
+		netOutArray = context.takePacketBuffer();
+		appInArray = context.takeApplicationBuffer();
+		//own buffer objects over pooled arrays, a late reader of a released session can't move ours
+		netIn = ByteBuffer.wrap(netInArray);
+		netOut = ByteBuffer.wrap(netOutArray);
+		appIn = ByteBuffer.wrap(appInArray);
+	}
+
+	/**
+	 * Starts the handshake, the ClientHello is queued for sending.
+	 */
+	public synchronized void begin() throws SSLException {
+		check();
+		handshakeStartTS = System.nanoTime();
+		handshakeStartMillis = System.currentTimeMillis();
+		handshaking = true;
+		engine.beginHandshake();
+		step();
+	}
+
+	public synchronized boolean isHandshaking() {
+		return handshaking;
+	}
+
+	/**
+	 * @return nanoseconds the handshake took, 0 until it is done
+	 */
+	public synchronized long getHandshakeTime() {
+		return handshakeTime;
+	}
+
+	/**
+	 * @return the peer sent close_notify
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Encrypts the application data and queues the records for sending.
+	 */
+	public synchronized void wrap(ByteBuffer app) throws SSLException {
+		check();
+		while(app.hasRemaining())	wrapOnce(app);
+	}
+
+	/**
+	 * Decrypts what the socket delivered, keeping partial records for the
+	 * next call, and advances the handshake.
+	 * @return the application data, flipped, valid until the next call
+	 */
+	public synchronized ByteBuffer unwrap(ByteBuffer data) throws SSLException {
+		check();
+		if(netIn.remaining() < data.remaining())	netIn = grow(netIn, netIn.position() + data.remaining());
+		netIn.put(data);
+		netIn.flip();
+		appIn.clear();
+		try {
+			while(netIn.hasRemaining() && !closed) {
+				SSLEngineResult r = engine.unwrap(netIn, appIn);
+				if(r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+					appIn = grow(appIn, appIn.position() + engine.getSession().getApplicationBufferSize());
+					continue;
+				}
+				if(r.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW)	break;
+				if(r.getStatus() == SSLEngineResult.Status.CLOSED)	closed = true;
+				step();
+				if(r.bytesConsumed() == 0 && r.bytesProduced() == 0
+						&& engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_UNWRAP)	break;
+			}
+		} catch (SSLException e) {
+			if(handshaking)	context.handshakeFailed();
+			throw e;
+		} finally {
+			netIn.compact();
+		}
+		appIn.flip();
+		return appIn;
+	}
+
+	/**
+	 * @return the queued records, flipped; call sent() once they are written
+	 */
+	public synchronized ByteBuffer outbound() {
+		netOut.flip();
+		return netOut;
+	}
+
+	public synchronized void sent() {
+		netOut.clear();
+	}
+
+	/**
+	 * Gives the buffers back to the pool, the session is unusable afterwards.
+	 */
+	public synchronized void release() {
+		if(netInArray == null)	return;
+		engine.closeOutbound();
+		context.give(netInArray);
+		context.give(netOutArray);
+		context.give(appInArray);
+		netInArray = netOutArray = appInArray = null;
+		netIn = netOut = appIn = EMPTY;
+	}
+
+	private void check() throws SSLException {
+		if(netInArray == null)	throw new SSLException("tls session released");
+	}
+
+	private void step() throws SSLException {
+		while(true) {
+			switch (engine.getHandshakeStatus()) {
+				case NEED_TASK:
+					Runnable task;
+					while((task = engine.getDelegatedTask()) != null)	task.run();
+					break;
+				case NEED_WRAP:
+					wrapOnce(EMPTY);
+					if(closed || engine.isOutboundDone())	return;
+					break;
+				case NOT_HANDSHAKING:
+				case FINISHED:
+					if(handshaking)	finishHandshake();
+					return;
+				default:
+					return;
+			}
+		}
+	}
+
+	private void finishHandshake() {
+		handshaking = false;
+		handshakeTime = Math.max(1, System.nanoTime() - handshakeStartTS);
+		//a session the cache handed out again was created before this handshake began
+		SSLSession session = engine.getSession();
+		context.handshakeDone(handshakeTime, session.getCreationTime() < handshakeStartMillis);
+	}
+
+	private void wrapOnce(ByteBuffer src) throws SSLException {
+		SSLEngineResult r = engine.wrap(src, netOut);
+		if(r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+			netOut = grow(netOut, netOut.position() + engine.getSession().getPacketBufferSize());
+		else if(r.getStatus() == SSLEngineResult.Status.CLOSED && src.hasRemaining())	throw new SSLException("tls session closed");
+	}
+
+	private static ByteBuffer grow(ByteBuffer b, int capacity) {
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(capacity, b.capacity() * 2));
+		b.flip();
+		bigger.put(b);
+		return bigger;
+	}
+}
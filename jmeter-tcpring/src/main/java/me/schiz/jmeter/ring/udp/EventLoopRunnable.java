@@ -18,81 +18,77 @@
 
 package me.schiz.jmeter.ring.udp;
 
-import org.apache.commons.codec.binary.Hex;
+import me.schiz.jmeter.ring.util.SelectorLoop;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
 
 import java.io.IOException;
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.nio.charset.Charset;
-import java.util.Iterator;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
 
-public class EventLoopRunnable implements Runnable {
+/**
+ * A ring's share of a SelectorLoop: its keys and registrations on that
+ * loop. run() is the ring's part of each turn of the loop.
+ */
+public class EventLoopRunnable implements Runnable, Consumer<SelectionKey> {
 	private static final Logger log = LoggingManager.getLoggerForClass();
 	private Ring ring;
+	private ResponseHandler handler;
+	private SelectorLoop loop;
 	private Selector selector;
 	private ByteBuffer byteBuffer;
 	private ArrayBlockingQueue<KeyValue> registerQueue;
+	private TimeoutWheel timeoutWheel;
 
-	public final static int POLL_TIMEOUT = 10; //10ms
+	public final static int POLL_TIMEOUT = SelectorLoop.POLL_TIMEOUT;
 	public final static int REGS_PER_ITERATION = 256;
+	public final static int WHEEL_SIZE = 1024;
 
-	public EventLoopRunnable(Ring ring) {
+	public EventLoopRunnable(Ring ring, SelectorLoop loop) {
 		this.ring = ring;
+		this.handler = ring.getHandler();
+		this.loop = loop;
+		this.selector = loop.selector();
 		byteBuffer = ByteBuffer.allocateDirect(ring.getBufferSize());
 		registerQueue = new ArrayBlockingQueue<KeyValue>(REGS_PER_ITERATION*4);
-
-		try {
-			this.selector = Selector.open();
-		} catch (IOException e) {
-			log.error("Can't open selector", e);
-		}
+		timeoutWheel = new TimeoutWheel(POLL_TIMEOUT, WHEEL_SIZE);
+		loop.add(this);
 	}
 
 	@Override
 	public void run() {
-		log.info("EventLoop started in " + Thread.currentThread().getName());
-		int events_count, register_count;
-		while (true) {
-			try {
-				if (!selector.isOpen()) break;
-				try {
-					events_count = selector.select(POLL_TIMEOUT);
-				} catch(ClosedSelectorException e) {
-					log.error("Selector is closed", e);
-					break;
-				}
-				register_count = registerQueue.size();
-				if (register_count > 0)	registerCallback(register_count);
-				if (events_count == 0)	continue;
-
-				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
-				while (it.hasNext()) {
-					SelectionKey key = it.next();
-					DatagramChannel dc = (DatagramChannel) key.channel();
-
-					try{
-						if (key.isReadable())	readCallback(dc);
-					} catch (CancelledKeyException e) {
-						log.error("cancelled key exception", e);
-						Token t =  ring.get(dc);
-						if(t != null) {
-							t.lock.lock();
-							ring.reset(t.id);
-							t.lock.unlock();
-						}
-					}
-					it.remove();
-				}
-			} catch (IOException e) {
-				log.error("IOException", e);
-				break;
+		if (ring.isAllocationFree())	timeoutWheel.expire(handler);
+		int register_count = registerQueue.size();
+		if (register_count > 0)	registerCallback(register_count);
+	}
+
+	public TimeoutWheel getTimeoutWheel() {
+		return timeoutWheel;
+	}
+
+	@Override
+	public void accept(SelectionKey key) {
+		//the loop outlives the ring, its keys go with it
+		if(ring.isDestroyed()) {
+			key.cancel();
+			return;
+		}
+		DatagramChannel dc = (DatagramChannel) key.channel();
+		try{
+			if (key.isReadable())	readCallback(dc);
+		} catch (CancelledKeyException e) {
+			log.error("cancelled key exception", e);
+			Token t =  ring.get(dc);
+			if(t != null) {
+				t.lock();
+				ring.reset(t.id, "cancelled key");
+				t.unlock();
 			}
 		}
-		byteBuffer.clear();
-		log.info("EventLoop in " + Thread.currentThread().getName() + " has stopped");
 	}
 
 	public void register(DatagramChannel dc, int ops) throws InterruptedException {
@@ -100,38 +96,18 @@ public class EventLoopRunnable implements Runnable {
 		if(registerQueue.size() >= REGS_PER_ITERATION / 2)	selector.wakeup();
 	}
 
-	private void readCallback(DatagramChannel dc) throws IOException {
+	private void readCallback(DatagramChannel dc) {
 		Token t = ring.get(dc);
-		t.lock.lock();
+		if(t == null)	return;
 		try{
-			t.remote = dc.receive(byteBuffer);
-			//EOF
-			if (t != null) {
-				if(t.timeout != null)	t.timeout.cancel();
-			}
+			SocketAddress remote = null;
+			if(ring.isAllocationFree() || ring.isDns())	dc.read(byteBuffer);
+			else	remote = dc.receive(byteBuffer);
 			byteBuffer.flip();
-			if(t.sampleResult != null) {
-				t.sampleResult.sampleEnd();
-				byte[] res = Charset.defaultCharset().decode(byteBuffer).toString().getBytes();
-				if(t.ishex) {
-					t.sampleResult.setResponseData(String.valueOf(Hex.encodeHex(res, true)).getBytes());
-				} else {
-					t.sampleResult.setResponseData(res);
-				}
-
-				while(!t.queue.offer(t.sampleResult)) {}
-				t.sampleResult = null;
-				t.queue = null;
-			} else {
-				log.warn("have response without request");
-			}
-			ring.release(t.id);
+			handler.read(t, byteBuffer, remote);
 		} catch (IOException e) {
-			t.sampleResult.setResponseCode(e.toString());
-			t.sampleResult.setSuccessful(false);
-			while(!t.queue.offer(t.sampleResult)) {}
+			handler.readFailed(t, e);
 		} finally {
-			t.lock.unlock();
 			byteBuffer.clear();
 		}
 	}
@@ -144,7 +120,7 @@ public class EventLoopRunnable implements Runnable {
 				DatagramChannel dc = (DatagramChannel)kv.key;
 				int ops = (Integer)kv.value;
 				try{
-					dc.register(selector, ops);
+					dc.register(selector, ops, this);
 				} catch (ClosedSelectorException e) {
 					log.error("Selector is closed", e);
 					break;
@@ -153,18 +129,14 @@ public class EventLoopRunnable implements Runnable {
 				} catch (ClosedChannelException e) {
 					log.warn("", e);
 					Token t =  ring.get(dc);
-					if(t != null)	ring.reset(t.id);
+					if(t != null)	ring.reset(t.id, "channel closed");
 				}
 			}
 		}
 	}
 
 	public void stop() {
-		try {
-			if(selector.isOpen())	selector.close();
-		} catch (IOException e) {
-			log.error("can't stop selector", e);
-		}
+		loop.remove(this);
 	}
 
 	private class KeyValue {
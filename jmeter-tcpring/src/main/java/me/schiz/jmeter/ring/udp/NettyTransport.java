@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.udp;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.ScheduledFuture;
+import me.schiz.jmeter.ring.util.EventLoops;
+import me.schiz.jmeter.ring.util.SourceAddressPool;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Native epoll backend: the ring's sockets live on the shared Netty epoll
+ * event loops instead of NIO selectors. Token #i is always served by the
+ * ring's loop i % threads.
+ */
+public class NettyTransport {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final AttributeKey<Token> TOKEN = AttributeKey.valueOf("ring.udp.token");
+
+	private final ResponseHandler handler;
+	private final EventLoop[] loops;
+	private final Bootstrap[] bootstraps;
+	private final TimeoutWheel[] wheels;
+	private final ScheduledFuture<?>[] ticks;
+	private final SourceAddressPool sources;
+	private volatile boolean closed = false;
+
+	public static boolean isAvailable() {
+		return Epoll.isAvailable();
+	}
+
+	public static Throwable unavailabilityCause() {
+		return Epoll.unavailabilityCause();
+	}
+
+	/**
+	 * Runs on the shared loops first .. first + threads - 1.
+	 */
+	public NettyTransport(Ring ring, EventLoops shared, int first, int threads) {
+		this.handler = ring.getHandler();
+		this.sources = ring.getSourceAddresses();
+		this.loops = new EventLoop[threads];
+		this.bootstraps = new Bootstrap[threads];
+		this.wheels = new TimeoutWheel[threads];
+		this.ticks = new ScheduledFuture<?>[threads];
+
+		int i;
+		for(i = 0; i < threads; i++)	loops[i] = shared.epollLoop(first + i);
+
+		Inbound inbound = new Inbound();
+		for(i = 0; i < threads; i++) {
+			bootstraps[i] = new Bootstrap()
+					.group(loops[i])
+					.channel(EpollDatagramChannel.class)
+					.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+					.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(ring.getBufferSize()))
+					.option(ChannelOption.SO_SNDBUF, ring.getBufferSize())
+					.option(ChannelOption.SO_RCVBUF, ring.getBufferSize())
+					.option(ChannelOption.SO_REUSEADDR, true)
+					.option(EpollChannelOption.SO_REUSEPORT, true)
+					.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+					.handler(inbound);
+			final TimeoutWheel wheel = new TimeoutWheel(EventLoopRunnable.POLL_TIMEOUT, EventLoopRunnable.WHEEL_SIZE);
+			wheels[i] = wheel;
+			if(ring.isAllocationFree()) {
+				ticks[i] = loops[i].scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						wheel.expire(handler);
+					}
+				}, EventLoopRunnable.POLL_TIMEOUT, EventLoopRunnable.POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Opens the token's socket and connects it to the token's target.
+	 * Connecting a datagram socket completes at once, so this blocks.
+	 */
+	public void connect(Token t) throws IOException {
+		ChannelFuture registered = bootstraps[t.id % loops.length].register().syncUninterruptibly();
+		Channel channel = registered.channel();
+		channel.attr(TOKEN).set(t);
+		t.channel = channel;
+		for(int k = 0; sources != null && t.source == -1; k++) {
+			if(k == sources.size() || (t.source = sources.acquire()) == -1)
+				throw new IOException("all " + sources.size() + " source addresses are out of ports");
+			if(!channel.bind(sources.get(t.source)).awaitUninterruptibly().isSuccess()) {
+				sources.exhausted(t.source);
+				sources.release(t.source);
+				t.source = -1;
+			}
+		}
+		ChannelFuture connected = channel.connect(t.targetAddress).syncUninterruptibly();
+		if(!connected.isSuccess())	throw new IOException("can't connect token #" + t.id, connected.cause());
+	}
+
+	public void write(Token t, ByteBuffer buffer) throws IOException {
+		Channel channel = t.channel;
+		if(channel == null || !channel.isActive())	throw new IOException("channel of token #" + t.id + " is not active");
+		ByteBuf buf = channel.alloc().directBuffer(buffer.remaining());
+		buf.writeBytes(buffer);
+		channel.writeAndFlush(buf, channel.voidPromise());
+	}
+
+	public TimeoutWheel getTimeoutWheel(Token t) {
+		return wheels[t.id % wheels.length];
+	}
+
+	public void shutdown() {
+		closed = true;
+		//the loops are shared, only this ring's work leaves them
+		for(ScheduledFuture<?> tick : ticks) {
+			if(tick != null)	tick.cancel(false);
+		}
+	}
+
+	@ChannelHandler.Sharable
+	private class Inbound extends ChannelInboundHandlerAdapter {
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			DatagramPacket packet = (DatagramPacket) msg;
+			try {
+				Token t = closed ? null : ctx.channel().attr(TOKEN).get();
+				if(t != null)	handler.read(t, packet.content().nioBuffer(), packet.sender());
+			} finally {
+				packet.release();
+			}
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			Token t = closed ? null : ctx.channel().attr(TOKEN).get();
+			if(t == null)	return;
+			handler.readFailed(t, cause instanceof Exception ? (Exception) cause : new IOException(cause));
+		}
+	}
+}
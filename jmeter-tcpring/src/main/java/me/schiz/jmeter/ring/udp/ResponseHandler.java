@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.udp;
+
+import me.schiz.jmeter.ring.udp.dns.DnsCodec;
+import me.schiz.jmeter.ring.util.ResultLog;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Queue;
+
+/**
+ * What happens to a token when a datagram arrives or its reply times out.
+ * Transport independent: called by the NIO event loops and by the Netty
+ * backend.
+ */
+public class ResponseHandler implements TimeoutWheel.Callback {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private final static String ERROR_502 = "502";
+
+	private final Ring ring;
+
+	public ResponseHandler(Ring ring) {
+		this.ring = ring;
+	}
+
+	/**
+	 * @param data the datagram, flipped
+	 * @param remote its sender, only needed outside allocation-free and DNS modes
+	 */
+	public void read(Token t, ByteBuffer data, SocketAddress remote) {
+		t.lock();
+		try{
+			t.remote = remote;
+			if(ring.isDns() && (t.sampleResult == null || !DnsCodec.isReplyTo(data, t.dnsId))) {
+				//late reply to a query that already timed out, keep waiting for ours
+				ring.staleReply();
+				return;
+			}
+			ring.cancelTimeout(t);
+			if(t.sampleResult != null && ring.isDns()) {
+				dnsCallback(t, data);
+			} else if(t.sampleResult != null && ring.isAllocationFree()) {
+				t.sampleResult.sampleEnd();
+				t.sampleResult.setBytes(data.remaining());
+				ring.logResult(t, ResultLog.NET_OK, 0, Math.max(1, data.remaining()), true);
+				done(t, t.sampleResult, true);
+				while(!t.queue.offer(t.sampleResult)) {}
+				t.sampleResult = null;
+				t.queue = null;
+			} else if(t.sampleResult != null) {
+				t.sampleResult.sampleEnd();
+				ring.logResult(t, ResultLog.NET_OK, 0, Math.max(1, data.remaining()), true);
+				byte[] res = Charset.defaultCharset().decode(data).toString().getBytes();
+				if(t.ishex) {
+					t.sampleResult.setResponseData(String.valueOf(Hex.encodeHex(res, true)).getBytes());
+				} else {
+					t.sampleResult.setResponseData(res);
+				}
+				done(t, t.sampleResult, true);
+				while(!t.queue.offer(t.sampleResult)) {}
+				t.sampleResult = null;
+				t.queue = null;
+			} else {
+				log.warn("have response without request");
+			}
+			ring.release(t.id);
+		} finally {
+			t.unlock();
+		}
+	}
+
+	private void dnsCallback(Token t, ByteBuffer data) {
+		SampleResult r = t.sampleResult;
+		r.sampleEnd();
+		int rcode = DnsCodec.getRcode(data);
+		int answers = DnsCodec.getAnswerCount(data);
+		if(DnsCodec.isTruncated(data)) {
+			r.setResponseCode(DnsCodec.TRUNCATED);
+			r.setSuccessful(false);
+		} else if(rcode == 0 && answers == 0) {
+			r.setResponseCode(DnsCodec.NODATA);
+			r.setSuccessful(true);
+		} else {
+			r.setResponseCode(DnsCodec.rcodeName(rcode));
+			r.setSuccessful(rcode == 0);
+		}
+		r.setBytes(data.remaining());
+		ring.logResult(t, ResultLog.NET_OK, rcode, Math.max(1, data.remaining()), r.isSuccessful());
+		if(!ring.isAllocationFree()) {
+			r.setResponseMessage("answers: " + answers);
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			r.setResponseData(bytes);
+		}
+		done(t, r, r.isSuccessful());
+		while(!t.queue.offer(r)) {}
+		t.sampleResult = null;
+		t.queue = null;
+	}
+
+	private void done(Token t, SampleResult r, boolean success) {
+		t.target.done();
+		t.target.record(r.getTime(), success);
+	}
+
+	public void readFailed(Token t, Exception e) {
+		t.lock();
+		try{
+			if(t.sampleResult != null && t.queue != null) {
+				ring.cancelTimeout(t);
+				t.sampleResult.sampleEnd();
+				t.sampleResult.setResponseCode(e.toString());
+				t.sampleResult.setSuccessful(false);
+				ring.logResult(t, ResultLog.NET_IO, 0, 0, false);
+				t.target.done();
+				t.target.failed();
+				while(!t.queue.offer(t.sampleResult)) {}
+				t.sampleResult = null;
+				t.queue = null;
+				ring.reset(t.id, "IOException on read");
+			}
+		} finally {
+			t.unlock();
+		}
+	}
+
+	@Override
+	public void expired(TimeoutWheel.Entry entry) {
+		Token t = ring.get(entry.id);
+		t.lock();
+		try{
+			SampleResult sr = t.sampleResult;
+			Queue queue = t.queue;
+			t.sampleResult = null;
+			t.queue = null;
+			if(sr != null && queue != null) {
+				ring.logResult(t, ResultLog.NET_TIMEOUT, 0, 0, false);
+				t.target.done();
+				t.target.failed();
+				sr.setSuccessful(false);
+				sr.setResponseCode(ERROR_502);
+				sr.sampleEnd();
+				while(!queue.offer(sr)) {}
+			}
+			ring.reset(t.id, entry.getReason());
+		} finally {
+			t.unlock();
+		}
+	}
+}
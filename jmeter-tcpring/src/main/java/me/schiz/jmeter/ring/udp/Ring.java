@@ -0,0 +1,568 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.udp;
+
+import com.google.common.collect.MapMaker;
+import me.schiz.jmeter.ring.udp.dns.DnsCodec;
+import me.schiz.jmeter.ring.util.Balancer;
+import me.schiz.jmeter.ring.util.ConnectionJournal;
+import me.schiz.jmeter.ring.util.EventLoops;
+import me.schiz.jmeter.ring.util.ResultHandoff;
+import me.schiz.jmeter.ring.util.ResultLog;
+import me.schiz.jmeter.ring.util.SourceAddressPool;
+import me.schiz.jmeter.ring.util.Target;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
+import me.schiz.ringpool.StripedRingPool;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.PatternSyntaxException;
+
+public class Ring {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private int capacity;
+	private int selectorsCount;
+
+	private StripedRingPool<Token>	ring;
+	private EventLoops loops;
+	private EventLoopRunnable[] eventLoopRunnables;
+	private String[] addrs;
+	private SourceAddressPool sources;
+
+	private int responseTimeout = 750;
+	private int bufferSize = 4096;
+	private boolean allocationFree = false;
+	private int resultQueue = 4096;
+	private String overflow = ResultHandoff.FOLD;
+	private String resultLogPath;
+	private ResultLog resultLog;
+	private final ConnectionJournal journal = new ConnectionJournal();
+	private String journalPath;
+	private Runnable journalReport;
+	private boolean dns = false;
+	private AtomicLong resets = new AtomicLong(0);
+	private AtomicLong staleReplies = new AtomicLong(0);
+	private String backend = BACKEND_NIO;
+	private String balancing = Balancer.ROUND_ROBIN;
+	private Balancer<Token> balancer;
+	private NettyTransport netty;
+	private final ResponseHandler handler = new ResponseHandler(this);
+	private volatile boolean destroyed = false;
+
+	public final static String RESPONSE_TIMEOUT = "response timeout";
+	public final static String BACKEND_NIO = "nio";
+	public final static String BACKEND_EPOLL = "epoll";
+
+	private ConcurrentMap<DatagramChannel, Token> weakSocketToTokenMap;
+
+	/**
+	 * @param selectorsCount event loops the ring spreads its sockets over,
+	 * at most the EventLoops.LOOPS shared ones
+	 */
+	public Ring(int capacity, int selectorsCount) {
+		this.capacity = capacity;
+		this.selectorsCount = Math.max(1, Math.min(selectorsCount, EventLoops.LOOPS));
+
+		ring = new StripedRingPool<>(capacity);
+		for(int i = 0; i<capacity; ++i) {
+			Token t = new Token();
+			if(!ring.put(t)) {
+				log.error("can't put token into ring");
+			}
+		}
+		this.addrs = null;
+		this.eventLoopRunnables = new EventLoopRunnable[this.selectorsCount];
+	}
+
+	public Ring setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Steady-state sampling allocates nothing: timeouts go to a wheel ticked
+	 * by the event loops, results are pooled per thread and response bodies
+	 * are counted instead of copied. Must be set before init().
+	 * The JDK selector of the nio backend boxes every ready descriptor, so
+	 * it allocates an Integer per event once descriptors pass 127 unless
+	 * -XX:AutoBoxCacheMax covers them.
+	 */
+	public Ring setAllocationFree(boolean allocationFree) {
+		this.allocationFree = allocationFree;
+		return this;
+	}
+
+	public boolean isAllocationFree() {
+		return allocationFree;
+	}
+
+	/**
+	 * Requests are DNS queries: each gets its own transaction id and the
+	 * reply is matched and validated by the event loop. Must be set before
+	 * init().
+	 */
+	public Ring setDns(boolean dns) {
+		this.dns = dns;
+		return this;
+	}
+
+	public boolean isDns() {
+		return dns;
+	}
+
+	/**
+	 * "nio" or "epoll". The native epoll transport falls back to nio where it
+	 * is not available. Must be set before init().
+	 */
+	public Ring setBackend(String backend) {
+		this.backend = backend;
+		return this;
+	}
+
+	public String getBackend() {
+		return netty != null ? BACKEND_EPOLL : BACKEND_NIO;
+	}
+
+	/**
+	 * How acquire() picks the target address: "rr", "weighted", "least"
+	 * (fewest outstanding requests) or "p2c" (power of two choices over
+	 * latency and outstanding requests). Must be set before init().
+	 */
+	public Ring setBalancing(String balancing) {
+		this.balancing = balancing;
+		return this;
+	}
+
+	public Target<Token>[] getTargets() {
+		return balancer != null ? balancer.getTargets() : Target.<Token>newArray(0);
+	}
+
+	ResponseHandler getHandler() {
+		return handler;
+	}
+
+	void staleReply() {
+		staleReplies.incrementAndGet();
+	}
+
+	/**
+	 * DNS mode: replies dropped because they answered an earlier,
+	 * timed out query on the same socket.
+	 */
+	public long getStaleReplies() {
+		return staleReplies.get();
+	}
+
+	public long getResets() {
+		return resets.get();
+	}
+
+	public Ring setResponseTimeout(int timeout) {
+		this.responseTimeout = timeout;
+		return this;
+	}
+
+	public int getResponseTimeout() {
+		return responseTimeout;
+	}
+
+	public Ring setRemoteAddresses(String addresses) {
+		if(addresses == null) {
+			log.error("empty address");
+		}
+		else if(addresses.isEmpty()) {
+			log.error("empty address");
+		}
+		else {
+			try{
+				this.addrs = addresses.split(" ");
+			} catch (PatternSyntaxException pse) {
+				log.error("failed split \"" + addresses + "\" by space", pse);
+				this.addrs = null;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Local addresses to bind the sockets to, see SourceAddressPool for the
+	 * format. Empty lets the OS pick one address for all of them.
+	 */
+	public Ring setSourceAddresses(String addresses) {
+		if(addresses == null || addresses.trim().isEmpty()) {
+			sources = null;
+			return this;
+		}
+		try {
+			sources = new SourceAddressPool(addresses);
+			log.info(sources.size() + " source addresses");
+		} catch (IOException | IllegalArgumentException e) {
+			log.error("bad source addresses \"" + addresses + "\"", e);
+			sources = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Bounds the queue that hands a sampling thread its results, see
+	 * ResultHandoff for the overflow policies.
+	 */
+	public Ring setResultQueue(int capacity, String overflow) {
+		resultQueue = Math.max(2, capacity);
+		if(ResultHandoff.isPolicy(overflow)) {
+			this.overflow = overflow;
+		} else {
+			log.error("unknown queue overflow policy `" + overflow + "`, folding");
+			this.overflow = ResultHandoff.FOLD;
+		}
+		return this;
+	}
+
+	/**
+	 * @return a result queue for the calling thread
+	 */
+	public ResultHandoff newResultQueue() {
+		return new ResultHandoff(resultQueue, overflow);
+	}
+
+	/**
+	 * Event loops write every request's result to a binary ResultLog at
+	 * path, empty for none. Must be set before init().
+	 */
+	public Ring setResultLog(String path) {
+		resultLogPath = path == null || path.trim().isEmpty() ? null : path.trim();
+		return this;
+	}
+
+	/**
+	 * The reset journal is dumped to path when the ring is destroyed,
+	 * empty for never.
+	 */
+	public Ring setJournal(String path) {
+		journalPath = path == null || path.trim().isEmpty() ? null : path.trim();
+		return this;
+	}
+
+	public ConnectionJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * @return null without a result log
+	 */
+	public ResultLog getResultLog() {
+		return resultLog;
+	}
+
+	SourceAddressPool getSourceAddresses() {
+		return sources;
+	}
+
+	private void setSocketOptions(DatagramChannel datagramChannel) throws IOException {
+		datagramChannel.configureBlocking(false);
+		datagramChannel.setOption(StandardSocketOptions.SO_SNDBUF, getBufferSize());
+		datagramChannel.setOption(StandardSocketOptions.SO_RCVBUF, getBufferSize());
+		datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+	}
+
+	public Ring init() {
+		loops = EventLoops.acquire();
+		int first = loops.next(selectorsCount);
+		if(BACKEND_EPOLL.equalsIgnoreCase(backend)) {
+			if(NettyTransport.isAvailable())	netty = new NettyTransport(this, loops, first, selectorsCount);
+			else	log.warn("epoll backend is not available, falling back to nio", NettyTransport.unavailabilityCause());
+		}
+		for(int i = 0; i<selectorsCount && netty == null;++i) {
+			try {
+				eventLoopRunnables[i] = new EventLoopRunnable(this, loops.selectorLoop(first + i));
+			} catch (IOException e) {
+				log.error("can't open selector", e);
+				return this;
+			}
+		}
+
+		weakSocketToTokenMap = new MapMaker()
+				.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+				.initialCapacity(capacity)
+				.softKeys()
+				.makeMap();
+
+		Map<String, Target<Token>> targets = new LinkedHashMap<>();
+		Map<String, Integer> sizes = new LinkedHashMap<>();
+		for(int i=0;i<capacity;i++)	sizes.merge(addrs[i%addrs.length], 1, Integer::sum);
+		for(int i=0;i<capacity;i++) {
+			String[] addr;
+			String host = "localhost";
+			int port, weight;
+			try{
+				addr = addrs[i%addrs.length].split(":");
+				host = addr[0];
+				port = Integer.parseInt(addr[1]);
+				weight = addr.length > 2 ? Integer.parseInt(addr[2]) : 1;
+			} catch (PatternSyntaxException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				log.error("bad address \"" + addrs[i%addrs.length] + "\"", e);
+				return this;
+			}
+			try {
+				Token t = ring.get(i);
+				t.id = i;
+				t.target = targets.get(addrs[i%addrs.length]);
+				if(t.target == null) {
+					t.target = new Target<Token>(host + ":" + port, weight, sizes.get(addrs[i%addrs.length]));
+					t.target.setIndex(targets.size());
+					targets.put(addrs[i%addrs.length], t.target);
+				}
+				t.slot = t.target.add(t, i);
+				t.timeoutEntry = new TimeoutWheel.Entry(i);
+				t.targetAddress = new InetSocketAddress(host, port);
+				if(netty != null) {
+					t.datagramChannel.close();
+					netty.connect(t);
+					continue;
+				}
+				setSocketOptions(t.datagramChannel);
+				if(sources != null)	t.source = sources.bind(t.datagramChannel);
+				try {
+					eventLoopRunnables[i%selectorsCount].register(t.datagramChannel, SelectionKey.OP_READ);
+				} catch (InterruptedException e) {
+					log.error("InterruptedException when register SocketChannel", e);
+					break;
+				}
+				ring.get(i).datagramChannel.connect(ring.get(i).targetAddress);
+				weakSocketToTokenMap.putIfAbsent(t.datagramChannel, t);
+			} catch (IOException e) {
+				log.error("IOException ", e);
+			}
+		}
+
+		balancer = new Balancer<Token>(targets.values().toArray(Target.<Token>newArray(targets.size())), balancing);
+		if(resultLogPath != null)	openResultLog();
+		journalReport = new Runnable() {
+			@Override
+			public void run() {
+				journal.report();
+			}
+		};
+		loops.addReporter(journalReport);
+
+		return this;
+	}
+
+	public Ring reset(int token_id, String reason) {
+		resets.incrementAndGet();
+		Token t = ring.get(token_id);
+		journal.reset(token_id, t.target.getAddress(), reason);
+		if(netty != null) {
+			release(t.id);
+			return this;
+		}
+		try {
+			//t.datagramChannel.disconnect();
+			//t.datagramChannel.close();
+			//t.datagramChannel = DatagramChannel.open();
+			setSocketOptions(t.datagramChannel);
+			eventLoopRunnables[token_id%selectorsCount].register(t.datagramChannel, SelectionKey.OP_READ);
+			if(!t.datagramChannel.isConnected())	t.datagramChannel.connect(t.targetAddress);
+			weakSocketToTokenMap.putIfAbsent(t.datagramChannel, t);
+			release(t.id);
+		} catch (InterruptedException e) {
+			log.error("InterruptedException when register DatagramChannel", e);
+		} catch (IOException e) {
+			log.error("IOException ", e);
+		}
+		return this;
+	}
+
+	public Ring destroy() {
+		destroyed = true;
+		if(journalReport != null && loops != null)	loops.removeReporter(journalReport);
+		if(netty != null)	netty.shutdown();
+		for(int i=0; i < selectorsCount && netty == null; ++i) {
+			if(eventLoopRunnables[i] != null)	eventLoopRunnables[i].stop();
+		}
+
+		for(int i = 0 ; i < capacity ; ++i) {
+			if(ring == null)	break;
+			if(ring.get(i) == null)	continue;
+			ring.get(i).destroy();
+		}
+
+		ring = new StripedRingPool<>(capacity);
+		this.weakSocketToTokenMap.clear();
+		if(resultLog != null)	resultLog.close();
+		if(loops != null) {
+			EventLoops.release();
+			loops = null;
+		}
+		journal.report();
+		String resets = journal.summary();
+		if(resets != null)	log.info(resets);
+		if(journalPath != null) {
+			try {
+				log.info(journal.dump(journalPath) + " reset events dumped to " + journalPath);
+			} catch (IOException e) {
+				log.error("can't dump reset journal to " + journalPath, e);
+			}
+		}
+
+		return this;
+	}
+
+	public boolean isDestroyed() {
+		return destroyed;
+	}
+
+	public Token get(int id) {
+		return ring.get(id);
+	}
+
+	public Token get(DatagramChannel dc) {
+		Token t = weakSocketToTokenMap.get(dc);
+		if(t == null) {
+			log.warn("not found SocketChannel at weakMap");
+			for(int i=0;i<capacity;i++) {
+				if(ring.get(i).datagramChannel == dc) {
+					t = ring.get(i);
+					weakSocketToTokenMap.putIfAbsent(dc, t);
+					break;
+				}
+			}
+			if(t == null)	log.error("not found SocketChannel at ring");
+		}
+		return t;
+	}
+
+	public int acquire() {
+		int i = -1, loopCount = 0;
+		boolean slow_acquire_run = true;
+		try {
+			//Fast acquire
+			for(; loopCount < 2; loopCount++) {
+				i = balancer.acquire();
+				if(i != -1) break;
+			}
+		} catch (Exception e) {
+			log.error("Exception", e);
+			return -1;
+		}
+		return i;
+	}
+
+	public Ring release(int id) {
+		Token t = ring.get(id);
+		t.target.release(t.slot);
+		return this;
+	}
+
+	/**
+	 * Readies the token for the request in buffer: its DNS id, response
+	 * timeout and result log stamps. Called under the token's lock, which
+	 * write() is not, so a fast reply never waits for the send to return.
+	 */
+	public Ring prepare(int id, ByteBuffer buffer) {
+		Token t = ring.get(id);
+		if(dns) {
+			t.dnsId = (t.dnsId + 1) & 0xffff;
+			DnsCodec.setId(buffer, t.dnsId);
+		}
+		//the response timeout always settles the request, even if the send fails
+		t.target.sent();
+		if(allocationFree) {
+			getTimeoutWheel(t).schedule(t.timeoutEntry, responseTimeout, RESPONSE_TIMEOUT);
+		} else {
+			t.timeout = loops.timer().newTimeout(new TimeoutTask(this, id, RESPONSE_TIMEOUT),
+					responseTimeout, TimeUnit.MILLISECONDS);
+		}
+
+		if(resultLog != null) {
+			t.sizeOut = buffer.remaining();
+			t.sentTS = System.nanoTime();
+		}
+		return this;
+	}
+
+	public Ring write(int id, ByteBuffer buffer) throws IOException {
+		Token t = ring.get(id);
+		if(netty != null) {
+			netty.write(t, buffer);
+			return this;
+		}
+		t.datagramChannel.send(buffer, t.targetAddress);
+		while(buffer.hasRemaining()){
+			t.datagramChannel.send(buffer, t.targetAddress);
+		}
+		return this;
+	}
+
+	/**
+	 * Logs the request in flight on the token, if any. A datagram is sent
+	 * in one go, its send time is 0.
+	 * @param sizeIn 0 if there was no response
+	 */
+	void logResult(Token t, int netCode, int protoCode, int sizeIn, boolean success) {
+		if(resultLog == null || t.sentTS == 0)	return;
+		long now = System.nanoTime();
+		resultLog.record(t.sentTS, t.sentTS, sizeIn > 0 ? now : 0, now, 0,
+				t.sizeOut, sizeIn, netCode, protoCode, t.target.getIndex(), t.tag, success);
+		t.sentTS = 0;
+	}
+
+	private void openResultLog() {
+		Target<Token>[] all = getTargets();
+		String[] names = new String[all.length];
+		for(Target<Token> target : all)	names[target.getIndex()] = target.getAddress();
+		try {
+			resultLog = new ResultLog(resultLogPath, names);
+			log.info("logging results to " + resultLogPath);
+		} catch (IOException e) {
+			log.error("can't open result log " + resultLogPath, e);
+		}
+	}
+
+	private TimeoutWheel getTimeoutWheel(Token t) {
+		if(netty != null)	return netty.getTimeoutWheel(t);
+		return eventLoopRunnables[t.id%selectorsCount].getTimeoutWheel();
+	}
+
+	public void cancelTimeout(Token t) {
+		if(allocationFree)	getTimeoutWheel(t).cancel(t.timeoutEntry);
+		else if(t.timeout != null)	t.timeout.cancel();
+	}
+
+	public StripedRingPool.Stats getStats() {
+		return balancer != null ? balancer.getStats() : ring.getStats();
+	}
+
+}
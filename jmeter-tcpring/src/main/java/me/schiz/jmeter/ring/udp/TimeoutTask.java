@@ -20,6 +20,7 @@ package me.schiz.jmeter.ring.udp;
 
 import io.netty.util.Timeout;
 import io.netty.util.TimerTask;
+import me.schiz.jmeter.ring.util.ResultLog;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
@@ -46,9 +47,8 @@ public class TimeoutTask implements TimerTask {
 
 	@Override
 	public void run(Timeout timeout) throws Exception {
-		if(timeout.isExpired() && !timeout.isCancelled()) {
-			ring.get(id).lock.lock();
-			log.error("Timeout token #" + id + ". Reason: " + reason);
+		if(timeout.isExpired() && !timeout.isCancelled() && !ring.isDestroyed()) {
+			ring.get(id).lock();
 			//ring.reset(id);
 			Token t = ring.get(id);
 			try{
@@ -56,6 +56,11 @@ public class TimeoutTask implements TimerTask {
 				Queue queue = t.queue;
 				t.sampleResult = null;
 				t.queue = null;
+				if(sr != null) {
+					ring.logResult(t, ResultLog.NET_TIMEOUT, 0, 0, false);
+					t.target.done();
+					t.target.failed();
+				}
 				sr.setSuccessful(false);
 				sr.setResponseCode(ERROR_502);
 				sr.sampleEnd();
@@ -63,8 +68,8 @@ public class TimeoutTask implements TimerTask {
 			} catch (NullPointerException npe) {
 
 			}
-			ring.reset(id);
-			ring.get(id).lock.unlock();
+			ring.reset(id, reason);
+			ring.get(id).unlock();
 		}
 	}
 }
@@ -18,7 +18,10 @@
 
 package me.schiz.jmeter.ring.udp;
 
+import io.netty.channel.Channel;
 import io.netty.util.Timeout;
+import me.schiz.jmeter.ring.util.Target;
+import me.schiz.jmeter.ring.util.TimeoutWheel;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.log.Logger;
@@ -36,15 +39,25 @@ public class Token {
 
 	public int id;
 	public DatagramChannel datagramChannel;
+	public Channel			channel;
 	public Timeout			timeout;
+	public TimeoutWheel.Entry	timeoutEntry;
 	public InetSocketAddress targetAddress;
+	public Target<Token>	target;
+	public int				slot;
+	public int				source = -1;
 	public SocketAddress	remote;
 	public int responseTimeout;
 
 	public boolean ishex;
+	public int dnsId;
 
 	public SampleResult sampleResult;
 	public Queue queue;
+	//result log stamps of the request in flight
+	public long sentTS;
+	public int sizeOut;
+	public int tag;
 
 	public ReentrantLock	lock;
 
@@ -58,6 +71,18 @@ public class Token {
 		}
 	}
 
+	/**
+	 * Spins on tryLock(): a contended lock() queues a node for the waiter,
+	 * and a reply racing its own request's write would allocate one.
+	 */
+	public void lock() {
+		while(!lock.tryLock())	Thread.yield();
+	}
+
+	public void unlock() {
+		lock.unlock();
+	}
+
 	public static long nstoms(long elapsedTimeNS) {
 		long modulo = (elapsedTimeNS / 100000L) % 10L;
 		long v = elapsedTimeNS / 1000000L;
@@ -68,6 +93,7 @@ public class Token {
 	public void destroy() {
 		try {
 			if(datagramChannel.isOpen())	datagramChannel.close();
+			if(channel != null)	channel.close();
 		} catch (IOException e) {
 			log.error("can't close token " + e);
 		}
@@ -19,6 +19,8 @@
 package me.schiz.jmeter.ring.udp.config;
 
 import me.schiz.jmeter.ring.udp.Ring;
+import me.schiz.jmeter.ring.util.Balancer;
+import me.schiz.jmeter.ring.util.ResultHandoff;
 import org.apache.jmeter.config.ConfigTestElement;
 import org.apache.jmeter.testbeans.TestBean;
 import org.apache.jmeter.testelement.TestStateListener;
@@ -38,6 +40,15 @@ public class UDPRingSourceElement extends ConfigTestElement
 	public static final String ADDRESSES = "UDPPRingSourceElement.addresses";
 	public static final String RESPONSE_TIMEOUT = "UDPRingSourceElement.responseTimeout";
 	public static final String BUFFER_SIZE = "UDPRingSourceElement.bufferSize";
+	public static final String ALLOCATION_FREE = "UDPRingSourceElement.allocationFree";
+	public static final String PROTOCOL = "UDPRingSourceElement.protocol";
+	public static final String BACKEND = "UDPRingSourceElement.backend";
+	public static final String BALANCING = "UDPRingSourceElement.balancing";
+	public static final String SOURCE_ADDRESSES = "UDPRingSourceElement.sourceAddresses";
+	public static final String RESULT_QUEUE = "UDPRingSourceElement.resultQueue";
+	public static final String OVERFLOW = "UDPRingSourceElement.overflow";
+	public static final String RESULT_LOG = "UDPRingSourceElement.resultLog";
+	public static final String JOURNAL = "UDPRingSourceElement.journal";
 
 	public static final String DEFAULT_SOURCE = "default";
 	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors() / 4 + 1;
@@ -45,7 +56,81 @@ public class UDPRingSourceElement extends ConfigTestElement
 	public static final String DEFAULT_ADDRESSES = "localhost:3000";
 	public static final int DEFAULT_RESPONSE_TIMEOUT = 750;
 	public static final int DEFAULT_BUFFER_SIZE = 4096;
+	public static final boolean DEFAULT_ALLOCATION_FREE = false;
+	public static final String PROTOCOL_RAW = "raw";
+	public static final String PROTOCOL_DNS = "dns";
+	public static final String DEFAULT_PROTOCOL = PROTOCOL_RAW;
+	public static final String DEFAULT_BACKEND = Ring.BACKEND_NIO;
+	public static final String DEFAULT_BALANCING = Balancer.ROUND_ROBIN;
+	public static final String DEFAULT_SOURCE_ADDRESSES = "";
+	public static final int DEFAULT_RESULT_QUEUE = 4096;
+	public static final String DEFAULT_OVERFLOW = ResultHandoff.FOLD;
+	public static final String DEFAULT_RESULT_LOG = "";
+	public static final String DEFAULT_JOURNAL = "";
 
+	public void setProtocol(String v) {
+		if(v == null)	return;
+		setProperty(PROTOCOL, v);
+	}
+	public String getProtocol() {
+		return getPropertyAsString(PROTOCOL);
+	}
+	public void setBackend(String v) {
+		if(v == null)	return;
+		setProperty(BACKEND, v);
+	}
+	public String getBackend() {
+		return getPropertyAsString(BACKEND);
+	}
+	public void setBalancing(String v) {
+		if(v == null)	return;
+		setProperty(BALANCING, v);
+	}
+	public String getBalancing() {
+		return getPropertyAsString(BALANCING);
+	}
+	public void setSourceAddresses(String v) {
+		if(v == null)	return;
+		setProperty(SOURCE_ADDRESSES, v);
+	}
+	public String getSourceAddresses() {
+		return getPropertyAsString(SOURCE_ADDRESSES);
+	}
+	public void setResultQueue(String v) {
+		if(v == null)	return;
+		setProperty(RESULT_QUEUE, v);
+	}
+	public String getResultQueue() {
+		return getPropertyAsString(RESULT_QUEUE);
+	}
+	public void setOverflow(String v) {
+		if(v == null)	return;
+		setProperty(OVERFLOW, v);
+	}
+	public String getOverflow() {
+		return getPropertyAsString(OVERFLOW);
+	}
+	public void setResultLog(String v) {
+		if(v == null)	return;
+		setProperty(RESULT_LOG, v);
+	}
+	public String getResultLog() {
+		return getPropertyAsString(RESULT_LOG);
+	}
+	public void setJournal(String v) {
+		if(v == null)	return;
+		setProperty(JOURNAL, v);
+	}
+	public String getJournal() {
+		return getPropertyAsString(JOURNAL);
+	}
+	public void setAllocationFree(String v) {
+		if(v == null)	return;
+		setProperty(ALLOCATION_FREE, v);
+	}
+	public String getAllocationFree() {
+		return getPropertyAsString(ALLOCATION_FREE);
+	}
 	public void setBufferSize(String v) {
 		if(v == null)	return;
 		setProperty(BUFFER_SIZE, v);
@@ -114,8 +199,21 @@ public class UDPRingSourceElement extends ConfigTestElement
 		}
 	}
 
+	private static boolean atob(String a, boolean def) {
+		if(a == null)	return def;
+		if(a.isEmpty())	return def;
+		return Boolean.parseBoolean(a.trim());
+	}
+
+	private static String atos(String a, String def) {
+		if(a == null)	return def;
+		if(a.trim().isEmpty())	return def;
+		return a.trim();
+	}
+
 	@Override
 	public void testStarted() {
+		ResultHandoff.reset();
 		if(rings.contains(getSource()))  log.warn("TCPRing `" +  getSource() + "` already created");
 		else {
 			Ring r;
@@ -128,6 +226,14 @@ public class UDPRingSourceElement extends ConfigTestElement
 				r.setResponseTimeout(atoi(getResponseTimeout(), DEFAULT_RESPONSE_TIMEOUT));
 				r.setRemoteAddresses(getAddresses());
 				r.setBufferSize(atoi(getBufferSize(), DEFAULT_BUFFER_SIZE));
+				r.setAllocationFree(atob(getAllocationFree(), DEFAULT_ALLOCATION_FREE));
+				r.setDns(PROTOCOL_DNS.equalsIgnoreCase(getProtocol().trim()));
+				r.setBackend(atos(getBackend(), DEFAULT_BACKEND));
+				r.setBalancing(atos(getBalancing(), DEFAULT_BALANCING));
+				r.setSourceAddresses(atos(getSourceAddresses(), DEFAULT_SOURCE_ADDRESSES));
+				r.setResultQueue(atoi(getResultQueue(), DEFAULT_RESULT_QUEUE), atos(getOverflow(), DEFAULT_OVERFLOW));
+				r.setResultLog(atos(getResultLog(), DEFAULT_RESULT_LOG));
+				r.setJournal(atos(getJournal(), DEFAULT_JOURNAL));
 				rings.putIfAbsent(getSource(), r);
 				log.info("added new ring `" + getSource() + "`");
 			}
@@ -142,10 +248,15 @@ public class UDPRingSourceElement extends ConfigTestElement
 
 	@Override
 	public void testEnded() {
+		ResultHandoff.unblock();
 		for(String row : rings.keySet()) {
-			rings.get(row).destroy();
+			//a ring left in the map would be picked up, destroyed, by the next test
+			Ring r = rings.remove(row);
+			if(r == null)	continue;
+			r.destroy();
 			log.info("shutdown ring `" + row + "`");
 		}
+		if(ResultHandoff.hasOverflowed())	log.warn(ResultHandoff.summary());
 	}
 
 	@Override
@@ -31,6 +31,15 @@ public class UDPRingSourceElementGui extends AbstractConfigGui {
 	private JLabeledTextField tfAddresses;
 	private JLabeledTextField tfResponseTimeout;
 	private JLabeledTextField tfBufferSize;
+	private JLabeledTextField tfAllocationFree;
+	private JLabeledTextField tfProtocol;
+	private JLabeledTextField tfBackend;
+	private JLabeledTextField tfBalancing;
+	private JLabeledTextField tfSourceAddresses;
+	private JLabeledTextField tfResultQueue;
+	private JLabeledTextField tfOverflow;
+	private JLabeledTextField tfResultLog;
+	private JLabeledTextField tfJournal;
 
 	public UDPRingSourceElementGui() {
 		super();
@@ -77,6 +86,15 @@ public class UDPRingSourceElementGui extends AbstractConfigGui {
 			config.setAddresses(tfAddresses.getText());
 			config.setResponseTimeout(tfResponseTimeout.getText());
 			config.setBufferSize(tfBufferSize.getText());
+			config.setAllocationFree(tfAllocationFree.getText());
+			config.setProtocol(tfProtocol.getText());
+			config.setBackend(tfBackend.getText());
+			config.setBalancing(tfBalancing.getText());
+			config.setSourceAddresses(tfSourceAddresses.getText());
+			config.setResultQueue(tfResultQueue.getText());
+			config.setOverflow(tfOverflow.getText());
+			config.setResultLog(tfResultLog.getText());
+			config.setJournal(tfJournal.getText());
 		}
 		super.configureTestElement(c);
 	}
@@ -94,6 +112,15 @@ public class UDPRingSourceElementGui extends AbstractConfigGui {
 		tfAddresses.setText(""); //$NON-NLS-1$
 		tfResponseTimeout.setText(""); //$NON-NLS-1$
 		tfBufferSize.setText("");
+		tfAllocationFree.setText("");
+		tfProtocol.setText("");
+		tfBackend.setText("");
+		tfBalancing.setText("");
+		tfSourceAddresses.setText("");
+		tfResultQueue.setText("");
+		tfOverflow.setText("");
+		tfResultLog.setText("");
+		tfJournal.setText("");
 	}
 
 	@Override
@@ -106,6 +133,15 @@ public class UDPRingSourceElementGui extends AbstractConfigGui {
 		tfAddresses.setText(config.getAddresses());
 		tfResponseTimeout.setText(config.getResponseTimeout());
 		tfBufferSize.setText(config.getBufferSize());
+		tfAllocationFree.setText(config.getAllocationFree());
+		tfProtocol.setText(config.getProtocol());
+		tfBackend.setText(config.getBackend());
+		tfBalancing.setText(config.getBalancing());
+		tfSourceAddresses.setText(config.getSourceAddresses());
+		tfResultQueue.setText(config.getResultQueue());
+		tfOverflow.setText(config.getOverflow());
+		tfResultLog.setText(config.getResultLog());
+		tfJournal.setText(config.getJournal());
 	}
 
 	private void init() {
@@ -118,6 +154,15 @@ public class UDPRingSourceElementGui extends AbstractConfigGui {
 		tfAddresses = new JLabeledTextField("Addresses");
 		tfResponseTimeout = new JLabeledTextField("Response Timeout");
 		tfBufferSize = new JLabeledTextField("Buffer Size");
+		tfAllocationFree = new JLabeledTextField("Allocation Free");
+		tfProtocol = new JLabeledTextField("Protocol (raw|dns)");
+		tfBackend = new JLabeledTextField("Backend (nio|epoll)");
+		tfBalancing = new JLabeledTextField("Balancing (rr|weighted|least|p2c)");
+		tfSourceAddresses = new JLabeledTextField("Source Addresses (ip, ip-ip, ip/cidr; empty = any)");
+		tfResultQueue = new JLabeledTextField("Result queue per thread");
+		tfOverflow = new JLabeledTextField("Queue overflow (block, fold, drop)");
+		tfResultLog = new JLabeledTextField("Binary result log path (empty = off)");
+		tfJournal = new JLabeledTextField("Reset journal dump at test end (empty = off)");
 		add(makeTitlePanel());
 		add(tfSource);
 		add(tfThreads);
@@ -125,6 +170,15 @@ public class UDPRingSourceElementGui extends AbstractConfigGui {
 		add(tfAddresses);
 		add(tfResponseTimeout);
 		add(tfBufferSize);
+		add(tfAllocationFree);
+		add(tfProtocol);
+		add(tfBackend);
+		add(tfBalancing);
+		add(tfSourceAddresses);
+		add(tfResultQueue);
+		add(tfOverflow);
+		add(tfResultLog);
+		add(tfJournal);
 
 		tfSource.setText(UDPRingSourceElement.DEFAULT_SOURCE);
 		tfThreads.setText(String.valueOf(UDPRingSourceElement.DEFAULT_THREADS));
@@ -132,5 +186,14 @@ public class UDPRingSourceElementGui extends AbstractConfigGui {
 		tfAddresses.setText(UDPRingSourceElement.DEFAULT_ADDRESSES);
 		tfResponseTimeout.setText(String.valueOf(UDPRingSourceElement.DEFAULT_RESPONSE_TIMEOUT));
 		tfBufferSize.setText(String.valueOf(UDPRingSourceElement.BUFFER_SIZE));
+		tfAllocationFree.setText(String.valueOf(UDPRingSourceElement.DEFAULT_ALLOCATION_FREE));
+		tfProtocol.setText(UDPRingSourceElement.DEFAULT_PROTOCOL);
+		tfBackend.setText(UDPRingSourceElement.DEFAULT_BACKEND);
+		tfBalancing.setText(UDPRingSourceElement.DEFAULT_BALANCING);
+		tfSourceAddresses.setText(UDPRingSourceElement.DEFAULT_SOURCE_ADDRESSES);
+		tfResultQueue.setText(String.valueOf(UDPRingSourceElement.DEFAULT_RESULT_QUEUE));
+		tfOverflow.setText(UDPRingSourceElement.DEFAULT_OVERFLOW);
+		tfResultLog.setText(UDPRingSourceElement.DEFAULT_RESULT_LOG);
+		tfJournal.setText(UDPRingSourceElement.DEFAULT_JOURNAL);
 	}
 }
\ No newline at end of file
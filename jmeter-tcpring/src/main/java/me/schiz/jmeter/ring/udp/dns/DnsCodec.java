@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.udp.dns;
+
+import java.nio.ByteBuffer;
+
+/**
+ * DNS wire format (RFC 1035) straight into and out of the ring buffers.
+ * Queries are written from a "name [qtype]" line, replies are checked in
+ * place; neither direction allocates.
+ */
+public class DnsCodec {
+	public static final int HEADER_SIZE = 12;
+	public static final int CLASS_IN = 1;
+	public static final int TYPE_A = 1;
+
+	private static final int FLAG_QR = 0x8000;
+	private static final int FLAG_TC = 0x0200;
+	private static final int FLAG_RD = 0x0100;
+
+	private static final String[] TYPE_NAMES = {"A", "NS", "CNAME", "SOA", "PTR", "MX", "TXT", "AAAA", "SRV", "NAPTR", "DS", "DNSKEY", "CAA", "ANY"};
+	private static final int[] TYPE_CODES = {1, 2, 5, 6, 12, 15, 16, 28, 33, 35, 43, 48, 257, 255};
+
+	private static final String[] RCODES = {"NOERROR", "FORMERR", "SERVFAIL", "NXDOMAIN", "NOTIMP", "REFUSED",
+			"YXDOMAIN", "YXRRSET", "NXRRSET", "NOTAUTH", "NOTZONE", "RCODE11", "RCODE12", "RCODE13", "RCODE14", "RCODE15"};
+
+	public static final String TRUNCATED = "TRUNCATED";
+	public static final String NODATA = "NODATA";
+
+	/**
+	 * Writes a query for line[from, to), "name" or "name qtype", at the
+	 * buffer's position with transaction id 0 (see setId()).
+	 * @return query length, or -1 if the line is not a valid query
+	 */
+	public static int writeQuery(ByteBuffer buffer, String line, int from, int to) {
+		while(from < to && line.charAt(from) <= ' ')	from++;
+		while(to > from && line.charAt(to - 1) <= ' ')	to--;
+		int nameEnd = from;
+		while(nameEnd < to && line.charAt(nameEnd) > ' ')	nameEnd++;
+		int typeFrom = nameEnd;
+		while(typeFrom < to && line.charAt(typeFrom) <= ' ')	typeFrom++;
+		int qtype = typeFrom == to ? TYPE_A : parseType(line, typeFrom, to);
+		if(qtype < 0 || nameEnd == from)	return -1;
+
+		int start = buffer.position();
+		buffer.putShort((short) 0);
+		buffer.putShort((short) FLAG_RD);
+		buffer.putShort((short) 1);
+		buffer.putShort((short) 0);
+		buffer.putShort((short) 0);
+		buffer.putShort((short) 0);
+		if(!writeName(buffer, line, from, nameEnd)) {
+			buffer.position(start);
+			return -1;
+		}
+		buffer.putShort((short) qtype);
+		buffer.putShort((short) CLASS_IN);
+		return buffer.position() - start;
+	}
+
+	private static boolean writeName(ByteBuffer buffer, String name, int from, int to) {
+		if(to - from == 1 && name.charAt(from) == '.') {
+			buffer.put((byte) 0);
+			return true;
+		}
+		if(name.charAt(to - 1) == '.')	to--;
+		int label = from;
+		while(label <= to) {
+			int end = label;
+			while(end < to && name.charAt(end) != '.')	end++;
+			int length = end - label;
+			if(length == 0 || length > 63)	return false;
+			buffer.put((byte) length);
+			for(int i=label;i<end;i++) {
+				char c = name.charAt(i);
+				if(c > 0x7f)	return false;
+				buffer.put((byte) c);
+			}
+			label = end + 1;
+		}
+		buffer.put((byte) 0);
+		return true;
+	}
+
+	/**
+	 * @return qtype for a mnemonic (A, AAAA, MX...), TYPEnnn or a number,
+	 *         -1 if unknown
+	 */
+	public static int parseType(String s, int from, int to) {
+		int length = to - from;
+		for(int i=0;i<TYPE_NAMES.length;i++) {
+			if(TYPE_NAMES[i].length() == length && s.regionMatches(true, from, TYPE_NAMES[i], 0, length))	return TYPE_CODES[i];
+		}
+		if(length > 4 && s.regionMatches(true, from, "TYPE", 0, 4))	from += 4;
+		int v = 0;
+		if(from == to)	return -1;
+		for(int i=from;i<to;i++) {
+			int d = s.charAt(i) - '0';
+			if(d < 0 || d > 9)	return -1;
+			v = v * 10 + d;
+			if(v > 0xffff)	return -1;
+		}
+		return v;
+	}
+
+	/**
+	 * Patches the transaction id of the message starting at the buffer's
+	 * position.
+	 */
+	public static void setId(ByteBuffer buffer, int id) {
+		buffer.putShort(buffer.position(), (short) id);
+	}
+
+	public static int getId(ByteBuffer buffer) {
+		return buffer.getShort(buffer.position()) & 0xffff;
+	}
+
+	/**
+	 * @return true if the buffer holds a reply to the query with this id
+	 */
+	public static boolean isReplyTo(ByteBuffer buffer, int id) {
+		return buffer.remaining() >= HEADER_SIZE && getId(buffer) == id && (flags(buffer) & FLAG_QR) != 0;
+	}
+
+	public static boolean isTruncated(ByteBuffer buffer) {
+		return (flags(buffer) & FLAG_TC) != 0;
+	}
+
+	public static int getRcode(ByteBuffer buffer) {
+		return flags(buffer) & 0x0f;
+	}
+
+	public static int getAnswerCount(ByteBuffer buffer) {
+		return buffer.getShort(buffer.position() + 6) & 0xffff;
+	}
+
+	public static String rcodeName(int rcode) {
+		return RCODES[rcode & 0x0f];
+	}
+
+	private static int flags(ByteBuffer buffer) {
+		return buffer.getShort(buffer.position() + 2) & 0xffff;
+	}
+}
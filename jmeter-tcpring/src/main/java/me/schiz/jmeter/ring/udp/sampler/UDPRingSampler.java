@@ -18,10 +18,12 @@
 
 package me.schiz.jmeter.ring.udp.sampler;
 
-import io.netty.util.HashedWheelTimer;
 import me.schiz.jmeter.ring.udp.Ring;
 import me.schiz.jmeter.ring.udp.Token;
 import me.schiz.jmeter.ring.udp.config.UDPRingSourceElement;
+import me.schiz.jmeter.ring.udp.dns.DnsCodec;
+import me.schiz.jmeter.ring.util.ResultLog;
+import me.schiz.jmeter.ring.util.ResultPool;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.jmeter.samplers.AbstractSampler;
@@ -32,7 +34,7 @@ import org.apache.log.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Queue;
 
 public class UDPRingSampler extends AbstractSampler {
 	private static final Logger log = LoggingManager.getLoggerForClass();
@@ -43,7 +45,20 @@ public class UDPRingSampler extends AbstractSampler {
 
 	public static final ThreadLocal<ByteBuffer> tlRequest = new ThreadLocal<ByteBuffer>();
 	private static final ThreadLocal<ByteBuffer> tlBuffer = new ThreadLocal<ByteBuffer>();
-	private static final ThreadLocal<ConcurrentLinkedQueue<SampleResult>> tlQueue = new ThreadLocal<ConcurrentLinkedQueue<SampleResult>>();
+	private static final ThreadLocal<Encoded> tlEncoded = new ThreadLocal<Encoded>();
+	private static final ThreadLocal<Queue<SampleResult>> tlQueue = new ThreadLocal<Queue<SampleResult>>();
+
+	private transient ResultLog tagged;
+	private transient int tag;
+
+	//last request encoded into the thread's buffer
+	static class Encoded {
+		String request;
+		boolean hex;
+		int length;
+		String dnsRequest;
+		int dnsOffset;
+	}
 
 	public void setSource(String source) {
 		setProperty(SOURCE, source);
@@ -70,19 +85,20 @@ public class UDPRingSampler extends AbstractSampler {
 	@Override
 	public SampleResult sample(Entry entry) {
 		boolean idling = false;
-		SampleResult newSampleResult = new SampleResult();
+		Ring ring = UDPRingSourceElement.get(getSource());
+		ResultPool pool = ring.isAllocationFree() ? ResultPool.get() : null;
+		SampleResult newSampleResult = pool != null ? pool.take() : new SampleResult();
 		newSampleResult.setSampleLabel(getName());
 
-		ConcurrentLinkedQueue<SampleResult> queue = tlQueue.get();
+		Queue<SampleResult> queue = tlQueue.get();
 		if(queue == null) {
-			queue = new ConcurrentLinkedQueue<SampleResult>();
+			queue = ring.newResultQueue();
 			tlQueue.set(queue);
 		}
 
-		Ring ring = UDPRingSourceElement.get(getSource());
 		Token t;
 		int tid = -1;
-		byte[] request_in_bytes = new byte[0];
+		byte[] request_in_bytes;
 
 		ByteBuffer request = tlRequest.get();
 		if(request == null) {
@@ -93,17 +109,38 @@ public class UDPRingSampler extends AbstractSampler {
 			}
 			request.clear();
 
-			if(isHex()) {
-				try {
-					request_in_bytes = Hex.decodeHex(getRequest().toCharArray());
-				} catch (DecoderException e) {
-					log.error("can't decode request", e);
-					idling = true;
-				}
+			String req = getRequest();
+			boolean hex = isHex();
+			Encoded encoded = tlEncoded.get();
+			if(encoded == null) {
+				encoded = new Encoded();
+				tlEncoded.set(encoded);
+			}
+			if(ring.isDns()) {
+				encoded.request = null;
+				idling = !writeDns(request, req, encoded);
+			} else if(hex == encoded.hex && req.equals(encoded.request)) {
+				request.position(encoded.length);
 			} else {
-				request_in_bytes = getRequest().getBytes();
+				encoded.request = null;
+				request_in_bytes = null;
+				if(hex) {
+					try {
+						request_in_bytes = Hex.decodeHex(req.toCharArray());
+					} catch (DecoderException e) {
+						log.error("can't decode request", e);
+						idling = true;
+					}
+				} else {
+					request_in_bytes = req.getBytes();
+				}
+				if(request_in_bytes != null) {
+					request.put(request_in_bytes);
+					encoded.request = req;
+					encoded.hex = hex;
+					encoded.length = request_in_bytes.length;
+				}
 			}
-			request.put(request_in_bytes);
 		}
 		if(!idling) {
 			try{
@@ -112,22 +149,30 @@ public class UDPRingSampler extends AbstractSampler {
 					tid = ring.acquire();
 				}
 				t = ring.get(tid);
-				t.lock.lock();
-				if(isHex())	t.ishex = true;
-				newSampleResult.sampleStart();
+				t.lock();
 				try {
-					//t.socketChannel.write(request);
+					if(isHex())	t.ishex = true;
+					t.tag = tag(ring);
+					newSampleResult.sampleStart();
+					newSampleResult.setSuccessful(true);
 					t.sampleResult = newSampleResult;
 					t.queue = queue;
+					ring.prepare(tid, request);
+				} finally {
+					t.unlock();
+				}
+				try {
 					ring.write(tid, request);
 					request.clear();
-					newSampleResult.setSuccessful(true);
 				} catch (IOException e) {
-					newSampleResult.setSuccessful(false);
-					ring.reset(tid);
 					log.warn("IOException", e);
-				} finally {
-					t.lock.unlock();
+					t.lock();
+					try {
+						newSampleResult.setSuccessful(false);
+						ring.reset(tid, "ioexception on write");
+					} finally {
+						t.unlock();
+					}
 				}
 
 			} catch (Exception e) {
@@ -135,12 +180,54 @@ public class UDPRingSampler extends AbstractSampler {
 				newSampleResult.setSuccessful(false);
 				newSampleResult.setResponseCode(e.getClass().getName());
 				while(!queue.offer(newSampleResult)){}
-				if(tid != -1)	ring.reset(tid);
+				if(tid != -1)	ring.reset(tid, "exception");
 			} finally {
 				newSampleResult.setRequestHeaders(getRequest());
 			}
+		} else if(pool != null) {
+			pool.put(newSampleResult);
 		}
 		SampleResult sampleResult = queue.poll();
+		if(pool != null)	pool.handOut(sampleResult);
 		return sampleResult;
 	}
+
+	/**
+	 * @return the sampler's tag in the ring's result log
+	 */
+	private int tag(Ring ring) {
+		ResultLog resultLog = ring.getResultLog();
+		if(resultLog == null)	return 0;
+		if(resultLog != tagged) {
+			tag = resultLog.tag(getName());
+			tagged = resultLog;
+		}
+		return tag;
+	}
+
+	/**
+	 * DNS mode: the request holds one "name [qtype]" per line, each sample
+	 * queries the thread's next line.
+	 */
+	static boolean writeDns(ByteBuffer request, String req, Encoded encoded) {
+		if(req != encoded.dnsRequest && !req.equals(encoded.dnsRequest)) {
+			encoded.dnsRequest = req;
+			encoded.dnsOffset = 0;
+		}
+		for(int lines = 0; lines <= req.length(); lines++) {
+			int from = encoded.dnsOffset;
+			if(from >= req.length())	from = 0;
+			int to = req.indexOf('\n', from);
+			if(to < 0)	to = req.length();
+			encoded.dnsOffset = to + 1;
+			boolean blank = true;
+			for(int i=from;i<to && blank;i++)	blank = req.charAt(i) <= ' ';
+			if(blank)	continue;
+			if(DnsCodec.writeQuery(request, req, from, to) > 0)	return true;
+			log.error("bad dns query \"" + req.substring(from, to) + "\"");
+			return false;
+		}
+		log.error("empty dns request");
+		return false;
+	}
 }
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import me.schiz.ringpool.StripedRingPool;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the target the next request goes to and acquires one of its
+ * tokens, falling back to the other targets when it has none free.
+ * Targets whose circuit is open are skipped.
+ */
+public class Balancer<T> {
+	public final static String ROUND_ROBIN = "rr";
+	public final static String WEIGHTED = "weighted";
+	public final static String LEAST_OUTSTANDING = "least";
+	public final static String POWER_OF_TWO = "p2c";
+
+	private final Target<T>[] targets;
+	private final String policy;
+	private final int totalWeight;
+	private final AtomicInteger next = new AtomicInteger(0);
+
+	public Balancer(Target<T>[] targets, String policy) {
+		this.targets = targets;
+		this.policy = policy == null ? ROUND_ROBIN : policy.toLowerCase();
+		int w = 0;
+		for(Target<T> t : targets)	w += t.getWeight();
+		this.totalWeight = w;
+	}
+
+	public int acquire() {
+		int n = targets.length;
+		if(n == 1)	return targets[0].isAvailable() ? targets[0].acquire() : -1;
+		int first = choose(n);
+		for(int k = 0; k < n; k++) {
+			Target<T> t = targets[(first + k) % n];
+			if(!t.isAvailable())	continue;
+			int id = t.acquire();
+			if(id != -1)	return id;
+		}
+		return -1;
+	}
+
+	private int choose(int n) {
+		switch (policy) {
+			case WEIGHTED: {
+				int r = ThreadLocalRandom.current().nextInt(totalWeight);
+				for(int i = 0; i < n; i++) {
+					r -= targets[i].getWeight();
+					if(r < 0)	return i;
+				}
+				return n - 1;
+			}
+			case LEAST_OUTSTANDING: {
+				//ties are broken round-robin, not always in favour of the first target
+				int start = (next.getAndIncrement() & Integer.MAX_VALUE) % n;
+				int best = start, min = Integer.MAX_VALUE;
+				for(int k = 0; k < n; k++) {
+					int i = (start + k) % n;
+					if(!targets[i].isAvailable())	continue;
+					int o = targets[i].getOutstanding();
+					if(o < min) {
+						min = o;
+						best = i;
+					}
+				}
+				return best;
+			}
+			case POWER_OF_TWO: {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				int a = random.nextInt(n);
+				int b = random.nextInt(n - 1);
+				if(b >= a)	b++;
+				return score(targets[a]) <= score(targets[b]) ? a : b;
+			}
+			default:
+				return (next.getAndIncrement() & Integer.MAX_VALUE) % n;
+		}
+	}
+
+	private static double score(Target<?> t) {
+		if(!t.isAvailable())	return Double.MAX_VALUE;
+		return (t.getEwma() + 1.0) * (t.getOutstanding() + 1);
+	}
+
+	public boolean isAvailable() {
+		for(Target<T> t : targets) {
+			if(t.isAvailable())	return true;
+		}
+		return false;
+	}
+
+	public Target<T>[] getTargets() {
+		return targets;
+	}
+
+	public StripedRingPool.Stats getStats() {
+		StripedRingPool.Stats stats = new StripedRingPool.Stats();
+		for(Target<T> t : targets) {
+			StripedRingPool.Stats s = t.getStats();
+			stats.busy_objects += s.busy_objects;
+			stats.free_objects += s.free_objects;
+			stats.notnull_objects += s.notnull_objects;
+			stats.null_objects += s.null_objects;
+			stats.steals += s.steals;
+		}
+		return stats;
+	}
+}
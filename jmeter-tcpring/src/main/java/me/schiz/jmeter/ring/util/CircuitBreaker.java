@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-target circuit breaker fed by connect outcomes. After threshold
+ * consecutive failures the circuit opens and nobody connects to the target
+ * for openMillis; then exactly one caller gets to probe it (half-open) and
+ * its outcome closes or reopens the circuit. Callers waiting for it can
+ * await() the close instead of polling.
+ */
+public class CircuitBreaker {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final int CLOSED = 0;
+	private static final int OPEN = 1;
+	private static final int HALF_OPEN = 2;
+
+	private final String name;
+	private final int threshold;
+	private final long openMillis;
+	private final AtomicInteger state = new AtomicInteger(CLOSED);
+	private final AtomicInteger failures = new AtomicInteger(0);
+	private volatile long openUntil;
+	private final ConcurrentLinkedQueue<Runnable> waiters = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * @param threshold consecutive failures that open the circuit, 0 never opens it
+	 */
+	public CircuitBreaker(String name, int threshold, long openMillis) {
+		this.name = name;
+		this.threshold = threshold;
+		this.openMillis = openMillis;
+	}
+
+	public boolean isClosed() {
+		return state.get() == CLOSED;
+	}
+
+	/**
+	 * @return true if the caller may connect; in half-open state only the
+	 *         first caller after the open period does
+	 */
+	public boolean tryAcquire() {
+		int s = state.get();
+		if(s == CLOSED)	return true;
+		return s == OPEN && System.currentTimeMillis() >= openUntil && state.compareAndSet(OPEN, HALF_OPEN);
+	}
+
+	/**
+	 * @return milliseconds until the circuit lets a probe through, 0 if
+	 * closed; while a probe is out, the open period: its outcome wakes
+	 * the waiters or opens the circuit again
+	 */
+	public long retryDelay() {
+		int s = state.get();
+		if(s == CLOSED)	return 0;
+		if(s == HALF_OPEN)	return openMillis;
+		return Math.max(1, openUntil - System.currentTimeMillis());
+	}
+
+	/**
+	 * Runs callback once, on the thread that closes the circuit, or at
+	 * once if it is closed.
+	 */
+	public void await(Runnable callback) {
+		waiters.offer(callback);
+		if(isClosed())	wake();
+	}
+
+	private void wake() {
+		Runnable callback;
+		while((callback = waiters.poll()) != null) {
+			try {
+				callback.run();
+			} catch (RuntimeException e) {
+				log.error("circuit " + name + " waiter failed", e);
+			}
+		}
+	}
+
+	public void success() {
+		failures.set(0);
+		if(state.getAndSet(CLOSED) != CLOSED)	log.info("circuit " + name + " closed");
+		if(!waiters.isEmpty())	wake();
+	}
+
+	public void failure() {
+		if(threshold <= 0)	return;
+		int s = state.get();
+		if(s == HALF_OPEN) {
+			open(s);
+		} else if(failures.incrementAndGet() >= threshold && s == CLOSED) {
+			open(s);
+		}
+	}
+
+	private void open(int from) {
+		openUntil = System.currentTimeMillis() + openMillis;
+		if(state.compareAndSet(from, OPEN) && from == CLOSED)
+			log.warn("circuit " + name + " opened after " + failures.get() + " connect failures");
+	}
+
+	public String getName() {
+		return name;
+	}
+}
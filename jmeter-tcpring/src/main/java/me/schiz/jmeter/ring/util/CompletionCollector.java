@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jmeter.samplers.SampleEvent;
+import org.apache.jmeter.samplers.SampleListener;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.threads.ListenerNotifier;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the results of async samples to their listeners from a thread of
+ * its own, one per thread group, so sampling threads return as soon as
+ * their requests are written. Every sampling thread has a Channel, the
+ * event loops offer finished results to it like to any result queue.
+ * Assertions and post-processors don't see these results, listeners do.
+ */
+public class CompletionCollector implements Runnable {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final ConcurrentHashMap<String, CompletionCollector> collectors = new ConcurrentHashMap<String, CompletionCollector>();
+
+	private final static int BATCH = 256;
+	private final static long IDLE_PARK = TimeUnit.MICROSECONDS.toNanos(200);
+
+	private final String threadGroup;
+	private final CopyOnWriteArrayList<Channel> channels = new CopyOnWriteArrayList<Channel>();
+	private final ListenerNotifier notifier = new ListenerNotifier();
+	private final LongAdder delivered = new LongAdder();
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	public static CompletionCollector get(String threadGroup) {
+		CompletionCollector c = collectors.get(threadGroup);
+		if(c != null)	return c;
+		synchronized (collectors) {
+			c = collectors.get(threadGroup);
+			if(c == null) {
+				c = new CompletionCollector(threadGroup);
+				collectors.put(threadGroup, c);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Delivers what has completed and stops every collector.
+	 */
+	public static void stopAll() {
+		synchronized (collectors) {
+			for(CompletionCollector c : collectors.values())	c.stop();
+			collectors.clear();
+		}
+	}
+
+	private CompletionCollector(String threadGroup) {
+		this.threadGroup = threadGroup;
+		thread = new Thread(this, "RingCollector-" + threadGroup);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @param listeners of the sampling thread's sampler, may be null
+	 */
+	public Channel channel(List<SampleListener> listeners, JMeterVariables vars) {
+		Channel channel = new Channel(listeners, vars);
+		channels.add(channel);
+		return channel;
+	}
+
+	public long getDelivered() {
+		return delivered.sum();
+	}
+
+	private void stop() {
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		log.info(thread.getName() + " started");
+		while(running) {
+			if(deliver() == 0)	LockSupport.parkNanos(IDLE_PARK);
+		}
+		deliver();
+		log.info(thread.getName() + " stopped, delivered " + delivered.sum());
+	}
+
+	private int deliver() {
+		int n = 0;
+		for(Channel channel : channels)	n += channel.deliver();
+		return n;
+	}
+
+	public class Channel extends ConcurrentLinkedQueue<SampleResult> {
+		private final List<SampleListener> listeners;
+		private final JMeterVariables vars;
+
+		private Channel(List<SampleListener> listeners, JMeterVariables vars) {
+			this.listeners = listeners;
+			this.vars = vars;
+		}
+
+		private int deliver() {
+			int n = 0;
+			SampleResult r;
+			while(n < BATCH && (r = poll()) != null) {
+				n++;
+				if(listeners != null && !listeners.isEmpty()) {
+					try {
+						notifier.notifyListeners(new SampleEvent(r, threadGroup, vars), listeners);
+					} catch (RuntimeException e) {
+						log.error("listener failed on " + r.getSampleLabel(), e);
+					}
+				}
+			}
+			delivered.add(n);
+			return n;
+		}
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Connection events of a ring (connected, closed by the peer, reset) kept
+ * in memory instead of logged one by one: a backend outage resets
+ * thousands of tokens a second, all on the event loops. Adding an event
+ * takes no lock and allocates nothing once its reason has been seen, so
+ * reasons are fixed strings and exception details go to the log instead;
+ * the last -Dring.journal.size events (16384 by default) are kept, with
+ * a counter per reason over the whole test.
+ * <p>
+ * The ring's stats reporter logs what happened since its last run in one
+ * line, the ring dumps the journal at its end if it has a file to dump
+ * to, and dump() writes it whenever asked, from a JSR223 element say.
+ */
+public class ConnectionJournal {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	public final static int SIZE = Integer.highestOneBit(Math.max(1024, Integer.getInteger("ring.journal.size", 16384)));
+	public final static int MAX_REASONS = 256;
+
+	public final static int CONNECTED = 0;
+	public final static int CLOSED = 1;
+	public final static int RESET = 2;
+	private final static String[] EVENTS = {"connected", "closed", "reset"};
+
+	//reason codes 0 and 1, any reason past MAX_REASONS is counted as other
+	private final static String NONE = "-";
+	private final static String OTHER = "other";
+	private final static int TOP = 5;
+
+	private final AtomicLong next = new AtomicLong(0);
+	//sequence number of the event in each slot, -1 while it is written
+	private final AtomicLongArray seqs = new AtomicLongArray(SIZE);
+	private final long[] times = new long[SIZE];
+	private final int[] tokens = new int[SIZE];
+	private final String[] targets = new String[SIZE];
+	private final byte[] events = new byte[SIZE];
+	private final short[] reasons = new short[SIZE];
+	private final long[] values = new long[SIZE];
+
+	private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+	private final String[] names = new String[MAX_REASONS];
+	private volatile int reasonCount;
+	private final AtomicLongArray eventCounts = new AtomicLongArray(EVENTS.length);
+	private final AtomicLongArray reasonCounts = new AtomicLongArray(MAX_REASONS);
+
+	private final long[] lastEvents = new long[EVENTS.length];
+	private final long[] lastReasons = new long[MAX_REASONS];
+	private long lastReport = System.currentTimeMillis();
+
+	public ConnectionJournal() {
+		for(int i = 0; i < SIZE; i++)	seqs.set(i, -1);
+		names[0] = NONE;
+		names[1] = OTHER;
+		reasonCount = 2;
+	}
+
+	/**
+	 * @param connectTime in ns
+	 */
+	public void connected(int token, String target, long connectTime) {
+		add(CONNECTED, token, target, null, connectTime);
+	}
+
+	/**
+	 * The peer closed the connection.
+	 */
+	public void closed(int token, String target) {
+		add(CLOSED, token, target, null, 0);
+	}
+
+	public void reset(int token, String target, String reason) {
+		add(RESET, token, target, reason, 0);
+	}
+
+	private void add(int event, int token, String target, String reason, long value) {
+		int code = code(reason);
+		eventCounts.incrementAndGet(event);
+		reasonCounts.incrementAndGet(code);
+		long seq = next.getAndIncrement();
+		int i = (int) (seq & (SIZE - 1));
+		seqs.set(i, -1);
+		VarHandle.storeStoreFence();
+		times[i] = System.currentTimeMillis();
+		tokens[i] = token;
+		targets[i] = target;
+		events[i] = (byte) event;
+		reasons[i] = (short) code;
+		values[i] = value;
+		seqs.lazySet(i, seq);
+	}
+
+	private int code(String reason) {
+		if(reason == null)	return 0;
+		Integer code = codes.get(reason);
+		if(code != null)	return code;
+		synchronized (codes) {
+			code = codes.get(reason);
+			if(code != null)	return code;
+			if(reasonCount == MAX_REASONS)	return 1;
+			names[reasonCount] = reason;
+			codes.put(reason, reasonCount);
+			return reasonCount++;
+		}
+	}
+
+	public long getEvents() {
+		return next.get();
+	}
+
+	public long getCount(int event) {
+		return eventCounts.get(event);
+	}
+
+	/**
+	 * Logs the events since the last report in one line, nothing if there
+	 * were none.
+	 */
+	public synchronized void report() {
+		long now = System.currentTimeMillis();
+		long[] perEvent = new long[EVENTS.length];
+		boolean any = false;
+		for(int e = 0; e < EVENTS.length; e++) {
+			long n = eventCounts.get(e);
+			perEvent[e] = n - lastEvents[e];
+			lastEvents[e] = n;
+			any |= perEvent[e] > 0;
+		}
+		long[] perReason = new long[MAX_REASONS];
+		for(int r = 0; r < reasonCount; r++) {
+			long n = reasonCounts.get(r);
+			perReason[r] = n - lastReasons[r];
+			lastReasons[r] = n;
+		}
+		long period = now - lastReport;
+		lastReport = now;
+		if(!any)	return;
+		String line = "connections in " + period + " ms: " + counts(perEvent) + reasons(perReason);
+		if(perEvent[CLOSED] + perEvent[RESET] > 0)	log.warn(line);
+		else	log.info(line);
+	}
+
+	/**
+	 * @return the counts of the whole test, null if nothing happened
+	 */
+	public String summary() {
+		long[] perEvent = new long[EVENTS.length];
+		long any = 0;
+		for(int e = 0; e < EVENTS.length; e++)	any += perEvent[e] = eventCounts.get(e);
+		if(any == 0)	return null;
+		long[] perReason = new long[MAX_REASONS];
+		for(int r = 0; r < reasonCount; r++)	perReason[r] = reasonCounts.get(r);
+		return "connections: " + counts(perEvent) + reasons(perReason);
+	}
+
+	private static String counts(long[] events) {
+		StringBuilder sb = new StringBuilder();
+		for(int e = 0; e < EVENTS.length; e++) {
+			if(sb.length() > 0)	sb.append(", ");
+			sb.append(events[e]).append(' ').append(EVENTS[e]);
+		}
+		return sb.toString();
+	}
+
+	private String reasons(final long[] counts) {
+		List<Integer> top = new ArrayList<Integer>();
+		for(int r = 1; r < reasonCount; r++) {
+			if(counts[r] > 0)	top.add(r);
+		}
+		if(top.isEmpty())	return "";
+		Collections.sort(top, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(counts[b], counts[a]);
+			}
+		});
+		StringBuilder sb = new StringBuilder("; reasons: ");
+		for(int k = 0; k < top.size() && k < TOP; k++) {
+			if(k > 0)	sb.append(", ");
+			sb.append(names[top.get(k)]).append(" x").append(counts[top.get(k)]);
+		}
+		if(top.size() > TOP)	sb.append(", ").append(top.size() - TOP).append(" more");
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the events kept, oldest first, tab separated: time, token,
+	 * target, event, reason, connect time in ms. Events added meanwhile
+	 * may be skipped.
+	 * @return the number of events written
+	 */
+	public int dump(Writer out) throws IOException {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		long last = next.get();
+		int n = 0;
+		out.write("time\ttoken\ttarget\tevent\treason\tconnect_ms\n");
+		for(long seq = Math.max(0, last - SIZE); seq < last; seq++) {
+			int i = (int) (seq & (SIZE - 1));
+			if(seqs.get(i) != seq)	continue;
+			long time = times[i];
+			int token = tokens[i];
+			String target = targets[i];
+			int event = events[i];
+			int reason = reasons[i];
+			long value = values[i];
+			VarHandle.acquireFence();
+			//overwritten while it was read
+			if(seqs.get(i) != seq)	continue;
+			out.write(format.format(new Date(time)) + "\t" + token + "\t" + target + "\t" + EVENTS[event] + "\t" +
+					names[reason] + "\t" + (event == CONNECTED ? String.format("%.3f", value / 1e6) : "-") + "\n");
+			n++;
+		}
+		out.flush();
+		return n;
+	}
+
+	public int dump(String path) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(path));
+		try {
+			return dump(out);
+		} finally {
+			out.close();
+		}
+	}
+}
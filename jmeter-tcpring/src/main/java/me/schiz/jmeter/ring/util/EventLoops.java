@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.EventExecutor;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event loops, timer and scheduler shared by all rings of the process, so
+ * the generator's thread count follows the cores rather than the number
+ * of sources in the test plan. Rings hold it from init() to destroy(), its
+ * threads stop when the last one lets go.
+ * <p>
+ * -Dring.loops sets the number of event loops per backend, the number of
+ * cores by default; a ring with more threads than that is capped to it.
+ * -Dring.schedulers sets the threads running reconnects, warm-up and
+ * stats, 1 by default. Ammo readers block on file reads, so they get
+ * threads of their own, -Dring.readers, as many as cores by default.
+ * <p>
+ * Before the reporters run, the loops' lag is sampled: how far the
+ * selector loops' turns overran their poll timeout, and how late a probe
+ * task scheduled on each epoll loop ran. After them the result handoff
+ * summary is logged, once for all rings.
+ */
+public class EventLoops {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	public final static int LOOPS = Math.max(1, Integer.getInteger("ring.loops", Runtime.getRuntime().availableProcessors()));
+	public final static int SCHEDULERS = Math.max(1, Integer.getInteger("ring.schedulers", 1));
+	public final static int READERS = Math.max(1, Integer.getInteger("ring.readers", Runtime.getRuntime().availableProcessors()));
+	private final static int REPORT_PERIOD = 1000; //1s
+	private final static int PROBE_PERIOD = 100; //100ms
+
+	private static EventLoops shared;
+	private static int holders = 0;
+
+	private final HashedWheelTimer timer;
+	private final ScheduledThreadPoolExecutor scheduler;
+	private ScheduledThreadPoolExecutor readers;
+	private final SelectorLoop[] selectorLoops = new SelectorLoop[LOOPS];
+	private EpollEventLoopGroup epollGroup;
+	private EventLoop[] epollLoops;
+	private LagProbe[] probes;
+	private volatile long loopLag = 0;
+	private final CopyOnWriteArrayList<Runnable> reporters = new CopyOnWriteArrayList<Runnable>();
+	private final AtomicInteger next = new AtomicInteger(0);
+
+	public static synchronized EventLoops acquire() {
+		if(holders++ == 0)	shared = new EventLoops();
+		return shared;
+	}
+
+	public static synchronized void release() {
+		if(holders == 0)	return;
+		if(--holders == 0) {
+			shared.shutdown();
+			shared = null;
+		}
+	}
+
+	private EventLoops() {
+		timer = new HashedWheelTimer(new Named("RingTimer"));
+		timer.start();
+		scheduler = new ScheduledThreadPoolExecutor(SCHEDULERS, new Named("RingScheduler#"));
+		scheduler.setRemoveOnCancelPolicy(true);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				loopLag = sampleLag();
+				for(Runnable reporter : reporters) {
+					try {
+						reporter.run();
+					} catch (RuntimeException e) {
+						log.error("stats reporter failed", e);
+					}
+				}
+				//the sampling threads' queues are shared by all rings
+				log.info(ResultHandoff.summary());
+			}
+		}, REPORT_PERIOD, REPORT_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	public int size() {
+		return LOOPS;
+	}
+
+	/**
+	 * @return the first of n consecutive loops for a new ring, rings start
+	 * where the previous one stopped
+	 */
+	public int next(int n) {
+		return Math.floorMod(next.getAndAdd(n), LOOPS);
+	}
+
+	public HashedWheelTimer timer() {
+		return timer;
+	}
+
+	public ScheduledExecutorService scheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * @return the executor for tasks that block on I/O, kept off the
+	 * scheduler so a slow read never delays another ring's reconnects
+	 */
+	public synchronized ScheduledExecutorService readers() {
+		if(readers == null) {
+			readers = new ScheduledThreadPoolExecutor(READERS, new Named("AmmoReader#"));
+			readers.setRemoveOnCancelPolicy(true);
+		}
+		return readers;
+	}
+
+	public synchronized SelectorLoop selectorLoop(int i) throws IOException {
+		i %= LOOPS;
+		if(selectorLoops[i] == null)	selectorLoops[i] = new SelectorLoop("EventLoopThread#" + i);
+		return selectorLoops[i];
+	}
+
+	public synchronized EventLoop epollLoop(int i) {
+		if(epollGroup == null) {
+			epollGroup = new EpollEventLoopGroup(LOOPS, new Named("EpollEventLoopThread#"));
+			epollLoops = new EventLoop[LOOPS];
+			int k = 0;
+			for(EventExecutor executor : epollGroup)	epollLoops[k++] = (EventLoop) executor;
+			probes = new LagProbe[LOOPS];
+			for(k = 0; k < LOOPS; k++) {
+				probes[k] = new LagProbe();
+				epollLoops[k].scheduleAtFixedRate(probes[k], PROBE_PERIOD, PROBE_PERIOD, TimeUnit.MILLISECONDS);
+			}
+		}
+		return epollLoops[i % LOOPS];
+	}
+
+	/**
+	 * @return the worst lag of any loop over the last report period, in ms
+	 */
+	public long getLoopLag() {
+		return TimeUnit.NANOSECONDS.toMillis(loopLag);
+	}
+
+	private synchronized long sampleLag() {
+		long max = 0;
+		for(SelectorLoop loop : selectorLoops) {
+			if(loop != null)	max = Math.max(max, loop.takeLag());
+		}
+		if(probes != null) {
+			for(LagProbe probe : probes)	max = Math.max(max, probe.lag.getAndSet(0));
+		}
+		return max;
+	}
+
+	/**
+	 * Runs the reporter once a second, along with the other rings' ones.
+	 */
+	public void addReporter(Runnable reporter) {
+		reporters.add(reporter);
+	}
+
+	public void removeReporter(Runnable reporter) {
+		reporters.remove(reporter);
+	}
+
+	private synchronized void shutdown() {
+		scheduler.shutdownNow();
+		if(readers != null)	readers.shutdownNow();
+		timer.stop();
+		for(SelectorLoop loop : selectorLoops) {
+			if(loop != null)	loop.close();
+		}
+		if(epollGroup != null)	epollGroup.shutdownGracefully(0, 100, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * A fixed rate task on an epoll loop, late by as much as the loop is
+	 * behind.
+	 */
+	private static class LagProbe implements Runnable {
+		private final AtomicLong lag = new AtomicLong(0);
+		private long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_PERIOD);
+
+		@Override
+		public void run() {
+			long late = System.nanoTime() - due;
+			if(late > lag.get())	lag.set(late);
+			due += TimeUnit.MILLISECONDS.toNanos(PROBE_PERIOD);
+		}
+	}
+
+	private static class Named implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger n = new AtomicInteger(0);
+
+		Named(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name.endsWith("#") ? name + n.getAndIncrement() : name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
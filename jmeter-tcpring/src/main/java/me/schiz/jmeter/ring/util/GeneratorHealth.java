@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Whether the generator keeps up with its own load: event loop lag, busy
+ * tokens, token acquires that found none free, results waiting for their
+ * sampling threads, ammo left in the cartridges and process CPU. A ring
+ * samples it once a second; a value past its threshold makes the sample
+ * unhealthy, and the latency measured in that second partly the
+ * generator's.
+ * <p>
+ * Thresholds: -Dring.health.lag (ms, 50), -Dring.health.busy (% of
+ * tokens, 95), -Dring.health.misses (% of acquires, 50),
+ * -Dring.health.queue (results, 10000), -Dring.health.ammo (% filled,
+ * 10, the minimum) and -Dring.health.cpu (% of all cores, 90).
+ */
+public class GeneratorHealth {
+	public final static long MAX_LAG = Long.getLong("ring.health.lag", 50);
+	public final static int MAX_BUSY = Integer.getInteger("ring.health.busy", 95);
+	public final static int MAX_MISSES = Integer.getInteger("ring.health.misses", 50);
+	public final static long MAX_QUEUE = Long.getLong("ring.health.queue", 10000);
+	public final static int MIN_AMMO = Integer.getInteger("ring.health.ammo", 10);
+	public final static int MAX_CPU = Integer.getInteger("ring.health.cpu", 90);
+
+	private static final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+	private long lastAcquires = 0, lastMisses = 0, lastOverflows = 0;
+	private long lag;
+	private int busy;
+	private int misses;
+	private long queue;
+	private long overflows;
+	private int ammo = -1;
+	private int cpu = -1;
+	private String warnings;
+	private long samples = 0, unhealthy = 0;
+
+	/**
+	 * Takes the sample of the last second.
+	 * @param lag of the event loops, in ms
+	 * @param acquires all acquire attempts so far
+	 * @param acquireMisses the attempts so far that found no free token
+	 * @param ammo percent of the cartridges filled, -1 without cartridges
+	 * @return true if the thresholds crossed are not the last sample's
+	 */
+	public synchronized boolean update(long lag, int busyTokens, int tokens, long acquires, long acquireMisses, int ammo) {
+		this.lag = lag;
+		this.busy = tokens > 0 ? (int) (busyTokens * 100L / tokens) : 0;
+		long n = acquires - lastAcquires;
+		this.misses = n > 0 ? (int) ((acquireMisses - lastMisses) * 100 / n) : 0;
+		lastAcquires = acquires;
+		lastMisses = acquireMisses;
+		this.queue = ResultHandoff.getDepth();
+		long o = ResultHandoff.getBlocked() + ResultHandoff.getFolded() + ResultHandoff.getDropped();
+		this.overflows = o - lastOverflows;
+		lastOverflows = o;
+		this.ammo = ammo;
+		this.cpu = processCpu();
+
+		StringBuilder sb = new StringBuilder();
+		if(lag > MAX_LAG)	warn(sb, "loop lag " + lag + " ms");
+		if(busy > MAX_BUSY)	warn(sb, "busy tokens " + busy + "%");
+		if(misses > MAX_MISSES)	warn(sb, "acquire misses " + misses + "%");
+		if(queue > MAX_QUEUE || overflows > 0)	warn(sb, "result queues " + queue + " waiting, " + overflows + " overflowed");
+		if(ammo != -1 && ammo < MIN_AMMO)	warn(sb, "ammo " + ammo + "% filled");
+		if(cpu > MAX_CPU)	warn(sb, "cpu " + cpu + "%");
+		String last = warnings;
+		warnings = sb.length() > 0 ? sb.toString() : null;
+		samples++;
+		if(warnings != null)	unhealthy++;
+		return warnings == null ? last != null : !crossed(warnings).equals(last == null ? "" : crossed(last));
+	}
+
+	private static void warn(StringBuilder sb, String warning) {
+		if(sb.length() > 0)	sb.append(", ");
+		sb.append(warning);
+	}
+
+	/**
+	 * @return the names of the crossed thresholds, without their values
+	 */
+	private static String crossed(String warnings) {
+		return warnings.replaceAll("[0-9]+", "");
+	}
+
+	public synchronized boolean isHealthy() {
+		return warnings == null;
+	}
+
+	/**
+	 * @return the thresholds crossed with their values, null if healthy
+	 */
+	public synchronized String getWarnings() {
+		return warnings;
+	}
+
+	public synchronized long getSamples() {
+		return samples;
+	}
+
+	public synchronized long getUnhealthy() {
+		return unhealthy;
+	}
+
+	/**
+	 * @return the sample as a JMeter result: elapsed is the loop lag, it
+	 * fails while a threshold is crossed
+	 */
+	public synchronized SampleResult toSampleResult(String label) {
+		SampleResult r = new SampleResult(System.currentTimeMillis(), lag);
+		r.setSampleLabel(label);
+		r.setLatency(lag);
+		r.setSuccessful(warnings == null);
+		r.setResponseCode(warnings == null ? "OK" : "UNHEALTHY");
+		r.setResponseMessage(warnings == null ? "healthy" : warnings);
+		r.setDataType(SampleResult.TEXT);
+		r.setResponseData(toString().getBytes());
+		return r;
+	}
+
+	/**
+	 * @return the process' share of all cores in percent, -1 if the JVM
+	 * doesn't tell
+	 */
+	public static int processCpu() {
+		if(!(os instanceof com.sun.management.OperatingSystemMXBean))	return -1;
+		double load = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+		return load < 0 ? -1 : (int) Math.round(load * 100);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "health\tloop_lag(ms):\t" + lag + "\tbusy:\t" + busy + "%\tacquire_misses:\t" + misses +
+				"%\tqueued:\t" + queue + "\toverflows:\t" + overflows + "\tammo:\t" + (ammo == -1 ? "-" : ammo + "%") +
+				"\tcpu:\t" + (cpu == -1 ? "-" : cpu + "%") + (warnings == null ? "" : "\tUNHEALTHY:\t" + warnings);
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte level response assertions the event loops run as data arrives, so
+ * a sample is failed without handing its body to a JMeter assertion:
+ * expected prefix, a pattern that must or must not occur (Horspool, also
+ * across reads), a length range and a status field at a fixed offset.
+ * Patterns take \r \n \t \\ and \xHH escapes.
+ */
+public class ResponseCheck {
+	public static final String PREFIX_MISMATCH = "assertion: prefix mismatch";
+	public static final String PATTERN_MISSING = "assertion: pattern missing";
+	public static final String PATTERN_PRESENT = "assertion: unexpected pattern";
+	public static final String LENGTH_MISMATCH = "assertion: length out of range";
+	public static final String STATUS_MISMATCH = "assertion: unexpected status";
+
+	private static final int MAX_STATUS_LENGTH = 8;
+
+	private final byte[] prefix;
+	private final byte[] contains;
+	private final int[] containsShift;
+	private final byte[] absent;
+	private final int[] absentShift;
+	private final long minLength, maxLength;
+	private final int statusOffset, statusLength;
+	private final long[] expectedStatus;
+	private final int tailSize;
+	private final ConcurrentHashMap<Long, String> statuses = new ConcurrentHashMap<Long, String>();
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * @param length "min-max", "min-", "-max" or an exact length
+	 * @param status "offset:length", optionally "=expected,..."
+	 * @return null if every check is empty
+	 * @throws IllegalArgumentException on a malformed check
+	 */
+	public static ResponseCheck parse(String prefix, String contains, String absent, String length, String status) {
+		if(isEmpty(prefix) && isEmpty(contains) && isEmpty(absent) && isEmpty(length) && isEmpty(status))	return null;
+		return new ResponseCheck(prefix, contains, absent, length, status);
+	}
+
+	private ResponseCheck(String prefix, String contains, String absent, String length, String status) {
+		this.prefix = isEmpty(prefix) ? null : unescape(prefix);
+		this.contains = isEmpty(contains) ? null : unescape(contains);
+		this.containsShift = this.contains == null ? null : shifts(this.contains);
+		this.absent = isEmpty(absent) ? null : unescape(absent);
+		this.absentShift = this.absent == null ? null : shifts(this.absent);
+		this.tailSize = Math.max(0, Math.max(this.contains == null ? 0 : this.contains.length,
+				this.absent == null ? 0 : this.absent.length) - 1);
+
+		long min = 0, max = Long.MAX_VALUE;
+		if(!isEmpty(length)) {
+			String l = length.trim();
+			int dash = l.indexOf('-');
+			if(dash < 0) {
+				min = max = Long.parseLong(l);
+			} else {
+				if(dash > 0)	min = Long.parseLong(l.substring(0, dash).trim());
+				if(dash < l.length() - 1)	max = Long.parseLong(l.substring(dash + 1).trim());
+			}
+			if(min < 0 || max < min)	throw new IllegalArgumentException("bad length range \"" + length + "\"");
+		}
+		this.minLength = min;
+		this.maxLength = max;
+
+		int offset = 0, size = 0;
+		long[] expected = null;
+		if(!isEmpty(status)) {
+			String s = status.trim();
+			int eq = s.indexOf('=');
+			String[] field = (eq < 0 ? s : s.substring(0, eq)).split(":");
+			if(field.length != 2)	throw new IllegalArgumentException("bad status field \"" + status + "\", offset:length expected");
+			offset = Integer.parseInt(field[0].trim());
+			size = Integer.parseInt(field[1].trim());
+			if(offset < 0 || size < 1 || size > MAX_STATUS_LENGTH)
+				throw new IllegalArgumentException("bad status field \"" + status + "\", length must be 1.." + MAX_STATUS_LENGTH);
+			if(eq >= 0) {
+				String[] values = s.substring(eq + 1).split(",");
+				expected = new long[values.length];
+				for(int i = 0; i < values.length; i++) {
+					byte[] v = unescape(values[i].trim());
+					if(v.length != size)	throw new IllegalArgumentException("expected status \"" + values[i] + "\" is not " + size + " bytes");
+					expected[i] = pack(v, size);
+				}
+			}
+		}
+		this.statusOffset = offset;
+		this.statusLength = size;
+		this.expectedStatus = expected;
+	}
+
+	public Matcher newMatcher() {
+		return new Matcher();
+	}
+
+	/**
+	 * @return responses failed by a check
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * State of one connection's response in progress. Used by the thread
+	 * that owns the connection only.
+	 */
+	public class Matcher {
+		private final byte[] tail = new byte[tailSize];
+		private int tailLength;
+		private long seen;
+		private boolean prefixFailed;
+		private boolean containsFound;
+		private boolean absentFound;
+		private long status;
+		private int matchEnd = -1;
+
+		public void begin() {
+			tailLength = 0;
+			seen = 0;
+			prefixFailed = false;
+			containsFound = false;
+			absentFound = false;
+			status = 0;
+			matchEnd = -1;
+		}
+
+		/**
+		 * Looks at the next n bytes of the response without consuming them.
+		 */
+		public void update(ByteBuffer data, int n) {
+			int pos = data.position();
+			if(prefix != null && !prefixFailed && seen < prefix.length) {
+				for(int i = 0; i < n && seen + i < prefix.length; i++) {
+					if(data.get(pos + i) != prefix[(int) (seen + i)]) {
+						prefixFailed = true;
+						break;
+					}
+				}
+			}
+			if(statusLength > 0 && seen < statusOffset + statusLength && seen + n > statusOffset) {
+				long from = Math.max(seen, statusOffset), to = Math.min(seen + n, statusOffset + statusLength);
+				for(long i = from; i < to; i++)	status = status << 8 | (data.get(pos + (int) (i - seen)) & 0xff);
+			}
+			if(contains != null && !containsFound) {
+				matchEnd = search(contains, containsShift, data, pos, n);
+				containsFound = matchEnd != -1;
+			}
+			if(absent != null && !absentFound)	absentFound = search(absent, absentShift, data, pos, n) != -1;
+			if(tailSize > 0)	keepTail(data, pos, n);
+			seen += n;
+		}
+
+		/**
+		 * @return true once the expected pattern was seen
+		 */
+		public boolean found() {
+			return containsFound;
+		}
+
+		/**
+		 * @return buffer index just past the expected pattern, valid after
+		 *         the update() that found it
+		 */
+		public int matchEnd() {
+			return matchEnd;
+		}
+
+		/**
+		 * @return the failed check, null if the response passed
+		 */
+		public String finish() {
+			String failure = null;
+			if(prefix != null && (prefixFailed || seen < prefix.length))	failure = PREFIX_MISMATCH;
+			else if(contains != null && !containsFound)	failure = PATTERN_MISSING;
+			else if(absent != null && absentFound)	failure = PATTERN_PRESENT;
+			else if(seen < minLength || seen > maxLength)	failure = LENGTH_MISMATCH;
+			else if(statusLength > 0 && (!hasStatus() || !isExpected(status)))	failure = STATUS_MISMATCH;
+			if(failure != null)	failures.increment();
+			return failure;
+		}
+
+		/**
+		 * @return the status field as a shared String, null without one
+		 */
+		public String getStatus() {
+			if(statusLength == 0 || !hasStatus())	return null;
+			String s = statuses.get(status);
+			if(s == null) {
+				byte[] b = new byte[statusLength];
+				for(int i = 0; i < statusLength; i++)	b[i] = (byte) (status >>> (8 * (statusLength - 1 - i)));
+				s = new String(b, StandardCharsets.ISO_8859_1);
+				statuses.putIfAbsent(status, s);
+			}
+			return s;
+		}
+
+		private boolean hasStatus() {
+			return seen >= statusOffset + statusLength;
+		}
+
+		private int search(byte[] p, int[] shift, ByteBuffer data, int pos, int n) {
+			int m = p.length;
+			int carry = Math.min(tailLength, m - 1);
+			int from = tailLength - carry;
+			int total = carry + n;
+			int i = 0;
+			while(i <= total - m) {
+				int j = m - 1;
+				while(j >= 0 && at(data, pos, from, carry, i + j) == p[j])	j--;
+				if(j < 0)	return pos + i + m - carry;
+				i += shift[at(data, pos, from, carry, i + m - 1) & 0xff];
+			}
+			return -1;
+		}
+
+		private byte at(ByteBuffer data, int pos, int from, int carry, int k) {
+			return k < carry ? tail[from + k] : data.get(pos + k - carry);
+		}
+
+		private void keepTail(ByteBuffer data, int pos, int n) {
+			if(n >= tailSize) {
+				for(int k = 0; k < tailSize; k++)	tail[k] = data.get(pos + n - tailSize + k);
+				tailLength = tailSize;
+				return;
+			}
+			int drop = Math.max(0, tailLength + n - tailSize);
+			System.arraycopy(tail, drop, tail, 0, tailLength - drop);
+			tailLength -= drop;
+			for(int k = 0; k < n; k++)	tail[tailLength++] = data.get(pos + k);
+		}
+	}
+
+	private boolean isExpected(long value) {
+		if(expectedStatus == null)	return true;
+		for(long e : expectedStatus)	if(e == value)	return true;
+		return false;
+	}
+
+	private static int[] shifts(byte[] p) {
+		int[] shift = new int[256];
+		Arrays.fill(shift, p.length);
+		for(int k = 0; k < p.length - 1; k++)	shift[p[k] & 0xff] = p.length - 1 - k;
+		return shift;
+	}
+
+	private static long pack(byte[] b, int n) {
+		long v = 0;
+		for(int i = 0; i < n; i++)	v = v << 8 | (b[i] & 0xff);
+		return v;
+	}
+
+	private static boolean isEmpty(String s) {
+		return s == null || s.isEmpty();
+	}
+
+	public static byte[] unescape(String s) {
+		byte[] out = new byte[s.length()];
+		int n = 0;
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c != '\\' || i == s.length() - 1) {
+				out[n++] = (byte) c;
+				continue;
+			}
+			char e = s.charAt(++i);
+			switch (e) {
+				case 'r': out[n++] = '\r'; break;
+				case 'n': out[n++] = '\n'; break;
+				case 't': out[n++] = '\t'; break;
+				case 'x':
+					int hi = i + 3 > s.length() ? -1 : Character.digit(s.charAt(i + 1), 16);
+					int lo = i + 3 > s.length() ? -1 : Character.digit(s.charAt(i + 2), 16);
+					if(hi < 0 || lo < 0)	throw new IllegalArgumentException("bad escape in \"" + s + "\"");
+					out[n++] = (byte) (hi << 4 | lo);
+					i += 2;
+					break;
+				default: out[n++] = (byte) e;
+			}
+		}
+		if(n == 0)	throw new IllegalArgumentException("empty pattern");
+		return Arrays.copyOf(out, n);
+	}
+}
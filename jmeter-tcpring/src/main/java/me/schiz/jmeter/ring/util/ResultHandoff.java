@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.StatisticalSampleResult;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded handoff of finished results from the event loops to the JMeter
+ * thread that sampled them. A full queue doesn't grow: depending on the
+ * policy the loop waits for the thread, the result is folded into one
+ * aggregate sample, or it is dropped and counted. offer() always succeeds.
+ */
+public class ResultHandoff extends AbstractQueue<SampleResult> {
+	public static final String BLOCK = "block";
+	public static final String FOLD = "fold";
+	public static final String DROP = "drop";
+
+	private static final LongAdder depth = new LongAdder();
+	private static final LongAdder blocked = new LongAdder();
+	private static final LongAdder folded = new LongAdder();
+	private static final LongAdder dropped = new LongAdder();
+	private static volatile boolean blocking = true;
+
+	private final ResultRing<SampleResult> ring;
+	private final int policy;
+	private final Thread owner;
+
+	//guarded by this
+	private StatisticalSampleResult aggregate;
+	private volatile boolean hasAggregate = false;
+
+	/**
+	 * Owned by, i.e. polled only from, the calling thread.
+	 */
+	public ResultHandoff(int capacity, String policy) {
+		this.ring = new ResultRing<SampleResult>(capacity);
+		this.policy = policy(policy);
+		this.owner = Thread.currentThread();
+	}
+
+	public static boolean isPolicy(String s) {
+		return BLOCK.equalsIgnoreCase(s) || FOLD.equalsIgnoreCase(s) || DROP.equalsIgnoreCase(s);
+	}
+
+	private static int policy(String s) {
+		if(BLOCK.equalsIgnoreCase(s))	return 0;
+		if(DROP.equalsIgnoreCase(s))	return 2;
+		if(s == null || s.isEmpty() || FOLD.equalsIgnoreCase(s))	return 1;
+		throw new IllegalArgumentException("unknown overflow policy `" + s + "`");
+	}
+
+	@Override
+	public boolean offer(SampleResult r) {
+		if(ring.offer(r)) {
+			depth.increment();
+			return true;
+		}
+		if(policy == 0) {
+			//the owner itself, or a dead one, would never make room, nor does one after the test
+			if(Thread.currentThread() != owner && owner.isAlive() && blocking) {
+				blocked.increment();
+				do {
+					if(ring.offer(r)) {
+						depth.increment();
+						return true;
+					}
+					Thread.yield();
+				} while(owner.isAlive() && blocking);
+			}
+			dropped.increment();
+		} else if(policy == 1) {
+			fold(r);
+		} else {
+			dropped.increment();
+		}
+		return true;
+	}
+
+	private synchronized void fold(SampleResult r) {
+		if(aggregate == null)	aggregate = new StatisticalSampleResult(r);
+		aggregate.add(r);
+		hasAggregate = true;
+		folded.increment();
+	}
+
+	/**
+	 * @return the next result, the aggregate of the folded ones once the
+	 * queue has been drained
+	 */
+	@Override
+	public SampleResult poll() {
+		SampleResult r = ring.poll();
+		if(r != null) {
+			depth.decrement();
+			return r;
+		}
+		if(!hasAggregate)	return null;
+		synchronized (this) {
+			r = aggregate;
+			aggregate = null;
+			hasAggregate = false;
+		}
+		return r;
+	}
+
+	@Override
+	public SampleResult peek() {
+		SampleResult r = ring.peek();
+		if(r != null || !hasAggregate)	return r;
+		synchronized (this) {
+			return aggregate;
+		}
+	}
+
+	@Override
+	public int size() {
+		return ring.size() + (hasAggregate ? 1 : 0);
+	}
+
+	public int capacity() {
+		return ring.capacity();
+	}
+
+	/**
+	 * @return a snapshot of the queued results, followed by the aggregate
+	 * if there is one, in poll() order; it does not support remove()
+	 */
+	@Override
+	public Iterator<SampleResult> iterator() {
+		List<SampleResult> snapshot = new ArrayList<SampleResult>(ring);
+		if(hasAggregate) {
+			synchronized (this) {
+				if(aggregate != null)	snapshot.add(aggregate);
+			}
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+	/**
+	 * @return results waiting in all handoffs of the process
+	 */
+	public static long getDepth() {
+		return Math.max(0, depth.sum());
+	}
+
+	public static long getBlocked() {
+		return blocked.sum();
+	}
+
+	public static long getFolded() {
+		return folded.sum();
+	}
+
+	public static long getDropped() {
+		return dropped.sum();
+	}
+
+	public static boolean hasOverflowed() {
+		return getBlocked() + getFolded() + getDropped() > 0;
+	}
+
+	/**
+	 * Lets loops blocked on a full queue go, dropping their results. The
+	 * test is over, nobody will poll.
+	 */
+	public static void unblock() {
+		blocking = false;
+	}
+
+	/**
+	 * Clears the counters for a new test.
+	 */
+	public static void reset() {
+		blocking = true;
+		depth.reset();
+		blocked.reset();
+		folded.reset();
+		dropped.reset();
+	}
+
+	public static String summary() {
+		return "handoff\tdepth:\t" + getDepth() + "\tblocked:\t" + getBlocked() +
+				"\tfolded:\t" + getFolded() + "\tdropped:\t" + getDropped();
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import io.netty.util.internal.PlatformDependent;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-request results of a ring in the spirit of Yandex.Tank's phout,
+ * written by the event loops as fixed-width binary records, no
+ * SampleResult involved. Every loop thread appends to memory-mapped
+ * segments of its own, path.writer.segment, rotated at
+ * -Dring.resultlog.segmentMB (256 by default). path.index names the
+ * targets and tags the records refer to. ResultLogConverter turns the
+ * lot into phout or JTL CSV.
+ * <p>
+ * A segment starts with a header: int magic, short version, short record
+ * size, int writer, int segment. Records are little-endian:
+ * <pre>
+ *  0 long  start, epoch microseconds
+ *  8 int   interval_real, microseconds from send to the end of the response
+ * 12 int   connect, microseconds, only on a connection's first request
+ * 16 int   send, microseconds spent writing the request
+ * 20 int   latency, microseconds from send to the first response byte
+ * 24 int   receive, microseconds from the first to the last response byte
+ * 28 int   size_out
+ * 32 int   size_in
+ * 36 short net_code, an errno: 0, 110 timeout, 104 closed, 71 protocol error, 5 i/o error
+ * 38 short proto_code, the HTTP status, 0 for raw responses
+ * 40 short target
+ * 42 short tag
+ * 44 int   flags, SUCCESS if the sample passed
+ * </pre>
+ */
+public class ResultLog {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	public static final int MAGIC = 0x524c4f47; //RLOG
+	public static final short VERSION = 1;
+	public static final int HEADER = 16;
+	public static final int RECORD = 48;
+	public static final long SEGMENT = Math.max(1L, Long.getLong("ring.resultlog.segmentMB", 256L)) << 20;
+
+	public static final short NET_OK = 0;
+	public static final short NET_TIMEOUT = 110;
+	public static final short NET_CLOSED = 104;
+	public static final short NET_PROTOCOL = 71;
+	public static final short NET_IO = 5;
+
+	public static final int SUCCESS = 1;
+
+	private final String path;
+	private final long epochOffsetMicros;
+	private final ThreadLocal<Writer> writers = new ThreadLocal<Writer>();
+	private final CopyOnWriteArrayList<Writer> all = new CopyOnWriteArrayList<Writer>();
+	private final AtomicInteger writerIds = new AtomicInteger();
+	private final ConcurrentHashMap<String, Integer> tags = new ConcurrentHashMap<String, Integer>();
+	private final FileWriter index;
+	private volatile boolean closed = false;
+
+	public ResultLog(String path, String[] targets) throws IOException {
+		this.path = path;
+		this.epochOffsetMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()) - TimeUnit.NANOSECONDS.toMicros(System.nanoTime());
+		this.index = new FileWriter(path + ".index");
+		for(int i = 0; i < targets.length; i++)	index.write("target\t" + i + "\t" + targets[i] + "\n");
+		index.flush();
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the tag of a sample label, registered in the index the
+	 *         first time it is seen
+	 */
+	public int tag(String label) {
+		Integer tag = tags.get(label);
+		if(tag != null)	return tag;
+		synchronized (tags) {
+			tag = tags.get(label);
+			if(tag != null)	return tag;
+			tag = tags.size();
+			try {
+				index.write("tag\t" + tag + "\t" + label.replace('\t', ' ').replace('\n', ' ') + "\n");
+				index.flush();
+			} catch (IOException e) {
+				log.warn("can't index tag `" + label + "`", e);
+			}
+			tags.put(label, tag);
+		}
+		return tag;
+	}
+
+	/**
+	 * Appends a record to the calling loop's segment. Times are
+	 * System.nanoTime(), firstByteNs 0 if the response never started.
+	 */
+	public void record(long sentNs, long writtenNs, long firstByteNs, long endNs, long connectNs,
+					   int sizeOut, int sizeIn, int netCode, int protoCode, int target, int tag, boolean success) {
+		if(closed)	return;
+		Writer w = writers.get();
+		if(w == null) {
+			w = new Writer(writerIds.getAndIncrement());
+			all.add(w);
+			writers.set(w);
+		}
+		long latency = firstByteNs != 0 ? firstByteNs - sentNs : 0;
+		long receive = firstByteNs != 0 ? endNs - firstByteNs : 0;
+		w.append(epochOffsetMicros + TimeUnit.NANOSECONDS.toMicros(sentNs), micros(endNs - sentNs), micros(connectNs),
+				micros(writtenNs - sentNs), micros(latency), micros(receive), sizeOut, sizeIn,
+				(short) netCode, (short) protoCode, (short) target, (short) tag, success ? SUCCESS : 0);
+	}
+
+	private static int micros(long ns) {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(0, ns / 1000L));
+	}
+
+	/**
+	 * Trims and closes every segment. Records offered afterwards are
+	 * dropped.
+	 */
+	public void close() {
+		closed = true;
+		for(Writer w : all)	w.close();
+		all.clear();
+		try {
+			index.close();
+		} catch (IOException e) {
+			log.warn("can't close " + path + ".index", e);
+		}
+	}
+
+	private class Writer {
+		private final int id;
+		private int segment = 0;
+		private RandomAccessFile file;
+		private MappedByteBuffer buffer;
+		private boolean failed = false;
+
+		Writer(int id) {
+			this.id = id;
+			open();
+		}
+
+		private void open() {
+			String name = path + "." + id + "." + segment;
+			try {
+				file = new RandomAccessFile(name, "rw");
+				buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD).putInt(id).putInt(segment);
+			} catch (IOException e) {
+				log.error("can't map " + name + ", results of this loop are not logged", e);
+				failed = true;
+			}
+		}
+
+		//synchronized only against close(), the loop is the only writer
+		synchronized void append(long start, int interval, int connect, int send, int latency, int receive,
+								 int sizeOut, int sizeIn, short netCode, short protoCode, short target, short tag, int flags) {
+			if(failed || closed)	return;
+			if(buffer.remaining() < RECORD) {
+				finish();
+				segment++;
+				open();
+				if(failed)	return;
+			}
+			buffer.putLong(start).putInt(interval).putInt(connect).putInt(send).putInt(latency).putInt(receive)
+					.putInt(sizeOut).putInt(sizeIn).putShort(netCode).putShort(protoCode).putShort(target).putShort(tag)
+					.putInt(flags);
+		}
+
+		synchronized void close() {
+			if(!failed)	finish();
+			failed = true;
+		}
+
+		private void finish() {
+			int length = buffer.position();
+			buffer.force();
+			PlatformDependent.freeDirectBuffer(buffer);
+			buffer = null;
+			try {
+				file.getChannel().truncate(length);
+				file.close();
+			} catch (IOException e) {
+				log.warn("can't trim " + path + "." + id + "." + segment, e);
+			}
+		}
+	}
+}
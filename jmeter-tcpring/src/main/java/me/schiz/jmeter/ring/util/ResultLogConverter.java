@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Offline converter of a ResultLog:
+ * <pre>
+ * java -cp jmeter-tcpring.jar me.schiz.jmeter.ring.util.ResultLogConverter phout|jtl path &gt; out
+ * </pre>
+ * phout is Yandex.Tank's tab separated format, jtl a JMeter CSV result
+ * file with a header line. Records come out per loop, in write order.
+ */
+public class ResultLogConverter {
+	private final Map<Integer, String> targets = new HashMap<Integer, String>();
+	private final Map<Integer, String> tags = new HashMap<Integer, String>();
+	private final boolean jtl;
+
+	public ResultLogConverter(String path, boolean jtl) throws IOException {
+		this.jtl = jtl;
+		try (BufferedReader in = new BufferedReader(new FileReader(path + ".index"))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				String[] f = line.split("\t", 3);
+				if(f.length < 3)	continue;
+				if("target".equals(f[0]))	targets.put(Integer.valueOf(f[1]), f[2]);
+				else if("tag".equals(f[0]))	tags.put(Integer.valueOf(f[1]), f[2]);
+			}
+		}
+	}
+
+	/**
+	 * @return the segments of the log, by writer and segment number
+	 */
+	public static List<File> segments(String path) {
+		File base = new File(path).getAbsoluteFile();
+		final Pattern name = Pattern.compile(Pattern.quote(base.getName()) + "\\.(\\d+)\\.(\\d+)");
+		List<File> segments = new ArrayList<File>();
+		File[] files = base.getParentFile().listFiles();
+		if(files == null)	return segments;
+		for(File f : files) {
+			if(name.matcher(f.getName()).matches())	segments.add(f);
+		}
+		segments.sort(Comparator.comparingLong((File f) -> number(name, f, 1)).thenComparingLong(f -> number(name, f, 2)));
+		return segments;
+	}
+
+	private static long number(Pattern name, File f, int group) {
+		Matcher m = name.matcher(f.getName());
+		m.matches();
+		return Long.parseLong(m.group(group));
+	}
+
+	/**
+	 * @return the number of records written
+	 */
+	public long convert(File segment, Writer out) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(segment.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		if(b.remaining() < ResultLog.HEADER || b.getInt() != ResultLog.MAGIC)	throw new IOException(segment + " is not a result log");
+		short version = b.getShort();
+		int record = b.getShort();
+		if(version != ResultLog.VERSION || record < ResultLog.RECORD)	throw new IOException(segment + " has version " + version + ", record size " + record);
+		b.position(ResultLog.HEADER);
+		StringBuilder sb = new StringBuilder(128);
+		long n = 0;
+		while(b.remaining() >= record) {
+			int at = b.position();
+			long start = b.getLong();
+			int interval = b.getInt(), connect = b.getInt(), send = b.getInt(), latency = b.getInt(), receive = b.getInt();
+			int sizeOut = b.getInt(), sizeIn = b.getInt();
+			short netCode = b.getShort(), protoCode = b.getShort(), target = b.getShort(), tag = b.getShort();
+			int flags = b.getInt();
+			b.position(at + record);
+			//a segment cut short by a crash has zeroes at the end
+			if(start == 0)	break;
+			sb.setLength(0);
+			String label = tags.containsKey((int) tag) ? tags.get((int) tag) : "";
+			if(jtl) {
+				sb.append(start / 1000).append(',').append(Math.round(interval / 1000.0)).append(',').append(csv(label)).append(',')
+						.append(netCode != 0 ? "net" + netCode : String.valueOf(protoCode)).append(',')
+						.append(csv(targets.containsKey((int) target) ? targets.get((int) target) : "")).append(',')
+						.append((flags & ResultLog.SUCCESS) != 0).append(',').append(sizeIn).append(',')
+						.append(Math.round(latency / 1000.0)).append('\n');
+			} else {
+				sb.append(start / 1000000).append('.').append(String.format("%03d", start / 1000 % 1000)).append('\t')
+						.append(label).append('\t').append(interval).append('\t').append(connect).append('\t')
+						.append(send).append('\t').append(latency).append('\t').append(receive).append('\t')
+						.append(interval).append('\t').append(sizeOut).append('\t').append(sizeIn).append('\t')
+						.append(netCode).append('\t').append(protoCode).append('\n');
+			}
+			out.write(sb.toString());
+			n++;
+		}
+		return n;
+	}
+
+	private static String csv(String s) {
+		if(s.indexOf(',') < 0 && s.indexOf('"') < 0)	return s;
+		return '"' + s.replace("\"", "\"\"") + '"';
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2 || !("phout".equals(args[0]) || "jtl".equals(args[0]))) {
+			System.err.println("usage: ResultLogConverter phout|jtl path");
+			System.exit(1);
+		}
+		boolean jtl = "jtl".equals(args[0]);
+		ResultLogConverter converter = new ResultLogConverter(args[1], jtl);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		if(jtl)	out.write("timeStamp,elapsed,label,responseCode,threadName,success,bytes,Latency\n");
+		long n = 0;
+		for(File segment : segments(args[1]))	n += converter.convert(segment, out);
+		out.flush();
+		System.err.println(n + " records");
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+import java.util.ArrayDeque;
+
+/**
+ * Per-thread pool of SampleResults for the allocation-free engine mode.
+ * A result handed to JMeter is taken back on the thread's next take(),
+ * i.e. once the synchronous listeners of the previous sample are done
+ * with it. Listeners that keep results (View Results Tree, asynchronous
+ * backends) must not be used in this mode.
+ */
+public class ResultPool {
+	private static final ThreadLocal<ResultPool> tlPool = new ThreadLocal<ResultPool>();
+
+	private final ArrayDeque<Pooled> free = new ArrayDeque<Pooled>();
+	private SampleResult handedOut;
+	private int created;
+
+	public static ResultPool get() {
+		ResultPool pool = tlPool.get();
+		if(pool == null) {
+			pool = new ResultPool();
+			tlPool.set(pool);
+		}
+		return pool;
+	}
+
+	public SampleResult take() {
+		if(handedOut != null) {
+			put(handedOut);
+			handedOut = null;
+		}
+		Pooled r = free.poll();
+		if(r == null) {
+			created++;
+			return new Pooled();
+		}
+		return r;
+	}
+
+	public void put(SampleResult r) {
+		if(r instanceof Pooled) {
+			((Pooled) r).recycle();
+			free.push((Pooled) r);
+		}
+	}
+
+	public SampleResult handOut(SampleResult r) {
+		handedOut = r;
+		return r;
+	}
+
+	public int getCreated() {
+		return created;
+	}
+
+	static class Pooled extends SampleResult {
+		void recycle() {
+			if(getStartTime() != 0L) {
+				setEndTime(0L);
+				setStartTime(0L);
+			}
+			setLatency(0L);
+			setBytes(0);
+			setSuccessful(false);
+			setResponseCode("");
+			setResponseMessage("");
+			setResponseData(EMPTY_BA);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, single-consumer array queue. Unlike
+ * ConcurrentLinkedQueue it allocates nothing per offer(). Event loops
+ * offer, the owning JMeter thread polls.
+ */
+public class ResultRing<E> extends AbstractQueue<E> {
+	private final Object[] buffer;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+
+	public ResultRing(int capacity) {
+		int n = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.buffer = new Object[n];
+		this.sequences = new AtomicLongArray(n);
+		this.mask = n - 1;
+		for(int i=0;i<n;i++)	sequences.set(i, i);
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if(e == null)	throw new NullPointerException();
+		while(true) {
+			long t = tail.get();
+			int idx = (int)(t & mask);
+			long diff = sequences.get(idx) - t;
+			if(diff == 0) {
+				if(tail.compareAndSet(t, t + 1)) {
+					buffer[idx] = e;
+					sequences.lazySet(idx, t + 1);
+					return true;
+				}
+			} else if(diff < 0) {
+				return false;
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long h = head;
+		int idx = (int)(h & mask);
+		if(sequences.get(idx) != h + 1)	return null;
+		E e = (E) buffer[idx];
+		buffer[idx] = null;
+		sequences.lazySet(idx, h + buffer.length);
+		head = h + 1;
+		return e;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		long h = head;
+		int idx = (int)(h & mask);
+		if(sequences.get(idx) != h + 1)	return null;
+		return (E) buffer[idx];
+	}
+
+	@Override
+	public int size() {
+		long size = tail.get() - head;
+		return (int) Math.max(0, Math.min(size, buffer.length));
+	}
+
+	/**
+	 * @return a snapshot of the published elements, oldest first; it
+	 * allocates and does not support remove(), poll() is the way out
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		List<E> snapshot = new ArrayList<E>();
+		long t = tail.get();
+		for(long h = head; h < t; h++) {
+			int idx = (int)(h & mask);
+			if(sequences.get(idx) != h + 1)	break;
+			E e = (E) buffer[idx];
+			//polled while we read it, what follows is newer than the snapshot
+			if(e == null || sequences.get(idx) != h + 1)	break;
+			snapshot.add(e);
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events of the rings, to line generator hiccups up
+ * with GC and safepoints in one recording. All are disabled by default;
+ * the helpers ask the event's type first and build no event while it is
+ * disabled, so the hot paths allocate nothing without a recording. Enable
+ * them in a .jfc, e.g. ring.jfc next to this class, or in Mission
+ * Control's template manager.
+ */
+public final class RingEvents {
+	private static final String CATEGORY = "JMeter Ring";
+
+	private RingEvents() {
+	}
+
+	@Name("me.schiz.ring.Connect")
+	@Label("Connect")
+	@Category({CATEGORY, "Connection"})
+	@Description("A token's connection is up, TLS handshake included")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class Connect extends Event {
+		@Label("Token")
+		int token;
+		@Label("Target")
+		String target;
+		@Label("Connect Time")
+		@Timespan
+		long connectTime;
+	}
+
+	@Name("me.schiz.ring.Reset")
+	@Label("Reset")
+	@Category({CATEGORY, "Connection"})
+	@Description("A token's connection is dropped and replaced")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class Reset extends Event {
+		@Label("Token")
+		int token;
+		@Label("Target")
+		String target;
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("me.schiz.ring.Timeout")
+	@Label("Timeout")
+	@Category({CATEGORY, "Connection"})
+	@Description("A connect, response or drain timeout fired")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class Timeout extends Event {
+		@Label("Token")
+		int token;
+		@Label("Target")
+		String target;
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("me.schiz.ring.RequestWrite")
+	@Label("Request Write")
+	@Category({CATEGORY, "Request"})
+	@Description("A request written to a token's connection, the duration is the write")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class RequestWrite extends Event {
+		@Label("Token")
+		int token;
+		@Label("Target")
+		String target;
+		@Label("Size")
+		@DataAmount
+		int size;
+	}
+
+	@Name("me.schiz.ring.RequestComplete")
+	@Label("Request Complete")
+	@Category({CATEGORY, "Request"})
+	@Description("A request's response arrived or the request failed")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class RequestComplete extends Event {
+		@Label("Token")
+		int token;
+		@Label("Target")
+		String target;
+		@Label("Connect Time")
+		@Description("Only on a connection's first request")
+		@Timespan
+		long connectTime;
+		@Label("Write Time")
+		@Timespan
+		long writeTime;
+		@Label("Latency")
+		@Description("From the write to the first response byte")
+		@Timespan
+		long latency;
+		@Label("Receive Time")
+		@Timespan
+		long receiveTime;
+		@Label("Total Time")
+		@Timespan
+		long totalTime;
+		@Label("Response Size")
+		@DataAmount
+		int size;
+		@Label("Status")
+		int status;
+		@Label("Success")
+		boolean success;
+		@Label("Net Code")
+		@Description("An errno as in ResultLog, 0 unless the request failed on the network")
+		int netCode;
+	}
+
+	@Name("me.schiz.ring.Acquire")
+	@Label("Token Acquire")
+	@Category({CATEGORY, "Sampler"})
+	@Description("A sampler thread waiting for a free token")
+	@Enabled(false)
+	@Threshold("1 ms")
+	@StackTrace(false)
+	public static class Acquire extends Event {
+		@Label("Token")
+		@Description("-1 if the sample gave up")
+		int token = -1;
+		@Label("Target")
+		String target;
+		@Label("Spins")
+		long spins;
+		@Label("Reason")
+		@Description("What ended the wait")
+		String reason;
+	}
+
+	@Name("me.schiz.ring.AmmoStall")
+	@Label("Ammo Stall")
+	@Category({CATEGORY, "Ammo"})
+	@Description("An ammo reader's batch took long, or a sampler waited for ammo")
+	@Enabled(false)
+	@Threshold("10 ms")
+	@StackTrace(false)
+	public static class AmmoStall extends Event {
+		@Label("Reader")
+		String reader;
+		@Label("Requests")
+		int requests;
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("me.schiz.ring.LoopIteration")
+	@Label("Event Loop Iteration")
+	@Category({CATEGORY, "Event Loop"})
+	@Description("One turn of a shared selector loop: ring tasks, select and key handlers")
+	@Enabled(false)
+	@Threshold("20 ms")
+	@StackTrace(false)
+	public static class LoopIteration extends Event {
+		@Label("Loop")
+		String loop;
+		@Label("Keys")
+		int keys;
+		@Label("Task Time")
+		@Timespan
+		long taskTime;
+	}
+
+	private static final EventType CONNECT = EventType.getEventType(Connect.class);
+	private static final EventType RESET = EventType.getEventType(Reset.class);
+	private static final EventType TIMEOUT = EventType.getEventType(Timeout.class);
+	private static final EventType WRITE = EventType.getEventType(RequestWrite.class);
+	private static final EventType COMPLETE = EventType.getEventType(RequestComplete.class);
+	private static final EventType ACQUIRE = EventType.getEventType(Acquire.class);
+	private static final EventType AMMO_STALL = EventType.getEventType(AmmoStall.class);
+	private static final EventType LOOP_ITERATION = EventType.getEventType(LoopIteration.class);
+
+	public static void connect(int token, String target, long connectTime) {
+		if(!CONNECT.isEnabled())	return;
+		Connect e = new Connect();
+		e.token = token;
+		e.target = target;
+		e.connectTime = connectTime;
+		e.commit();
+	}
+
+	public static void reset(int token, String target, String reason) {
+		if(!RESET.isEnabled())	return;
+		Reset e = new Reset();
+		e.token = token;
+		e.target = target;
+		e.reason = reason;
+		e.commit();
+	}
+
+	public static void timeout(int token, String target, String reason) {
+		if(!TIMEOUT.isEnabled())	return;
+		Timeout e = new Timeout();
+		e.token = token;
+		e.target = target;
+		e.reason = reason;
+		e.commit();
+	}
+
+	/**
+	 * @return true if requests need their nanoTime() stamps for RequestComplete
+	 */
+	public static boolean isCompleteEnabled() {
+		return COMPLETE.isEnabled();
+	}
+
+	/**
+	 * Times are System.nanoTime(), firstByteNs 0 if the response never
+	 * started.
+	 */
+	public static void complete(int token, String target, long sentNs, long writtenNs, long firstByteNs, long endNs,
+								long connectTime, int size, int status, boolean success, int netCode) {
+		if(!COMPLETE.isEnabled())	return;
+		RequestComplete e = new RequestComplete();
+		e.token = token;
+		e.target = target;
+		e.connectTime = connectTime;
+		e.writeTime = Math.max(0, writtenNs - sentNs);
+		e.latency = firstByteNs != 0 ? firstByteNs - sentNs : 0;
+		e.receiveTime = firstByteNs != 0 ? endNs - firstByteNs : 0;
+		e.totalTime = endNs - sentNs;
+		e.size = size;
+		e.status = status;
+		e.success = success;
+		e.netCode = netCode;
+		e.commit();
+	}
+
+	/**
+	 * @return the event to pass to endWrite(), null if it is disabled
+	 */
+	public static RequestWrite beginWrite() {
+		if(!WRITE.isEnabled())	return null;
+		RequestWrite e = new RequestWrite();
+		e.begin();
+		return e;
+	}
+
+	public static void endWrite(RequestWrite e, int token, String target, int size) {
+		if(e == null)	return;
+		e.end();
+		if(!e.shouldCommit())	return;
+		e.token = token;
+		e.target = target;
+		e.size = size;
+		e.commit();
+	}
+
+	public static Acquire beginAcquire() {
+		if(!ACQUIRE.isEnabled())	return null;
+		Acquire e = new Acquire();
+		e.begin();
+		return e;
+	}
+
+	/**
+	 * @param token -1 if the sample gave up waiting
+	 */
+	public static void endAcquire(Acquire e, int token, String target, long spins, String reason) {
+		if(e == null)	return;
+		e.end();
+		if(!e.shouldCommit())	return;
+		e.token = token;
+		e.target = target;
+		e.spins = spins;
+		e.reason = reason;
+		e.commit();
+	}
+
+	public static AmmoStall beginAmmoStall() {
+		if(!AMMO_STALL.isEnabled())	return null;
+		AmmoStall e = new AmmoStall();
+		e.begin();
+		return e;
+	}
+
+	public static void endAmmoStall(AmmoStall e, String reader, int requests, String reason) {
+		if(e == null)	return;
+		e.end();
+		if(!e.shouldCommit())	return;
+		e.reader = reader;
+		e.requests = requests;
+		e.reason = reason;
+		e.commit();
+	}
+
+	public static LoopIteration beginLoopIteration() {
+		if(!LOOP_ITERATION.isEnabled())	return null;
+		LoopIteration e = new LoopIteration();
+		e.begin();
+		return e;
+	}
+
+	public static void endLoopIteration(LoopIteration e, String loop, int keys, long taskTime) {
+		if(e == null)	return;
+		e.end();
+		if(!e.shouldCommit())	return;
+		e.loop = loop;
+		e.keys = keys;
+		e.taskTime = taskTime;
+		e.commit();
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A selector thread shared by rings. Every ring adds a task the loop runs
+ * on each turn, for its registrations and timeouts, and attaches the
+ * consumer of its keys to them.
+ */
+public class SelectorLoop implements Runnable, Consumer<SelectionKey> {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	public final static int POLL_TIMEOUT = 10; //10ms
+	private final static long POLL_TIMEOUT_NS = TimeUnit.MILLISECONDS.toNanos(POLL_TIMEOUT);
+
+	private final Selector selector;
+	private final Thread thread;
+	//replaced on add and remove, iterating a list would allocate every turn
+	private volatile Runnable[] tasks = new Runnable[0];
+	private final AtomicLong lag = new AtomicLong(0);
+
+	public SelectorLoop(String name) throws IOException {
+		selector = Selector.open();
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public Selector selector() {
+		return selector;
+	}
+
+	public synchronized void add(Runnable task) {
+		Runnable[] next = Arrays.copyOf(tasks, tasks.length + 1);
+		next[tasks.length] = task;
+		tasks = next;
+	}
+
+	public synchronized void remove(Runnable task) {
+		Runnable[] current = tasks;
+		for(int i = 0; i < current.length; i++) {
+			if(current[i] != task)	continue;
+			Runnable[] next = new Runnable[current.length - 1];
+			System.arraycopy(current, 0, next, 0, i);
+			System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+			tasks = next;
+			return;
+		}
+	}
+
+	public void wakeup() {
+		selector.wakeup();
+	}
+
+	/**
+	 * @return the longest a turn overran the poll timeout since the last
+	 * call, in ns: how late the loop's timeouts and tasks were
+	 */
+	public long takeLag() {
+		return lag.getAndSet(0);
+	}
+
+	public void close() {
+		try {
+			selector.close();
+		} catch (IOException e) {
+			log.error("can't close selector", e);
+		}
+	}
+
+	@Override
+	public void run() {
+		log.info("EventLoop started in " + thread.getName());
+		while (selector.isOpen()) {
+			RingEvents.LoopIteration turn = RingEvents.beginLoopIteration();
+			long tasksStart = System.nanoTime();
+			Runnable[] turnTasks = tasks;
+			for(int i = 0; i < turnTasks.length; i++) {
+				try {
+					turnTasks[i].run();
+				} catch (RuntimeException e) {
+					log.error("event loop task failed", e);
+				}
+			}
+			long taskTime = turn != null ? System.nanoTime() - tasksStart : 0;
+			int keys;
+			try {
+				//select(Consumer) hands keys over without filling the selected-key set
+				keys = selector.select(this, POLL_TIMEOUT);
+			} catch (ClosedSelectorException e) {
+				break;
+			} catch (IOException e) {
+				log.error("IOException", e);
+				break;
+			}
+			long late = System.nanoTime() - tasksStart - POLL_TIMEOUT_NS;
+			if(late > lag.get())	lag.set(late);
+			RingEvents.endLoopIteration(turn, thread.getName(), keys, taskTime);
+		}
+		log.info("EventLoop in " + thread.getName() + " has stopped");
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void accept(SelectionKey key) {
+		Object consumer = key.attachment();
+		if(!(consumer instanceof Consumer))	return;
+		try {
+			((Consumer<SelectionKey>) consumer).accept(key);
+		} catch (RuntimeException e) {
+			log.error("event loop key handler failed", e);
+		}
+	}
+}
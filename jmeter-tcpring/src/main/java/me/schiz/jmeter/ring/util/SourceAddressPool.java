@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.NetworkChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Local addresses the ring's sockets bind to before connecting, so the
+ * ephemeral port range is spent per source address instead of once for
+ * the whole generator. Sockets are spread round robin and counted per
+ * address; an address whose ports run out is skipped from then on.
+ *
+ * The spec is a space or comma separated list of addresses, IPv4 ranges
+ * (10.0.0.1-10.0.0.20) and IPv4 CIDR blocks (127.0.0.0/24, network and
+ * broadcast addresses left out).
+ */
+public class SourceAddressPool {
+	private static final Logger log = LoggingManager.getLoggerForClass();
+
+	private static final int DEFAULT_PORTS = 28232;
+	private static final String PORT_RANGE = "/proc/sys/net/ipv4/ip_local_port_range";
+
+	private final InetSocketAddress[] addresses;
+	private final AtomicIntegerArray bound;
+	private final AtomicIntegerArray limits;
+	private final AtomicInteger next = new AtomicInteger(0);
+
+	public SourceAddressPool(String spec) throws UnknownHostException {
+		List<InetAddress> list = new ArrayList<>();
+		for(String entry : spec.trim().split("[\\s,]+")) {
+			if(entry.isEmpty())	continue;
+			int slash = entry.indexOf('/'), dash = entry.indexOf('-');
+			if(slash > 0) {
+				int prefix = Integer.parseInt(entry.substring(slash + 1));
+				if(prefix < 16 || prefix > 32)	throw new IllegalArgumentException("prefix out of /16../32: " + entry);
+				int base = toInt(InetAddress.getByName(entry.substring(0, slash))) & (int) (0xffffffffL << (32 - prefix));
+				int size = 1 << (32 - prefix);
+				int from = size > 2 ? 1 : 0, to = size > 2 ? size - 2 : size - 1;
+				for(int i = from; i <= to; i++)	list.add(toAddress(base + i));
+			} else if(dash > 0) {
+				int from = toInt(InetAddress.getByName(entry.substring(0, dash)));
+				int to = toInt(InetAddress.getByName(entry.substring(dash + 1)));
+				if(to - from < 0 || to - from >= 65536)	throw new IllegalArgumentException("bad range: " + entry);
+				for(int i = from; i - from <= to - from; i++)	list.add(toAddress(i));
+			} else {
+				list.add(InetAddress.getByName(entry));
+			}
+		}
+		if(list.isEmpty())	throw new IllegalArgumentException("no source addresses in \"" + spec + "\"");
+		int ports = ephemeralPorts();
+		addresses = new InetSocketAddress[list.size()];
+		bound = new AtomicIntegerArray(list.size());
+		limits = new AtomicIntegerArray(list.size());
+		for(int i = 0; i < addresses.length; i++) {
+			addresses[i] = new InetSocketAddress(list.get(i), 0);
+			limits.set(i, ports);
+		}
+	}
+
+	private static int toInt(InetAddress address) {
+		byte[] b = address.getAddress();
+		if(b.length != 4)	throw new IllegalArgumentException("ranges are IPv4 only: " + address);
+		return (b[0] & 0xff) << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | (b[3] & 0xff);
+	}
+
+	private static InetAddress toAddress(int ip) throws UnknownHostException {
+		return InetAddress.getByAddress(new byte[] {(byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip});
+	}
+
+	private static int ephemeralPorts() {
+		try {
+			String[] range = new String(Files.readAllBytes(Paths.get(PORT_RANGE)), StandardCharsets.US_ASCII).trim().split("\\s+");
+			return Integer.parseInt(range[1]) - Integer.parseInt(range[0]) + 1;
+		} catch (IOException | RuntimeException e) {
+			return DEFAULT_PORTS;
+		}
+	}
+
+	/**
+	 * @return the index of the address the next socket should bind to, -1
+	 *         if every address is out of ports
+	 */
+	public int acquire() {
+		int start = Math.floorMod(next.getAndIncrement(), addresses.length);
+		for(int k = 0; k < addresses.length; k++) {
+			int i = (start + k) % addresses.length;
+			int n;
+			while((n = bound.get(i)) < limits.get(i)) {
+				if(bound.compareAndSet(i, n, n + 1))	return i;
+			}
+		}
+		return -1;
+	}
+
+	public void release(int i) {
+		bound.decrementAndGet(i);
+	}
+
+	public InetSocketAddress get(int i) {
+		return addresses[i];
+	}
+
+	/**
+	 * The address could not bind one more socket, cap it at what it holds.
+	 */
+	public void exhausted(int i) {
+		int n = Math.max(0, bound.get(i) - 1);
+		if(limits.getAndSet(i, n) > n)	log.warn("source address " + addresses[i].getAddress().getHostAddress() + " is out of ports at " + n + " sockets");
+	}
+
+	/**
+	 * Binds the channel to the next address with ports left.
+	 * @return the address index, to be released when the channel is closed
+	 */
+	public int bind(NetworkChannel channel) throws IOException {
+		for(int k = 0; k < addresses.length; k++) {
+			int i = acquire();
+			if(i == -1)	break;
+			try {
+				channel.bind(addresses[i]);
+				return i;
+			} catch (BindException e) {
+				exhausted(i);
+				release(i);
+			}
+		}
+		throw new BindException("all " + addresses.length + " source addresses are out of ports");
+	}
+
+	public int size() {
+		return addresses.length;
+	}
+
+	/**
+	 * @return sockets bound over all addresses
+	 */
+	public int getBound() {
+		int n = 0;
+		for(int i = 0; i < addresses.length; i++)	n += bound.get(i);
+		return n;
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import me.schiz.ringpool.StripedRingPool;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One target address of a ring: its own pool of tokens, so a balancer
+ * can pick the target first and a token second, plus its throughput and
+ * latency counters.
+ */
+public class Target<T> {
+	private static final double EWMA_ALPHA = 0.2;
+
+	private final String address;
+	private final int weight;
+	private int index;
+	private final StripedRingPool<T> pool;
+	private final int[] ids;
+	private int size; // also the next slot to fill, tokens are only ever added
+
+	private CircuitBreaker breaker;
+	private final ConcurrentLinkedQueue<T> spares = new ConcurrentLinkedQueue<T>();
+	private final AtomicInteger outstanding = new AtomicInteger(0);
+	private final LongAdder responses = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder latencySum = new LongAdder();
+	//double bits, updated by every loop that records a response
+	private final AtomicLong ewma = new AtomicLong(Double.doubleToRawLongBits(0.0));
+
+	public Target(String address, int weight, int capacity) {
+		this.address = address;
+		this.weight = Math.max(1, weight);
+		this.pool = new StripedRingPool<T>(capacity);
+		this.ids = new int[capacity];
+	}
+
+	/**
+	 * Adds the ring's token #id to this target.
+	 * @return the token's slot in the target's pool
+	 */
+	public int add(T token, int id) {
+		int slot = size;
+		if(slot >= pool.capacity() || !pool.put(slot, token))	throw new IllegalStateException("target " + address + " is full");
+		ids[slot] = id;
+		size++;
+		return slot;
+	}
+
+	/**
+	 * @return an empty array of targets, typed
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Target<T>[] newArray(int length) {
+		return (Target<T>[]) new Target[length];
+	}
+
+	/**
+	 * @return the ring id of a free token, -1 if there is none
+	 */
+	public int acquire() {
+		int slot = pool.acquire();
+		return slot == -1 ? -1 : ids[slot];
+	}
+
+	/**
+	 * Takes the token in the given slot out of rotation if it is free.
+	 */
+	public boolean hold(int slot) {
+		return pool.tryAcquire(slot);
+	}
+
+	public void release(int slot) {
+		pool.release(slot);
+	}
+
+	/**
+	 * Parks a connected token, held busy, as a hot spare.
+	 */
+	public void offerSpare(T token) {
+		spares.offer(token);
+	}
+
+	/**
+	 * @return a connected spare, null if there is none
+	 */
+	public T pollSpare() {
+		return spares.poll();
+	}
+
+	public boolean removeSpare(T token) {
+		return spares.remove(token);
+	}
+
+	public int getSpares() {
+		return spares.size();
+	}
+
+	public boolean isAvailable() {
+		return breaker == null || breaker.isClosed();
+	}
+
+	public void setBreaker(CircuitBreaker breaker) {
+		this.breaker = breaker;
+	}
+
+	public CircuitBreaker getBreaker() {
+		return breaker;
+	}
+
+	public void sent() {
+		outstanding.incrementAndGet();
+	}
+
+	public void done() {
+		outstanding.decrementAndGet();
+	}
+
+	/**
+	 * Counts a response; the request is done() separately.
+	 */
+	public void record(long latencyMillis, boolean success) {
+		responses.increment();
+		if(!success)	errors.increment();
+		latencySum.add(latencyMillis);
+		long bits;
+		double v;
+		do {
+			bits = ewma.get();
+			v = Double.longBitsToDouble(bits);
+		} while(!ewma.compareAndSet(bits, Double.doubleToRawLongBits(v + EWMA_ALPHA * (latencyMillis - v))));
+	}
+
+	public void failed() {
+		errors.increment();
+	}
+
+	public AtomicInteger getOutstandingCounter() {
+		return outstanding;
+	}
+
+	public int getOutstanding() {
+		return Math.max(0, outstanding.get());
+	}
+
+	public double getEwma() {
+		return Double.longBitsToDouble(ewma.get());
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the target's number in the ring, in address order
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public StripedRingPool.Stats getStats() {
+		return pool.getStats();
+	}
+
+	@Override
+	public String toString() {
+		long n = responses.sum();
+		return "target " + address + "\ttokens:\t" + size + "\tweight:\t" + weight +
+				"\toutstanding:\t" + getOutstanding() + "\tresponses:\t" + n + "\terrors:\t" + errors.sum() +
+				"\tmean(ms):\t" + (n > 0 ? String.format("%.2f", latencySum.sum() / (double) n) : "-") +
+				"\tewma(ms):\t" + String.format("%.2f", getEwma());
+	}
+}
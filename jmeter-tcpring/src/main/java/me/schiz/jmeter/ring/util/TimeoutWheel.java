@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+/**
+ * Hashed timing wheel with intrusive entries, ticked by the owning event
+ * loop. Each token owns one preallocated Entry, so arming and cancelling a
+ * timeout allocates nothing. schedule() and cancel() may be called from
+ * any thread; expire() is called by the event loop only, and the callbacks
+ * run on it outside the wheel lock.
+ */
+public class TimeoutWheel {
+	public static class Entry {
+		public int id;
+		private String reason;
+		private long deadline;
+		private int bucket = -1;
+		private Entry prev;
+		private Entry next;
+		private Entry expiredNext;
+
+		public Entry(int id) {
+			this.id = id;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		public boolean isScheduled() {
+			return bucket != -1;
+		}
+	}
+
+	public interface Callback {
+		void expired(Entry entry);
+	}
+
+	private final long tickNanos;
+	private final int mask;
+	private final Entry[] buckets;
+	private final long origin;
+	private long lastTick;
+
+	/**
+	 * @param tickMillis resolution of the wheel
+	 * @param size number of buckets, rounded up to a power of two
+	 */
+	public TimeoutWheel(long tickMillis, int size) {
+		int n = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+		this.tickNanos = tickMillis * 1000000L;
+		this.mask = n - 1;
+		this.buckets = new Entry[n];
+		this.origin = System.nanoTime();
+		this.lastTick = 0L;
+	}
+
+	public synchronized void schedule(Entry entry, long timeoutMillis, String reason) {
+		if(entry.bucket != -1)	unlink(entry);
+		entry.reason = reason;
+		entry.deadline = System.nanoTime() + timeoutMillis * 1000000L;
+		long tick = Math.max((entry.deadline - origin + tickNanos - 1) / tickNanos, lastTick + 1);
+		int b = (int)(tick & mask);
+		entry.bucket = b;
+		entry.prev = null;
+		entry.next = buckets[b];
+		if(entry.next != null)	entry.next.prev = entry;
+		buckets[b] = entry;
+	}
+
+	public synchronized boolean cancel(Entry entry) {
+		if(entry.bucket == -1)	return false;
+		unlink(entry);
+		return true;
+	}
+
+	/**
+	 * Fires every entry whose deadline has passed.
+	 * @return number of expired entries
+	 */
+	public int expire(Callback callback) {
+		Entry chain = null;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long tick = (now - origin) / tickNanos;
+			if(tick <= lastTick)	return 0;
+			for(long t = Math.max(lastTick + 1, tick - mask); t <= tick; t++) {
+				Entry e = buckets[(int)(t & mask)];
+				while(e != null) {
+					Entry next = e.next;
+					if(e.deadline <= now) {
+						unlink(e);
+						e.expiredNext = chain;
+						chain = e;
+					}
+					e = next;
+				}
+			}
+			lastTick = tick;
+		}
+		int count = 0;
+		while(chain != null) {
+			Entry next = chain.expiredNext;
+			chain.expiredNext = null;
+			callback.expired(chain);
+			chain = next;
+			count++;
+		}
+		return count;
+	}
+
+	private void unlink(Entry e) {
+		if(e.prev != null)	e.prev.next = e.next;
+		else	buckets[e.bucket] = e.next;
+		if(e.next != null)	e.next.prev = e.prev;
+		e.prev = null;
+		e.next = null;
+		e.bucket = -1;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.util;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Unix domain stream sockets, "unix:/path/to.sock" targets. The JDK API is
+ * Java 16+, the build targets 11, so it is looked up at runtime.
+ */
+public class UnixDomain {
+	public static final String PREFIX = "unix:";
+
+	private static final ProtocolFamily UNIX;
+	private static final Method OPEN;
+	private static final Method ADDRESS;
+
+	static {
+		ProtocolFamily family = null;
+		Method open = null, address = null;
+		try {
+			family = StandardProtocolFamily.valueOf("UNIX");
+			open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+			address = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+		} catch (IllegalArgumentException | ReflectiveOperationException e) {
+			family = null;
+		}
+		UNIX = family;
+		OPEN = open;
+		ADDRESS = address;
+	}
+
+	public static boolean isAvailable() {
+		return UNIX != null;
+	}
+
+	public static boolean isUnix(String address) {
+		return address.startsWith(PREFIX);
+	}
+
+	/**
+	 * @param address "unix:/path/to.sock"
+	 */
+	public static String path(String address) {
+		return address.substring(PREFIX.length());
+	}
+
+	public static SocketAddress address(String path) throws IOException {
+		return (SocketAddress) invoke(ADDRESS, path);
+	}
+
+	/**
+	 * @return a blocking, unconnected unix domain stream channel
+	 */
+	public static SocketChannel open() throws IOException {
+		return (SocketChannel) invoke(OPEN, UNIX);
+	}
+
+	private static Object invoke(Method method, Object arg) throws IOException {
+		if(UNIX == null)	throw new IOException("unix domain sockets need Java 16+");
+		try {
+			return method.invoke(null, arg);
+		} catch (InvocationTargetException e) {
+			if(e.getCause() instanceof IOException)	throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+	}
+}
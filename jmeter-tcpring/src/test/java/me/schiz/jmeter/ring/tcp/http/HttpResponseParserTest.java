@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.tcp.http;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpResponseParserTest {
+	private static final String OK = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+	private static final String CHUNKED = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+			+ "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nX-Trailer: t\r\n\r\n";
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static String string(byte[] b) {
+		return new String(b, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Feeds the pieces the way reads would deliver them, starting the next
+	 * message on the same buffer whenever one completes.
+	 * @return the bodies of the completed messages
+	 */
+	private static List<String> feed(HttpResponseParser parser, boolean head, byte[]... pieces) {
+		List<String> bodies = new ArrayList<String>();
+		parser.begin(head);
+		for(byte[] piece : pieces) {
+			ByteBuffer buffer = ByteBuffer.wrap(piece);
+			while(buffer.hasRemaining()) {
+				if(parser.parse(buffer)) {
+					bodies.add(string(parser.getBody()));
+					parser.begin(head);
+				} else if(parser.isError()) {
+					return bodies;
+				}
+			}
+		}
+		return bodies;
+	}
+
+	private static byte[][] split(byte[] message, int at) {
+		byte[] a = new byte[at], b = new byte[message.length - at];
+		System.arraycopy(message, 0, a, 0, at);
+		System.arraycopy(message, at, b, 0, b.length);
+		return new byte[][] {a, b};
+	}
+
+	private static byte[][] bytewise(byte[] message) {
+		byte[][] pieces = new byte[message.length][];
+		for(int i=0;i<message.length;i++)	pieces[i] = new byte[] {message[i]};
+		return pieces;
+	}
+
+	/**
+	 * Parses the response split in two at every offset, and byte by byte.
+	 */
+	private static void assertBodies(String response, boolean head, String... expected) {
+		byte[] message = bytes(response);
+		List<String> want = Arrays.asList(expected);
+		for(int at=0;at<=message.length;at++) {
+			assertEquals("split at " + at, want, feed(new HttpResponseParser(true), head, split(message, at)));
+		}
+		assertEquals("byte by byte", want, feed(new HttpResponseParser(true), head, bytewise(message)));
+	}
+
+	private static HttpResponseParser parse(String response) {
+		HttpResponseParser parser = new HttpResponseParser(true);
+		parser.begin(false);
+		parser.parse(ByteBuffer.wrap(bytes(response)));
+		return parser;
+	}
+
+	@Test
+	public void contentLength() {
+		assertBodies(OK, false, "hello");
+		HttpResponseParser parser = parse(OK);
+		assertTrue(parser.isComplete());
+		assertEquals(200, parser.getStatusCode());
+		assertEquals("200", parser.getStatusCodeString());
+		assertEquals("OK", parser.getReasonPhrase());
+		assertEquals(OK.length() - 5, parser.getHeaderBytes());
+		assertEquals(5, parser.getBodyBytes());
+		assertFalse(parser.isClose());
+	}
+
+	@Test
+	public void chunked() {
+		assertBodies(CHUNKED, false, "hello world");
+	}
+
+	@Test
+	public void badChunkIsAnError() {
+		assertTrue(parse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n").isError());
+		assertTrue(parse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n2\r\nokX\r\n").isError());
+	}
+
+	@Test
+	public void pipelined() {
+		assertBodies(OK + CHUNKED + "HTTP/1.1 204 No Content\r\n\r\n" + OK, false, "hello", "hello world", "", "hello");
+	}
+
+	@Test
+	public void interimResponsesAreSkipped() {
+		String response = "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 103 Early Hints\r\nLink: </a>\r\n\r\n" + OK;
+		assertBodies(response, false, "hello");
+		assertEquals(200, parse(response).getStatusCode());
+	}
+
+	@Test
+	public void headHasNoBody() {
+		String head = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\n";
+		assertBodies(head + head, true, "", "");
+	}
+
+	@Test
+	public void noContentAndNotModifiedHaveNoBody() {
+		assertBodies("HTTP/1.1 304 Not Modified\r\nContent-Length: 5\r\n\r\n" + OK, false, "", "hello");
+	}
+
+	@Test
+	public void readsUntilClose() {
+		byte[] message = bytes("HTTP/1.1 200 OK\r\n\r\nall of it");
+		for(int at=0;at<=message.length;at++) {
+			HttpResponseParser parser = new HttpResponseParser(true);
+			assertTrue(feed(parser, false, split(message, at)).isEmpty());
+			assertTrue(parser.isUntilClose());
+			assertTrue(parser.isClose());
+			assertTrue(parser.finish());
+			assertTrue(parser.isComplete());
+			assertEquals("all of it", string(parser.getBody()));
+		}
+	}
+
+	@Test
+	public void http10ClosesUnlessKeptAlive() {
+		assertTrue(parse("HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n").isClose());
+		assertFalse(parse("HTTP/1.0 200 OK\r\nConnection: Keep-Alive\r\nContent-Length: 0\r\n\r\n").isClose());
+		assertTrue(parse("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 0\r\n\r\n").isClose());
+	}
+
+	@Test
+	public void badContentLengthIsAnError() {
+		assertTrue(parse("HTTP/1.1 200 OK\r\nContent-Length: 99999999999999999999\r\n\r\n").isError());
+		assertTrue(parse("HTTP/1.1 200 OK\r\nContent-Length: 9223372036854775808\r\n\r\n").isError());
+		assertTrue(parse("HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n").isError());
+		assertTrue(parse("HTTP/1.1 200 OK\r\nContent-Length: \r\n\r\n").isError());
+		assertTrue(parse("HTTP/1.1 200 OK\r\nContent-Length: 12a\r\n\r\n").isError());
+		HttpResponseParser parser = parse("HTTP/1.1 200 OK\r\nContent-Length: 9223372036854775807\r\n\r\nabc");
+		assertFalse(parser.isError());
+		assertFalse(parser.isComplete());
+	}
+
+	@Test
+	public void oversizedChunkIsAnError() {
+		assertTrue(parse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n10000000000000000\r\n").isError());
+		assertFalse(parse("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n7fffffffffffffff\r\nab").isError());
+	}
+
+	@Test
+	public void badStatusLineIsAnError() {
+		assertTrue(parse("HTTP/2 200 OK\r\n\r\n").isError());
+		assertTrue(parse("HTTP/1.1 2x0 OK\r\n\r\n").isError());
+	}
+
+	@Test
+	public void withoutCaptureOnlyCounts() {
+		HttpResponseParser parser = new HttpResponseParser(false);
+		parser.begin(false);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes(CHUNKED + OK));
+		assertTrue(parser.parse(buffer));
+		assertEquals(11, parser.getBodyBytes());
+		assertEquals(OK.length(), buffer.remaining());
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package me.schiz.jmeter.ring.udp.dns;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DnsCodecTest {
+	private static byte[] query(String line) {
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		int length = DnsCodec.writeQuery(buffer, line, 0, line.length());
+		assertEquals(buffer.position(), length);
+		byte[] bytes = new byte[length];
+		buffer.flip();
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static ByteBuffer reply(int id, int flags, int answers) {
+		ByteBuffer buffer = ByteBuffer.allocate(DnsCodec.HEADER_SIZE);
+		buffer.putShort((short) id).putShort((short) flags).putShort((short) 1).putShort((short) answers).putShort((short) 0).putShort((short) 0);
+		buffer.flip();
+		return buffer;
+	}
+
+	@Test
+	public void writesQueryForNameAndType() {
+		byte[] expected = {
+				0, 0, 0x01, 0x00, 0, 1, 0, 0, 0, 0, 0, 0,
+				3, 'w', 'w', 'w', 7, 'e', 'x', 'a', 'm', 'p', 'l', 'e', 3, 'c', 'o', 'm', 0,
+				0, 28, 0, 1};
+		assertArrayEquals(expected, query("www.example.com AAAA"));
+		assertArrayEquals(expected, query("  www.example.com.\tAAAA \r"));
+	}
+
+	@Test
+	public void defaultsToTypeA() {
+		byte[] bytes = query("example.com");
+		assertEquals(0, bytes[bytes.length - 4]);
+		assertEquals(DnsCodec.TYPE_A, bytes[bytes.length - 3]);
+	}
+
+	@Test
+	public void writesRoot() {
+		byte[] bytes = query(". NS");
+		assertEquals(DnsCodec.HEADER_SIZE + 1 + 4, bytes.length);
+		assertEquals(0, bytes[DnsCodec.HEADER_SIZE]);
+		assertEquals(2, bytes[bytes.length - 3]);
+	}
+
+	@Test
+	public void writesQueryFromLineRange() {
+		String lines = "a.com\nb.org MX\n";
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		int length = DnsCodec.writeQuery(buffer, lines, 6, 14);
+		assertEquals(DnsCodec.HEADER_SIZE + 7 + 4, length);
+		assertEquals('b', buffer.get(DnsCodec.HEADER_SIZE + 1));
+		assertEquals(15, buffer.get(length - 3));
+	}
+
+	@Test
+	public void rejectsBadQueries() {
+		String[] bad = {"", "   ", "example.com BOGUS", "example.com TYPE", "example.com 65536",
+				"a..b", "..", "é.com", "x." + new String(new char[64]).replace('\0', 'a') + ".com"};
+		for(String line : bad) {
+			ByteBuffer buffer = ByteBuffer.allocate(512);
+			buffer.position(3);
+			assertEquals(line, -1, DnsCodec.writeQuery(buffer, line, 0, line.length()));
+			assertEquals(line, 3, buffer.position());
+		}
+	}
+
+	@Test
+	public void parsesTypes() {
+		assertEquals(1, DnsCodec.parseType("a", 0, 1));
+		assertEquals(28, DnsCodec.parseType("aaaa", 0, 4));
+		assertEquals(255, DnsCodec.parseType("ANY", 0, 3));
+		assertEquals(257, DnsCodec.parseType("CAA", 0, 3));
+		assertEquals(99, DnsCodec.parseType("TYPE99", 0, 6));
+		assertEquals(99, DnsCodec.parseType("type99", 0, 6));
+		assertEquals(65535, DnsCodec.parseType("65535", 0, 5));
+		assertEquals(33, DnsCodec.parseType("x SRV y", 2, 5));
+		assertEquals(-1, DnsCodec.parseType("65536", 0, 5));
+		assertEquals(-1, DnsCodec.parseType("TYPE", 0, 4));
+		assertEquals(-1, DnsCodec.parseType("AA", 0, 2));
+		assertEquals(-1, DnsCodec.parseType("1x", 0, 2));
+		assertEquals(-1, DnsCodec.parseType("", 0, 0));
+	}
+
+	@Test
+	public void patchesId() {
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		buffer.position(5);
+		DnsCodec.writeQuery(buffer, "example.com", 0, 11);
+		buffer.position(5);
+		DnsCodec.setId(buffer, 0xbeef);
+		assertEquals(5, buffer.position());
+		assertEquals(0xbeef, DnsCodec.getId(buffer));
+	}
+
+	@Test
+	public void matchesReplyOnIdAndQr() {
+		assertTrue(DnsCodec.isReplyTo(reply(0x1234, 0x8180, 1), 0x1234));
+		assertFalse(DnsCodec.isReplyTo(reply(0x1235, 0x8180, 1), 0x1234));
+		//the query itself echoed back
+		assertFalse(DnsCodec.isReplyTo(reply(0x1234, 0x0100, 0), 0x1234));
+	}
+
+	@Test
+	public void rejectsShortPackets() {
+		ByteBuffer full = reply(7, 0x8180, 1);
+		for(int length = 0; length < DnsCodec.HEADER_SIZE; length++) {
+			ByteBuffer buffer = full.duplicate();
+			buffer.limit(length);
+			assertFalse("" + length, DnsCodec.isReplyTo(buffer, 7));
+		}
+	}
+
+	@Test
+	public void readsRcodeTruncationAndAnswers() {
+		ByteBuffer ok = reply(1, 0x8180, 3);
+		assertEquals(0, DnsCodec.getRcode(ok));
+		assertEquals("NOERROR", DnsCodec.rcodeName(DnsCodec.getRcode(ok)));
+		assertFalse(DnsCodec.isTruncated(ok));
+		assertEquals(3, DnsCodec.getAnswerCount(ok));
+
+		ByteBuffer nx = reply(1, 0x8183, 0);
+		assertEquals("NXDOMAIN", DnsCodec.rcodeName(DnsCodec.getRcode(nx)));
+		assertEquals("SERVFAIL", DnsCodec.rcodeName(DnsCodec.getRcode(reply(1, 0x8182, 0))));
+		assertEquals("RCODE15", DnsCodec.rcodeName(DnsCodec.getRcode(reply(1, 0x818f, 0))));
+
+		ByteBuffer tc = reply(1, 0x8380, 0);
+		assertTrue(DnsCodec.isTruncated(tc));
+		assertEquals(0, DnsCodec.getAnswerCount(tc));
+	}
+
+	@Test
+	public void readsHeaderAtBufferPosition() {
+		ByteBuffer buffer = ByteBuffer.allocate(4 + DnsCodec.HEADER_SIZE);
+		buffer.position(4);
+		buffer.put(reply(0xabcd, 0x8185, 2));
+		buffer.flip();
+		buffer.position(4);
+		assertTrue(DnsCodec.isReplyTo(buffer, 0xabcd));
+		assertEquals("REFUSED", DnsCodec.rcodeName(DnsCodec.getRcode(buffer)));
+		assertEquals(2, DnsCodec.getAnswerCount(buffer));
+	}
+}
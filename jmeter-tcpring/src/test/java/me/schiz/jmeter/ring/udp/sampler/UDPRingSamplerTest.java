@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package me.schiz.jmeter.ring.udp.sampler;
+
+import me.schiz.jmeter.ring.udp.dns.DnsCodec;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UDPRingSamplerTest {
+	private static String next(String req, UDPRingSampler.Encoded encoded) {
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		assertTrue(UDPRingSampler.writeDns(buffer, req, encoded));
+		StringBuilder name = new StringBuilder();
+		int i = DnsCodec.HEADER_SIZE;
+		for(int length = buffer.get(i); length != 0; length = buffer.get(i)) {
+			if(name.length() > 0)	name.append('.');
+			for(int j=1;j<=length;j++)	name.append((char) buffer.get(i + j));
+			i += length + 1;
+		}
+		return name.append(' ').append(buffer.getShort(i + 1)).toString();
+	}
+
+	@Test
+	public void cyclesThroughLines() {
+		UDPRingSampler.Encoded encoded = new UDPRingSampler.Encoded();
+		String req = "a.com\nb.com MX\nc.com AAAA";
+		for(int round = 0; round < 3; round++) {
+			assertEquals("a.com 1", next(req, encoded));
+			assertEquals("b.com 15", next(req, encoded));
+			assertEquals("c.com 28", next(req, encoded));
+		}
+	}
+
+	@Test
+	public void skipsBlankLines() {
+		UDPRingSampler.Encoded encoded = new UDPRingSampler.Encoded();
+		String req = "\r\n  \na.com\n\n\t\nb.com NS\r\n\n";
+		for(int round = 0; round < 3; round++) {
+			assertEquals("a.com 1", next(req, encoded));
+			assertEquals("b.com 2", next(req, encoded));
+		}
+	}
+
+	@Test
+	public void singleLineRepeats() {
+		UDPRingSampler.Encoded encoded = new UDPRingSampler.Encoded();
+		assertEquals("a.com 1", next("a.com", encoded));
+		assertEquals("a.com 1", next("a.com", encoded));
+		assertEquals("a.com 1", next("a.com\n", encoded));
+	}
+
+	@Test
+	public void restartsOnNewRequest() {
+		UDPRingSampler.Encoded encoded = new UDPRingSampler.Encoded();
+		assertEquals("a.com 1", next("a.com\nb.com", encoded));
+		assertEquals("x.org 1", next("x.org\ny.org", encoded));
+		assertEquals("y.org 1", next("x.org\ny.org", encoded));
+		//an equal string is the same request
+		assertEquals("x.org 1", next(new String("x.org\ny.org"), encoded));
+	}
+
+	@Test
+	public void rejectsEmptyAndBadRequests() {
+		UDPRingSampler.Encoded encoded = new UDPRingSampler.Encoded();
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		assertFalse(UDPRingSampler.writeDns(buffer, "", encoded));
+		assertFalse(UDPRingSampler.writeDns(buffer, " \n\n ", encoded));
+		assertFalse(UDPRingSampler.writeDns(buffer, "a.com BOGUS", encoded));
+		assertEquals(0, buffer.position());
+	}
+}
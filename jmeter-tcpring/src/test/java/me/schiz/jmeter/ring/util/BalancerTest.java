@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BalancerTest {
+	private static final int TOKENS = 4;
+
+	//target i holds tokens i*TOKENS .. i*TOKENS+TOKENS-1
+	private static Target<String>[] targets(int... weights) {
+		Target<String>[] targets = Target.newArray(weights.length);
+		for(int i = 0; i < weights.length; i++) {
+			targets[i] = new Target<String>("host" + i + ":80", weights[i], TOKENS);
+			targets[i].setIndex(i);
+			for(int k = 0; k < TOKENS; k++)	targets[i].add("token" + (i * TOKENS + k), i * TOKENS + k);
+		}
+		return targets;
+	}
+
+	private static int target(int id) {
+		return id / TOKENS;
+	}
+
+	private static void release(Target<String>[] targets, int id) {
+		targets[target(id)].release(id % TOKENS);
+	}
+
+	private static void open(Target<String> target) {
+		CircuitBreaker breaker = new CircuitBreaker(target.getAddress(), 1, 60000);
+		breaker.failure();
+		target.setBreaker(breaker);
+	}
+
+	@Test
+	public void roundRobinCycles() {
+		Target<String>[] targets = targets(1, 1, 1);
+		Balancer<String> balancer = new Balancer<String>(targets, Balancer.ROUND_ROBIN);
+		for(int i = 0; i < 9; i++) {
+			int id = balancer.acquire();
+			assertEquals(i % 3, target(id));
+			release(targets, id);
+		}
+	}
+
+	@Test
+	public void fallsBackWhenTargetIsExhausted() {
+		Target<String>[] targets = targets(1, 1);
+		Balancer<String> balancer = new Balancer<String>(targets, Balancer.ROUND_ROBIN);
+		int[] held = new int[2 * TOKENS];
+		int[] perTarget = new int[2];
+		for(int i = 0; i < held.length; i++) {
+			held[i] = balancer.acquire();
+			assertTrue(held[i] != -1);
+			perTarget[target(held[i])]++;
+		}
+		assertEquals(TOKENS, perTarget[0]);
+		assertEquals(TOKENS, perTarget[1]);
+		assertEquals(-1, balancer.acquire());
+		release(targets, held[0]);
+		assertEquals(held[0], balancer.acquire());
+	}
+
+	@Test
+	public void skipsOpenTargets() {
+		Target<String>[] targets = targets(1, 1, 1);
+		open(targets[1]);
+		Balancer<String> balancer = new Balancer<String>(targets, Balancer.ROUND_ROBIN);
+		assertTrue(balancer.isAvailable());
+		for(int i = 0; i < 12; i++) {
+			int id = balancer.acquire();
+			assertTrue(target(id) != 1);
+			release(targets, id);
+		}
+		open(targets[0]);
+		open(targets[2]);
+		assertFalse(balancer.isAvailable());
+		assertEquals(-1, balancer.acquire());
+	}
+
+	@Test
+	public void singleOpenTargetHasNoToken() {
+		Target<String>[] targets = targets(1);
+		Balancer<String> balancer = new Balancer<String>(targets, null);
+		assertEquals(0, target(balancer.acquire()));
+		open(targets[0]);
+		assertEquals(-1, balancer.acquire());
+	}
+
+	@Test
+	public void weightedFollowsWeights() {
+		Target<String>[] targets = targets(1, 3);
+		Balancer<String> balancer = new Balancer<String>(targets, Balancer.WEIGHTED);
+		int[] picks = new int[2];
+		for(int i = 0; i < 4000; i++) {
+			int id = balancer.acquire();
+			picks[target(id)]++;
+			release(targets, id);
+		}
+		assertEquals(1000, picks[0], 150);
+		assertEquals(3000, picks[1], 150);
+	}
+
+	@Test
+	public void leastOutstandingPicksIdlest() {
+		Target<String>[] targets = targets(1, 1, 1);
+		targets[0].sent();
+		targets[0].sent();
+		targets[2].sent();
+		Balancer<String> balancer = new Balancer<String>(targets, Balancer.LEAST_OUTSTANDING);
+		for(int i = 0; i < 6; i++) {
+			int id = balancer.acquire();
+			assertEquals(1, target(id));
+			release(targets, id);
+		}
+		//ties go round-robin: 2, 2 and 3 outstanding
+		targets[1].sent();
+		targets[1].sent();
+		targets[2].sent();
+		targets[2].sent();
+		int[] picks = new int[3];
+		for(int i = 0; i < 6; i++) {
+			int id = balancer.acquire();
+			picks[target(id)]++;
+			release(targets, id);
+		}
+		assertEquals(0, picks[2]);
+		assertTrue(picks[0] > 0);
+		assertTrue(picks[1] > 0);
+	}
+
+	@Test
+	public void powerOfTwoPrefersFasterTarget() {
+		Target<String>[] targets = targets(1, 1);
+		for(int i = 0; i < 20; i++) {
+			targets[0].record(50, true);
+			targets[1].record(5, true);
+		}
+		Balancer<String> balancer = new Balancer<String>(targets, Balancer.POWER_OF_TWO);
+		for(int i = 0; i < 20; i++) {
+			int id = balancer.acquire();
+			assertEquals(1, target(id));
+			release(targets, id);
+		}
+		//outstanding requests weigh in: 5.x ms * 11 is worse than 50 ms * 1
+		for(int i = 0; i < 10; i++)	targets[1].sent();
+		int id = balancer.acquire();
+		assertEquals(0, target(id));
+	}
+
+	@Test
+	public void ewmaTracksLatency() {
+		Target<String> target = targets(1)[0];
+		assertEquals(0.0, target.getEwma(), 0.0);
+		target.record(10, true);
+		assertEquals(2.0, target.getEwma(), 1e-9);
+		target.record(10, false);
+		assertEquals(3.6, target.getEwma(), 1e-9);
+	}
+
+	@Test
+	public void ewmaKeepsConcurrentUpdates() throws InterruptedException {
+		final Target<String> target = targets(1)[0];
+		Thread[] threads = new Thread[4];
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for(int k = 0; k < 10000; k++)	target.record(100, true);
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads)	thread.join();
+		assertEquals(100.0, target.getEwma(), 1e-6);
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+	private static final long OPEN = 50;
+
+	private static CircuitBreaker opened(int threshold) {
+		CircuitBreaker breaker = new CircuitBreaker("test", threshold, OPEN);
+		for(int i=0;i<threshold;i++) {
+			breaker.failure();
+		}
+		return breaker;
+	}
+
+	private static CircuitBreaker halfOpen() throws InterruptedException {
+		CircuitBreaker breaker = opened(3);
+		Thread.sleep(OPEN + 10);
+		assertTrue(breaker.tryAcquire());
+		return breaker;
+	}
+
+	@Test
+	public void opensAfterThresholdConsecutiveFailures() {
+		CircuitBreaker breaker = opened(2);
+		breaker.success();
+		breaker.failure();
+		assertTrue(breaker.isClosed());
+		assertTrue(breaker.tryAcquire());
+		assertEquals(0, breaker.retryDelay());
+		breaker.failure();
+		assertFalse(breaker.isClosed());
+		assertFalse(breaker.tryAcquire());
+		long delay = breaker.retryDelay();
+		assertTrue(delay > 0 && delay <= OPEN);
+	}
+
+	@Test
+	public void zeroThresholdNeverOpens() {
+		CircuitBreaker breaker = opened(0);
+		for(int i=0;i<100;i++) {
+			breaker.failure();
+		}
+		assertTrue(breaker.isClosed());
+	}
+
+	@Test
+	public void letsOneProbeThroughAfterTheOpenPeriod() throws InterruptedException {
+		CircuitBreaker breaker = halfOpen();
+		assertFalse(breaker.isClosed());
+		assertFalse(breaker.tryAcquire());
+		//waiters back off for a whole period while the probe is out
+		assertEquals(OPEN, breaker.retryDelay());
+	}
+
+	@Test
+	public void successfulProbeClosesAndWakesWaiters() throws InterruptedException {
+		CircuitBreaker breaker = halfOpen();
+		final AtomicInteger woken = new AtomicInteger();
+		Runnable waiter = new Runnable() {
+			@Override
+			public void run() {
+				woken.incrementAndGet();
+			}
+		};
+		breaker.await(waiter);
+		breaker.await(waiter);
+		assertEquals(0, woken.get());
+		breaker.success();
+		assertTrue(breaker.isClosed());
+		assertTrue(breaker.tryAcquire());
+		assertEquals(2, woken.get());
+		breaker.success();
+		assertEquals(2, woken.get());
+	}
+
+	@Test
+	public void failedProbeOpensAgain() throws InterruptedException {
+		CircuitBreaker breaker = halfOpen();
+		breaker.failure();
+		assertFalse(breaker.isClosed());
+		assertFalse(breaker.tryAcquire());
+		assertTrue(breaker.retryDelay() > OPEN / 2);
+		Thread.sleep(OPEN + 10);
+		assertTrue(breaker.tryAcquire());
+	}
+
+	@Test
+	public void awaitOnAClosedCircuitRunsAtOnce() {
+		CircuitBreaker breaker = new CircuitBreaker("test", 1, OPEN);
+		final AtomicInteger woken = new AtomicInteger();
+		breaker.await(new Runnable() {
+			@Override
+			public void run() {
+				woken.incrementAndGet();
+			}
+		});
+		assertEquals(1, woken.get());
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionJournalTest {
+	private static String[] dump(ConnectionJournal journal, int expected) throws IOException {
+		StringWriter out = new StringWriter();
+		assertEquals(expected, journal.dump(out));
+		String[] lines = out.toString().split("\n");
+		assertEquals("time\ttoken\ttarget\tevent\treason\tconnect_ms", lines[0]);
+		assertEquals(expected + 1, lines.length);
+		return lines;
+	}
+
+	//the line without its time
+	private static String event(String line) {
+		return line.substring(line.indexOf('\t') + 1);
+	}
+
+	@Test
+	public void dumpsEventsInOrder() throws IOException {
+		ConnectionJournal journal = new ConnectionJournal();
+		journal.connected(1, "a:80", 1500000);
+		journal.closed(1, "a:80");
+		journal.reset(2, "b:81", "connect timeout");
+		String[] lines = dump(journal, 3);
+		assertEquals("1\ta:80\tconnected\t-\t1.500", event(lines[1]));
+		assertEquals("1\ta:80\tclosed\t-\t-", event(lines[2]));
+		assertEquals("2\tb:81\treset\tconnect timeout\t-", event(lines[3]));
+		assertEquals(3, journal.getEvents());
+		assertEquals(1, journal.getCount(ConnectionJournal.CONNECTED));
+		assertEquals(1, journal.getCount(ConnectionJournal.CLOSED));
+		assertEquals(1, journal.getCount(ConnectionJournal.RESET));
+	}
+
+	@Test
+	public void keepsLatestEventsWhenFull() throws IOException {
+		ConnectionJournal journal = new ConnectionJournal();
+		int extra = 10;
+		for(int i = 0; i < ConnectionJournal.SIZE + extra; i++)	journal.closed(i, "a:80");
+		String[] lines = dump(journal, ConnectionJournal.SIZE);
+		assertEquals(extra + "\ta:80\tclosed\t-\t-", event(lines[1]));
+		assertEquals((ConnectionJournal.SIZE + extra - 1) + "\ta:80\tclosed\t-\t-", event(lines[lines.length - 1]));
+		assertEquals(ConnectionJournal.SIZE + extra, journal.getCount(ConnectionJournal.CLOSED));
+	}
+
+	@Test
+	public void summarizesWholeTest() {
+		ConnectionJournal journal = new ConnectionJournal();
+		assertNull(journal.summary());
+		journal.connected(0, "a:80", 0);
+		for(int i = 0; i < 3; i++)	journal.reset(0, "a:80", "refused");
+		journal.reset(0, "a:80", "timeout");
+		journal.closed(0, "a:80");
+		assertEquals("connections: 1 connected, 1 closed, 4 reset; reasons: refused x3, timeout x1", journal.summary());
+	}
+
+	@Test
+	public void listsTopReasons() {
+		ConnectionJournal journal = new ConnectionJournal();
+		for(int r = 0; r < 7; r++) {
+			for(int k = 0; k <= r; k++)	journal.reset(0, "a:80", "r" + r);
+		}
+		assertEquals("connections: 0 connected, 0 closed, 28 reset; reasons: r6 x7, r5 x6, r4 x5, r3 x4, r2 x3, 2 more",
+				journal.summary());
+	}
+
+	@Test
+	public void countsReasonsPastLimitAsOther() throws IOException {
+		ConnectionJournal journal = new ConnectionJournal();
+		//codes 0 and 1 are taken by no reason and other
+		int named = ConnectionJournal.MAX_REASONS - 2;
+		for(int r = 0; r < named; r++)	journal.reset(0, "a:80", "r" + r);
+		for(int k = 0; k < 10; k++)	journal.reset(0, "a:80", "late" + k);
+		journal.reset(0, "a:80", "r0");
+		String summary = journal.summary();
+		assertTrue(summary, summary.startsWith("connections: 0 connected, 0 closed, " + (named + 11) + " reset; reasons: other x10, r0 x2, "));
+		String[] lines = dump(journal, named + 11);
+		assertEquals("0\ta:80\treset\tother\t-", event(lines[named + 1]));
+		assertEquals("0\ta:80\treset\tr0\t-", event(lines[lines.length - 1]));
+	}
+}
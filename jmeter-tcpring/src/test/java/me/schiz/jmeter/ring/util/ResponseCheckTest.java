@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseCheckTest {
+	private static ByteBuffer bytes(String s) {
+		return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static ResponseCheck.Matcher feed(ResponseCheck check, String... reads) {
+		ResponseCheck.Matcher matcher = check.newMatcher();
+		matcher.begin();
+		for(String read : reads)	matcher.update(bytes(read), read.length());
+		return matcher;
+	}
+
+	private static void badEscape(String s) {
+		try {
+			ResponseCheck.unescape(s);
+			fail(s);
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void findsPatternSplitAtEveryOffset() {
+		String pattern = "needle";
+		String body = "hay needle hay";
+		ResponseCheck check = ResponseCheck.parse(null, pattern, null, null, null);
+		int end = body.indexOf(pattern) + pattern.length();
+		for(int split = 0; split <= body.length(); split++) {
+			ResponseCheck.Matcher matcher = check.newMatcher();
+			matcher.begin();
+			matcher.update(bytes(body.substring(0, split)), split);
+			if(split >= end) {
+				assertTrue("" + split, matcher.found());
+				assertEquals("" + split, end, matcher.matchEnd());
+			} else {
+				assertFalse("" + split, matcher.found());
+				matcher.update(bytes(body.substring(split)), body.length() - split);
+				assertTrue("" + split, matcher.found());
+				assertEquals("" + split, end - split, matcher.matchEnd());
+			}
+			assertNull("" + split, matcher.finish());
+		}
+	}
+
+	@Test
+	public void findsPatternSplitAcrossManyReads() {
+		ResponseCheck check = ResponseCheck.parse(null, "abcab", null, null, null);
+		assertTrue(feed(check, "xxab", "c", "a", "byy").found());
+		assertTrue(feed(check, "a", "b", "c", "a", "b").found());
+		assertFalse(feed(check, "abca", "xab").found());
+		assertFalse(feed(check, "ab", "ca").found());
+	}
+
+	@Test
+	public void flagsAbsentPatternSplitAtEveryOffset() {
+		String body = "HTTP/1.1 500 error";
+		ResponseCheck check = ResponseCheck.parse(null, null, " 500 ", null, null);
+		for(int split = 0; split <= body.length(); split++) {
+			ResponseCheck.Matcher matcher = feed(check, body.substring(0, split), body.substring(split));
+			assertEquals("" + split, ResponseCheck.PATTERN_PRESENT, matcher.finish());
+		}
+		assertNull(feed(check, "HTTP/1.1 50", "0OK").finish());
+	}
+
+	@Test
+	public void checksPrefixAndLength() {
+		ResponseCheck check = ResponseCheck.parse("OK\\r\\n", null, null, "4-6", null);
+		assertNull(feed(check, "O", "K\r", "\n").finish());
+		assertEquals(ResponseCheck.PREFIX_MISMATCH, feed(check, "OK\n").finish());
+		assertEquals(ResponseCheck.PREFIX_MISMATCH, feed(check, "OK").finish());
+		assertEquals(ResponseCheck.LENGTH_MISMATCH, feed(check, "OK\r\nabc").finish());
+		assertEquals(3, check.getFailures());
+	}
+
+	@Test
+	public void packsStatusSplitAcrossReads() {
+		ResponseCheck check = ResponseCheck.parse(null, null, null, null, "9:3=200,204");
+		String response = "HTTP/1.1 204 No Content";
+		for(int split = 0; split <= response.length(); split++) {
+			ResponseCheck.Matcher matcher = feed(check, response.substring(0, split), response.substring(split));
+			assertNull("" + split, matcher.finish());
+			assertEquals("" + split, "204", matcher.getStatus());
+		}
+		ResponseCheck.Matcher matcher = feed(check, "HTTP/1.1 503 Unavailable");
+		assertEquals(ResponseCheck.STATUS_MISMATCH, matcher.finish());
+		assertEquals("503", matcher.getStatus());
+		assertTrue(matcher.getStatus() == feed(check, "HTTP/1.1 503").getStatus());
+	}
+
+	@Test
+	public void packsBinaryStatus() {
+		ResponseCheck check = ResponseCheck.parse(null, null, null, null, "1:2=\\x00\\xff");
+		assertNull(feed(check, "x\u0000", "ÿz").finish());
+		assertEquals(ResponseCheck.STATUS_MISMATCH, feed(check, "xÿ\u0000").finish());
+	}
+
+	@Test
+	public void rejectsShortStatus() {
+		ResponseCheck check = ResponseCheck.parse(null, null, null, null, "9:3");
+		ResponseCheck.Matcher matcher = feed(check, "HTTP/1.1 20");
+		assertEquals(ResponseCheck.STATUS_MISMATCH, matcher.finish());
+		assertNull(matcher.getStatus());
+		assertNull(feed(check, "HTTP/1.1 999").finish());
+	}
+
+	@Test
+	public void unescapes() {
+		assertArrayEquals(new byte[]{'a', '\r', '\n', '\t', '\\', 'q'}, ResponseCheck.unescape("a\\r\\n\\t\\\\\\q"));
+		assertArrayEquals(new byte[]{0x41}, ResponseCheck.unescape("\\x41"));
+		assertArrayEquals(new byte[]{'a', (byte) 0xfe, 'b'}, ResponseCheck.unescape("a\\xFeb"));
+		assertArrayEquals(new byte[]{'a', 0x0f}, ResponseCheck.unescape("a\\x0f"));
+		//a lone trailing backslash is literal
+		assertArrayEquals(new byte[]{'a', '\\'}, ResponseCheck.unescape("a\\"));
+	}
+
+	@Test
+	public void rejectsBadEscapes() {
+		badEscape("\\x4");
+		badEscape("a\\x");
+		badEscape("\\xg1");
+		badEscape("\\x-1");
+		badEscape("\\x+f");
+		badEscape("");
+	}
+
+	@Test
+	public void parsesNothingToNull() {
+		assertNull(ResponseCheck.parse(null, "", null, "", null));
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.StatisticalSampleResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResultHandoffTest {
+
+	private static SampleResult result(String label) {
+		SampleResult r = new SampleResult();
+		r.setSampleLabel(label);
+		r.setSuccessful(true);
+		return r;
+	}
+
+	@Before
+	public void reset() {
+		ResultHandoff.reset();
+	}
+
+	@Test
+	public void foldsOverflowIntoOneAggregate() {
+		ResultHandoff handoff = new ResultHandoff(2, ResultHandoff.FOLD);
+		SampleResult a = result("a"), b = result("a");
+		assertTrue(handoff.offer(a));
+		assertTrue(handoff.offer(b));
+		for(int i=0;i<3;i++) {
+			assertTrue(handoff.offer(result("a")));
+		}
+		assertEquals(3, handoff.size());
+		assertEquals(3, ResultHandoff.getFolded());
+		assertSame(a, handoff.poll());
+		assertSame(b, handoff.poll());
+		SampleResult aggregate = handoff.poll();
+		assertTrue(aggregate instanceof StatisticalSampleResult);
+		assertEquals(3, aggregate.getSampleCount());
+		assertNull(handoff.poll());
+	}
+
+	@Test
+	public void dropsOverflow() {
+		ResultHandoff handoff = new ResultHandoff(2, ResultHandoff.DROP);
+		for(int i=0;i<5;i++) {
+			assertTrue(handoff.offer(result("a")));
+		}
+		assertEquals(2, handoff.size());
+		assertEquals(3, ResultHandoff.getDropped());
+		assertTrue(ResultHandoff.hasOverflowed());
+	}
+
+	@Test
+	public void ownerNeverBlocksOnItsOwnQueue() {
+		ResultHandoff handoff = new ResultHandoff(2, ResultHandoff.BLOCK);
+		for(int i=0;i<3;i++) {
+			assertTrue(handoff.offer(result("a")));
+		}
+		assertEquals(0, ResultHandoff.getBlocked());
+		assertEquals(1, ResultHandoff.getDropped());
+	}
+
+	@Test
+	public void blockedLoopGoesOnceTheOwnerPolls() throws InterruptedException {
+		final ResultHandoff handoff = new ResultHandoff(2, ResultHandoff.BLOCK);
+		handoff.offer(result("a"));
+		handoff.offer(result("b"));
+		final SampleResult c = result("c");
+		Thread loop = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				handoff.offer(c);
+			}
+		});
+		loop.start();
+		while(ResultHandoff.getBlocked() == 0) {
+			Thread.yield();
+		}
+		handoff.poll();
+		loop.join(10000);
+		assertFalse(loop.isAlive());
+		handoff.poll();
+		assertSame(c, handoff.poll());
+		assertEquals(0, ResultHandoff.getDropped());
+	}
+
+	@Test
+	public void iteratesInPollOrder() {
+		ResultHandoff handoff = new ResultHandoff(2, ResultHandoff.FOLD);
+		SampleResult a = result("a"), b = result("b");
+		handoff.offer(a);
+		handoff.offer(b);
+		handoff.offer(result("c"));
+		Iterator<SampleResult> it = handoff.iterator();
+		assertSame(a, it.next());
+		assertSame(b, it.next());
+		assertTrue(it.next() instanceof StatisticalSampleResult);
+		assertFalse(it.hasNext());
+		assertTrue(handoff.contains(b));
+		assertEquals(3, handoff.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownPolicy() {
+		new ResultHandoff(2, "wait");
+	}
+}
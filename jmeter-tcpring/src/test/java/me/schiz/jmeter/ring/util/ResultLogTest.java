@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResultLogTest {
+	private static final long MS = 1000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String path() {
+		return new File(folder.getRoot(), "results").getPath();
+	}
+
+	private static void record(ResultLog log, long sent, int tag, boolean success) {
+		log.record(sent, sent + MS / 10, sent + 2 * MS, sent + 5 * MS, 700000, 10, 20,
+				success ? ResultLog.NET_OK : ResultLog.NET_TIMEOUT, success ? 200 : 0, 1, tag, success);
+	}
+
+	private static String convert(String path, boolean jtl) throws IOException {
+		ResultLogConverter converter = new ResultLogConverter(path, jtl);
+		StringWriter out = new StringWriter();
+		for(File segment : ResultLogConverter.segments(path))	converter.convert(segment, out);
+		return out.toString();
+	}
+
+	@Test
+	public void roundTripsToPhout() throws IOException {
+		String path = path();
+		ResultLog log = new ResultLog(path, new String[]{"a:80", "b:81"});
+		long before = System.currentTimeMillis();
+		record(log, System.nanoTime(), log.tag("get"), true);
+		record(log, System.nanoTime(), log.tag("post"), false);
+		log.close();
+
+		String[] lines = convert(path, false).split("\n");
+		assertEquals(2, lines.length);
+		String[] f = lines[0].split("\t");
+		assertEquals(12, f.length);
+		double start = Double.parseDouble(f[0]) * 1000;
+		assertTrue(f[0], start >= before - 1000 && start <= System.currentTimeMillis() + 1000);
+		assertEquals("get\t5000\t700\t100\t2000\t3000\t5000\t10\t20\t0\t200", lines[0].substring(f[0].length() + 1));
+		assertTrue(lines[1], lines[1].endsWith("post\t5000\t700\t100\t2000\t3000\t5000\t10\t20\t110\t0"));
+	}
+
+	@Test
+	public void roundTripsToJtl() throws IOException {
+		String path = path();
+		ResultLog log = new ResultLog(path, new String[]{"a:80", "b,c:81"});
+		record(log, System.nanoTime(), log.tag("say \"hi\", twice"), true);
+		record(log, System.nanoTime(), log.tag("x"), false);
+		log.close();
+
+		String[] lines = convert(path, true).split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0], lines[0].endsWith(",5,\"say \"\"hi\"\", twice\",200,\"b,c:81\",true,20,2"));
+		assertTrue(lines[1], lines[1].endsWith(",5,x,net110,\"b,c:81\",false,20,2"));
+	}
+
+	@Test
+	public void rotatesSegments() throws IOException {
+		String path = path();
+		ResultLog log = new ResultLog(path, new String[]{"a:80"});
+		int tag = log.tag("get");
+		long perSegment = (ResultLog.SEGMENT - ResultLog.HEADER) / ResultLog.RECORD;
+		long n = perSegment + 3;
+		long sent = System.nanoTime();
+		for(long i = 0; i < n; i++)	record(log, sent, tag, true);
+		log.close();
+
+		List<File> segments = ResultLogConverter.segments(path);
+		assertEquals(2, segments.size());
+		assertEquals("results.0.0", segments.get(0).getName());
+		assertEquals("results.0.1", segments.get(1).getName());
+		assertEquals(ResultLog.HEADER + perSegment * ResultLog.RECORD, segments.get(0).length());
+		assertEquals(ResultLog.HEADER + 3 * ResultLog.RECORD, segments.get(1).length());
+
+		ResultLogConverter converter = new ResultLogConverter(path, false);
+		long converted = 0;
+		for(File segment : segments)	converted += converter.convert(segment, new StringWriter());
+		assertEquals(n, converted);
+	}
+
+	@Test
+	public void keepsSegmentPerWriter() throws Exception {
+		String path = path();
+		final ResultLog log = new ResultLog(path, new String[]{"a:80"});
+		final int tag = log.tag("get");
+		Thread[] threads = new Thread[3];
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for(int k = 0; k < 100; k++)	record(log, System.nanoTime(), tag, true);
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads)	thread.join();
+		log.close();
+
+		List<File> segments = ResultLogConverter.segments(path);
+		assertEquals(3, segments.size());
+		assertEquals(300, convert(path, false).split("\n").length);
+	}
+
+	@Test
+	public void dropsRecordsAfterClose() throws IOException {
+		String path = path();
+		ResultLog log = new ResultLog(path, new String[]{"a:80"});
+		record(log, System.nanoTime(), log.tag("get"), true);
+		log.close();
+		record(log, System.nanoTime(), 0, true);
+		assertEquals(1, convert(path, false).split("\n").length);
+	}
+
+	@Test
+	public void rejectsForeignFiles() throws IOException {
+		String path = path();
+		new ResultLog(path, new String[]{"a:80"}).close();
+		File segment = new File(path + ".0.0");
+		try (FileOutputStream out = new FileOutputStream(segment)) {
+			out.write(new byte[ResultLog.HEADER + ResultLog.RECORD]);
+		}
+		try {
+			new ResultLogConverter(path, false).convert(segment, new StringWriter());
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("is not a result log"));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultRingTest {
+
+	@Test
+	public void capacityIsAPowerOfTwo() {
+		assertEquals(2, new ResultRing<Integer>(1).capacity());
+		assertEquals(8, new ResultRing<Integer>(5).capacity());
+		assertEquals(8, new ResultRing<Integer>(8).capacity());
+	}
+
+	@Test
+	public void offersUntilFullAndPollsInOrder() {
+		ResultRing<Integer> ring = new ResultRing<Integer>(4);
+		for(int i=0;i<4;i++) {
+			assertTrue(ring.offer(i));
+		}
+		assertFalse(ring.offer(4));
+		assertEquals(4, ring.size());
+		assertEquals(Integer.valueOf(0), ring.peek());
+		for(int i=0;i<4;i++) {
+			assertEquals(Integer.valueOf(i), ring.poll());
+		}
+		assertNull(ring.poll());
+		assertEquals(0, ring.size());
+	}
+
+	@Test
+	public void wrapsAround() {
+		ResultRing<Integer> ring = new ResultRing<Integer>(2);
+		for(int i=0;i<10;i++) {
+			assertTrue(ring.offer(i));
+			assertEquals(Integer.valueOf(i), ring.poll());
+		}
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void rejectsNull() {
+		new ResultRing<Integer>(2).offer(null);
+	}
+
+	@Test
+	public void iteratesASnapshotFromHeadToTail() {
+		ResultRing<Integer> ring = new ResultRing<Integer>(4);
+		for(int i=0;i<6;i++) {
+			ring.offer(i);
+			if(i < 3)	ring.poll();
+		}
+		assertEquals(Arrays.asList(3, 4, 5), Arrays.asList(ring.toArray()));
+		assertTrue(ring.contains(4));
+		assertFalse(ring.contains(2));
+		assertEquals("[3, 4, 5]", ring.toString());
+
+		Iterator<Integer> it = ring.iterator();
+		ring.poll();
+		ring.offer(6);
+		int n = 0;
+		while(it.hasNext()) {
+			assertEquals(Integer.valueOf(3 + n++), it.next());
+		}
+		assertEquals(3, n);
+		assertEquals(Arrays.asList(4, 5, 6), Arrays.asList(ring.toArray()));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshotIsReadOnly() {
+		ResultRing<Integer> ring = new ResultRing<Integer>(4);
+		ring.offer(1);
+		Iterator<Integer> it = ring.iterator();
+		it.next();
+		it.remove();
+	}
+}
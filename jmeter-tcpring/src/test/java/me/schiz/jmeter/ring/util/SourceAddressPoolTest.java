@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.jmeter.ring.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SourceAddressPoolTest {
+	private static String address(SourceAddressPool pool, int i) {
+		return pool.get(i).getAddress().getHostAddress();
+	}
+
+	private static void bad(String spec) throws IOException {
+		try {
+			new SourceAddressPool(spec);
+			fail(spec);
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void parsesAddressesRangesAndBlocks() throws IOException {
+		SourceAddressPool pool = new SourceAddressPool(" 127.0.0.1, 10.0.0.254-10.0.1.1 192.168.1.0/30,172.16.0.9/31 172.16.1.1/32 ");
+		String[] expected = {"127.0.0.1", "10.0.0.254", "10.0.0.255", "10.0.1.0", "10.0.1.1",
+				"192.168.1.1", "192.168.1.2", "172.16.0.8", "172.16.0.9", "172.16.1.1"};
+		assertEquals(expected.length, pool.size());
+		for(int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], address(pool, i));
+			assertEquals(0, pool.get(i).getPort());
+		}
+		assertEquals(254, new SourceAddressPool("10.1.2.3/24").size());
+	}
+
+	@Test
+	public void rejectsBadSpecs() throws IOException {
+		bad("");
+		bad(" , ");
+		bad("10.0.0.0/15");
+		bad("10.0.0.0/33");
+		bad("10.0.0.2-10.0.0.1");
+		bad("10.0.0.0-10.1.0.0");
+		bad("::1-::2");
+	}
+
+	@Test
+	public void rotatesOverAddresses() throws IOException {
+		SourceAddressPool pool = new SourceAddressPool("127.0.0.1-127.0.0.3");
+		for(int k = 0; k < 9; k++)	assertEquals(k % 3, pool.acquire());
+		assertEquals(9, pool.getBound());
+		for(int i = 0; i < 3; i++)	pool.release(i);
+		assertEquals(6, pool.getBound());
+	}
+
+	@Test
+	public void skipsExhaustedAddress() throws IOException {
+		SourceAddressPool pool = new SourceAddressPool("127.0.0.1-127.0.0.2");
+		assertEquals(0, pool.acquire());
+		assertEquals(1, pool.acquire());
+		assertEquals(0, pool.acquire());
+		//the second socket on 127.0.0.1 failed to bind
+		pool.exhausted(0);
+		pool.release(0);
+		for(int k = 0; k < 4; k++)	assertEquals(1, pool.acquire());
+		//a socket on it closed, it takes one again but no more than it held
+		pool.release(0);
+		assertEquals(1, pool.acquire() + pool.acquire());
+		for(int k = 0; k < 4; k++)	assertEquals(1, pool.acquire());
+		assertEquals(1 + 10, pool.getBound());
+	}
+
+	@Test
+	public void runsOutWhenEveryAddressIsExhausted() throws IOException {
+		SourceAddressPool pool = new SourceAddressPool("127.0.0.1 127.0.0.2");
+		for(int i = 0; i < 2; i++) {
+			int k = pool.acquire();
+			pool.exhausted(k);
+			pool.release(k);
+		}
+		assertEquals(0, pool.getBound());
+		assertEquals(-1, pool.acquire());
+		try (SocketChannel channel = SocketChannel.open()) {
+			pool.bind(channel);
+			fail();
+		} catch (BindException e) {
+			assertEquals("all 2 source addresses are out of ports", e.getMessage());
+		}
+	}
+
+	@Test
+	public void bindsChannelsRoundRobin() throws IOException {
+		SourceAddressPool pool = new SourceAddressPool("127.0.0.1-127.0.0.3");
+		SocketChannel[] channels = new SocketChannel[6];
+		try {
+			for(int k = 0; k < channels.length; k++) {
+				channels[k] = SocketChannel.open();
+				int i = pool.bind(channels[k]);
+				assertEquals(k % 3, i);
+				assertEquals(address(pool, i), ((InetSocketAddress) channels[k].getLocalAddress()).getAddress().getHostAddress());
+			}
+			assertEquals(6, pool.getBound());
+		} finally {
+			for(SocketChannel channel : channels) {
+				if(channel != null)	channel.close();
+			}
+		}
+	}
+
+	@Test
+	public void bindSkipsAddressThatCannotBind() throws IOException {
+		//TEST-NET-1 is not a local address, binding it fails
+		SourceAddressPool pool = new SourceAddressPool("192.0.2.1 127.0.0.1");
+		for(int k = 0; k < 3; k++) {
+			try (SocketChannel channel = SocketChannel.open()) {
+				assertEquals(1, pool.bind(channel));
+				pool.release(1);
+			}
+		}
+		assertEquals(1, pool.acquire());
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.ringpool;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BinaryRingPool<T> implements RingPool<T> {
+	private int capacity;
+	private Holder<T>[] objects;
+	private ThreadLocal<Integer> localPointer;
+
+	@SuppressWarnings("unchecked")
+	public BinaryRingPool(int capacity) {
+		this.capacity = capacity;
+		this.objects = new Holder[capacity];
+		this.localPointer = new ThreadLocal<Integer>();
+		for(int i=0;i<capacity;i++) {
+			objects[i] = new Holder<T>(null);
+		}
+	}
+
+	private int getLocalPointer() {
+		Integer pointer = localPointer.get();
+		if(pointer == null) {
+			pointer = Thread.currentThread().hashCode() % capacity;
+			localPointer.set(pointer);
+		}
+		return pointer;
+	}
+
+	public boolean put(T value) {
+		int start = getLocalPointer();
+		for(int i = (start + 1) % capacity; i != start; i = (i + 1) % capacity) {
+			if(objects[i].value == null && objects[i].state.compareAndSet(Holder.FREE, Holder.BUSY)) {
+				objects[i].value = value;
+				objects[i].state.set(Holder.FREE);
+				localPointer.set(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int acquire() {
+		int start = getLocalPointer();
+		for(int i = (start + 1) % capacity; i != start; i = (i + 1) % capacity) {
+			if(objects[i] != null && objects[i].state.compareAndSet(Holder.FREE, Holder.BUSY)) {
+				localPointer.set(i);
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean release(int id) {
+		return objects[id].state.compareAndSet(Holder.BUSY, Holder.FREE);
+	}
+
+	@Override
+	public T get(int id) {
+		return objects[id].value;
+	}
+
+	public void destroy(int id) {
+		objects[id].value = null;
+	}
+
+	public Stats getStats() {
+		Stats stats = new Stats();
+		for(int i=0;i<capacity;i++) {
+			if(!objects[i].state.get())	stats.free_objects++;
+			if(objects[i].value == null)	stats.null_objects++;
+		}
+		stats.busy_objects = capacity - stats.free_objects;
+		stats.notnull_objects = capacity - stats.null_objects;
+		return stats;
+	}
+
+	public boolean isBusy(int id) {
+		return objects[id].state.get();
+	}
+
+	public class Stats {
+		public int null_objects;
+		public int notnull_objects;
+		public int free_objects;
+		public int busy_objects;
+	}
+
+	static class Holder<T> {
+		public static final boolean FREE = false;
+		public static final boolean BUSY = true;
+
+		private volatile T value;
+		private AtomicBoolean state;
+
+		public Holder(T value) {
+			this.state = new AtomicBoolean(FREE);
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.ringpool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PipelineRingPool<T> implements RingPool<T> {
+	private int capacity;
+	private int pipeline;
+	private Holder<T>[] objects;
+	private ThreadLocal<Integer> localPointer;
+
+	@SuppressWarnings("unchecked")
+	public PipelineRingPool(int capacity, int pipeline) {
+		this.capacity = capacity;
+		this.pipeline = pipeline;
+		this.objects = new Holder[capacity];
+		this.localPointer = new ThreadLocal<Integer>();
+		for(int i=0;i<capacity;i++) {
+			objects[i] = new Holder<T>(null);
+		}
+	}
+
+	private int getLocalPointer() {
+		Integer pointer = localPointer.get();
+		if(pointer == null) {
+			pointer = Thread.currentThread().hashCode() % capacity;
+			localPointer.set(pointer);
+		}
+		return pointer;
+	}
+
+	public boolean put(T value) {
+		int start = getLocalPointer();
+		for(int i = (start + 1) % capacity; i != start; i = (i + 1) % capacity) {
+			if(objects[i].value == null && objects[i].pipeline_level.compareAndSet(0, pipeline)) {
+				objects[i].value = value;
+				objects[i].pipeline_level.set(0);
+				localPointer.set(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int acquire() {
+		int start = getLocalPointer();
+		for(int i = (start + 1) % capacity; i != start; i = (i + 1) % capacity) {
+			if(objects[i] != null) {
+				if(objects[i].pipeline_level.incrementAndGet() < pipeline) {
+					localPointer.set(i);
+					return i;
+				}
+				objects[i].pipeline_level.decrementAndGet();
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean release(int id) {
+		objects[id].pipeline_level.decrementAndGet();
+		return true;
+	}
+
+	@Override
+	public T get(int id) {
+		return objects[id].value;
+	}
+
+	public Stats getStats() {
+		Stats stats = new Stats();
+		for(int i=0;i<capacity;i++) {
+			int level = objects[i].pipeline_level.get();
+			if(level == 0)	stats.free_objects++;
+			if(level > 0)	stats.busy_pipes += Math.min(level, pipeline);
+			if(objects[i].value == null)	stats.null_objects++;
+		}
+		stats.busy_objects = capacity - stats.free_objects;
+		stats.free_pipes = pipeline * capacity - stats.busy_pipes;
+		stats.notnull_objects = capacity - stats.null_objects;
+		return stats;
+	}
+
+	public int busyLevel(int id) {
+		return Math.min(objects[id].pipeline_level.get(), pipeline);
+	}
+
+	public class Stats {
+		public int null_objects;
+		public int notnull_objects;
+		public int free_objects;
+		public int busy_objects;
+		public int free_pipes;
+		public int busy_pipes;
+	}
+
+	static class Holder<T> {
+		private volatile T value;
+		private AtomicInteger pipeline_level;
+
+		public Holder(T value) {
+			this.pipeline_level = new AtomicInteger(0);
+			this.value = value;
+		}
+	}
+}
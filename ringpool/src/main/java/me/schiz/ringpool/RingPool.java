@@ -16,34 +16,10 @@
  *
  */
 
-package me.schiz.jmeter.ring.tcp;
+package me.schiz.ringpool;
 
-import me.schiz.ringpool.BinaryRingPool;
-import org.apache.jorphan.logging.LoggingManager;
-import org.apache.log.Logger;
-
-public class RingInfoRunnable implements Runnable {
-	private static final Logger log = LoggingManager.getLoggerForClass();
-	private Ring ring;
-
-	public RingInfoRunnable(Ring r) {
-		this.ring = r;
-	}
-
-	@Override
-	public void run() {
-		BinaryRingPool.Stats stats = ring.getStats();
-		StringBuilder sb = new StringBuilder();
-
-		sb.append("ring\tfree:\t");
-		sb.append(stats.free_objects);
-		sb.append(" busy:\t");
-		sb.append(stats.busy_objects);
-		sb.append("\tnull:\t");
-		sb.append(stats.null_objects);
-		sb.append("\tnot_null:\t");
-		sb.append(stats.notnull_objects);
-
-		log.info(sb.toString());
-	}
+public interface RingPool<T> {
+	public int acquire();
+	public boolean release(int id);
+	public T get(int id);
 }
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.ringpool;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ring pool split into per-core stripes of adjacent slots.
+ * acquire() scans the caller's home stripe first and steals from the
+ * neighbour stripes only when it is exhausted, so threads on different
+ * stripes never CAS the same cache lines. Busy and non-null counts are
+ * maintained on every transition, getStats() does not scan the slots.
+ */
+public class StripedRingPool<T> implements RingPool<T> {
+	private static final int FREE = 0;
+	private static final int BUSY = 1;
+	private static final int HINT_PAD = 16; // keep stripe hints on separate cache lines
+
+	private final int capacity;
+	private final int stripes;
+	private final int mask;
+	private final int[] bounds;
+	private final int[] hints;
+	private final AtomicIntegerArray states;
+	private final AtomicReferenceArray<T> objects;
+
+	private final LongAdder busy = new LongAdder();
+	private final LongAdder notNull = new LongAdder();
+	private final LongAdder steals = new LongAdder();
+
+	public StripedRingPool(int capacity) {
+		this(capacity, Runtime.getRuntime().availableProcessors());
+	}
+
+	public StripedRingPool(int capacity, int stripes) {
+		if(capacity <= 0)	throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		int s = Integer.highestOneBit(Math.max(1, Math.min(stripes, capacity)));
+		if(s < stripes && s * 2 <= capacity)	s <<= 1;
+		this.stripes = s;
+		this.mask = s - 1;
+		this.bounds = new int[s + 1];
+		for(int i=0;i<=s;i++) {
+			bounds[i] = (int)((long)i * capacity / s);
+		}
+		this.hints = new int[s * HINT_PAD];
+		for(int i=0;i<s;i++) {
+			hints[i * HINT_PAD] = bounds[i];
+		}
+		this.states = new AtomicIntegerArray(capacity);
+		this.objects = new AtomicReferenceArray<T>(capacity);
+	}
+
+	// Thread ids are handed out sequentially, so consecutive JMeter threads land on different stripes
+	private int homeStripe() {
+		return (int)Thread.currentThread().getId() & mask;
+	}
+
+	@Override
+	public int acquire() {
+		int home = homeStripe();
+		for(int k=0;k<stripes;k++) {
+			int id = acquire((home + k) & mask);
+			if(id != -1) {
+				if(k != 0)	steals.increment();
+				busy.increment();
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	private int acquire(int stripe) {
+		int lo = bounds[stripe], hi = bounds[stripe + 1];
+		int start = hints[stripe * HINT_PAD];
+		if(start < lo || start >= hi)	start = lo;
+		int i = start;
+		do {
+			if(states.get(i) == FREE && states.compareAndSet(i, FREE, BUSY)) {
+				hints[stripe * HINT_PAD] = i + 1 < hi ? i + 1 : lo;
+				return i;
+			}
+			if(++i == hi)	i = lo;
+		} while(i != start);
+		return -1;
+	}
+
+	/**
+	 * Takes the given slot if it is free.
+	 */
+	public boolean tryAcquire(int id) {
+		if(states.compareAndSet(id, FREE, BUSY)) {
+			busy.increment();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean release(int id) {
+		if(states.compareAndSet(id, BUSY, FREE)) {
+			busy.decrement();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public T get(int id) {
+		return objects.get(id);
+	}
+
+	public boolean put(T value) {
+		int home = homeStripe();
+		for(int k=0;k<stripes;k++) {
+			int stripe = (home + k) & mask;
+			for(int i = bounds[stripe]; i < bounds[stripe + 1]; i++) {
+				if(objects.get(i) == null && states.compareAndSet(i, FREE, BUSY)) {
+					if(objects.get(i) == null) {
+						objects.set(i, value);
+						notNull.increment();
+						states.set(i, FREE);
+						return true;
+					}
+					states.set(i, FREE);
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Puts value into the given slot if it is empty.
+	 */
+	public boolean put(int id, T value) {
+		if(objects.get(id) == null && states.compareAndSet(id, FREE, BUSY)) {
+			if(objects.get(id) == null) {
+				objects.set(id, value);
+				notNull.increment();
+				states.set(id, FREE);
+				return true;
+			}
+			states.set(id, FREE);
+		}
+		return false;
+	}
+
+	public void destroy(int id) {
+		if(objects.getAndSet(id, null) != null)	notNull.decrement();
+	}
+
+	public boolean isBusy(int id) {
+		return states.get(id) == BUSY;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public int stripes() {
+		return stripes;
+	}
+
+	public Stats getStats() {
+		Stats stats = new Stats();
+		stats.busy_objects = (int)Math.max(0, Math.min(capacity, busy.sum()));
+		stats.free_objects = capacity - stats.busy_objects;
+		stats.notnull_objects = (int)Math.max(0, Math.min(capacity, notNull.sum()));
+		stats.null_objects = capacity - stats.notnull_objects;
+		stats.steals = steals.sum();
+		return stats;
+	}
+
+	public static class Stats {
+		public int null_objects;
+		public int notnull_objects;
+		public int free_objects;
+		public int busy_objects;
+		public long steals;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package me.schiz.ringpool;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StripedRingPoolTest {
+
+	private static StripedRingPool<Object> full(int capacity, int stripes) {
+		StripedRingPool<Object> pool = new StripedRingPool<Object>(capacity, stripes);
+		for(int i=0;i<capacity;i++) {
+			assertTrue(pool.put(new Object()));
+		}
+		return pool;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyPool() {
+		new StripedRingPool<Object>(0, 1);
+	}
+
+	@Test
+	public void stripesArePowersOfTwoNoMoreThanSlots() {
+		assertEquals(4, new StripedRingPool<Object>(10, 3).stripes());
+		assertEquals(2, new StripedRingPool<Object>(3, 8).stripes());
+		assertEquals(1, new StripedRingPool<Object>(1, 8).stripes());
+		assertEquals(8, new StripedRingPool<Object>(64, 8).stripes());
+	}
+
+	@Test
+	public void putFillsEveryStripeUntilFull() {
+		StripedRingPool<Object> pool = full(8, 4);
+		assertFalse(pool.put(new Object()));
+		Set<Object> objects = new HashSet<Object>();
+		for(int i=0;i<pool.capacity();i++) {
+			assertNotNull(pool.get(i));
+			objects.add(pool.get(i));
+		}
+		assertEquals(8, objects.size());
+		StripedRingPool.Stats stats = pool.getStats();
+		assertEquals(8, stats.notnull_objects);
+		assertEquals(0, stats.null_objects);
+	}
+
+	@Test
+	public void putIntoSlotTakesOnlyAnEmptyFreeSlot() {
+		StripedRingPool<Object> pool = new StripedRingPool<Object>(4, 2);
+		Object o = new Object();
+		assertTrue(pool.put(2, o));
+		assertSame(o, pool.get(2));
+		assertFalse(pool.put(2, new Object()));
+		assertTrue(pool.tryAcquire(3));
+		assertFalse(pool.put(3, new Object()));
+		assertNull(pool.get(3));
+		assertEquals(1, pool.getStats().notnull_objects);
+	}
+
+	@Test
+	public void acquireStealsFromOtherStripesUntilExhausted() {
+		StripedRingPool<Object> pool = full(8, 4);
+		Set<Integer> ids = new HashSet<Integer>();
+		for(int i=0;i<8;i++) {
+			int id = pool.acquire();
+			assertTrue(id >= 0 && id < 8);
+			assertTrue(ids.add(id));
+			assertTrue(pool.isBusy(id));
+		}
+		assertEquals(-1, pool.acquire());
+		StripedRingPool.Stats stats = pool.getStats();
+		assertEquals(8, stats.busy_objects);
+		assertEquals(0, stats.free_objects);
+		//the home stripe holds two slots, the other six were stolen
+		assertEquals(6, stats.steals);
+	}
+
+	@Test
+	public void releasedSlotIsAcquiredAgain() {
+		StripedRingPool<Object> pool = full(4, 2);
+		for(int i=0;i<4;i++) {
+			pool.acquire();
+		}
+		assertTrue(pool.release(1));
+		assertFalse(pool.release(1));
+		assertEquals(1, pool.acquire());
+		assertEquals(-1, pool.acquire());
+	}
+
+	@Test
+	public void tryAcquireTakesOnlyAFreeSlot() {
+		StripedRingPool<Object> pool = full(4, 2);
+		assertTrue(pool.tryAcquire(3));
+		assertFalse(pool.tryAcquire(3));
+		assertEquals(1, pool.getStats().busy_objects);
+		assertTrue(pool.release(3));
+		assertTrue(pool.tryAcquire(3));
+	}
+
+	@Test
+	public void destroyEmptiesTheSlotOnce() {
+		StripedRingPool<Object> pool = full(4, 2);
+		pool.destroy(0);
+		pool.destroy(0);
+		assertNull(pool.get(0));
+		assertEquals(3, pool.getStats().notnull_objects);
+		assertEquals(1, pool.getStats().null_objects);
+		Object o = new Object();
+		assertTrue(pool.put(o));
+		assertSame(o, pool.get(0));
+		assertEquals(4, pool.getStats().notnull_objects);
+	}
+
+	@Test
+	public void concurrentAcquiresNeverShareASlot() throws InterruptedException {
+		final int capacity = 1024;
+		final StripedRingPool<Object> pool = full(capacity, 4);
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<List<Integer>> taken = new ArrayList<List<Integer>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i=0;i<4;i++) {
+			final List<Integer> mine = new ArrayList<Integer>();
+			taken.add(mine);
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					int id;
+					while((id = pool.acquire()) != -1) {
+						mine.add(id);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		start.countDown();
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		Set<Integer> ids = new HashSet<Integer>();
+		for(List<Integer> mine : taken) {
+			for(Integer id : mine) {
+				assertTrue("slot " + id + " acquired twice", ids.add(id));
+			}
+		}
+		assertEquals(capacity, ids.size());
+		assertEquals(capacity, pool.getStats().busy_objects);
+	}
+}
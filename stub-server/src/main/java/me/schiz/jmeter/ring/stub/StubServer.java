@@ -0,0 +1,560 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package me.schiz.jmeter.ring.stub;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embeddable single-threaded NIO target for TCPRing/UDPRing runs.
+ * Every TCP read or UDP datagram is one request. The reply is the request
+ * itself (echo) or a fixed number of bytes, sent after a fixed or uniformly
+ * random latency. Requests can be dropped and TCP connections refused
+ * (reset right after accept) at configurable rates. The random source is
+ * seeded, so a run is reproducible.
+ *
+ * In HTTP mode every request head (up to the blank line) on a TCP
+ * connection gets an HTTP/1.1 response with a responseSize byte body,
+ * Content-Length or chunked, in request order, so pipelining works. Every
+ * n-th response on a connection can carry "Connection: close".
+ *
+ * In DNS mode every UDP datagram is answered as a resolver would: same
+ * id and question, one A record for 127.0.0.1. Names whose first label
+ * starts with "nx" get NXDOMAIN, "tc" a truncated reply and "nodata" no
+ * answers.
+ *
+ *   StubServer stub = new StubServer().setLatency(5, 10).setDropRate(0.01).start();
+ *   ... stub.getTcpAddress() / stub.getUdpAddress() ...
+ *   stub.stop();
+ */
+public class StubServer implements Runnable {
+	private String host = "127.0.0.1";
+	private int tcpPort = 0;
+	private int udpPort = 0;
+	private int minLatency = 0;
+	private int maxLatency = 0;
+	private int responseSize = -1;
+	private double dropRate = 0.0;
+	private double refuseRate = 0.0;
+	private long seed = 42L;
+	private int bufferSize = 64 * 1024;
+	private boolean http = false;
+	private boolean chunked = false;
+	private int closeEvery = 0;
+	private boolean dns = false;
+
+	private Selector selector;
+	private ServerSocketChannel server;
+	private DatagramChannel datagramChannel;
+	private ByteBuffer buffer;
+	private byte[] fixedResponse;
+	private Random random;
+	private Thread thread;
+	private volatile boolean run;
+	private final PriorityQueue<Reply> delayed = new PriorityQueue<Reply>();
+	private long sequence;
+	private byte[] httpResponse;
+	private byte[] httpCloseResponse;
+
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong refused = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong responses = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	public StubServer setHost(String host) {
+		this.host = host;
+		return this;
+	}
+
+	public StubServer setTcpPort(int port) {
+		this.tcpPort = port;
+		return this;
+	}
+
+	public StubServer setUdpPort(int port) {
+		this.udpPort = port;
+		return this;
+	}
+
+	/**
+	 * Fixed latency in milliseconds, applied to every response.
+	 */
+	public StubServer setLatency(int latency) {
+		return setLatency(latency, latency);
+	}
+
+	/**
+	 * Latency drawn uniformly from [min, max] milliseconds per response.
+	 */
+	public StubServer setLatency(int min, int max) {
+		if(min < 0 || max < min)	throw new IllegalArgumentException("bad latency range " + min + ".." + max);
+		this.minLatency = min;
+		this.maxLatency = max;
+		return this;
+	}
+
+	/**
+	 * Size of every response in bytes; a negative value echoes the request.
+	 */
+	public StubServer setResponseSize(int responseSize) {
+		this.responseSize = responseSize;
+		return this;
+	}
+
+	public StubServer setDropRate(double dropRate) {
+		this.dropRate = dropRate;
+		return this;
+	}
+
+	public StubServer setRefuseRate(double refuseRate) {
+		this.refuseRate = refuseRate;
+		return this;
+	}
+
+	public StubServer setHttp(boolean http) {
+		this.http = http;
+		return this;
+	}
+
+	/**
+	 * HTTP mode: send the body with Transfer-Encoding: chunked.
+	 */
+	public StubServer setChunked(boolean chunked) {
+		this.chunked = chunked;
+		return this;
+	}
+
+	/**
+	 * HTTP mode: every n-th response on a connection says
+	 * "Connection: close" and the connection is closed after it, 0 never.
+	 */
+	public StubServer setCloseEvery(int closeEvery) {
+		this.closeEvery = closeEvery;
+		return this;
+	}
+
+	public StubServer setDns(boolean dns) {
+		this.dns = dns;
+		return this;
+	}
+
+	public StubServer setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public StubServer setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	public StubServer start() throws IOException {
+		random = new Random(seed);
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+		if(responseSize >= 0) {
+			fixedResponse = new byte[responseSize];
+			for(int i=0;i<responseSize;i++)	fixedResponse[i] = (byte)('a' + i % 26);
+		}
+		if(http) {
+			httpResponse = httpResponse(false);
+			httpCloseResponse = httpResponse(true);
+		}
+		selector = Selector.open();
+
+		server = ServerSocketChannel.open();
+		server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		server.bind(new InetSocketAddress(host, tcpPort), 65535);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+
+		datagramChannel = DatagramChannel.open();
+		datagramChannel.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+		datagramChannel.bind(new InetSocketAddress(host, udpPort));
+		datagramChannel.configureBlocking(false);
+		datagramChannel.register(selector, SelectionKey.OP_READ);
+
+		run = true;
+		thread = new Thread(this, "StubServer-" + getTcpPort());
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	public void stop() throws IOException {
+		run = false;
+		selector.wakeup();
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for(SelectionKey key : selector.keys()) {
+			key.channel().close();
+		}
+		selector.close();
+	}
+
+	public int getTcpPort() {
+		return server.socket().getLocalPort();
+	}
+
+	public int getUdpPort() {
+		return datagramChannel.socket().getLocalPort();
+	}
+
+	public String getTcpAddress() {
+		return host + ":" + getTcpPort();
+	}
+
+	public String getUdpAddress() {
+		return host + ":" + getUdpPort();
+	}
+
+	public long getAccepted() {
+		return accepted.get();
+	}
+
+	public long getRefused() {
+		return refused.get();
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getResponses() {
+		return responses.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * CPU time burnt by the stub thread, so harnesses can subtract it
+	 * from the process CPU time when both run in one JVM.
+	 */
+	public long getCpuTimeNanos() {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		return mx.isThreadCpuTimeSupported() ? mx.getThreadCpuTime(thread.getId()) : 0L;
+	}
+
+	@Override
+	public void run() {
+		while(run) {
+			try {
+				long timeout = flushDelayed();
+				selector.select(timeout < 0 ? 0 : timeout);
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					if(!key.isValid())	continue;
+					try {
+						if(key.isAcceptable())	accept();
+						else if(key.channel() == datagramChannel)	receive();
+						else {
+							if(key.isWritable())	flush(key);
+							if(key.isValid() && key.isReadable())	read(key);
+						}
+					} catch (IOException e) {
+						close(key);
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				break;
+			} catch (IOException e) {
+				break;
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel sc = server.accept();
+		if(sc == null)	return;
+		if(refuseRate > 0 && random.nextDouble() < refuseRate) {
+			refused.incrementAndGet();
+			sc.setOption(StandardSocketOptions.SO_LINGER, 0);
+			sc.close();
+			return;
+		}
+		accepted.incrementAndGet();
+		sc.configureBlocking(false);
+		sc.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		sc.register(selector, SelectionKey.OP_READ, new Connection());
+	}
+
+	private void read(SelectionKey key) throws IOException {
+		SocketChannel sc = (SocketChannel) key.channel();
+		buffer.clear();
+		if(sc.read(buffer) == -1) {
+			close(key);
+			return;
+		}
+		buffer.flip();
+		if(http) {
+			readHttp(key);
+			return;
+		}
+		requests.incrementAndGet();
+		ByteBuffer response = response();
+		if(response != null)	schedule(new Reply(key, null, response));
+	}
+
+	private void readHttp(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		while(buffer.hasRemaining()) {
+			byte b = buffer.get();
+			//looking for CR LF CR LF
+			if(b == (connection.match % 2 == 0 ? '\r' : '\n'))	connection.match++;
+			else	connection.match = b == '\r' ? 1 : 0;
+			if(connection.match < 4)	continue;
+			connection.match = 0;
+			requests.incrementAndGet();
+			if(connection.closing)	continue;
+			if(dropRate > 0 && random.nextDouble() < dropRate) {
+				dropped.incrementAndGet();
+				continue;
+			}
+			connection.served++;
+			Reply reply = new Reply(key, null, null);
+			if(closeEvery > 0 && connection.served % closeEvery == 0) {
+				connection.closing = true;
+				reply.close = true;
+			}
+			reply.data = ByteBuffer.wrap(reply.close ? httpCloseResponse : httpResponse);
+			schedule(reply);
+		}
+	}
+
+	private byte[] httpResponse(boolean close) {
+		int size = Math.max(0, responseSize);
+		StringBuilder sb = new StringBuilder("HTTP/1.1 200 OK\r\n");
+		if(close)	sb.append("Connection: close\r\n");
+		if(chunked) {
+			sb.append("Transfer-Encoding: chunked\r\n\r\n");
+			//two chunks, so the parser has to stitch them
+			int first = size / 2;
+			if(first > 0)	sb.append(Integer.toHexString(first)).append("\r\n").append(body(first)).append("\r\n");
+			if(size - first > 0)	sb.append(Integer.toHexString(size - first)).append("\r\n").append(body(size - first)).append("\r\n");
+			sb.append("0\r\n\r\n");
+		} else {
+			sb.append("Content-Length: ").append(size).append("\r\n\r\n").append(body(size));
+		}
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static String body(int size) {
+		StringBuilder sb = new StringBuilder(size);
+		for(int i=0;i<size;i++)	sb.append((char)('a' + i % 26));
+		return sb.toString();
+	}
+
+	private void receive() throws IOException {
+		buffer.clear();
+		SocketAddress from = datagramChannel.receive(buffer);
+		if(from == null)	return;
+		buffer.flip();
+		requests.incrementAndGet();
+		ByteBuffer response = dns ? dnsResponse() : response();
+		if(response != null)	schedule(new Reply(null, from, response));
+	}
+
+	private ByteBuffer response() {
+		if(dropRate > 0 && random.nextDouble() < dropRate) {
+			dropped.incrementAndGet();
+			return null;
+		}
+		if(fixedResponse != null)	return ByteBuffer.wrap(fixedResponse);
+		ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+		copy.put(buffer).flip();
+		return copy;
+	}
+
+	private ByteBuffer dnsResponse() {
+		if(dropRate > 0 && random.nextDouble() < dropRate) {
+			dropped.incrementAndGet();
+			return null;
+		}
+		int start = buffer.position();
+		int end = start + 12;
+		if(buffer.remaining() < 17)	return null;
+		while(end < buffer.limit() && buffer.get(end) != 0)	end += (buffer.get(end) & 0xff) + 1;
+		end += 5;
+		if(end > buffer.limit())	return null;
+
+		int rcode = 0, flags = 0x8180, answers = 1;
+		if(firstLabelStartsWith("nx")) {
+			rcode = 3;
+			answers = 0;
+		} else if(firstLabelStartsWith("tc")) {
+			flags |= 0x0200;
+		} else if(firstLabelStartsWith("nodata")) {
+			answers = 0;
+		}
+		ByteBuffer reply = ByteBuffer.allocate(end - start + 16);
+		ByteBuffer query = buffer.duplicate();
+		query.limit(end);
+		reply.put(query);
+		reply.putShort(2, (short) (flags | rcode));
+		reply.putShort(4, (short) 1);
+		reply.putShort(6, (short) answers);
+		reply.putShort(8, (short) 0);
+		reply.putShort(10, (short) 0);
+		if(answers > 0) {
+			reply.putShort((short) 0xc00c);
+			reply.putShort(buffer.getShort(end - 4));
+			reply.putShort((short) 1);
+			reply.putInt(60);
+			reply.putShort((short) 4);
+			reply.put(new byte[] {127, 0, 0, 1});
+		}
+		reply.flip();
+		return reply;
+	}
+
+	private boolean firstLabelStartsWith(String prefix) {
+		int start = buffer.position() + 12;
+		int length = buffer.get(start) & 0xff;
+		if(length < prefix.length())	return false;
+		for(int i=0;i<prefix.length();i++) {
+			if((buffer.get(start + 1 + i) | 0x20) != prefix.charAt(i))	return false;
+		}
+		return true;
+	}
+
+	private void schedule(Reply reply) throws IOException {
+		int latency = maxLatency == minLatency ? minLatency : minLatency + random.nextInt(maxLatency - minLatency + 1);
+		if(latency == 0 && (reply.key == null || ((Connection) reply.key.attachment()).lastDue == 0L)) {
+			send(reply);
+		} else {
+			reply.due = System.nanoTime() + latency * 1000000L;
+			reply.sequence = sequence++;
+			if(reply.key != null) {
+				//keep replies on one connection in request order
+				Connection connection = (Connection) reply.key.attachment();
+				reply.due = Math.max(reply.due, connection.lastDue);
+				connection.lastDue = reply.due;
+			}
+			delayed.add(reply);
+		}
+	}
+
+	/**
+	 * Sends every reply that is due and returns how long select may block,
+	 * -1 for no pending replies.
+	 */
+	private long flushDelayed() {
+		long now = System.nanoTime();
+		Reply reply;
+		while((reply = delayed.peek()) != null && reply.due <= now) {
+			delayed.poll();
+			try {
+				send(reply);
+			} catch (IOException e) {
+				if(reply.key != null)	close(reply.key);
+			}
+		}
+		if(reply == null)	return -1L;
+		return Math.max(1L, (reply.due - now) / 1000000L);
+	}
+
+	private void send(Reply reply) throws IOException {
+		if(reply.key == null) {
+			datagramChannel.send(reply.data, reply.address);
+			responses.incrementAndGet();
+			return;
+		}
+		if(!reply.key.isValid())	return;
+		Connection connection = (Connection) reply.key.attachment();
+		if(reply.due == connection.lastDue)	connection.lastDue = 0L;
+		connection.pending.add(reply.data.duplicate());
+		if(reply.close)	connection.closeAfterFlush = true;
+		responses.incrementAndGet();
+		flush(reply.key);
+	}
+
+	private void flush(SelectionKey key) throws IOException {
+		SocketChannel sc = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+		ArrayDeque<ByteBuffer> pending = connection.pending;
+		while(!pending.isEmpty()) {
+			ByteBuffer head = pending.peek();
+			sc.write(head);
+			if(head.hasRemaining())	break;
+			pending.poll();
+		}
+		if(pending.isEmpty() && connection.closeAfterFlush) {
+			close(key);
+			return;
+		}
+		key.interestOps(pending.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+	}
+
+	private void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	private static class Connection {
+		final ArrayDeque<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+		int match;
+		int served;
+		boolean closing;
+		boolean closeAfterFlush;
+		long lastDue;
+	}
+
+	private static class Reply implements Comparable<Reply> {
+		final SelectionKey key;
+		final SocketAddress address;
+		ByteBuffer data;
+		long due;
+		long sequence;
+		boolean close;
+
+		Reply(SelectionKey key, SocketAddress address, ByteBuffer data) {
+			this.key = key;
+			this.address = address;
+			this.data = data;
+		}
+
+		@Override
+		public int compareTo(Reply o) {
+			if(due != o.due)	return due < o.due ? -1 : 1;
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+	}
+}